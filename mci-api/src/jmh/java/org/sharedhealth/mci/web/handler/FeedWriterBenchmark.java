@@ -0,0 +1,66 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sharedhealth.mci.web.mapper.Feed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static org.sharedhealth.mci.web.handler.AtomFeedWriterTest.buildFeed;
+
+/**
+ * Writes a feed page of the given number of entries with AtomFeedWriter and with the ROME mapping it replaced. Run
+ * with -prof gc; gc.alloc.rate.norm is the bytes allocated per page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeedWriterBenchmark {
+
+    private static final String FEED_ID = "0b2e6f4e-8a5c-4d0b-9a39-5e4f3a8e6f10";
+
+    @Param({"25", "100", "1000"})
+    private int entries;
+
+    private Feed feed;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        feed = buildFeed(entries);
+        out = new ByteArrayOutputStream(1 << 20);
+    }
+
+    @Benchmark
+    public int writeWithAtomFeedWriter() throws Exception {
+        out.reset();
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        new AtomFeedWriter(writer).write(feed, FEED_ID);
+        writer.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeWithRome() throws Exception {
+        out.reset();
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        new RomeFeedWriter().write(feed, FEED_ID, writer);
+        writer.flush();
+        return out.size();
+    }
+}
@@ -0,0 +1,36 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.service.PendingApprovalFilter;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Reloads the approval field options used by the pending approval filter, so a change to approval_fields is picked
+ * up without a restart.
+ */
+@Component
+public class ApprovalFieldsRefreshTask {
+
+    private static final Logger logger = getLogger(ApprovalFieldsRefreshTask.class);
+
+    private PendingApprovalFilter pendingApprovalFilter;
+
+    @Autowired
+    public ApprovalFieldsRefreshTask(PendingApprovalFilter pendingApprovalFilter) {
+        this.pendingApprovalFilter = pendingApprovalFilter;
+    }
+
+    @Scheduled(initialDelayString = "${APPROVAL_FIELDS_REFRESH_INITIAL_DELAY}",
+            fixedDelayString = "${APPROVAL_FIELDS_REFRESH_DELAY}")
+    public void execute() {
+        try {
+            pendingApprovalFilter.refresh();
+        } catch (Exception e) {
+            logger.error("Failed to refresh approval fields", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.MarkerRepository;
+import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CATCHMENT_FEED_BACKFILL_MARKER_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes the catchment feed entries of the catchment mappings from before catchment feed entries were written, a
+ * catchment at a time, until reads move over to the catchment feed. The marker is the last catchment gone through.
+ * Runs on the master node only.
+ */
+@Component
+public class CatchmentFeedBackfillTask {
+
+    private static final Logger logger = getLogger(CatchmentFeedBackfillTask.class);
+    private static final int CATCHMENT_PAGE_SIZE = 100;
+    private static final int PAGE_SIZE = 500;
+
+    private PatientRepository patientRepository;
+    private MarkerRepository markerRepository;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public CatchmentFeedBackfillTask(PatientRepository patientRepository, MarkerRepository markerRepository,
+                                     MCIProperties mciProperties) {
+        this.patientRepository = patientRepository;
+        this.markerRepository = markerRepository;
+        this.mciProperties = mciProperties;
+    }
+
+    @Scheduled(initialDelayString = "${CATCHMENT_FEED_BACKFILL_INITIAL_DELAY}",
+            fixedDelayString = "${CATCHMENT_FEED_BACKFILL_DELAY}")
+    public void execute() {
+        if (!mciProperties.getIsMCIMasterNode() || mciProperties.isCatchmentFeedMaterialized()) return;
+        try {
+            String marker = markerRepository.find(CATCHMENT_FEED_BACKFILL_MARKER_TYPE);
+            List<String> catchmentIds = patientRepository.findCatchmentIdsAfter(marker, CATCHMENT_PAGE_SIZE);
+            while (!catchmentIds.isEmpty()) {
+                for (String catchmentId : catchmentIds) {
+                    backfill(catchmentId);
+                    markerRepository.save(CATCHMENT_FEED_BACKFILL_MARKER_TYPE, catchmentId);
+                    marker = catchmentId;
+                }
+                catchmentIds = patientRepository.findCatchmentIdsAfter(marker, CATCHMENT_PAGE_SIZE);
+            }
+            logger.debug(String.format("Catchment feed backfilled up to catchment %s", marker));
+        } catch (Exception e) {
+            logger.error("Failed to backfill catchment feed", e);
+        }
+    }
+
+    private void backfill(String catchmentId) {
+        UUID lastMarker = patientRepository.backfillCatchmentFeed(catchmentId, null, PAGE_SIZE);
+        while (lastMarker != null) {
+            lastMarker = patientRepository.backfillCatchmentFeed(catchmentId, lastMarker, PAGE_SIZE);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.FailedDerivedWriteRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Replays the derived patient writes that failed after their retries, a page at a time, until a page is not fully
+ * written. Runs on the master node only.
+ */
+@Component
+public class DerivedWriteReplayTask {
+
+    private static final Logger logger = getLogger(DerivedWriteReplayTask.class);
+    private static final int PAGE_SIZE = 100;
+
+    private FailedDerivedWriteRepository failedWrites;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public DerivedWriteReplayTask(FailedDerivedWriteRepository failedWrites, MCIProperties mciProperties) {
+        this.failedWrites = failedWrites;
+        this.mciProperties = mciProperties;
+    }
+
+    @Scheduled(initialDelayString = "${DERIVED_WRITE_REPLAY_INITIAL_DELAY}",
+            fixedDelayString = "${DERIVED_WRITE_REPLAY_DELAY}")
+    public void execute() {
+        if (!mciProperties.getIsMCIMasterNode()) return;
+        try {
+            int replayed;
+            do {
+                replayed = failedWrites.replay(PAGE_SIZE);
+                if (replayed > 0) {
+                    logger.info(String.format("Replayed %d failed derived patient writes", replayed));
+                }
+            } while (replayed == PAGE_SIZE);
+        } catch (Exception e) {
+            logger.error("Failed to replay failed derived patient writes", e);
+        }
+    }
+}
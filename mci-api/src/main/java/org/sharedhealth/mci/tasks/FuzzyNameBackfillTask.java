@@ -0,0 +1,54 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.MarkerRepository;
+import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.FUZZY_NAME_BACKFILL_MARKER_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes the fuzzy name mappings of the patients created before the fuzzy name index was written, going through
+ * the patient table in token order a page at a time. The marker is the last health id gone through, so a run picks
+ * up where the last one stopped. Runs on the master node only.
+ */
+@Component
+public class FuzzyNameBackfillTask {
+
+    private static final Logger logger = getLogger(FuzzyNameBackfillTask.class);
+    private static final int PAGE_SIZE = 500;
+
+    private PatientRepository patientRepository;
+    private MarkerRepository markerRepository;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public FuzzyNameBackfillTask(PatientRepository patientRepository, MarkerRepository markerRepository,
+                                 MCIProperties mciProperties) {
+        this.patientRepository = patientRepository;
+        this.markerRepository = markerRepository;
+        this.mciProperties = mciProperties;
+    }
+
+    @Scheduled(initialDelayString = "${FUZZY_NAME_BACKFILL_INITIAL_DELAY}",
+            fixedDelayString = "${FUZZY_NAME_BACKFILL_DELAY}")
+    public void execute() {
+        if (!mciProperties.getIsMCIMasterNode()) return;
+        try {
+            String marker = markerRepository.find(FUZZY_NAME_BACKFILL_MARKER_TYPE);
+            String lastHealthId = patientRepository.backfillFuzzyNameMappings(marker, PAGE_SIZE);
+            while (lastHealthId != null) {
+                markerRepository.save(FUZZY_NAME_BACKFILL_MARKER_TYPE, lastHealthId);
+                marker = lastHealthId;
+                lastHealthId = patientRepository.backfillFuzzyNameMappings(marker, PAGE_SIZE);
+            }
+            logger.debug(String.format("Fuzzy name mappings backfilled up to health id %s", marker));
+        } catch (Exception e) {
+            logger.error("Failed to backfill fuzzy name mappings", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.JsonColumnMigrationRepository;
+import org.sharedhealth.mci.domain.repository.MarkerRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.JSON_COLUMN_MIGRATION_MARKER_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Moves the JSON columns of the patient, update log and audit log tables to their blob columns once
+ * JSON_COLUMNS_ENCODING is smile, a table at a time. The marker of a table is the paging state of its next page, so a
+ * run picks up where the last one stopped, and is MIGRATED once the table has been gone through. Rows left as JSON
+ * still read, so a table is not gone through again. Runs on the master node only.
+ */
+@Component
+public class JsonColumnMigrationTask {
+
+    private static final Logger logger = getLogger(JsonColumnMigrationTask.class);
+    private static final int PAGE_SIZE = 500;
+    static final String MIGRATED = "migrated";
+
+    private JsonColumnMigrationRepository migrationRepository;
+    private MarkerRepository markerRepository;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public JsonColumnMigrationTask(JsonColumnMigrationRepository migrationRepository,
+                                   MarkerRepository markerRepository, MCIProperties mciProperties) {
+        this.migrationRepository = migrationRepository;
+        this.markerRepository = markerRepository;
+        this.mciProperties = mciProperties;
+    }
+
+    @Scheduled(initialDelayString = "${JSON_COLUMN_MIGRATION_INITIAL_DELAY}",
+            fixedDelayString = "${JSON_COLUMN_MIGRATION_DELAY}")
+    public void execute() {
+        if (!mciProperties.getIsMCIMasterNode() || !mciProperties.isJsonColumnsBinary()) return;
+        for (String table : migrationRepository.getTables()) {
+            try {
+                migrate(table);
+            } catch (Exception e) {
+                logger.error(String.format("Failed to migrate JSON columns of %s", table), e);
+                return;
+            }
+        }
+    }
+
+    private void migrate(String table) {
+        String markerType = JSON_COLUMN_MIGRATION_MARKER_TYPE + "_" + table;
+        String pagingState = markerRepository.find(markerType);
+        if (MIGRATED.equals(pagingState)) {
+            return;
+        }
+        do {
+            pagingState = migrationRepository.migratePage(table, pagingState, PAGE_SIZE);
+            markerRepository.save(markerType, pagingState != null ? pagingState : MIGRATED);
+        } while (pagingState != null);
+        logger.info(String.format("Migrated JSON columns of %s", table));
+    }
+}
@@ -0,0 +1,72 @@
+package org.sharedhealth.mci.tasks;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.sharedhealth.mci.domain.model.PatientUpdateLog;
+import org.sharedhealth.mci.domain.repository.PatientCache;
+import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.sharedhealth.mci.domain.util.TimeUuidUtil.getTimeFromUUID;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Tails the patient update log and invalidates cached patients updated by any node, so a node does not keep
+ * serving a patient updated through another node. Writes that change no field, as those of pending approvals, are
+ * logged too.
+ * <p>
+ * An update log row can land after rows with later event ids, when the clocks of the nodes differ or a write is
+ * slow, so every run reads the last OVERLAP_MILLIS before the newest event seen again. Invalidating a patient twice
+ * costs no more than a cache miss.
+ */
+@Component
+public class PatientCacheInvalidationTask {
+
+    private static final Logger logger = getLogger(PatientCacheInvalidationTask.class);
+    private static final int PAGE_SIZE = 100;
+    private static final long OVERLAP_MILLIS = 30000;
+
+    private PatientFeedRepository feedRepository;
+    private PatientCache patientCache;
+    private UUID lastMarker;
+
+    @Autowired
+    public PatientCacheInvalidationTask(PatientFeedRepository feedRepository, PatientCache patientCache) {
+        this.feedRepository = feedRepository;
+        this.patientCache = patientCache;
+        this.lastMarker = TimeUuidUtil.uuidForDate(new Date());
+    }
+
+    @Scheduled(initialDelayString = "${PATIENT_CACHE_INVALIDATION_INITIAL_DELAY}",
+            fixedDelayString = "${PATIENT_CACHE_INVALIDATION_DELAY}")
+    public void execute() {
+        try {
+            UUID marker = UUIDs.startOf(getTimeFromUUID(lastMarker) - OVERLAP_MILLIS);
+            List<PatientUpdateLog> logs;
+            do {
+                logs = feedRepository.findPatientsUpdatedSince(marker, PAGE_SIZE);
+                List<String> healthIds = new ArrayList<>();
+                for (PatientUpdateLog log : logs) {
+                    healthIds.add(log.getHealthId());
+                }
+                if (!healthIds.isEmpty()) {
+                    patientCache.invalidate(healthIds);
+                    marker = logs.get(logs.size() - 1).getEventId();
+                    if (getTimeFromUUID(marker) > getTimeFromUUID(lastMarker)) {
+                        lastMarker = marker;
+                    }
+                }
+            } while (logs.size() == PAGE_SIZE);
+        } catch (Exception e) {
+            logger.error("Failed to invalidate cached patients from update log", e);
+        }
+    }
+}
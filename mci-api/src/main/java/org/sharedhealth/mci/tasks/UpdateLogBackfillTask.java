@@ -0,0 +1,56 @@
+package org.sharedhealth.mci.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.MarkerRepository;
+import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.UPDATE_LOG_BACKFILL_MARKER_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Copies the yearly update log into the sharded one while both are written, so that the sharded log also has the
+ * events from before dual writes started by the time reads move over to it. Runs on the master node only.
+ */
+@Component
+public class UpdateLogBackfillTask {
+
+    private static final Logger logger = getLogger(UpdateLogBackfillTask.class);
+    private static final int PAGE_SIZE = 500;
+
+    private PatientFeedRepository feedRepository;
+    private MarkerRepository markerRepository;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public UpdateLogBackfillTask(PatientFeedRepository feedRepository, MarkerRepository markerRepository,
+                                 MCIProperties mciProperties) {
+        this.feedRepository = feedRepository;
+        this.markerRepository = markerRepository;
+        this.mciProperties = mciProperties;
+    }
+
+    @Scheduled(initialDelayString = "${UPDATE_LOG_BACKFILL_INITIAL_DELAY}",
+            fixedDelayString = "${UPDATE_LOG_BACKFILL_DELAY}")
+    public void execute() {
+        if (!mciProperties.getIsMCIMasterNode() || !mciProperties.isUpdateLogDualWrite()) return;
+        try {
+            String markerString = markerRepository.find(UPDATE_LOG_BACKFILL_MARKER_TYPE);
+            UUID marker = markerString != null ? UUID.fromString(markerString) : null;
+            UUID copiedUpTo = feedRepository.copyYearlyLogAfter(marker, PAGE_SIZE);
+            while (copiedUpTo != null && !copiedUpTo.equals(marker)) {
+                markerRepository.save(UPDATE_LOG_BACKFILL_MARKER_TYPE, copiedUpTo.toString());
+                marker = copiedUpTo;
+                copiedUpTo = feedRepository.copyYearlyLogAfter(marker, PAGE_SIZE);
+            }
+            logger.debug(String.format("Update log copied to the sharded layout up to %s", marker));
+        } catch (Exception e) {
+            logger.error("Failed to copy update log to the sharded layout", e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.exception.Forbidden;
 import org.sharedhealth.mci.domain.exception.ValidationException;
 import org.sharedhealth.mci.domain.model.Catchment;
+import org.sharedhealth.mci.domain.model.CursorPage;
 import org.sharedhealth.mci.domain.model.MCIResponse;
 import org.sharedhealth.mci.domain.model.PatientData;
 import org.sharedhealth.mci.domain.model.PendingApproval;
@@ -12,11 +13,16 @@ import org.sharedhealth.mci.domain.util.DateUtil;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.sharedhealth.mci.domain.validation.group.RequiredOnUpdateGroup;
 import org.sharedhealth.mci.utils.TimeUid;
+import org.sharedhealth.mci.web.handler.FeedPage;
+import org.sharedhealth.mci.web.handler.FeedPageCache;
+import org.sharedhealth.mci.web.handler.FeedPageKey;
 import org.sharedhealth.mci.web.handler.MCIMultiResponse;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
+import org.sharedhealth.mci.web.mapper.BulkItemResponse;
 import org.sharedhealth.mci.web.mapper.Feed;
 import org.sharedhealth.mci.web.mapper.FeedEntry;
 import org.sharedhealth.mci.web.mapper.PendingApprovalListResponse;
+import org.sharedhealth.mci.web.service.BulkPatientService;
 import org.sharedhealth.mci.web.service.PatientService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +33,7 @@ import org.springframework.validation.BindingResult;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.groups.Default;
@@ -41,6 +48,7 @@ import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.AFTER;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.BEFORE;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.CURSOR;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.LAST_MARKER;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.SINCE;
 import static org.sharedhealth.mci.domain.util.DateUtil.convertToDateStringIsoMillisFormat;
@@ -67,9 +75,13 @@ public class CatchmentController extends FeedController {
     private static final String ENTRY_TITLE = "Patient in Catchment: ";
     private static final String ENTRY_CATEGORY = "patient";
 
+    private BulkPatientService bulkPatientService;
+
     @Autowired
-    public CatchmentController(PatientService patientService, MCIProperties properties) {
-        super(patientService, properties);
+    public CatchmentController(PatientService patientService, BulkPatientService bulkPatientService,
+                               FeedPageCache feedPageCache, MCIProperties properties) {
+        super(patientService, feedPageCache, properties);
+        this.bulkPatientService = bulkPatientService;
     }
 
     @PreAuthorize("hasAnyRole('ROLE_MCI Approver')")
@@ -78,6 +90,7 @@ public class CatchmentController extends FeedController {
             @PathVariable String catchmentId,
             @RequestParam(value = AFTER, required = false) UUID after,
             @RequestParam(value = BEFORE, required = false) UUID before,
+            @RequestParam(value = CURSOR, required = false) String cursor,
             HttpServletRequest request) {
 
         UserInfo userInfo = getUserInfo();
@@ -95,6 +108,14 @@ public class CatchmentController extends FeedController {
         }
 
         Catchment catchment = new Catchment(catchmentId);
+        if (after == null && before == null) {
+            CursorPage<PendingApprovalListResponse> page = patientService.findPendingApprovalList(catchment, cursor,
+                    patientService.getPerPageMaximumLimit());
+            MCIMultiResponse mciMultiResponse = buildPaginatedResponse(request, page, cursor);
+            deferredResult.setResult(new ResponseEntity<>(mciMultiResponse, mciMultiResponse.httpStatusObject));
+            return deferredResult;
+        }
+
         int limit = patientService.getPerPageMaximumLimit() + 1;
         List<PendingApprovalListResponse> response = patientService.findPendingApprovalList(catchment, after, before, limit);
 
@@ -184,12 +205,43 @@ public class CatchmentController extends FeedController {
         return processPendingApprovals(catchmentId, healthId, patient, userInfo, bindingResult, false);
     }
 
+    /**
+     * Accepts the pending approvals of a list of patients of the catchment, each decision carrying its health id.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_MCI Approver')")
+    @RequestMapping(value = "/{catchmentId}/approvals", method = PUT, produces = APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<MCIMultiResponse>> acceptPendingApprovals(
+            @PathVariable String catchmentId,
+            @RequestBody List<PatientData> decisions) throws InterruptedException {
+
+        UserInfo userInfo = getUserInfo();
+        logAccessDetails(userInfo, String.format("Accepting %d pending approvals, catchment: %s", decisions.size(),
+                catchmentId));
+        return processPendingApprovals(catchmentId, decisions, userInfo, true);
+    }
+
+    /**
+     * Rejects the pending approvals of a list of patients of the catchment, each decision carrying its health id.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_MCI Approver')")
+    @RequestMapping(value = "/{catchmentId}/approvals", method = DELETE, produces = APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<MCIMultiResponse>> rejectPendingApprovals(
+            @PathVariable String catchmentId,
+            @RequestBody List<PatientData> decisions) throws InterruptedException {
+
+        UserInfo userInfo = getUserInfo();
+        logAccessDetails(userInfo, String.format("Rejecting %d pending approvals, catchment: %s", decisions.size(),
+                catchmentId));
+        return processPendingApprovals(catchmentId, decisions, userInfo, false);
+    }
+
     @PreAuthorize("hasAnyRole('ROLE_PROVIDER', 'ROLE_FACILITY', 'ROLE_SHR System Admin')")
     @RequestMapping(value = "/{catchmentId}/patients", method = GET, produces = {APPLICATION_JSON_VALUE, APPLICATION_ATOM_XML_VALUE})
-    public DeferredResult<Feed> findAllPatients(
+    public DeferredResult<ResponseEntity<byte[]>> findAllPatients(
             @PathVariable String catchmentId,
             @RequestParam(value = SINCE, required = false) String since,
             @RequestParam(value = LAST_MARKER, required = false) String last,
+            @RequestParam(value = CURSOR, required = false) String cursor,
             HttpServletRequest request) {
 
         UserInfo userInfo = getUserInfo();
@@ -197,7 +249,7 @@ public class CatchmentController extends FeedController {
 
         UUID lastMarker = TimeUid.fromString(last);
 
-        final DeferredResult<Feed> deferredResult = new DeferredResult<>();
+        final DeferredResult<ResponseEntity<byte[]>> deferredResult = new DeferredResult<>();
         if (!userInfo.getProperties().hasCatchmentForProfileType(catchmentId, asList(FACILITY_TYPE, PROVIDER_TYPE))) {
             deferredResult.setErrorResult(new Forbidden
                     (format("Access is denied to user %s for catchment %s",
@@ -205,13 +257,19 @@ public class CatchmentController extends FeedController {
             logger.error(format("Access is denied to user %s for catchment %s", userInfo.getProperties().getEmail(), catchmentId));
             return deferredResult;
         }
-        Catchment catchment = new Catchment(catchmentId);
-        logger.debug(format("Find all patients by catchment. Catchment ID: %s", catchment));
-
-        Date date = isNotBlank(since) ? parseDate(since) : null;
-        List<Map<String, Object>> catchmentEvents = patientService.findAllByCatchment(catchment, date, lastMarker);
-
-        deferredResult.setResult(buildFeedResponse(catchmentEvents, request));
+        int pageSize = patientService.getPerPageMaximumLimit();
+        FeedPageKey key = buildFeedPageKey(pageSize, request);
+        FeedPage page = feedPageCache.get(key);
+        if (page == null) {
+            Catchment catchment = new Catchment(catchmentId);
+            logger.debug(format("Find all patients by catchment. Catchment ID: %s", catchment));
+
+            Date date = isNotBlank(since) ? parseDate(since) : null;
+            CursorPage<Map<String, Object>> catchmentEvents = patientService.findAllByCatchment(catchment, date, lastMarker, cursor);
+            page = renderFeedPage(buildFeedResponse(catchmentEvents, since, last, request), key,
+                    isFullPage(catchmentEvents.getItems(), pageSize));
+        }
+        deferredResult.setResult(buildFeedPageResponse(page, request));
         return deferredResult;
     }
 
@@ -245,21 +303,77 @@ public class CatchmentController extends FeedController {
         return deferredResult;
     }
 
+    private DeferredResult<ResponseEntity<MCIMultiResponse>> processPendingApprovals(
+            String catchmentId, List<PatientData> decisions, UserInfo userInfo, boolean shouldAccept)
+            throws InterruptedException {
+
+        final DeferredResult<ResponseEntity<MCIMultiResponse>> deferredResult = new DeferredResult<>();
+
+        if (!userInfo.getProperties().hasCatchmentForProfileType(catchmentId, asList(ADMIN_TYPE))) {
+            deferredResult.setErrorResult(new Forbidden
+                    (format("Access is denied to user %s for catchment %s",
+                            userInfo.getProperties().getId(), catchmentId)));
+            return deferredResult;
+        }
+
+        Catchment catchment = new Catchment(catchmentId);
+        logger.info(format("process %d pending approvals for catchment: %s", decisions.size(), catchment.toString()));
+        List<BulkItemResponse> results = bulkPatientService.processPendingApprovals(decisions, catchment, shouldAccept,
+                userInfo.getProperties());
+
+        MCIMultiResponse mciMultiResponse = new MCIMultiResponse(results, null, OK);
+        deferredResult.setResult(new ResponseEntity<>(mciMultiResponse, mciMultiResponse.httpStatusObject));
+        return deferredResult;
+    }
+
+    /**
+     * While the driver has more events for the query, the next url keeps the since and last marker of the query and
+     * adds the cursor of the next page. The last page links to the events after its last event, as before.
+     */
+    Feed buildFeedResponse(CursorPage<Map<String, Object>> catchmentEvents, String since, String last,
+                           HttpServletRequest request) {
+        if (!catchmentEvents.hasNext()) {
+            return buildFeedResponse(catchmentEvents.getItems(), request);
+        }
+        try {
+            return buildFeed(catchmentEvents.getItems(), buildNextUrl(since, last, catchmentEvents.getNextCursor(), request), request);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     Feed buildFeedResponse(List<Map<String, Object>> catchmentEvents, HttpServletRequest request) {
         try {
-            Feed feed = new Feed();
-            feed.setTitle(FEED_TITLE);
-            feed.setFeedUrl(buildFeedUrl(request));
-            feed.setPrevUrl(null);
             String nextUrl = CollectionUtils.isEmpty(catchmentEvents) ? null : buildNextUrl(catchmentEvents.get(catchmentEvents.size() - 1), request);
-            feed.setNextUrl(nextUrl);
-            feed.setEntries(buildFeedEntries(catchmentEvents, request));
-            return feed;
+            return buildFeed(catchmentEvents, nextUrl, request);
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private Feed buildFeed(List<Map<String, Object>> catchmentEvents, String nextUrl, HttpServletRequest request)
+            throws UnsupportedEncodingException {
+        Feed feed = new Feed();
+        feed.setTitle(FEED_TITLE);
+        feed.setFeedUrl(buildFeedUrl(request));
+        feed.setPrevUrl(null);
+        feed.setNextUrl(nextUrl);
+        feed.setEntries(buildFeedEntries(catchmentEvents, request));
+        return feed;
+    }
+
+    private String buildNextUrl(String since, String last, String cursor, HttpServletRequest request)
+            throws UnsupportedEncodingException {
+        UriComponentsBuilder builder = fromUriString(buildUrl(request));
+        if (isNotBlank(since)) {
+            builder.queryParam(SINCE, encode(since, "UTF-8"));
+        }
+        if (isNotBlank(last)) {
+            builder.queryParam(LAST_MARKER, encode(last, "UTF-8"));
+        }
+        return builder.queryParam(CURSOR, cursor).build().toString();
+    }
+
     private String buildNextUrl(Map<String, Object> lastCatchmentEvent, HttpServletRequest request) throws UnsupportedEncodingException {
         UUID lastEventId = (UUID) lastCatchmentEvent.get("eventId");
         String since = encode(DateUtil.toIsoMillisFormat(convertToDateStringIsoMillisFormat(lastEventId)), "UTF-8");
@@ -25,6 +25,8 @@ public class DiagnosticsController {
     private Environment environment;
     @Autowired
     private TraceRepository traceRepository;
+    @Autowired(required = false)
+    private List<PublicMetrics> publicMetrics;
 
     @RequestMapping(value = "/health", method = RequestMethod.GET)
     public Health health() {
@@ -36,6 +38,11 @@ public class DiagnosticsController {
         Collection<Metric<?>> metrics = new ArrayList<>();
         metrics.addAll(new TomcatPublicMetrics().metrics());
         metrics.addAll(new SystemPublicMetrics().metrics());
+        if (publicMetrics != null) {
+            for (PublicMetrics publicMetric : publicMetrics) {
+                metrics.addAll(publicMetric.metrics());
+            }
+        }
         return metrics;
     }
 
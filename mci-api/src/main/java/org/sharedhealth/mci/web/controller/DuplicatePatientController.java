@@ -7,6 +7,7 @@ import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.exception.Forbidden;
 import org.sharedhealth.mci.domain.exception.ValidationException;
 import org.sharedhealth.mci.domain.model.Catchment;
+import org.sharedhealth.mci.domain.model.CursorPage;
 import org.sharedhealth.mci.domain.model.MCIResponse;
 import org.sharedhealth.mci.web.handler.MCIMultiResponse;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
@@ -31,6 +32,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.AFTER;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.BEFORE;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.CURSOR;
 import static org.sharedhealth.mci.web.infrastructure.security.UserProfile.ADMIN_TYPE;
 import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.OK;
@@ -63,6 +65,7 @@ public class DuplicatePatientController extends MciController {
             @PathVariable String catchmentId,
             @RequestParam(value = AFTER, required = false) UUID after,
             @RequestParam(value = BEFORE, required = false) UUID before,
+            @RequestParam(value = CURSOR, required = false) String cursor,
             HttpServletRequest request) {
 
         UserInfo userInfo = getUserInfo();
@@ -79,6 +82,14 @@ public class DuplicatePatientController extends MciController {
             logger.error(errorMessage);
             return deferredResult;
         }
+        if (after == null && before == null) {
+            CursorPage<DuplicatePatientData> page = duplicatePatientService.findAllByCatchment(new Catchment(catchmentId),
+                    cursor, getPerPageMaximumLimit());
+            MCIMultiResponse mciMultiResponse = buildPaginatedResponse(request, page, cursor);
+            deferredResult.setResult(new ResponseEntity<>(mciMultiResponse, mciMultiResponse.httpStatusObject));
+            return deferredResult;
+        }
+
         List<DuplicatePatientData> response = duplicatePatientService.findAllByCatchment
                 (new Catchment(catchmentId), after, before, getPerPageMaximumLimit() + 1);
 
@@ -2,22 +2,102 @@ package org.sharedhealth.mci.web.controller;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.web.handler.FeedPage;
+import org.sharedhealth.mci.web.handler.FeedPageCache;
+import org.sharedhealth.mci.web.handler.FeedPageKey;
+import org.sharedhealth.mci.web.mapper.Feed;
 import org.sharedhealth.mci.web.service.PatientService;
 import org.sharedhealth.mci.web.utils.UrlUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.List;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.web.config.MCIConfig.getSupportedRequestUris;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_ATOM_XML;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 
 public class FeedController extends MciController {
 
+    private static final List<MediaType> FEED_MEDIA_TYPES = asList(APPLICATION_JSON, APPLICATION_ATOM_XML);
+    private static final String ACCEPT = "Accept";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String VARY = "Vary";
+    private static final String GZIP = "gzip";
+
     protected PatientService patientService;
+    protected FeedPageCache feedPageCache;
 
-    public FeedController(PatientService patientService, MCIProperties properties) {
+    public FeedController(PatientService patientService, FeedPageCache feedPageCache, MCIProperties properties) {
         super(properties);
         this.patientService = patientService;
+        this.feedPageCache = feedPageCache;
+    }
+
+    protected FeedPageKey buildFeedPageKey(int pageSize, HttpServletRequest request) {
+        return new FeedPageKey(buildFeedUrl(request), pageSize, getFeedMediaType(request));
+    }
+
+    /**
+     * Renders the page in the media type of the key. Full pages are gzipped, if configured, and cached.
+     */
+    protected FeedPage renderFeedPage(Feed feed, FeedPageKey key, boolean fullPage) {
+        FeedPage page = FeedPage.render(feed, key.getMediaType(), fullPage && getProperties().isFeedPageGzip());
+        if (fullPage) {
+            feedPageCache.put(key, page);
+        }
+        return page;
+    }
+
+    protected boolean isFullPage(Collection<?> items, int pageSize) {
+        return pageSize > 0 && items != null && items.size() >= pageSize;
+    }
+
+    protected ResponseEntity<byte[]> buildFeedPageResponse(FeedPage page, HttpServletRequest request) {
+        boolean gzipped = page.isGzipped() && containsIgnoreCase(request.getHeader(ACCEPT_ENCODING), GZIP);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(page.getETag(gzipped));
+        headers.set(VARY, ACCEPT + ", " + ACCEPT_ENCODING);
+        if (page.matches(request.getHeader(IF_NONE_MATCH), gzipped)) {
+            feedPageCache.notModified();
+            return new ResponseEntity<byte[]>(headers, NOT_MODIFIED);
+        }
+        headers.setContentType(page.getMediaType());
+        if (gzipped) {
+            headers.set(CONTENT_ENCODING, GZIP);
+        }
+        return new ResponseEntity<>(page.getBody(gzipped), headers, OK);
+    }
+
+    /**
+     * The feed media type the client prefers, as the message converters would have picked it. JSON when the client
+     * does not say.
+     */
+    MediaType getFeedMediaType(HttpServletRequest request) {
+        String accept = request.getHeader(ACCEPT);
+        if (isNotBlank(accept)) {
+            List<MediaType> acceptedMediaTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(acceptedMediaTypes);
+            for (MediaType acceptedMediaType : acceptedMediaTypes) {
+                for (MediaType feedMediaType : FEED_MEDIA_TYPES) {
+                    if (acceptedMediaType.isCompatibleWith(feedMediaType)) {
+                        return feedMediaType;
+                    }
+                }
+            }
+        }
+        return APPLICATION_JSON;
     }
 
     protected String buildFeedUrl(HttpServletRequest request) {
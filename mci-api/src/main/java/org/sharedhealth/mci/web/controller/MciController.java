@@ -1,6 +1,7 @@
 package org.sharedhealth.mci.web.controller;
 
 import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.model.CursorPage;
 import org.sharedhealth.mci.domain.model.ResponseWithAdditionalInfo;
 import org.sharedhealth.mci.web.handler.MCIMultiResponse;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
@@ -71,6 +72,31 @@ public class MciController {
         return new MCIMultiResponse(response, additionalInfo, OK);
     }
 
+    /**
+     * Builds the response of a page read with the driver's paging state. The driver can only page forward, so the
+     * next url carries the cursor of the next page and the previous url goes back from the first result with before.
+     */
+    protected MCIMultiResponse buildPaginatedResponse(HttpServletRequest request,
+                                                      CursorPage<? extends ResponseWithAdditionalInfo> page,
+                                                      String cursor) {
+        HashMap<String, String> additionalInfo = new HashMap<>();
+        List<? extends ResponseWithAdditionalInfo> response = page.getItems();
+
+        if (page.hasNext()) {
+            additionalInfo.put(NEXT, buildCursorUrl(request, page.getNextCursor()));
+        }
+        if (cursor != null && response.size() > 0) {
+            additionalInfo.put(PREVIOUS, buildPreviousUrl(request, response.get(0).getModifiedAt()));
+        }
+        return new MCIMultiResponse(response, additionalInfo, OK);
+    }
+
+    protected String buildCursorUrl(HttpServletRequest request, String cursor) {
+        return fromUriString(buildUrl(request))
+                .queryParam(CURSOR, cursor)
+                .build().toString();
+    }
+
     protected String buildNextUrl(HttpServletRequest request, UUID lastUUID) {
         return fromUriString(buildUrl(request))
                 .queryParam(AFTER, lastUUID)
@@ -13,7 +13,9 @@ import org.sharedhealth.mci.domain.validation.group.RequiredOnUpdateGroup;
 import org.sharedhealth.mci.web.exception.SearchQueryParameterException;
 import org.sharedhealth.mci.web.handler.MCIMultiResponse;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
+import org.sharedhealth.mci.web.mapper.BulkItemResponse;
 import org.sharedhealth.mci.web.mapper.ProviderResponse;
+import org.sharedhealth.mci.web.service.BulkPatientService;
 import org.sharedhealth.mci.web.service.PatientService;
 import org.sharedhealth.mci.web.service.ProviderService;
 import org.slf4j.Logger;
@@ -30,8 +32,11 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.groups.Default;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -50,14 +55,18 @@ import static org.springframework.web.bind.annotation.RequestMethod.*;
 public class PatientController extends MciController {
     private static final Logger logger = LoggerFactory.getLogger(PatientController.class);
     private final String PROVIDER_RESPONSE_ORG_REFERENCE_KEY = "reference";
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
 
     private PatientService patientService;
     private ProviderService providerService;
+    private BulkPatientService bulkPatientService;
 
     @Autowired
-    public PatientController(PatientService patientService, ProviderService providerService) {
+    public PatientController(PatientService patientService, ProviderService providerService,
+                             BulkPatientService bulkPatientService) {
         this.patientService = patientService;
         this.providerService = providerService;
+        this.bulkPatientService = bulkPatientService;
     }
 
     @PreAuthorize("hasAnyRole('ROLE_PROVIDER', 'ROLE_FACILITY')")
@@ -104,6 +113,42 @@ public class PatientController extends MciController {
         return deferredResult;
     }
 
+    /**
+     * Registers a JSON array, or one JSON object per line, of patients that get their health ids from MCI. The
+     * result of each patient is streamed back as one JSON line as soon as its chunk of the request is written.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_PROVIDER', 'ROLE_FACILITY')")
+    @RequestMapping(value = "/bulk", method = POST, consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public void createBulk(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, InterruptedException {
+        UserInfo userInfo = getUserInfo();
+        logAccessDetails(userInfo, "Creating patients in bulk");
+        logger.info("Create patients in bulk Request.");
+
+        response.setStatus(OK.value());
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        bulkPatientService.createPatients(request.getInputStream(), userInfo.getProperties(), response.getOutputStream());
+    }
+
+    /**
+     * Updates a list of patients, each carrying its health id. Every patient gets its own result, in the order of
+     * the request.
+     */
+    @PreAuthorize("hasAnyRole('ROLE_PROVIDER', 'ROLE_FACILITY', 'ROLE_MCI Admin')")
+    @RequestMapping(value = "/bulk", method = PUT, consumes = {APPLICATION_JSON_VALUE})
+    public DeferredResult<ResponseEntity<MCIMultiResponse>> updateBulk(@RequestBody List<PatientData> patients)
+            throws InterruptedException {
+        UserInfo userInfo = getUserInfo();
+        logAccessDetails(userInfo, format("Updating %d patients in bulk", patients.size()));
+        logger.info("Update patients in bulk Request.");
+
+        final DeferredResult<ResponseEntity<MCIMultiResponse>> deferredResult = new DeferredResult<>();
+        List<BulkItemResponse> results = bulkPatientService.updatePatients(patients, userInfo.getProperties());
+        MCIMultiResponse mciMultiResponse = new MCIMultiResponse(results, null, OK);
+        deferredResult.setResult(new ResponseEntity<>(mciMultiResponse, mciMultiResponse.httpStatusObject));
+        return deferredResult;
+    }
+
     @PreAuthorize("hasAnyRole('ROLE_PROVIDER', 'ROLE_FACILITY', 'ROLE_PATIENT', " +
             "'ROLE_SHR System Admin', 'ROLE_MCI Admin', 'ROLE_MCI Approver')")
     @RequestMapping(value = "/{healthId}", method = GET)
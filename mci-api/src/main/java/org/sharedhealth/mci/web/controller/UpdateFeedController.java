@@ -6,6 +6,9 @@ import org.sharedhealth.mci.domain.model.PatientUpdateLog;
 import org.sharedhealth.mci.domain.model.PatientUpdateLogData;
 import org.sharedhealth.mci.domain.model.PatientUpdateLogMapper;
 import org.sharedhealth.mci.utils.TimeUid;
+import org.sharedhealth.mci.web.handler.FeedPage;
+import org.sharedhealth.mci.web.handler.FeedPageCache;
+import org.sharedhealth.mci.web.handler.FeedPageKey;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
 import org.sharedhealth.mci.web.mapper.Feed;
 import org.sharedhealth.mci.web.mapper.FeedEntry;
@@ -13,6 +16,7 @@ import org.sharedhealth.mci.web.service.PatientService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -31,6 +35,7 @@ import static org.apache.commons.lang3.StringUtils.*;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.LAST_MARKER;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.SINCE;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_CREATED;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_PENDING_APPROVALS_UPDATED;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_UPDATED;
 import static org.sharedhealth.mci.domain.util.DateUtil.parseDate;
 import static org.springframework.http.MediaType.APPLICATION_ATOM_XML_VALUE;
@@ -50,24 +55,30 @@ public class UpdateFeedController extends FeedController {
     private static final String CATEGORY_UPDATE = "update";
 
     @Autowired
-    public UpdateFeedController(PatientService patientService, MCIProperties properties) {
-        super(patientService, properties);
+    public UpdateFeedController(PatientService patientService, FeedPageCache feedPageCache, MCIProperties properties) {
+        super(patientService, feedPageCache, properties);
     }
 
     @PreAuthorize("hasAnyRole('ROLE_FACILITY', 'ROLE_SHR System Admin')")
     @RequestMapping(value = "/patients", method = GET, produces = {APPLICATION_JSON_VALUE, APPLICATION_ATOM_XML_VALUE})
-    public Feed findAllPatients(
+    public ResponseEntity<byte[]> findAllPatients(
             @RequestParam(value = SINCE, required = false) String since,
             @RequestParam(value = LAST_MARKER, required = false) String last,
             HttpServletRequest request) {
         UserInfo userInfo = getUserInfo();
         logAccessDetails(userInfo, "Find all patients using updated since date and last marker");
 
-        Date date = isNotBlank(since) ? parseDate(since) : null;
-        logger.debug("Find all patients  updated since [" + since + "] ");
-        UUID lastMarker = TimeUid.fromString(last);
-        List<PatientUpdateLog> patients = patientService.findPatientsUpdatedSince(date, lastMarker);
-        return buildFeedResponse(patients, request);
+        int pageSize = patientService.getPerPageMaximumLimit();
+        FeedPageKey key = buildFeedPageKey(pageSize, request);
+        FeedPage page = feedPageCache.get(key);
+        if (page == null) {
+            Date date = isNotBlank(since) ? parseDate(since) : null;
+            logger.debug("Find all patients  updated since [" + since + "] ");
+            UUID lastMarker = TimeUid.fromString(last);
+            List<PatientUpdateLog> patients = patientService.findPatientsUpdatedSince(date, lastMarker);
+            page = renderFeedPage(buildFeedResponse(patients, request), key, isFullPage(patients, pageSize));
+        }
+        return buildFeedPageResponse(page, request);
     }
 
     Feed buildFeedResponse(List<PatientUpdateLog> patients, HttpServletRequest request) {
@@ -102,6 +113,9 @@ public class UpdateFeedController extends FeedController {
         List<FeedEntry> entries = new ArrayList<>();
 
         for (PatientUpdateLog patient : patients) {
+            if (EVENT_TYPE_PENDING_APPROVALS_UPDATED.equals(patient.getEventType())) {
+                continue;
+            }
             PatientUpdateLogData updateLogData = new PatientUpdateLogMapper().map(patient);
             FeedEntry entry = new FeedEntry();
             entry.setId(patient.getEventId());
@@ -124,7 +138,7 @@ public class UpdateFeedController extends FeedController {
     }
 
     private String[] buildCategoryArray(PatientUpdateLog patient) {
-        if (StringUtils.isBlank(patient.getChangeSet())) {
+        if (!patient.hasChangeSet()) {
             return new String[]{CATEGORY_PATIENT};
         }
         String updateCategory;
@@ -0,0 +1,246 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.sharedhealth.mci.web.mapper.Feed;
+import org.sharedhealth.mci.web.mapper.FeedEntry;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.sharedhealth.mci.domain.util.DateUtil.ISO_DATE_TIME_TILL_MILLIS_FORMAT1;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes a feed as Atom straight to the writer, an entry at a time, without building a feed object graph or an XML
+ * tree first. The output is byte for byte what ROME wrote for the same feed: JDOM's pretty format, with CRLF line
+ * ends, two space indents, trimmed text, and JDOM's escaping.
+ * <p>
+ * A writer is used for one feed only, as it keeps its date formats.
+ */
+class AtomFeedWriter {
+
+    private static final Logger logger = getLogger(AtomFeedWriter.class);
+
+    static final String ATOM_MEDIA_TYPE = "application/atom+xml";
+    static final String ATOMFEED_MEDIA_TYPE = "application/vnd.atomfeed+xml";
+    static final String APPLICATION_XML = "application/xml";
+    static final String LINK_TYPE_SELF = "self";
+    static final String LINK_TYPE_VIA = "via";
+
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+    private static final String GENERATOR_URI = "https://github.com/ICT4H/atomfeed";
+    private static final String GENERATOR = "Atomfeed";
+    private static final String LINE_SEPARATOR = "\r\n";
+    private static final String INDENT = "  ";
+    private static final String W3C_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    private final Writer out;
+    private final DateFormat publishedDateFormat = new SimpleDateFormat(ISO_DATE_TIME_TILL_MILLIS_FORMAT1);
+    private final DateFormat w3cDateFormat = new SimpleDateFormat(W3C_DATE_TIME_FORMAT);
+
+    AtomFeedWriter(Writer out) {
+        this.out = out;
+        this.w3cDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    void write(Feed feed, String feedId) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.write(LINE_SEPARATOR);
+        out.write("<feed xmlns=\"");
+        out.write(ATOM_NAMESPACE);
+        out.write("\" xmlns:dc=\"");
+        out.write(DC_NAMESPACE);
+        out.write("\">");
+
+        writeTextElement(1, "title", feed.getTitle());
+        if (!isBlank(feed.getNextUrl())) {
+            writeLink(1, "next-archive", ATOM_MEDIA_TYPE, feed.getNextUrl());
+        }
+        if (!isBlank(feed.getPrevUrl())) {
+            writeLink(1, "prev-archive", ATOM_MEDIA_TYPE, feed.getPrevUrl());
+        }
+        writeLink(1, LINK_TYPE_SELF, ATOM_MEDIA_TYPE, feed.getFeedUrl());
+        writeLink(1, LINK_TYPE_VIA, ATOM_MEDIA_TYPE, feed.getFeedUrl());
+
+        startElement(1, "author");
+        if (feed.getAuthor() != null) {
+            writeTextElement(2, "name", feed.getAuthor());
+            endElement(1, "author");
+        } else {
+            out.write(" />");
+        }
+
+        writeTextElement(1, "id", feedId);
+        startElement(1, "generator");
+        writeAttribute("uri", GENERATOR_URI);
+        out.write('>');
+        out.write(GENERATOR);
+        out.write("</generator>");
+        if (!feed.getEntries().isEmpty()) {
+            writeDate(1, "updated", parsePublishedDate(feed.getEntries().get(0)));
+        }
+
+        for (FeedEntry entry : feed.getEntries()) {
+            writeEntry(entry);
+        }
+
+        out.write(LINE_SEPARATOR);
+        out.write("</feed>");
+        out.write(LINE_SEPARATOR);
+        out.write(LINE_SEPARATOR);
+        out.flush();
+    }
+
+    private void writeEntry(FeedEntry entry) throws IOException {
+        startElement(1, "entry");
+        out.write('>');
+        writeTextElement(2, "title", entry.getTitle());
+        writeLink(2, LINK_TYPE_VIA, APPLICATION_XML, entry.getLink());
+        for (String category : entry.getCategories()) {
+            startElement(2, "category");
+            if (category != null) {
+                writeAttribute("term", category);
+            }
+            out.write(" />");
+        }
+        writeTextElement(2, "id", entry.getId().toString());
+        writeDate(2, "published", parsePublishedDate(entry));
+        writeContent(entry);
+        endElement(1, "entry");
+    }
+
+    /**
+     * The JSON of the entry goes in a CDATA section. Content that cannot be converted leaves the element empty.
+     */
+    private void writeContent(FeedEntry entry) throws IOException {
+        String content;
+        try {
+            content = writeValueAsString(entry.getContent()).trim();
+        } catch (RuntimeException e) {
+            logger.error(String.format("Can not write content of feed entry %s", entry.getId()), e);
+            content = null;
+        }
+        startElement(2, "content");
+        writeAttribute("type", ATOMFEED_MEDIA_TYPE);
+        if (content == null) {
+            out.write(" />");
+            return;
+        }
+        out.write("><![CDATA[");
+        out.write(content.replace("]]>", "]]]]><![CDATA[>"));
+        out.write("]]></content>");
+    }
+
+    private Date parsePublishedDate(FeedEntry entry) {
+        try {
+            return publishedDateFormat.parse(entry.getPublishedDate());
+        } catch (ParseException e) {
+            logger.error(String.format("Can not parse published date %s of feed entry %s", entry.getPublishedDate(),
+                    entry.getId()), e);
+            return null;
+        }
+    }
+
+    private void writeDate(int depth, String name, Date date) throws IOException {
+        if (date != null) {
+            writeTextElement(depth, name, w3cDateFormat.format(date));
+        }
+    }
+
+    private void writeLink(int depth, String rel, String type, String href) throws IOException {
+        startElement(depth, "link");
+        writeAttribute("rel", rel);
+        writeAttribute("type", type);
+        if (href != null) {
+            writeAttribute("href", href);
+        }
+        out.write(" />");
+    }
+
+    private void writeTextElement(int depth, String name, String text) throws IOException {
+        startElement(depth, name);
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.isEmpty()) {
+            out.write(" />");
+            return;
+        }
+        out.write('>');
+        writeEscaped(trimmed, false);
+        out.write("</");
+        out.write(name);
+        out.write('>');
+    }
+
+    private void startElement(int depth, String name) throws IOException {
+        newLine(depth);
+        out.write('<');
+        out.write(name);
+    }
+
+    private void endElement(int depth, String name) throws IOException {
+        newLine(depth);
+        out.write("</");
+        out.write(name);
+        out.write('>');
+    }
+
+    private void writeAttribute(String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        writeEscaped(value, true);
+        out.write('"');
+    }
+
+    private void newLine(int depth) throws IOException {
+        out.write(LINE_SEPARATOR);
+        for (int i = 0; i < depth; i++) {
+            out.write(INDENT);
+        }
+    }
+
+    /**
+     * Escapes as JDOM's XMLOutputter does. Nothing else needs escaping in UTF-8.
+     */
+    private void writeEscaped(String value, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String entity = escape(value.charAt(i), attribute);
+            if (entity != null) {
+                out.write(value, start, i - start);
+                out.write(entity);
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+    }
+
+    private String escape(char c, boolean attribute) {
+        switch (c) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '\r':
+                return "&#xD;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            case '\t':
+                return attribute ? "&#x9;" : null;
+            case '\n':
+                return attribute ? "&#xA;" : LINE_SEPARATOR;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.sharedhealth.mci.domain.util.JsonMapper;
+import org.sharedhealth.mci.web.mapper.Feed;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * A feed page rendered once as JSON or Atom, with its strong ETag, and optionally gzipped as well. Pages are never
+ * modified after they are rendered, so a page can be shared by any number of responses.
+ * <p>
+ * The Atom id of a page is derived from its feed url, so that rendering the same entries again, on this node or on
+ * another one, gives the same bytes and the same ETag.
+ */
+public class FeedPage {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+    private final MediaType mediaType;
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String etag;
+
+    FeedPage(MediaType mediaType, byte[] body, byte[] gzippedBody) {
+        this.mediaType = mediaType;
+        this.body = body;
+        this.gzippedBody = gzippedBody;
+        this.etag = DigestUtils.md5DigestAsHex(body);
+    }
+
+    public static FeedPage render(Feed feed, MediaType mediaType, boolean gzip) {
+        try {
+            byte[] body = MediaType.APPLICATION_ATOM_XML.isCompatibleWith(mediaType) ? writeAtom(feed) : writeJson(feed);
+            return new FeedPage(new MediaType(mediaType.getType(), mediaType.getSubtype(), UTF_8), body,
+                    gzip ? gzip(body) : null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] writeAtom(Feed feed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        new AtomFeedWriter(writer).write(feed, getFeedId(feed));
+        return out.toByteArray();
+    }
+
+    private static byte[] writeJson(Feed feed) throws IOException {
+        return JsonMapper.writer(Feed.class).writeValueAsBytes(feed);
+    }
+
+    private static String getFeedId(Feed feed) {
+        if (isBlank(feed.getFeedUrl())) {
+            return UUID.randomUUID().toString();
+        }
+        return UUID.nameUUIDFromBytes(feed.getFeedUrl().getBytes(UTF_8)).toString();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+        gzipOut.write(body);
+        gzipOut.close();
+        return out.toByteArray();
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public byte[] getBody(boolean gzipped) {
+        return gzipped && gzippedBody != null ? gzippedBody : body;
+    }
+
+    public boolean isGzipped() {
+        return gzippedBody != null;
+    }
+
+    /**
+     * The gzipped body is a different representation, so it gets its own strong ETag.
+     */
+    public String getETag(boolean gzipped) {
+        return "\"" + etag + (gzipped && gzippedBody != null ? GZIP_ETAG_SUFFIX : "") + "\"";
+    }
+
+    /**
+     * If-None-Match uses the weak comparison, so weak tags from a client match too.
+     */
+    public boolean matches(String ifNoneMatch, boolean gzipped) {
+        if (isBlank(ifNoneMatch)) {
+            return false;
+        }
+        String etag = getETag(gzipped);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+package org.sharedhealth.mci.web.handler;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.sharedhealth.mci.domain.config.MCICacheConfiguration.FEED_PAGE_CACHE;
+
+/**
+ * Rendered feed pages. Only full pages are put here: a full page always has the same entries, while a page that is
+ * not full yet grows as events are logged. Pages expire after a while all the same, so that a change of page size
+ * or of the feed mapping is picked up.
+ */
+@Component
+public class FeedPageCache implements PublicMetrics {
+
+    private Ehcache cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public FeedPageCache(@Qualifier("ehCacheManager") CacheManager cacheManager) {
+        this.cache = cacheManager.getEhcache(FEED_PAGE_CACHE);
+        this.cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyElementEvicted(Ehcache cache, Element element) {
+                evictions.incrementAndGet();
+            }
+
+            @Override
+            public void notifyElementExpired(Ehcache cache, Element element) {
+                evictions.incrementAndGet();
+            }
+        });
+    }
+
+    public FeedPage get(FeedPageKey key) {
+        Element element = cache.get(key);
+        if (element == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (FeedPage) element.getObjectValue();
+    }
+
+    public void put(FeedPageKey key, FeedPage page) {
+        cache.put(new Element(key, page));
+    }
+
+    /**
+     * To be called when a response is answered with 304, whether or not the page came from the cache.
+     */
+    public void notModified() {
+        notModified.incrementAndGet();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long hits = this.hits.get();
+        long requests = hits + misses.get();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("cache.feed.page.hits", hits));
+        metrics.add(new Metric<Long>("cache.feed.page.misses", misses.get()));
+        metrics.add(new Metric<Double>("cache.feed.page.hit.rate", requests == 0 ? 0.0 : (double) hits / requests));
+        metrics.add(new Metric<Long>("cache.feed.page.not.modified", notModified.get()));
+        metrics.add(new Metric<Long>("cache.feed.page.evictions", evictions.get()));
+        metrics.add(new Metric<Integer>("cache.feed.page.size", cache.getSize()));
+        return metrics;
+    }
+}
@@ -0,0 +1,55 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Identifies a rendered feed page. The feed url is the url the page was requested with, so it stands for the feed,
+ * the catchment, the since date, the last marker and the cursor, as well as the host the links of the page point to.
+ */
+public class FeedPageKey {
+
+    private final String feedUrl;
+    private final int pageSize;
+    private final MediaType mediaType;
+
+    public FeedPageKey(String feedUrl, int pageSize, MediaType mediaType) {
+        this.feedUrl = feedUrl;
+        this.pageSize = pageSize;
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FeedPageKey)) return false;
+
+        FeedPageKey that = (FeedPageKey) o;
+
+        if (pageSize != that.pageSize) return false;
+        if (!feedUrl.equals(that.feedUrl)) return false;
+        if (!mediaType.equals(that.mediaType)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = feedUrl.hashCode();
+        result = 31 * result + pageSize;
+        result = 31 * result + mediaType.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedPageKey{" +
+                "feedUrl='" + feedUrl + '\'' +
+                ", pageSize=" + pageSize +
+                ", mediaType=" + mediaType +
+                '}';
+    }
+}
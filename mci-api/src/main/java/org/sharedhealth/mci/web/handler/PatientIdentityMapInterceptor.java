@@ -0,0 +1,48 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.sharedhealth.mci.domain.repository.PatientIdentityMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Makes every request a unit of work, so a patient is read at most once per request.
+ */
+@Component
+public class PatientIdentityMapInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String UNIT_OF_WORK_STARTED = PatientIdentityMapInterceptor.class.getName() + ".STARTED";
+
+    private PatientIdentityMap identityMap;
+
+    @Autowired
+    public PatientIdentityMapInterceptor(PatientIdentityMap identityMap) {
+        this.identityMap = identityMap;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(UNIT_OF_WORK_STARTED, identityMap.begin());
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        end(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        end(request);
+    }
+
+    private void end(HttpServletRequest request) {
+        if (Boolean.TRUE.equals(request.getAttribute(UNIT_OF_WORK_STARTED))) {
+            request.removeAttribute(UNIT_OF_WORK_STARTED);
+            identityMap.end();
+        }
+    }
+}
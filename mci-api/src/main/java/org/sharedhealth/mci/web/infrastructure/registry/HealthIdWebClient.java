@@ -1,6 +1,5 @@
 package org.sharedhealth.mci.web.infrastructure.registry;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
@@ -13,6 +12,8 @@ import org.springframework.web.client.AsyncRestTemplate;
 import java.util.List;
 import java.util.Map;
 
+import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+
 @Component
 public class HealthIdWebClient {
     protected final MCIProperties properties;
@@ -31,7 +32,7 @@ public class HealthIdWebClient {
                 HttpMethod.GET, requestEntity, String.class);
         ResponseEntity<String> responseEntity = future.get();
         String content = responseEntity.getBody();
-        Map map = new ObjectMapper().readValue(content, Map.class);
+        Map map = readValue(content, Map.class);
         return (List) map.get(HEALTH_ID_LIST_KEY);
     }
 
@@ -42,7 +43,7 @@ public class HealthIdWebClient {
         if (!responseEntity.getStatusCode().is2xxSuccessful()) {
             throw new Exception(String.format("Unexpected Response %s from HID Service", responseEntity.getStatusCode()));
         }
-        return new ObjectMapper().readValue(responseEntity.getBody(), String.class);
+        return readValue(responseEntity.getBody(), String.class);
     }
 
     public Map validateHID(String checkHIDUrl, HttpEntity<Object> httpEntity) throws Exception {
@@ -53,6 +54,6 @@ public class HealthIdWebClient {
             throw new Exception(String.format("Unexpected Response %s from HID Service", responseEntity.getStatusCode()));
         }
         String content = responseEntity.getBody();
-        return new ObjectMapper().readValue(content, Map.class);
+        return readValue(content, Map.class);
     }
 }
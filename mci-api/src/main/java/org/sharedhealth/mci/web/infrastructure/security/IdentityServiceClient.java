@@ -1,6 +1,5 @@
 package org.sharedhealth.mci.web.infrastructure.security;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.sharedhealth.mci.domain.config.MCICacheConfiguration;
 import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.utils.HttpUtil;
@@ -22,6 +21,7 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
+import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
 import static org.sharedhealth.mci.utils.HttpUtil.ACCESS_TOKEN_KEY;
 
 
@@ -70,7 +70,7 @@ public class IdentityServiceClient {
         if (!responseEntity.getStatusCode().is2xxSuccessful())
             throw new AuthenticationServiceException("Identity Server responded :" + responseEntity.getStatusCode()
                     .toString());
-        Map map = new ObjectMapper().readValue(responseEntity.getBody(), Map.class);
+        Map map = readValue(responseEntity.getBody(), Map.class);
         String token = (String) map.get(ACCESS_TOKEN_KEY);
         identityStore.setIdentityToken(token);
         return token;
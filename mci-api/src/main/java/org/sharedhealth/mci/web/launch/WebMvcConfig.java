@@ -1,15 +1,19 @@
 package org.sharedhealth.mci.web.launch;
 
 
+import org.sharedhealth.mci.domain.util.JsonMapper;
 import org.sharedhealth.mci.web.config.ActuatorConfig;
 import org.sharedhealth.mci.web.config.MCIConfig;
 import org.sharedhealth.mci.web.config.MCISecurityConfig;
 import org.sharedhealth.mci.web.handler.FeedMessageConverter;
+import org.sharedhealth.mci.web.handler.PatientIdentityMapInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
@@ -18,6 +22,7 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
 import java.util.List;
@@ -41,6 +46,9 @@ import java.util.concurrent.Executors;
 })
 public class WebMvcConfig extends WebMvcConfigurerAdapter implements SchedulingConfigurer {
 
+    @Autowired
+    private PatientIdentityMapInterceptor patientIdentityMapInterceptor;
+
     @Override
     public void configureDefaultServletHandling(DefaultServletHandlerConfigurer configurer) {
         configurer.enable();
@@ -49,11 +57,19 @@ public class WebMvcConfig extends WebMvcConfigurerAdapter implements SchedulingC
 
     @Override
     public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new ByteArrayHttpMessageConverter());
         converters.add(new FeedMessageConverter());
-        converters.add(new MappingJackson2HttpMessageConverter());
+        MappingJackson2HttpMessageConverter jsonConverter = new MappingJackson2HttpMessageConverter();
+        jsonConverter.setObjectMapper(JsonMapper.getObjectMapper());
+        converters.add(jsonConverter);
         converters.add(new Jaxb2RootElementHttpMessageConverter());
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(patientIdentityMapInterceptor);
+    }
+
     @Override
     public void configureContentNegotiation(ContentNegotiationConfigurer contentNegotiator) {
         super.configureContentNegotiation(contentNegotiator);
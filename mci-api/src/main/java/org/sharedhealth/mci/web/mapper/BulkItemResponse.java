@@ -0,0 +1,80 @@
+package org.sharedhealth.mci.web.mapper;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import org.sharedhealth.mci.domain.model.MCIResponse;
+import org.sharedhealth.mci.web.handler.MCIError;
+
+import java.util.List;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.HTTP_STATUS;
+
+/**
+ * The result of one record of a bulk request, with the position of the record in the request.
+ */
+@JsonPropertyOrder({"index", HTTP_STATUS, "id"})
+public class BulkItemResponse {
+
+    @JsonProperty
+    private int index;
+
+    @JsonProperty(HTTP_STATUS)
+    private int httpStatus;
+
+    @JsonProperty
+    @JsonInclude(NON_EMPTY)
+    private String id;
+
+    @JsonProperty
+    @JsonInclude(NON_EMPTY)
+    private String message;
+
+    @JsonProperty
+    @JsonInclude(NON_EMPTY)
+    private List<MCIError> errors;
+
+    public BulkItemResponse() {
+    }
+
+    /**
+     * An error response carries its message in place of the id.
+     */
+    public BulkItemResponse(int index, MCIResponse response) {
+        this.index = index;
+        this.httpStatus = response.getHttpStatus();
+        if (httpStatus < 300) {
+            this.id = response.getId();
+        } else {
+            this.message = response.getId();
+        }
+    }
+
+    public BulkItemResponse(int index, int httpStatus, String message, List<MCIError> errors) {
+        this.index = index;
+        this.httpStatus = httpStatus;
+        this.message = message;
+        this.errors = errors;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public List<MCIError> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,52 @@
+package org.sharedhealth.mci.web.model;
+
+/**
+ * Measures how fast health ids are taken and how long a block of health ids takes to arrive, as exponentially
+ * weighted averages. The rate decays with the time between samples, so samples do not have to be evenly spaced.
+ */
+public class HealthIdConsumptionMeter {
+
+    private static final double RATE_TIME_CONSTANT_MILLIS = 60000;
+    private static final double FETCH_WEIGHT = 0.3;
+
+    private long lastTakenCount = -1;
+    private long lastSampleMillis;
+    private double rate;
+    private double fetchSeconds;
+
+    /**
+     * @param takenCount the number of health ids taken so far.
+     */
+    public synchronized void sample(long takenCount, long nowMillis) {
+        if (lastTakenCount < 0) {
+            lastTakenCount = takenCount;
+            lastSampleMillis = nowMillis;
+            return;
+        }
+        long elapsedMillis = nowMillis - lastSampleMillis;
+        if (elapsedMillis <= 0) {
+            return;
+        }
+        double sampleRate = (takenCount - lastTakenCount) * 1000.0 / elapsedMillis;
+        double weight = 1 - Math.exp(-elapsedMillis / RATE_TIME_CONSTANT_MILLIS);
+        rate += weight * (sampleRate - rate);
+        lastTakenCount = takenCount;
+        lastSampleMillis = nowMillis;
+    }
+
+    public synchronized void recordFetch(long millis) {
+        double seconds = millis / 1000.0;
+        fetchSeconds = fetchSeconds == 0 ? seconds : fetchSeconds + FETCH_WEIGHT * (seconds - fetchSeconds);
+    }
+
+    /**
+     * @return health ids taken per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized double getFetchSeconds() {
+        return fetchSeconds;
+    }
+}
@@ -0,0 +1,278 @@
+package org.sharedhealth.mci.web.model;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Health ids in a memory mapped file, in fixed size records, with a header holding the consume cursor and the end of
+ * the journal. Health ids are appended at the end, and taken at the cursor, which is advanced with a compare and set.
+ * Records before the cursor are left in place until the journal is compacted into a new file.
+ * <p>
+ * Writes to the mapping reach the file when the process dies, but not necessarily when the machine does, so appends
+ * are forced to disk, and a take forces the cursor to disk before it hands its health id out: the patient insert
+ * would silently overwrite the patient of a health id issued twice. Takes that wait on a force in progress are
+ * usually covered by it, as each force writes the cursor as far as it has been advanced, so one force commits a group
+ * of takes.
+ * <p>
+ * Health ids are taken by any number of threads. Appends, compaction and closing are left to one thread at a time.
+ */
+public class HealthIdJournal {
+
+    static final int MAGIC = 0x48494A31;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+    private static final int MAGIC_POSITION = 0;
+    private static final int RECORD_SIZE_POSITION = 4;
+    private static final int CURSOR_POSITION = 8;
+    private static final int END_POSITION = 16;
+    private static final int MIN_CAPACITY = 64;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private volatile MappedByteBuffer buffer;
+    private long capacity;
+    private final AtomicLong cursor;
+    private final Object forceLock = new Object();
+    private long forcedCursor;
+    private final AtomicLong end;
+    private volatile boolean sealed;
+
+    private HealthIdJournal(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        long length = randomAccessFile.length();
+        if (length < HEADER_SIZE || (length - HEADER_SIZE) % RECORD_SIZE != 0) {
+            randomAccessFile.close();
+            throw new IOException(String.format("%s is not a health id journal", file));
+        }
+        map(length);
+        if (buffer.getInt(MAGIC_POSITION) != MAGIC || buffer.getInt(RECORD_SIZE_POSITION) != RECORD_SIZE) {
+            close();
+            throw new IOException(String.format("%s is not a health id journal", file));
+        }
+        long cursor = buffer.getLong(CURSOR_POSITION);
+        long end = buffer.getLong(END_POSITION);
+        if (cursor < 0 || cursor > end || end > capacity) {
+            close();
+            throw new IOException(String.format("Health id journal %s is corrupt: cursor %d, end %d, capacity %d",
+                    file, cursor, end, capacity));
+        }
+        this.cursor = new AtomicLong(cursor);
+        this.forcedCursor = cursor;
+        this.end = new AtomicLong(end);
+    }
+
+    /**
+     * Opens the journal in the given file, or creates an empty one if there is no such file.
+     */
+    public static HealthIdJournal open(File file) throws IOException {
+        if (!file.exists()) {
+            return create(file, new ArrayList<String>());
+        }
+        return new HealthIdJournal(file);
+    }
+
+    /**
+     * Writes a journal with the given health ids next to the given file, and moves it over the file, so that the
+     * file has either the old or the new journal whatever happens in between.
+     */
+    public static HealthIdJournal create(File file, Collection<String> healthIds) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        long capacity = Math.max(MIN_CAPACITY, healthIds.size() * 2);
+        ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE * healthIds.size());
+        content.putInt(MAGIC_POSITION, MAGIC);
+        content.putInt(RECORD_SIZE_POSITION, RECORD_SIZE);
+        content.putLong(CURSOR_POSITION, 0);
+        content.putLong(END_POSITION, healthIds.size());
+        int index = 0;
+        for (String healthId : healthIds) {
+            putRecord(content, index++, healthId);
+        }
+
+        try (RandomAccessFile out = new RandomAccessFile(tempFile, "rw")) {
+            out.setLength(HEADER_SIZE + RECORD_SIZE * capacity);
+            FileChannel channel = out.getChannel();
+            channel.write(content, 0);
+            channel.force(true);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new HealthIdJournal(file);
+    }
+
+    /**
+     * Tells a journal from the list of health ids, one per line, that was kept before there was a journal.
+     */
+    public static boolean isJournal(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the health ids left in the journal in the given file, as they would be found if the process restarted.
+     */
+    public static List<String> read(File file) throws IOException {
+        HealthIdJournal journal = new HealthIdJournal(file);
+        try {
+            return journal.getAll();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * @return the health id at the cursor, or null if there is none left.
+     */
+    public String take() {
+        while (true) {
+            long index = cursor.get();
+            if (index >= end.get()) {
+                return null;
+            }
+            if (cursor.compareAndSet(index, index + 1)) {
+                String healthId = getRecord(buffer, index);
+                forceCursor(index + 1);
+                return healthId;
+            }
+        }
+    }
+
+    /**
+     * Writes the cursor as far as it has been advanced and forces it to disk, unless a force since covered the given
+     * cursor. The health ids before the cursor that other takes have not handed out yet are handed out once their own
+     * force returns, so none of them is lost or issued twice. Forcing one at a time keeps the cursor in the header
+     * from going back.
+     */
+    private void forceCursor(long takenCursor) {
+        synchronized (forceLock) {
+            if (forcedCursor >= takenCursor) {
+                return;
+            }
+            long latest = cursor.get();
+            MappedByteBuffer buffer = this.buffer;
+            buffer.putLong(CURSOR_POSITION, latest);
+            buffer.force();
+            forcedCursor = latest;
+        }
+    }
+
+    public void append(Collection<String> healthIds) throws IOException {
+        long index = end.get();
+        ensureCapacity(index + healthIds.size());
+        MappedByteBuffer buffer = this.buffer;
+        for (String healthId : healthIds) {
+            putRecord(buffer, index++, healthId);
+        }
+        buffer.putLong(END_POSITION, index);
+        buffer.force();
+        end.set(index);
+    }
+
+    private void ensureCapacity(long records) throws IOException {
+        if (records <= capacity) {
+            return;
+        }
+        long newCapacity = Math.max(records, capacity * 2);
+        map(HEADER_SIZE + RECORD_SIZE * newCapacity);
+    }
+
+    private void map(long size) throws IOException {
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = (size - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    public long size() {
+        return Math.max(0, end.get() - cursor.get());
+    }
+
+    public List<String> getAll() {
+        MappedByteBuffer buffer = this.buffer;
+        long last = end.get();
+        List<String> healthIds = new ArrayList<>();
+        for (long index = cursor.get(); index < last; index++) {
+            healthIds.add(getRecord(buffer, index));
+        }
+        return healthIds;
+    }
+
+    /**
+     * Whether the records already taken are as many as the ones left and at least the given number, so that a
+     * compaction is worth writing a new file.
+     */
+    public boolean needsCompaction(long minTakenRecords) {
+        long taken = cursor.get();
+        return taken >= minTakenRecords && taken >= size();
+    }
+
+    /**
+     * Takes all the health ids left, so that they can be moved into a new journal, and seals this one. Takes from a
+     * sealed journal have to be retried on the journal that replaces it.
+     */
+    public List<String> drain() {
+        sealed = true;
+        while (true) {
+            long index = cursor.get();
+            long last = end.get();
+            if (cursor.compareAndSet(index, last)) {
+                List<String> healthIds = new ArrayList<>();
+                for (long i = index; i < last; i++) {
+                    healthIds.add(getRecord(buffer, i));
+                }
+                return healthIds;
+            }
+        }
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The mapping itself is released when the buffer is collected, so takes that are still running can finish.
+     */
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    private static void putRecord(ByteBuffer buffer, long index, String healthId) {
+        byte[] bytes = healthId.getBytes(ASCII);
+        if (bytes.length == 0 || bytes.length >= RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("Health id %s does not fit a journal record", healthId));
+        }
+        int position = (int) (HEADER_SIZE + RECORD_SIZE * index);
+        ByteBuffer record = buffer.duplicate();
+        record.position(position);
+        record.put((byte) bytes.length);
+        record.put(bytes);
+    }
+
+    private static String getRecord(ByteBuffer buffer, long index) {
+        int position = (int) (HEADER_SIZE + RECORD_SIZE * index);
+        ByteBuffer record = buffer.duplicate();
+        record.position(position);
+        byte[] bytes = new byte[record.get()];
+        record.get(bytes);
+        return new String(bytes, ASCII);
+    }
+}
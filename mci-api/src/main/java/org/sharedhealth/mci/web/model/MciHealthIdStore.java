@@ -2,32 +2,186 @@ package org.sharedhealth.mci.web.model;
 
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The health ids MCI can assign, kept in a health id journal, so that a health id taken is not issued again after a
+ * restart. Health ids are taken without locking; adding health ids, compacting and clearing are synchronized.
+ * <p>
+ * A take that leaves no more than the low watermark of health ids calls the low watermark listener, on the thread of
+ * the take, so the listener has to return right away.
+ */
 @Component
 public class MciHealthIdStore {
-    private Queue<String> mciHealthIds = new ConcurrentLinkedQueue<>();
+    private static final long MIN_RECORDS_TO_COMPACT = 1024;
+
+    private volatile HealthIdJournal journal;
+    private final AtomicLong takenCount = new AtomicLong();
+    private volatile int lowWatermark;
+    private volatile Runnable lowWatermarkListener;
+
+    /**
+     * Opens the journal in the given file, or creates an empty one.
+     */
+    public synchronized void open(File file) throws IOException {
+        replaceJournal(HealthIdJournal.open(file));
+    }
+
+    /**
+     * Replaces whatever is in the given file with a journal of the given health ids.
+     */
+    public synchronized void open(File file, Collection<String> healthIds) throws IOException {
+        replaceJournal(HealthIdJournal.create(file, healthIds));
+    }
 
     public synchronized void addMciHealthIds(Collection<String> mciHealthIds) {
-        this.mciHealthIds.addAll(mciHealthIds);
+        try {
+            getJournal().append(mciHealthIds);
+        } catch (IOException e) {
+            throw new RuntimeException("Can not add health ids to the health id journal", e);
+        }
     }
 
     public synchronized void clear() {
-        this.mciHealthIds.clear();
+        try {
+            HealthIdJournal journal = getJournal();
+            journal.drain();
+            moveInto(journal, Collections.<String>emptyList());
+        } catch (IOException e) {
+            throw new RuntimeException("Can not clear the health id journal", e);
+        }
     }
 
     public Collection<String> getAll() {
-        return Collections.unmodifiableCollection(mciHealthIds);
+        return Collections.unmodifiableCollection(getJournal().getAll());
+    }
+
+    public String getNextHealthId() {
+        String healthId = take();
+        checkLowWatermark();
+        if (healthId == null) {
+            throw new NoSuchElementException("No health id left");
+        }
+        return healthId;
     }
 
-    public synchronized String getNextHealthId() {
-        return this.mciHealthIds.remove();
+    /**
+     * @return up to count health ids, fewer if the store runs out.
+     */
+    public List<String> getNextHealthIds(int count) {
+        List<String> healthIds = new ArrayList<>(count);
+        while (healthIds.size() < count) {
+            String healthId = take();
+            if (healthId == null) {
+                break;
+            }
+            healthIds.add(healthId);
+        }
+        checkLowWatermark();
+        return healthIds;
+    }
+
+    /**
+     * A journal that is sealed is being replaced, so the take is retried on the journal that replaces it.
+     */
+    private String take() {
+        while (true) {
+            HealthIdJournal journal = getJournal();
+            String healthId = journal.take();
+            if (healthId != null) {
+                takenCount.incrementAndGet();
+                return healthId;
+            }
+            if (!journal.isSealed()) {
+                return null;
+            }
+            Thread.yield();
+        }
+    }
+
+    private void checkLowWatermark() {
+        Runnable listener = lowWatermarkListener;
+        if (listener != null && noOfHIDsLeft() <= lowWatermark) {
+            listener.run();
+        }
     }
 
     public int noOfHIDsLeft() {
-        return this.mciHealthIds.size();
+        return (int) getJournal().size();
+    }
+
+    /**
+     * @return the number of health ids taken since the store was created.
+     */
+    public long getTakenCount() {
+        return takenCount.get();
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public void setLowWatermark(int lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    public void setLowWatermarkListener(Runnable lowWatermarkListener) {
+        this.lowWatermarkListener = lowWatermarkListener;
+    }
+
+    /**
+     * Moves the health ids left into a new journal once the health ids taken are as many as the ones left.
+     */
+    public synchronized void compactIfNeeded() throws IOException {
+        HealthIdJournal journal = getJournal();
+        if (!journal.needsCompaction(MIN_RECORDS_TO_COMPACT)) {
+            return;
+        }
+        moveInto(journal, journal.drain());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Replaces a drained journal with a new one of the given health ids. If that fails, the drained journal is
+     * opened again from its file, where the cursor is still the one before the drain.
+     */
+    private void moveInto(HealthIdJournal drainedJournal, List<String> healthIds) throws IOException {
+        try {
+            replaceJournal(HealthIdJournal.create(drainedJournal.getFile(), healthIds));
+        } catch (IOException e) {
+            replaceJournal(HealthIdJournal.open(drainedJournal.getFile()));
+            throw e;
+        }
+    }
+
+    private void replaceJournal(HealthIdJournal newJournal) throws IOException {
+        HealthIdJournal oldJournal = journal;
+        journal = newJournal;
+        if (oldJournal != null) {
+            oldJournal.close();
+        }
+    }
+
+    private HealthIdJournal getJournal() {
+        HealthIdJournal journal = this.journal;
+        if (journal == null) {
+            throw new IllegalStateException("Health id store is not open");
+        }
+        return journal;
     }
 }
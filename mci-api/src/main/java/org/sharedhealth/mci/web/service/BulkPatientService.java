@@ -0,0 +1,274 @@
+package org.sharedhealth.mci.web.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.exception.ValidationException;
+import org.sharedhealth.mci.domain.model.Catchment;
+import org.sharedhealth.mci.domain.model.MCIResponse;
+import org.sharedhealth.mci.domain.model.PatientData;
+import org.sharedhealth.mci.domain.util.JsonMapper;
+import org.sharedhealth.mci.domain.validation.group.RequiredGroup;
+import org.sharedhealth.mci.domain.validation.group.RequiredOnUpdateGroup;
+import org.sharedhealth.mci.web.handler.ErrorHandler;
+import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
+import org.sharedhealth.mci.web.mapper.BulkItemResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.ValidationUtils;
+import org.springframework.validation.Validator;
+
+import javax.annotation.PreDestroy;
+import javax.validation.groups.Default;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.sharedhealth.mci.domain.constant.MCIConstants.HID_CARD_STATUS_REGISTERED;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Registers a stream of patients, read as a JSON array or as one JSON object per line. Records are read in chunks
+ * of BULK_REGISTRATION_CHUNK_SIZE; each chunk is validated in parallel, the valid records get their health ids in
+ * one step and are written together, and the result of every record is written back as one JSON line before the
+ * next chunk is read.
+ * <p>
+ * Bulk updates and bulk pending approval decisions are validated the same way, and the valid ones are applied
+ * together by the patient service.
+ */
+@Component
+public class BulkPatientService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkPatientService.class);
+    private static final String MESSAGE_VALIDATION_ERROR = "validation error";
+    private static final String MESSAGE_INVALID_JSON = "invalid.json";
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    private final ExecutorService validationExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+
+    private PatientService patientService;
+    private Validator validator;
+    private MCIProperties mciProperties;
+
+    @Autowired
+    public BulkPatientService(PatientService patientService, @Qualifier("mvcValidator") Validator validator,
+                              MCIProperties mciProperties) {
+        this.patientService = patientService;
+        this.validator = validator;
+        this.mciProperties = mciProperties;
+    }
+
+    public void createPatients(InputStream in, UserInfo.UserInfoProperties requester, OutputStream out)
+            throws IOException, InterruptedException {
+        int chunkSize = Math.max(1, mciProperties.getBulkRegistrationChunkSize());
+        JsonParser parser = JsonMapper.getObjectMapper().getFactory().createParser(in);
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            token = parser.nextToken();
+        }
+
+        int index = 0;
+        List<PatientData> chunk = new ArrayList<>(chunkSize);
+        while (token != null && token != JsonToken.END_ARRAY) {
+            PatientData patient;
+            try {
+                patient = JsonMapper.reader(PatientData.class).readValue(parser);
+            } catch (IOException e) {
+                logger.error(String.format("Can not read patient %d of bulk request", index + chunk.size()), e);
+                createChunk(chunk, index, out);
+                write(new BulkItemResponse(index + chunk.size(), BAD_REQUEST.value(), MESSAGE_INVALID_JSON, null), out);
+                out.flush();
+                return;
+            }
+            patient.setRequester(requester.getFacilityId(), requester.getProviderId(), requester.getAdminId(),
+                    requester.getName());
+            chunk.add(patient);
+            if (chunk.size() == chunkSize) {
+                createChunk(chunk, index, out);
+                index += chunk.size();
+                chunk = new ArrayList<>(chunkSize);
+            }
+            token = parser.nextToken();
+        }
+        createChunk(chunk, index, out);
+    }
+
+    public List<BulkItemResponse> updatePatients(List<PatientData> patients, UserInfo.UserInfoProperties requester)
+            throws InterruptedException {
+        List<BulkItemResponse> results = validate(patients, requester, Operation.UPDATE);
+        List<Integer> validIndexes = findValid(results);
+        if (!validIndexes.isEmpty()) {
+            addResults(results, validIndexes, patientService.updateAll(select(patients, validIndexes)));
+        }
+        return results;
+    }
+
+    public List<BulkItemResponse> processPendingApprovals(List<PatientData> decisions, Catchment catchment,
+                                                          boolean shouldAccept, UserInfo.UserInfoProperties requester)
+            throws InterruptedException {
+        List<BulkItemResponse> results = validate(decisions, requester, Operation.DECISION);
+        List<Integer> validIndexes = findValid(results);
+        if (!validIndexes.isEmpty()) {
+            addResults(results, validIndexes,
+                    patientService.processPendingApprovals(select(decisions, validIndexes), catchment, shouldAccept));
+        }
+        return results;
+    }
+
+    private List<BulkItemResponse> validate(List<PatientData> patients, UserInfo.UserInfoProperties requester,
+                                            Operation operation) throws InterruptedException {
+        for (PatientData patient : patients) {
+            patient.setRequester(requester.getFacilityId(), requester.getProviderId(), requester.getAdminId(),
+                    requester.getName());
+        }
+        return validate(patients, 0, operation);
+    }
+
+    private List<Integer> findValid(List<BulkItemResponse> results) {
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                valid.add(i);
+            }
+        }
+        return valid;
+    }
+
+    private List<PatientData> select(List<PatientData> patients, List<Integer> indexes) {
+        List<PatientData> selected = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            selected.add(patients.get(index));
+        }
+        return selected;
+    }
+
+    private void addResults(List<BulkItemResponse> results, List<Integer> indexes, List<MCIResponse> responses) {
+        for (int i = 0; i < responses.size(); i++) {
+            results.set(indexes.get(i), new BulkItemResponse(indexes.get(i), responses.get(i)));
+        }
+    }
+
+    private void createChunk(List<PatientData> chunk, int firstIndex, OutputStream out)
+            throws IOException, InterruptedException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<BulkItemResponse> invalid = validate(chunk, firstIndex, Operation.CREATE);
+
+        List<PatientData> valid = new ArrayList<>(chunk.size());
+        List<Integer> validIndexes = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            BulkItemResponse error = invalid.get(i);
+            if (error != null) {
+                write(error, out);
+            } else {
+                valid.add(chunk.get(i));
+                validIndexes.add(firstIndex + i);
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            List<MCIResponse> responses = patientService.createPatientsForMCI(valid);
+            for (int i = 0; i < responses.size(); i++) {
+                write(new BulkItemResponse(validIndexes.get(i), responses.get(i)), out);
+            }
+        }
+        out.flush();
+    }
+
+    private List<BulkItemResponse> validate(List<PatientData> chunk, int firstIndex, final Operation operation)
+            throws InterruptedException {
+        List<Callable<BulkItemResponse>> validations = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            final PatientData patient = chunk.get(i);
+            final int index = firstIndex + i;
+            validations.add(new Callable<BulkItemResponse>() {
+                @Override
+                public BulkItemResponse call() throws Exception {
+                    return validate(patient, index, operation);
+                }
+            });
+        }
+
+        List<BulkItemResponse> results = new ArrayList<>(chunk.size());
+        for (Future<BulkItemResponse> future : validationExecutor.invokeAll(validations)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                logger.error("Can not validate patient of bulk request", e.getCause());
+                results.add(new BulkItemResponse(firstIndex + results.size(), BAD_REQUEST.value(),
+                        MESSAGE_VALIDATION_ERROR, null));
+            }
+        }
+        return results;
+    }
+
+    private BulkItemResponse validate(PatientData patient, int index, Operation operation) {
+        String error = operation == Operation.CREATE ? checkCreate(patient) : checkUpdate(patient, operation);
+        if (error != null) {
+            return invalidRequest(index, error);
+        }
+
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(patient, "patient");
+        ValidationUtils.invokeValidator(validator, patient, bindingResult,
+                operation == Operation.CREATE ? RequiredGroup.class : RequiredOnUpdateGroup.class, Default.class);
+        if (!bindingResult.hasErrors()) {
+            return null;
+        }
+        ErrorHandler errorHandler = new ErrorHandler(BAD_REQUEST.value(), ErrorHandler.VALIDATION_ERROR_CODE,
+                MESSAGE_VALIDATION_ERROR);
+        errorHandler.handleValidationError(errorHandler, new ValidationException(bindingResult));
+        return new BulkItemResponse(index, BAD_REQUEST.value(), MESSAGE_VALIDATION_ERROR, errorHandler.getErrors());
+    }
+
+    private String checkCreate(PatientData patient) {
+        if (isNotBlank(patient.getHealthId())) {
+            return "Health id can not be given for bulk registration";
+        }
+        if (null != patient.getMergedWith()) {
+            return "Cannot merge with another patient on creation";
+        }
+        if (patient.getHidCardStatus() != null && !patient.getHidCardStatus().equalsIgnoreCase(HID_CARD_STATUS_REGISTERED)) {
+            return "A new patient must have HID card status as " + HID_CARD_STATUS_REGISTERED;
+        }
+        return null;
+    }
+
+    private String checkUpdate(PatientData patient, Operation operation) {
+        if (isBlank(patient.getHealthId())) {
+            return "Health id is required";
+        }
+        if (operation == Operation.UPDATE && (null != patient.isActive() || null != patient.getMergedWith())) {
+            return "Cannot update active field or merge with other patient";
+        }
+        return null;
+    }
+
+    private BulkItemResponse invalidRequest(int index, String message) {
+        return new BulkItemResponse(index, BAD_REQUEST.value(), message, null);
+    }
+
+    private void write(BulkItemResponse response, OutputStream out) throws IOException {
+        out.write(JsonMapper.writer(BulkItemResponse.class).writeValueAsBytes(response));
+        out.write(LINE_SEPARATOR);
+    }
+
+    private enum Operation {
+        CREATE, UPDATE, DECISION
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validationExecutor.shutdown();
+    }
+}
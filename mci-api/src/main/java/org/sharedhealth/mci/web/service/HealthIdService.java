@@ -8,11 +8,15 @@ import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.utils.HttpUtil;
 import org.sharedhealth.mci.web.infrastructure.registry.HealthIdWebClient;
 import org.sharedhealth.mci.web.infrastructure.security.IdentityServiceClient;
+import org.sharedhealth.mci.web.model.HealthIdConsumptionMeter;
+import org.sharedhealth.mci.web.model.HealthIdJournal;
 import org.sharedhealth.mci.web.model.MciHealthIdStore;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.cassandra.core.CassandraOperations;
 import org.springframework.http.HttpEntity;
@@ -21,14 +25,20 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -38,12 +48,26 @@ import static org.sharedhealth.mci.domain.constant.RepositoryConstants.HEALTH_ID
 import static org.sharedhealth.mci.utils.HttpUtil.*;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Keeps the health id store supplied from the HID service. The store is replenished when it runs down to its low
+ * watermark, as soon as it does if HEALTH_ID_REPLENISH_ON_LOW_WATERMARK is set, and otherwise when the replenish task
+ * runs. The low watermark covers the health ids used while a block is on its way, at the measured consumption rate,
+ * and a block lasts for BLOCK_SECONDS at that rate. At most one block is asked for at a time.
+ * <p>
+ * A fetch that fails holds off the fetches asked for by the low watermark, for MIN_BACKOFF_MILLIS doubled with each
+ * failure in a row, up to MAX_BACKOFF_MILLIS, so an unavailable HID service is not asked again on every take. The
+ * replenish task keeps its own schedule. Only fetches that bring a block are timed.
+ */
 @Component
-public class HealthIdService {
+public class HealthIdService implements PublicMetrics {
     private static final Logger logger = getLogger(HealthIdService.class);
     private static final String CHARSET_ENCODING = "UTF-8";
     private static final String USED_AT_KEY = "used_at";
     private static final String ACCEPTED = "Accepted";
+    private static final int BLOCK_SECONDS = 300;
+    private static final int FETCH_SAFETY_FACTOR = 2;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
 
     private MciHealthIdStore mciHealthIdStore;
     private IdentityServiceClient identityServiceClient;
@@ -51,6 +75,12 @@ public class HealthIdService {
     private MCIProperties mciProperties;
     private CassandraOperations cqlTemplate;
     private ApplicationContext applicationContext;
+    private final HealthIdConsumptionMeter consumptionMeter = new HealthIdConsumptionMeter();
+    private final AtomicBoolean replenishing = new AtomicBoolean();
+    private volatile int failedFetches;
+    private volatile long nextFetchMillis;
+    private final AtomicLong quarantined = new AtomicLong();
+    private final ExecutorService replenishExecutor = Executors.newSingleThreadExecutor();
 
     @Autowired
     public HealthIdService(MciHealthIdStore mciHealthIdStore, IdentityServiceClient identityServiceClient,
@@ -62,19 +92,40 @@ public class HealthIdService {
         this.mciProperties = mciProperties;
         this.cqlTemplate = cassandraOperations;
         this.applicationContext = applicationContext;
+        mciHealthIdStore.setLowWatermark(mciProperties.getHealthIdBlockSizeThreshold());
+        if (mciProperties.isHealthIdReplenishOnLowWatermark()) {
+            mciHealthIdStore.setLowWatermarkListener(new Runnable() {
+                @Override
+                public void run() {
+                    replenishInBackground();
+                }
+            });
+        }
     }
 
+    /**
+     * Opens the health id journal. A list of health ids kept before there was a journal does not tell which of them
+     * were used, so those are checked against the patients once, and the list is replaced with a journal.
+     */
     @PostConstruct
     public void populateHidStore() throws IOException {
+        File file = new File(mciProperties.getHidLocalStoragePath());
+        if (!file.exists() || HealthIdJournal.isJournal(file)) {
+            mciHealthIdStore.open(file);
+            return;
+        }
         List<String> healthIdBlock = getExistingHIDsFromFile();
-        Select selectHIDsQuery = select().column(HEALTH_ID).from(CF_PATIENT);
-        selectHIDsQuery.where(in(HEALTH_ID, healthIdBlock));
+        if (!healthIdBlock.isEmpty()) {
+            Select selectHIDsQuery = select().column(HEALTH_ID).from(CF_PATIENT);
+            selectHIDsQuery.where(in(HEALTH_ID, healthIdBlock));
 
-        ResultSet resultSet = cqlTemplate.query(selectHIDsQuery);
-        while (!resultSet.isExhausted()) {
-            healthIdBlock.remove(resultSet.one().getString(HEALTH_ID));
+            ResultSet resultSet = cqlTemplate.query(selectHIDsQuery);
+            while (!resultSet.isExhausted()) {
+                healthIdBlock.remove(resultSet.one().getString(HEALTH_ID));
+            }
         }
-        mciHealthIdStore.addMciHealthIds(healthIdBlock);
+        mciHealthIdStore.open(file, healthIdBlock);
+        logger.info("Moved {} health ids from {} to a health id journal", healthIdBlock.size(), file);
     }
 
 
@@ -82,19 +133,120 @@ public class HealthIdService {
         return mciHealthIdStore.getNextHealthId();
     }
 
+    public List<String> getNextHealthIds(int count) {
+        return mciHealthIdStore.getNextHealthIds(count);
+    }
+
     public void putBackHealthId(String healthId) {
         mciHealthIdStore.addMciHealthIds(asList(healthId));
     }
 
+    public void putBackHealthIds(List<String> healthIds) {
+        mciHealthIdStore.addMciHealthIds(healthIds);
+    }
+
+    /**
+     * Health ids a patient may have been written with are never handed out again. They are logged, so they can be
+     * checked against the patient table.
+     */
+    public void quarantineHealthIds(List<String> healthIds) {
+        quarantined.addAndGet(healthIds.size());
+        logger.warn(String.format("Quarantined health ids %s, their patients may have been written", healthIds));
+    }
+
     public void replenishIfNeeded() throws IOException {
-        if (mciHealthIdStore.noOfHIDsLeft() > mciProperties.getHealthIdBlockSizeThreshold()) return;
-        logger.debug("Replenish, Remaining Health IDs :" + mciHealthIdStore.noOfHIDsLeft());
-        List hidBlock = getNextBlockFromHidService();
-        if (null != hidBlock) {
-            mciHealthIdStore.addMciHealthIds(hidBlock);
-            persistHIDsToFile();
-            logger.info("Replenished {} healthIds from HID service", hidBlock.size());
+        mciHealthIdStore.compactIfNeeded();
+        updateLowWatermark();
+        if (mciHealthIdStore.noOfHIDsLeft() > mciHealthIdStore.getLowWatermark()) return;
+        if (!replenishing.compareAndSet(false, true)) return;
+        try {
+            replenish();
+        } finally {
+            replenishing.set(false);
+        }
+    }
+
+    private void replenishInBackground() {
+        if (System.currentTimeMillis() < nextFetchMillis) return;
+        if (!replenishing.compareAndSet(false, true)) return;
+        try {
+            replenishExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replenish();
+                    } catch (Exception e) {
+                        logger.error("Failed to replenish health Ids", e);
+                    } finally {
+                        replenishing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            replenishing.set(false);
+        }
+    }
+
+    private void replenish() {
+        updateLowWatermark();
+        int blockSize = getNextBlockSize();
+        logger.debug(String.format("Replenish %d, Remaining Health IDs : %d", blockSize, mciHealthIdStore.noOfHIDsLeft()));
+        long start = System.currentTimeMillis();
+        List hidBlock = getNextBlockFromHidService(blockSize);
+        long end = System.currentTimeMillis();
+        if (null == hidBlock) {
+            backOff(end);
+            return;
         }
+        consumptionMeter.recordFetch(end - start);
+        failedFetches = 0;
+        nextFetchMillis = 0;
+        mciHealthIdStore.addMciHealthIds(hidBlock);
+        logger.info("Replenished {} healthIds from HID service", hidBlock.size());
+        updateLowWatermark();
+    }
+
+    /**
+     * Replenishing runs one at a time, so the failures are counted by one thread at a time.
+     */
+    private void backOff(long now) {
+        int failures = Math.min(failedFetches + 1, 30);
+        failedFetches = failures;
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << (failures - 1));
+        nextFetchMillis = now + backoff;
+        logger.warn(String.format("Failed to fetch health ids %d times in a row, holding off for %d ms", failures,
+                backoff));
+    }
+
+    private void updateLowWatermark() {
+        consumptionMeter.sample(mciHealthIdStore.getTakenCount(), System.currentTimeMillis());
+        double usedWhileFetching = consumptionMeter.getRate() * consumptionMeter.getFetchSeconds() * FETCH_SAFETY_FACTOR;
+        mciHealthIdStore.setLowWatermark(Math.max(mciProperties.getHealthIdBlockSizeThreshold(),
+                (int) Math.ceil(usedWhileFetching)));
+    }
+
+    int getNextBlockSize() {
+        int blockSize = (int) Math.ceil(consumptionMeter.getRate() * BLOCK_SECONDS) + mciHealthIdStore.getLowWatermark();
+        return Math.min(mciProperties.getHealthIdMaxBlockSize(), Math.max(mciProperties.getHealthIdBlockSize(), blockSize));
+    }
+
+    /**
+     * Time to exhaustion is in seconds at the current rate, and -1 while no health ids are being used.
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        int depth = mciHealthIdStore.noOfHIDsLeft();
+        double rate = consumptionMeter.getRate();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Integer>("hid.pool.depth", depth));
+        metrics.add(new Metric<Integer>("hid.pool.low.watermark", mciHealthIdStore.getLowWatermark()));
+        metrics.add(new Metric<Double>("hid.consumption.rate", rate));
+        metrics.add(new Metric<Double>("hid.time.to.exhaustion", rate > 0 ? depth / rate : -1.0));
+        metrics.add(new Metric<Double>("hid.fetch.seconds", consumptionMeter.getFetchSeconds()));
+        metrics.add(new Metric<Integer>("hid.fetch.in.flight", replenishing.get() ? 1 : 0));
+        metrics.add(new Metric<Integer>("hid.fetch.failures", failedFetches));
+        metrics.add(new Metric<Long>("hid.quarantined", quarantined.get()));
+        return metrics;
     }
 
     public Map validateHIDForOrg(String hid, String orgCode) {
@@ -123,12 +275,12 @@ public class HealthIdService {
         }
     }
 
-    private List getNextBlockFromHidService() {
+    private List getNextBlockFromHidService(int blockSize) {
         HttpHeaders headers = HttpUtil.getHIDServiceHeaders(mciProperties);
         try {
             String token = identityServiceClient.getOrCreateToken();
             headers.add(AUTH_TOKEN_KEY, token);
-            return healthIdWebClient.getNextHealthIDs(getHidServiceNextBlockURL(), new HttpEntity<>(headers));
+            return healthIdWebClient.getNextHealthIDs(getHidServiceNextBlockURL(blockSize), new HttpEntity<>(headers));
         } catch (HttpClientErrorException e) {
             checkUnauthorized(e);
         } catch (Exception e) {
@@ -138,15 +290,15 @@ public class HealthIdService {
         return null;
     }
 
-    private String getHidServiceNextBlockURL() {
+    private String getHidServiceNextBlockURL(int blockSize) {
         return String.format(mciProperties.getHidServiceNextBlockUrlPattern(),
-                mciProperties.getMciOrgCode(), mciProperties.getHealthIdBlockSize());
+                mciProperties.getMciOrgCode(), blockSize);
     }
 
     private List<String> getExistingHIDsFromFile() throws IOException {
         if (!new File(mciProperties.getHidLocalStoragePath()).exists()) return new ArrayList<>();
         try {
-            return IOUtils.readLines(new FileInputStream(mciProperties.getHidLocalStoragePath()), "UTF-8");
+            return IOUtils.readLines(new FileInputStream(mciProperties.getHidLocalStoragePath()), CHARSET_ENCODING);
         } catch (IOException e) {
             e.printStackTrace();
             SpringApplication.exit(applicationContext);
@@ -154,7 +306,8 @@ public class HealthIdService {
         return new ArrayList<>();
     }
 
-    private void persistHIDsToFile() throws IOException {
-        IOUtils.writeLines(mciHealthIdStore.getAll(), IOUtils.LINE_SEPARATOR_UNIX, new FileOutputStream(mciProperties.getHidLocalStoragePath()), CHARSET_ENCODING);
+    @PreDestroy
+    public void shutdown() {
+        replenishExecutor.shutdown();
     }
 }
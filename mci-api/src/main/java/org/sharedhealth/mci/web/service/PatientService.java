@@ -8,6 +8,7 @@ import org.sharedhealth.mci.domain.exception.PatientNotFoundException;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
 import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PatientWrite;
 import org.sharedhealth.mci.domain.service.PendingApprovalFilter;
 import org.sharedhealth.mci.web.exception.InsufficientPrivilegeException;
 import org.sharedhealth.mci.web.mapper.PendingApprovalListResponse;
@@ -20,6 +21,7 @@ import org.springframework.stereotype.Component;
 import java.util.*;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.HID;
@@ -28,6 +30,10 @@ import static org.sharedhealth.mci.utils.HttpUtil.AVAILABILITY_KEY;
 import static org.sharedhealth.mci.utils.HttpUtil.REASON_KEY;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.FORBIDDEN;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 
 @Component
 public class PatientService {
@@ -77,6 +83,47 @@ public class PatientService {
         return mciResponse;
     }
 
+    /**
+     * Creates the patients with health ids reserved from the store in one step. Patients left without a health id
+     * when the store runs out, and patients that fail to be written, get an error response. The health ids of
+     * writes that were rejected are put back. Writes are upserts, so a health id whose write may still have been
+     * applied is quarantined instead: handing it out again could overwrite the patient written with it.
+     */
+    public List<MCIResponse> createPatientsForMCI(List<PatientData> patients) {
+        logger.debug(String.format("Create %d patients", patients.size()));
+        List<String> healthIds = healthIdService.getNextHealthIds(patients.size());
+
+        List<PatientData> toCreate = new ArrayList<>(healthIds.size());
+        for (int i = 0; i < healthIds.size(); i++) {
+            PatientData patient = patients.get(i);
+            setHealthIdAssignor(patient);
+            patient.setHealthId(healthIds.get(i));
+            toCreate.add(patient);
+        }
+        List<MCIResponse> responses = new ArrayList<>(patientRepository.createAll(toCreate));
+
+        List<String> unused = new ArrayList<>();
+        List<String> uncertain = new ArrayList<>();
+        for (int i = 0; i < responses.size(); i++) {
+            int status = responses.get(i).getHttpStatus();
+            if (SERVICE_UNAVAILABLE.value() == status) {
+                unused.add(healthIds.get(i));
+            } else if (CREATED != status) {
+                uncertain.add(healthIds.get(i));
+            }
+        }
+        if (!unused.isEmpty()) {
+            healthIdService.putBackHealthIds(unused);
+        }
+        if (!uncertain.isEmpty()) {
+            healthIdService.quarantineHealthIds(uncertain);
+        }
+        while (responses.size() < patients.size()) {
+            responses.add(new MCIResponse("Can not create patient as there is no hid available in MCI to assign", BAD_REQUEST));
+        }
+        return responses;
+    }
+
     public MCIResponse createPatientForOrg(PatientData patient, String facilityId) {
         String healthId = patient.getHealthId();
         logger.debug(String.format("Creating patient for Organization [%s]", facilityId));
@@ -106,13 +153,7 @@ public class PatientService {
         Requester requester = patientData.getRequester();
 
         PatientData existingPatientData = patientRepository.findByHealthId(healthId);
-        if (Boolean.FALSE.equals(existingPatientData.isActive())) {
-            String mergedWith = existingPatientData.getMergedWith();
-            String errorMessage = mergedWith != null ? String.format("Cannot update inactive patient, already merged with %s", mergedWith) : "Cannot update inactive patient";
-            throw new InvalidRequestException(errorMessage);
-        }
-
-        checkIfTryingToMergeWithNonExistingOrInactiveHid(patientData.getMergedWith());
+        validateUpdate(existingPatientData, patientData);
         PatientData newPatientData = pendingApprovalFilter.filter(existingPatientData, patientData);
         if (!checkUpdateNeeded(newPatientData, healthId)) {
             return new MCIResponse(healthId, HttpStatus.ACCEPTED);
@@ -120,6 +161,52 @@ public class PatientService {
         return patientRepository.update(newPatientData, existingPatientData, requester);
     }
 
+    /**
+     * Applies many updates, each carrying its health id. The patients are loaded together, the pending approval
+     * mappings of the patients that have pending approvals are read together, and the writes run concurrently.
+     * Every update gets its own response; a failed update does not stop the others.
+     */
+    public List<MCIResponse> updateAll(List<PatientData> updates) {
+        logger.debug(String.format("Update %d patients", updates.size()));
+        MCIResponse[] responses = new MCIResponse[updates.size()];
+        Map<String, PatientData> existingPatients = loadForBulk(updates, responses);
+
+        List<Integer> toWrite = new ArrayList<>();
+        List<PatientData> newPatients = new ArrayList<>();
+        Set<String> withPendingApprovals = new HashSet<>();
+        for (int i = 0; i < updates.size(); i++) {
+            if (responses[i] != null) continue;
+            PatientData update = updates.get(i);
+            String healthId = update.getHealthId();
+            try {
+                PatientData existingPatientData = existingPatients.get(healthId);
+                validateUpdate(existingPatientData, update);
+                PatientData newPatientData = pendingApprovalFilter.filter(existingPatientData, update);
+                if (!checkUpdateNeeded(newPatientData, existingPatientData)) {
+                    responses[i] = new MCIResponse(healthId, HttpStatus.ACCEPTED);
+                    continue;
+                }
+                toWrite.add(i);
+                newPatients.add(newPatientData);
+                if (isNotEmpty(existingPatientData.getPendingApprovals()) || isNotEmpty(newPatientData.getPendingApprovals())) {
+                    withPendingApprovals.add(healthId);
+                }
+            } catch (RuntimeException e) {
+                responses[i] = toErrorResponse(e);
+            }
+        }
+
+        Map<String, List<PendingApprovalMapping>> mappings = findPendingApprovalMappings(withPendingApprovals);
+        List<PatientWrite> writes = new ArrayList<>(toWrite.size());
+        for (int j = 0; j < toWrite.size(); j++) {
+            PatientData update = updates.get(toWrite.get(j));
+            writes.add(patientRepository.buildUpdateWrite(newPatients.get(j), existingPatients.get(update.getHealthId()),
+                    update.getRequester(), mappings));
+        }
+        writeAll(writes, toWrite, responses, HttpStatus.ACCEPTED);
+        return asList(responses);
+    }
+
     public PatientData findByHealthId(String healthId) {
         return patientRepository.findByHealthId(healthId);
     }
@@ -136,6 +223,10 @@ public class PatientService {
         return patientRepository.findAllByCatchment(catchment, since, lastMarker, getPerPageMaximumLimit());
     }
 
+    public CursorPage<Map<String, Object>> findAllByCatchment(Catchment catchment, Date since, UUID lastMarker, String cursor) {
+        return patientRepository.findCatchmentPage(catchment, since, lastMarker, cursor, getPerPageMaximumLimit());
+    }
+
     public int getPerPageMaximumLimit() {
         Integer limit = settingService.getSettingAsIntegerByKey("PER_PAGE_MAXIMUM_LIMIT");
 
@@ -155,18 +246,27 @@ public class PatientService {
     }
 
     public List<PendingApprovalListResponse> findPendingApprovalList(Catchment catchment, UUID after, UUID before, int limit) {
-        List<PendingApprovalListResponse> pendingApprovals = new ArrayList<>();
         List<PendingApprovalMapping> mappings = patientRepository.findPendingApprovalMapping(catchment, after, before, limit);
+        return buildPendingApprovalList(mappings);
+    }
+
+    public CursorPage<PendingApprovalListResponse> findPendingApprovalList(Catchment catchment, String cursor, int limit) {
+        CursorPage<PendingApprovalMapping> mappings = patientRepository.findPendingApprovalMappingPage(catchment, cursor, limit);
+        return new CursorPage<>(buildPendingApprovalList(mappings.getItems()), mappings.getNextCursor());
+    }
+
+    private List<PendingApprovalListResponse> buildPendingApprovalList(List<PendingApprovalMapping> mappings) {
+        List<PendingApprovalListResponse> pendingApprovals = new ArrayList<>();
         if (isNotEmpty(mappings)) {
             for (PendingApprovalMapping mapping : mappings) {
-                PatientData patient = patientRepository.findByHealthId(mapping.getHealthId());
+                PatientSummaryData patient = patientRepository.findSummaryByHealthId(mapping.getHealthId());
                 pendingApprovals.add(buildPendingApprovalListResponse(patient, mapping.getLastUpdated()));
             }
         }
         return pendingApprovals;
     }
 
-    private PendingApprovalListResponse buildPendingApprovalListResponse(PatientData patient, UUID lastUpdated) {
+    private PendingApprovalListResponse buildPendingApprovalListResponse(PatientSummaryData patient, UUID lastUpdated) {
         PendingApprovalListResponse pendingApproval = new PendingApprovalListResponse();
         pendingApproval.setHealthId(patient.getHealthId());
         pendingApproval.setGivenName(patient.getGivenName());
@@ -204,6 +304,100 @@ public class PatientService {
         return patientRepository.processPendingApprovals(requestData, existingPatient, shouldAccept);
     }
 
+    /**
+     * Accepts or rejects the pending approvals of many patients of a catchment, with the same checks as a single
+     * decision. Every decision gets its own response; a failed decision does not stop the others.
+     */
+    public List<MCIResponse> processPendingApprovals(List<PatientData> decisions, Catchment catchment, boolean shouldAccept) {
+        logger.debug(String.format("Process %d pending approval decisions", decisions.size()));
+        MCIResponse[] responses = new MCIResponse[decisions.size()];
+        Map<String, PatientData> existingPatients = loadForBulk(decisions, responses);
+
+        List<Integer> toWrite = new ArrayList<>();
+        for (int i = 0; i < decisions.size(); i++) {
+            if (responses[i] != null) continue;
+            PatientData decision = decisions.get(i);
+            try {
+                PatientData existingPatient = existingPatients.get(decision.getHealthId());
+                if (null != existingPatient.isActive() && !existingPatient.isActive()) {
+                    throw new Forbidden("patient is already marked inactive");
+                }
+                verifyCatchment(existingPatient, catchment);
+                verifyPendingApprovalDetails(decision, existingPatient);
+                toWrite.add(i);
+            } catch (RuntimeException e) {
+                responses[i] = toErrorResponse(e);
+            }
+        }
+
+        Set<String> healthIds = new HashSet<>();
+        for (Integer i : toWrite) {
+            healthIds.add(decisions.get(i).getHealthId());
+        }
+        Map<String, List<PendingApprovalMapping>> mappings = findPendingApprovalMappings(healthIds);
+        List<PatientWrite> writes = new ArrayList<>(toWrite.size());
+        for (Integer i : toWrite) {
+            PatientData decision = decisions.get(i);
+            writes.add(patientRepository.buildPendingApprovalsWrite(decision, existingPatients.get(decision.getHealthId()),
+                    shouldAccept, mappings));
+        }
+        writeAll(writes, toWrite, responses, HttpStatus.ACCEPTED);
+        return asList(responses);
+    }
+
+    /**
+     * Loads the patients of a bulk request in one step. Requests without a health id, repeating a health id of an
+     * earlier request, or naming a patient that can not be loaded get their error response here.
+     */
+    private Map<String, PatientData> loadForBulk(List<PatientData> requests, MCIResponse[] responses) {
+        Set<String> healthIds = new LinkedHashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String healthId = requests.get(i).getHealthId();
+            if (healthId == null) {
+                responses[i] = new MCIResponse("Health id is required", BAD_REQUEST);
+            } else if (!healthIds.add(healthId)) {
+                responses[i] = new MCIResponse(format("Health id %s is repeated in the request", healthId), BAD_REQUEST);
+            }
+        }
+        PatientLoadResult result = patientRepository.findAllByHealthIds(healthIds);
+        for (int i = 0; i < requests.size(); i++) {
+            String reason = responses[i] == null ? result.getFailures().get(requests.get(i).getHealthId()) : null;
+            if (reason != null) {
+                responses[i] = new MCIResponse(reason, PatientLoadResult.NOT_FOUND.equals(reason) ? NOT_FOUND : INTERNAL_SERVER_ERROR);
+            }
+        }
+        return result.getPatients();
+    }
+
+    private Map<String, List<PendingApprovalMapping>> findPendingApprovalMappings(Set<String> healthIds) {
+        if (healthIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return patientRepository.findPendingApprovalMappings(healthIds);
+    }
+
+    private void writeAll(List<PatientWrite> writes, List<Integer> indexes, MCIResponse[] responses, HttpStatus status) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        List<RuntimeException> failures = patientRepository.writeAll(writes);
+        for (int j = 0; j < writes.size(); j++) {
+            String healthId = writes.get(j).getHealthId();
+            responses[indexes.get(j)] = failures.get(j) == null ? new MCIResponse(healthId, status) :
+                    new MCIResponse(format("Can not update patient %s", healthId), INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private MCIResponse toErrorResponse(RuntimeException e) {
+        HttpStatus status = BAD_REQUEST;
+        if (e instanceof PatientNotFoundException) {
+            status = NOT_FOUND;
+        } else if (e instanceof Forbidden) {
+            status = FORBIDDEN;
+        }
+        return new MCIResponse(e.getMessage(), status);
+    }
+
     public List<PatientUpdateLog> findPatientsUpdatedSince(Date since, UUID lastMarker) {
         return feedRepository.findPatientsUpdatedSince(since, getPerPageMaximumLimit(), lastMarker);
     }
@@ -239,6 +433,18 @@ public class PatientService {
         }
     }
 
+    /**
+     * An inactive patient can not be updated, and a patient can only be merged with an active one.
+     */
+    private void validateUpdate(PatientData existingPatientData, PatientData update) {
+        if (Boolean.FALSE.equals(existingPatientData.isActive())) {
+            String mergedWith = existingPatientData.getMergedWith();
+            String errorMessage = mergedWith != null ? String.format("Cannot update inactive patient, already merged with %s", mergedWith) : "Cannot update inactive patient";
+            throw new InvalidRequestException(errorMessage);
+        }
+        checkIfTryingToMergeWithNonExistingOrInactiveHid(update.getMergedWith());
+    }
+
     private boolean checkIfTryingToMergeWithNonExistingOrInactiveHid(String mergedWith) {
         if (null == mergedWith) {
             return false;
@@ -256,8 +462,11 @@ public class PatientService {
     }
 
     private boolean checkUpdateNeeded(PatientData newPatientData, String healthId) {
+        return checkUpdateNeeded(newPatientData, patientRepository.findByHealthId(healthId));
+    }
+
+    private boolean checkUpdateNeeded(PatientData newPatientData, PatientData existingPatientData) {
         TreeSet<PendingApproval> newPendingApprovals = newPatientData.getPendingApprovals();
-        PatientData existingPatientData = patientRepository.findByHealthId(healthId);
         boolean isSamePatientData = existingPatientData.equals(newPatientData);
         if (CollectionUtils.isEmpty(newPendingApprovals) && isSamePatientData) return false;
         TreeSet<PendingApproval> existingPendingApprovals = existingPatientData.getPendingApprovals();
@@ -0,0 +1,60 @@
+package org.sharedhealth.mci.web.builder;
+
+import org.junit.Test;
+import org.sharedhealth.mci.domain.diff.PatientChangeSet;
+import org.sharedhealth.mci.domain.diff.PatientDiffBuilder;
+import org.sharedhealth.mci.domain.model.PatientData;
+
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+
+public class PatientChangeSetTest {
+
+    @Test
+    public void shouldHoldTheChangedFieldsOfTheRequest() {
+        PatientData existing = new PatientData();
+        existing.setHealthId("h100");
+        existing.setGivenName("Harry");
+        existing.setSurName("Potter");
+
+        PatientData request = new PatientData();
+        request.setGivenName("Happy");
+        request.setSurName("Potter");
+        request.setNationalId("1234567890123");
+
+        PatientChangeSet changeSet = PatientChangeSet.between(existing, request);
+
+        assertFalse(changeSet.isEmpty());
+        assertEquals(2, changeSet.getChangedFields().size());
+        assertTrue(changeSet.hasChanged(GIVEN_NAME));
+        assertTrue(changeSet.hasChanged(SUR_NAME, NID));
+        assertFalse(changeSet.hasChanged(SUR_NAME, HID));
+        assertEquals(writeValueAsString(new PatientDiffBuilder(existing, request).build()), changeSet.toJson());
+        assertSame(changeSet.toJson(), changeSet.toJson());
+    }
+
+    @Test
+    public void shouldSelectTheChangesOfGivenFields() {
+        PatientData created = new PatientData();
+        created.setHealthId("h100");
+        created.setGivenName("Harry");
+
+        PatientChangeSet changeSet = PatientChangeSet.between(new PatientData(), created).select(HID);
+
+        assertEquals(1, changeSet.getChangedFields().size());
+        PatientData withHealthIdOnly = new PatientData();
+        withHealthIdOnly.setHealthId("h100");
+        assertEquals(writeValueAsString(new PatientDiffBuilder(new PatientData(), withHealthIdOnly).build()),
+                changeSet.toJson());
+    }
+
+    @Test
+    public void shouldHaveNoJsonWhenNothingChanged() {
+        PatientData patient = new PatientData();
+        patient.setGivenName("Harry");
+
+        assertTrue(PatientChangeSet.between(patient, patient).isEmpty());
+        assertNull(PatientChangeSet.empty().toJson());
+    }
+}
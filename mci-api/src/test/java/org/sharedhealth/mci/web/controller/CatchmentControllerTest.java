@@ -11,6 +11,7 @@ import org.sharedhealth.mci.domain.constant.JsonConstants;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.util.DateUtil;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+import org.sharedhealth.mci.web.handler.FeedPageCache;
 import org.sharedhealth.mci.web.handler.MCIMultiResponse;
 import org.sharedhealth.mci.web.infrastructure.security.TokenAuthentication;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
@@ -18,6 +19,7 @@ import org.sharedhealth.mci.web.infrastructure.security.UserProfile;
 import org.sharedhealth.mci.web.mapper.Feed;
 import org.sharedhealth.mci.web.mapper.FeedEntry;
 import org.sharedhealth.mci.web.mapper.PendingApprovalListResponse;
+import org.sharedhealth.mci.web.service.BulkPatientService;
 import org.sharedhealth.mci.web.service.PatientService;
 import org.springframework.http.HttpHeaders;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -73,6 +75,10 @@ public class CatchmentControllerTest {
     @Mock
     private PatientService patientService;
     @Mock
+    private BulkPatientService bulkPatientService;
+    @Mock
+    private FeedPageCache feedPageCache;
+    @Mock
     private MCIProperties properties;
     @Mock
     private LocalValidatorFactoryBean validatorFactory;
@@ -83,7 +89,7 @@ public class CatchmentControllerTest {
     @Before
     public void setup() throws ParseException {
         initMocks(this);
-        catchmentController = new CatchmentController(patientService, properties);
+        catchmentController = new CatchmentController(patientService, bulkPatientService, feedPageCache, properties);
         mockMvc = MockMvcBuilders
                 .standaloneSetup(catchmentController)
                 .setValidator(validatorFactory)
@@ -109,7 +115,8 @@ public class CatchmentControllerTest {
         Catchment catchment = new Catchment("10", "20", "30");
         List<PendingApprovalListResponse> pendingApprovals = asList(buildPendingApprovalListResponse(1),
                 buildPendingApprovalListResponse(2), buildPendingApprovalListResponse(3));
-        when(patientService.findPendingApprovalList(catchment, null, null, MAX_PAGE_SIZE + 1)).thenReturn(pendingApprovals);
+        when(patientService.findPendingApprovalList(catchment, null, MAX_PAGE_SIZE))
+                .thenReturn(new CursorPage<>(pendingApprovals, null));
         String url = buildPendingApprovalUrl("102030");
         MvcResult mvcResult = mockMvc.perform(get(url))
                 .andExpect(request().asyncStarted())
@@ -132,21 +139,22 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.results[2].sur_name", is("Tiger-3")))
                 .andExpect(jsonPath("$.results[2].last_updated", is(pendingApprovals.get(2).getLastUpdated().toString())));
 
-        verify(patientService).findPendingApprovalList(catchment, null, null, MAX_PAGE_SIZE + 1);
+        verify(patientService).findPendingApprovalList(catchment, null, MAX_PAGE_SIZE);
     }
 
     @Test
     public void shouldFindPendingApprovalsWithNextUrlSet() throws Exception {
         Catchment catchment = new Catchment("10", "20", "30");
         List<PendingApprovalListResponse> pendingApprovals = new ArrayList<>();
-        for (int x = 1; x <= MAX_PAGE_SIZE + 1; x++) {
+        for (int x = 1; x <= MAX_PAGE_SIZE; x++) {
             pendingApprovals.add(buildPendingApprovalListResponse(x));
         }
 
         String nextUrl = fromUriString(format(REQUEST_URL + "/%s/%s/approvals", API_END_POINT, "102030"))
-                .queryParam("after", pendingApprovals.get(2).getLastUpdated()).build().toString();
+                .queryParam(CURSOR, "0011").build().toString();
 
-        when(patientService.findPendingApprovalList(catchment, null, null, MAX_PAGE_SIZE + 1)).thenReturn(pendingApprovals);
+        when(patientService.findPendingApprovalList(catchment, null, MAX_PAGE_SIZE))
+                .thenReturn(new CursorPage<>(pendingApprovals, "0011"));
         String url = buildPendingApprovalUrl("102030");
         MvcResult mvcResult = mockMvc.perform(get(url))
                 .andExpect(request().asyncStarted())
@@ -168,10 +176,11 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.results[2].given_name", is("Scott-3")))
                 .andExpect(jsonPath("$.results[2].sur_name", is("Tiger-3")))
                 .andExpect(jsonPath("$.results[2].last_updated", is(pendingApprovals.get(2).getLastUpdated().toString())))
-                .andExpect(jsonPath("$.additional_info.next", is(nextUrl)));
+                .andExpect(jsonPath("$.additional_info.next", is(nextUrl)))
+                .andExpect(jsonPath("$.additional_info.previous").doesNotExist());
 
 
-        verify(patientService).findPendingApprovalList(catchment, null, null, MAX_PAGE_SIZE + 1);
+        verify(patientService).findPendingApprovalList(catchment, null, MAX_PAGE_SIZE);
     }
 
     @Test
@@ -379,7 +388,7 @@ public class CatchmentControllerTest {
         String catchmentId = "102030405060";
         Catchment catchment = new Catchment(catchmentId);
 
-        when(patientService.findAllByCatchment(catchment, null, null)).thenReturn(null);
+        when(patientService.findAllByCatchment(catchment, null, null, null)).thenReturn(CursorPage.<Map<String, Object>>empty());
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(FACILITY_ID, facilityId);
@@ -401,7 +410,7 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.nextUrl", is(nullValue())))
                 .andExpect(jsonPath("$.entries", is(emptyList())));
 
-        verify(patientService).findAllByCatchment(catchment, null, null);
+        verify(patientService).findAllByCatchment(catchment, null, null, null);
     }
 
     private String buildPendingApprovalUrl(String catchmentId) {
@@ -420,7 +429,7 @@ public class CatchmentControllerTest {
 
 
         List<Map<String, Object>> catchmentEvents = asList(buildCatchmentEvent("h100"), buildCatchmentEvent("h200"), buildCatchmentEvent("h300"));
-        when(patientService.findAllByCatchment(catchment, null, null)).thenReturn(catchmentEvents);
+        when(patientService.findAllByCatchment(catchment, null, null, null)).thenReturn(new CursorPage<>(catchmentEvents, null));
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(FACILITY_ID, facilityId);
@@ -458,7 +467,7 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.entries.[2].id", is(catchmentEvents.get(2).get("eventId").toString())))
                 .andExpect(jsonPath("$.entries.[2].publishedDate", is(convertToDateStringIsoMillisFormat((UUID) catchmentEvents.get(2).get("eventId")))));
 
-        verify(patientService).findAllByCatchment(catchment, null, null);
+        verify(patientService).findAllByCatchment(catchment, null, null, null);
     }
 
     @Test
@@ -467,7 +476,7 @@ public class CatchmentControllerTest {
         String catchmentId = "102030405060";
         Catchment catchment = new Catchment(catchmentId);
 
-        when(patientService.findAllByCatchment(catchment, null, null)).thenReturn(null);
+        when(patientService.findAllByCatchment(catchment, null, null, null)).thenReturn(CursorPage.<Map<String, Object>>empty());
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(FACILITY_ID, facilityId);
@@ -488,7 +497,7 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.nextUrl", is(nullValue())))
                 .andExpect(jsonPath("$.entries", is(emptyList())));
 
-        verify(patientService).findAllByCatchment(catchment, null, null);
+        verify(patientService).findAllByCatchment(catchment, null, null, null);
     }
 
     @Test
@@ -499,7 +508,7 @@ public class CatchmentControllerTest {
         String since = "2000-01-01T10:20:30Z";
 
         List<Map<String, Object>> catchmentEvents = asList(buildCatchmentEvent("h100"), buildCatchmentEvent("h200"), buildCatchmentEvent("h300"));
-        when(patientService.findAllByCatchment(catchment, parseDate(since), null)).thenReturn(catchmentEvents);
+        when(patientService.findAllByCatchment(catchment, parseDate(since), null, null)).thenReturn(new CursorPage<>(catchmentEvents, null));
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(FACILITY_ID, facilityId);
@@ -534,7 +543,7 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.entries.[1].id", is(catchmentEvents.get(1).get("eventId").toString())))
                 .andExpect(jsonPath("$.entries.[2].id", is(catchmentEvents.get(2).get("eventId").toString())));
 
-        verify(patientService).findAllByCatchment(catchment, parseDate(since), null);
+        verify(patientService).findAllByCatchment(catchment, parseDate(since), null, null);
     }
 
     @Test
@@ -546,7 +555,7 @@ public class CatchmentControllerTest {
         UUID lastMarker = TimeUuidUtil.uuidForDate(new Date());
 
         List<Map<String, Object>> catchmentEvents = asList(buildCatchmentEvent("h100"), buildCatchmentEvent("h200"), buildCatchmentEvent("h300"));
-        when(patientService.findAllByCatchment(catchment, parseDate(since), lastMarker)).thenReturn(catchmentEvents);
+        when(patientService.findAllByCatchment(catchment, parseDate(since), lastMarker, null)).thenReturn(new CursorPage<>(catchmentEvents, null));
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(FACILITY_ID, facilityId);
@@ -582,7 +591,7 @@ public class CatchmentControllerTest {
                 .andExpect(jsonPath("$.entries.[1].id", is(catchmentEvents.get(1).get("eventId").toString())))
                 .andExpect(jsonPath("$.entries.[2].id", is(catchmentEvents.get(2).get("eventId").toString())));
 
-        verify(patientService).findAllByCatchment(catchment, parseDate(since), lastMarker);
+        verify(patientService).findAllByCatchment(catchment, parseDate(since), lastMarker, null);
     }
 
     @Test
@@ -668,6 +677,28 @@ public class CatchmentControllerTest {
         assertFeedEntry(entries.get(2), catchmentEvent3);
     }
 
+    @Test
+    public void shouldBuildFeedResponseWithCursorWhileThereAreMoreEvents() throws Exception {
+        List<Map<String, Object>> catchmentEvents = asList(buildCatchmentEvent("h100"), buildCatchmentEvent("h200"));
+        MockHttpServletRequest request = buildCatchmentHttpRequest("2010-01-01T10:20:30Z", "h000");
+
+        Feed feed = catchmentController.buildFeedResponse(new CursorPage<>(catchmentEvents, "0011"),
+                "2010-01-01T10:20:30Z", "h000", request);
+
+        String nextUrl = feed.getNextUrl();
+        assertTrue(nextUrl.startsWith(catchmentController.buildUrl(request)));
+
+        List<NameValuePair> params = URLEncodedUtils.parse(new URI(nextUrl), "UTF-8");
+        assertEquals(3, params.size());
+        assertEquals(SINCE, params.get(0).getName());
+        assertEquals("2010-01-01T10:20:30Z", params.get(0).getValue());
+        assertEquals(LAST_MARKER, params.get(1).getName());
+        assertEquals("h000", params.get(1).getValue());
+        assertEquals(CURSOR, params.get(2).getName());
+        assertEquals("0011", params.get(2).getValue());
+        assertEquals(2, feed.getEntries().size());
+    }
+
     private PatientData buildPatient(String healthId) throws InterruptedException {
         PatientData patient = new PatientData();
         patient.setHealthId(healthId);
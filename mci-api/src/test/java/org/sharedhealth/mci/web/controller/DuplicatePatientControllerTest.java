@@ -92,7 +92,8 @@ public class DuplicatePatientControllerTest {
 
     @Test
     public void shouldFindDuplicatesByCatchment() throws Exception {
-        when(duplicatePatientService.findAllByCatchment(new Catchment("102030"), null, null, 6)).thenReturn(buildDuplicatePatientDataList());
+        when(duplicatePatientService.findAllByCatchment(new Catchment("102030"), null, 5))
+                .thenReturn(new CursorPage<>(buildDuplicatePatientDataList(), null));
 
         String url = "/patients/duplicates/catchments/102030";
         MvcResult mvcResult = mockMvc.perform(get(url).contentType(APPLICATION_JSON))
@@ -313,6 +314,38 @@ public class DuplicatePatientControllerTest {
                 additionalInfo.get(NEXT));
     }
 
+    @Test
+    public void shouldFindDuplicatesByCatchmentCursor() throws Exception {
+        Catchment catchment = new Catchment("102030");
+        when(duplicatePatientService.findAllByCatchment(catchment, "0011", 5))
+                .thenReturn(new CursorPage<>(buildDuplicatePatientDataList(), "0022"));
+
+        String url = REQUEST_URL + API_END_POINT + "102030";
+        MvcResult mvcResult = mockMvc.perform(get(url + "?" + CURSOR + "=0011").contentType(APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[4]").exists())
+                .andExpect(jsonPath("$.additional_info.next", is(url + "?cursor=0022")))
+                .andExpect(jsonPath("$.additional_info.previous", is(url + "?before=" + uuids.get(0))));
+
+        verify(duplicatePatientService).findAllByCatchment(catchment, "0011", 5);
+    }
+
+    @Test
+    public void shouldBuildCursorNextUrl() throws Exception {
+        MockHttpServletRequest httpRequest = buildDuplicatePatientHttpRequest();
+        CursorPage<DuplicatePatientData> page = new CursorPage<>(buildDuplicatePatientDataList(), "0022");
+
+        MCIMultiResponse response = duplicatePatientController.buildPaginatedResponse(httpRequest, page, null);
+
+        HashMap additionalInfo = response.getAdditionalInfo();
+        assertTrue(additionalInfo != null && additionalInfo.size() == 1);
+        assertEquals(REQUEST_URL + API_END_POINT + "?cursor=0022", additionalInfo.get(NEXT));
+    }
+
     private String buildPendingApprovalUrl(String catchmentId) {
         return format("%s%s%s", REQUEST_URL, API_END_POINT, catchmentId);
     }
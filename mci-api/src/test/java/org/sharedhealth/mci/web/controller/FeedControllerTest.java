@@ -24,7 +24,7 @@ public class FeedControllerTest {
     @Before
     public void setup() throws ParseException {
         initMocks(this);
-        this.feedController = new FeedController(null, properties);
+        this.feedController = new FeedController(null, null, properties);
     }
 
     @Test
@@ -15,6 +15,7 @@ import org.sharedhealth.mci.web.infrastructure.security.TokenAuthentication;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
 import org.sharedhealth.mci.web.infrastructure.security.UserProfile;
 import org.sharedhealth.mci.web.mapper.ProviderResponse;
+import org.sharedhealth.mci.web.service.BulkPatientService;
 import org.sharedhealth.mci.web.service.PatientService;
 import org.sharedhealth.mci.web.service.ProviderService;
 import org.springframework.http.ResponseEntity;
@@ -58,13 +59,15 @@ public class PatientControllerTest {
     private LocalValidatorFactoryBean localValidatorFactoryBean;
     @Mock
     private ProviderService providerService;
+    @Mock
+    private BulkPatientService bulkPatientService;
     private MockMvc mockMvc;
 
     @Before
     public void setup() throws ParseException {
         initMocks(this);
         mockMvc = MockMvcBuilders
-                .standaloneSetup(new PatientController(patientService, providerService))
+                .standaloneSetup(new PatientController(patientService, providerService, bulkPatientService))
                 .setValidator(localValidatorFactoryBean)
                 .build();
 
@@ -11,12 +11,16 @@ import org.sharedhealth.mci.domain.model.PatientUpdateLog;
 import org.sharedhealth.mci.domain.util.DateUtil;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.sharedhealth.mci.web.handler.FeedMessageConverter;
+import org.sharedhealth.mci.web.handler.FeedPage;
+import org.sharedhealth.mci.web.handler.FeedPageCache;
+import org.sharedhealth.mci.web.handler.FeedPageKey;
 import org.sharedhealth.mci.web.infrastructure.security.TokenAuthentication;
 import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
 import org.sharedhealth.mci.web.infrastructure.security.UserProfile;
 import org.sharedhealth.mci.web.mapper.Feed;
 import org.sharedhealth.mci.web.mapper.FeedEntry;
 import org.sharedhealth.mci.web.service.PatientService;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -38,13 +42,17 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.LAST_MARKER;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.SINCE;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_PENDING_APPROVALS_UPDATED;
 import static org.sharedhealth.mci.domain.util.DateUtil.parseDate;
 import static org.springframework.http.MediaType.APPLICATION_ATOM_XML_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
@@ -60,6 +68,8 @@ public class UpdateFeedControllerTest {
     @Mock
     private PatientService patientService;
     @Mock
+    private FeedPageCache feedPageCache;
+    @Mock
     private MCIProperties properties;
     @Mock
     private LocalValidatorFactoryBean validatorFactory;
@@ -70,11 +80,12 @@ public class UpdateFeedControllerTest {
     @Before
     public void setup() throws ParseException {
         initMocks(this);
-        this.updateFeedController = new UpdateFeedController(patientService, properties);
+        this.updateFeedController = new UpdateFeedController(patientService, feedPageCache, properties);
 
         mockMvc = MockMvcBuilders
                 .standaloneSetup(updateFeedController)
-                .setMessageConverters(new FeedMessageConverter(), new MappingJackson2HttpMessageConverter())
+                .setMessageConverters(new ByteArrayHttpMessageConverter(), new FeedMessageConverter(),
+                        new MappingJackson2HttpMessageConverter())
                 .setValidator(validatorFactory)
                 .build();
 
@@ -269,6 +280,22 @@ public class UpdateFeedControllerTest {
         assertFeedEntry(entries.get(2), patients.get(2));
     }
 
+    @Test
+    public void shouldSkipPendingApprovalEventsButPageAfterThem() throws Exception {
+        UUID uuid1 = TimeUuidUtil.uuidForDate(new Date());
+        UUID uuid2 = TimeUuidUtil.uuidForDate(new Date());
+        PatientUpdateLog pendingApprovalsLog = buildPatientLog("h200", uuid2, null);
+        pendingApprovalsLog.setEventType(EVENT_TYPE_PENDING_APPROVALS_UPDATED);
+
+        Feed feed = updateFeedController.buildFeedResponse(asList(buildPatientLog("h100", uuid1), pendingApprovalsLog),
+                buildHttpRequest(null, null));
+
+        assertEquals(1, feed.getEntries().size());
+        assertEquals(uuid1, feed.getEntries().get(0).getId());
+        List<NameValuePair> params = URLEncodedUtils.parse(new URI(feed.getNextUrl()), "UTF-8");
+        assertEquals(uuid2.toString(), params.get(0).getValue());
+    }
+
     @Test
     public void shouldCreateCategoryArrayWithOnlyPatientIfChangeSetIsNull() throws Exception {
         UUID uuid1 = TimeUuidUtil.uuidForDate(new Date());
@@ -300,6 +327,62 @@ public class UpdateFeedControllerTest {
         verify(patientService).findPatientsUpdatedSince(null, null);
     }
 
+    @Test
+    public void shouldCacheOnlyFullPages() throws Exception {
+        UUID uuid1 = TimeUuidUtil.uuidForDate(new Date());
+        UUID uuid2 = TimeUuidUtil.uuidForDate(new Date());
+        when(patientService.getPerPageMaximumLimit()).thenReturn(2);
+        when(patientService.findPatientsUpdatedSince(null, uuid1)).thenReturn(asList(buildPatientLog("h200", uuid2)));
+        when(patientService.findPatientsUpdatedSince(null, null)).thenReturn(
+                asList(buildPatientLog("h100", uuid1), buildPatientLog("h200", uuid2)));
+
+        String url = format("%s/%s/patients", REQUEST_URL, API_END_POINT);
+        mockMvc.perform(get(url + "?" + LAST_MARKER + "=" + uuid1).accept(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", notNullValue()));
+        verify(feedPageCache, never()).put(any(FeedPageKey.class), any(FeedPage.class));
+
+        mockMvc.perform(get(url).accept(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries.[1].id", is(uuid2.toString())));
+        verify(feedPageCache).put(any(FeedPageKey.class), any(FeedPage.class));
+    }
+
+    @Test
+    public void shouldServeCachedPageWithoutFindingPatients() throws Exception {
+        Feed feed = updateFeedController.buildFeedResponse(asList(buildPatientLog("h100",
+                TimeUuidUtil.uuidForDate(new Date()))), buildHttpRequest(null, null));
+        FeedPage page = FeedPage.render(feed, APPLICATION_JSON, false);
+        when(feedPageCache.get(any(FeedPageKey.class))).thenReturn(page);
+
+        String url = format("%s/%s/patients", REQUEST_URL, API_END_POINT);
+        mockMvc.perform(get(url).accept(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", page.getETag(false)))
+                .andExpect(jsonPath("$.entries.[0].content.health_id", is("h100")));
+
+        mockMvc.perform(get(url).accept(APPLICATION_JSON).header("If-None-Match", page.getETag(false)))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", page.getETag(false)));
+
+        verify(patientService, never()).findPatientsUpdatedSince(any(Date.class), any(UUID.class));
+        verify(feedPageCache).notModified();
+    }
+
+    @Test
+    public void shouldGzipFullPagesIfConfigured() throws Exception {
+        UUID uuid1 = TimeUuidUtil.uuidForDate(new Date());
+        when(properties.isFeedPageGzip()).thenReturn(true);
+        when(patientService.getPerPageMaximumLimit()).thenReturn(1);
+        when(patientService.findPatientsUpdatedSince(null, null)).thenReturn(asList(buildPatientLog("h100", uuid1)));
+
+        String url = format("%s/%s/patients", REQUEST_URL, API_END_POINT);
+        mockMvc.perform(get(url).accept(APPLICATION_ATOM_XML_VALUE).header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"));
+    }
+
     private PatientUpdateLog buildPatientLog(String healthId, UUID eventId, String changeSet) {
         PatientUpdateLog patient = new PatientUpdateLog();
         patient.setHealthId(healthId);
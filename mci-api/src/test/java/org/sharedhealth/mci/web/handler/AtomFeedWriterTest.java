@@ -0,0 +1,89 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.junit.Test;
+import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+import org.sharedhealth.mci.web.mapper.Feed;
+import org.sharedhealth.mci.web.mapper.FeedEntry;
+
+import java.io.StringWriter;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.sharedhealth.mci.domain.util.DateUtil.toIsoMillisFormat;
+
+public class AtomFeedWriterTest {
+
+    private static final String FEED_ID = "0b2e6f4e-8a5c-4d0b-9a39-5e4f3a8e6f10";
+
+    @Test
+    public void shouldWriteSameAtomAsRome() throws Exception {
+        Feed feed = buildFeed(3);
+        feed.setPrevUrl("https://mci.dghs.gov.bd/api/v1/feed/patients?since=2015-01-01&x=\"1\"");
+
+        assertEquals(writeWithRome(feed), write(feed));
+    }
+
+    @Test
+    public void shouldWriteSameAtomAsRomeForEmptyFeed() throws Exception {
+        Feed feed = buildFeed(0);
+        feed.setNextUrl(null);
+
+        assertEquals(writeWithRome(feed), write(feed));
+    }
+
+    @Test
+    public void shouldEscapeTextAndAttributes() throws Exception {
+        Feed feed = buildFeed(1);
+        feed.setTitle(" Patients <&> ");
+
+        String atom = write(feed);
+
+        assertTrue(atom.contains("<title>Patients &lt;&amp;&gt;</title>"));
+        assertTrue(atom.contains("href=\"https://mci.dghs.gov.bd/api/v1/feed/patients?since=2015-01-01&amp;page=1\""));
+        assertEquals(writeWithRome(feed), atom);
+    }
+
+    private String write(Feed feed) throws Exception {
+        StringWriter writer = new StringWriter();
+        new AtomFeedWriter(writer).write(feed, FEED_ID);
+        return writer.toString();
+    }
+
+    private String writeWithRome(Feed feed) throws Exception {
+        StringWriter writer = new StringWriter();
+        new RomeFeedWriter().write(feed, FEED_ID, writer);
+        return writer.toString();
+    }
+
+    static Feed buildFeed(int size) {
+        Feed feed = new Feed();
+        feed.setTitle("Patients");
+        feed.setFeedUrl("https://mci.dghs.gov.bd/api/v1/feed/patients?since=2015-01-01&page=1");
+        List<FeedEntry> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            UUID eventId = TimeUuidUtil.uuidForDate(1420070400000L + i * 1000L);
+            String healthId = String.valueOf(98000000000L + i);
+
+            Map<String, Object> changeSet = new LinkedHashMap<>();
+            changeSet.put("given_name", Collections.singletonMap("new_value", "রহিম <" + i + ">"));
+            changeSet.put("gender", Collections.singletonMap("new_value", "M"));
+            Map<String, Object> content = new LinkedHashMap<>();
+            content.put("health_id", healthId);
+            content.put("change_set", changeSet);
+
+            FeedEntry entry = new FeedEntry();
+            entry.setId(eventId);
+            entry.setPublishedDate(toIsoMillisFormat(eventId));
+            entry.setTitle("patient updated: " + healthId);
+            entry.setLink("https://mci.dghs.gov.bd/api/v1/patients/" + healthId);
+            entry.setEventType("updated");
+            entry.setCategories(new String[]{"patient", "update:given_name,gender"});
+            entry.setContent(content);
+            entries.add(entry);
+            feed.setNextUrl("https://mci.dghs.gov.bd/api/v1/feed/patients?last_marker=" + eventId);
+        }
+        feed.setEntries(entries);
+        return feed;
+    }
+}
@@ -0,0 +1,62 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sharedhealth.mci.domain.config.MCICacheConfiguration;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.sharedhealth.mci.web.handler.AtomFeedWriterTest.buildFeed;
+import static org.springframework.http.MediaType.APPLICATION_ATOM_XML;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+public class FeedPageCacheTest {
+
+    private static final String FEED_URL = "https://mci.dghs.gov.bd/api/v1/feed/patients?last_marker=1";
+
+    private net.sf.ehcache.CacheManager cacheManager;
+    private FeedPageCache feedPageCache;
+
+    @Before
+    public void setUp() {
+        cacheManager = new MCICacheConfiguration().ehCacheManager();
+        cacheManager.clearAll();
+        feedPageCache = new FeedPageCache(cacheManager);
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.clearAll();
+    }
+
+    @Test
+    public void shouldReturnCachedPageByFeedUrlPageSizeAndMediaType() {
+        FeedPage page = FeedPage.render(buildFeed(2), APPLICATION_JSON, false);
+        feedPageCache.put(new FeedPageKey(FEED_URL, 2, APPLICATION_JSON), page);
+
+        assertSame(page, feedPageCache.get(new FeedPageKey(FEED_URL, 2, APPLICATION_JSON)));
+        assertNull(feedPageCache.get(new FeedPageKey(FEED_URL, 2, APPLICATION_ATOM_XML)));
+        assertNull(feedPageCache.get(new FeedPageKey(FEED_URL, 3, APPLICATION_JSON)));
+    }
+
+    @Test
+    public void shouldReportHitRate() {
+        FeedPageKey key = new FeedPageKey(FEED_URL, 2, APPLICATION_JSON);
+        feedPageCache.get(key);
+        feedPageCache.put(key, FeedPage.render(buildFeed(2), APPLICATION_JSON, false));
+        feedPageCache.get(key);
+        feedPageCache.get(key);
+        feedPageCache.get(key);
+
+        for (Metric<?> metric : feedPageCache.metrics()) {
+            if (metric.getName().equals("cache.feed.page.hit.rate")) {
+                assertEquals(0.75, metric.getValue().doubleValue(), 0.0001);
+                return;
+            }
+        }
+        throw new AssertionError("hit rate is not reported");
+    }
+}
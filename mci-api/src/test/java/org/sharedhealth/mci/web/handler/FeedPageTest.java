@@ -0,0 +1,60 @@
+package org.sharedhealth.mci.web.handler;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.sharedhealth.mci.web.mapper.Feed;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.web.handler.AtomFeedWriterTest.buildFeed;
+import static org.springframework.http.MediaType.APPLICATION_ATOM_XML;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+public class FeedPageTest {
+
+    @Test
+    public void shouldRenderSameAtomAndETagForSameFeed() throws Exception {
+        FeedPage page = FeedPage.render(buildFeed(3), APPLICATION_ATOM_XML, false);
+        FeedPage again = FeedPage.render(buildFeed(3), APPLICATION_ATOM_XML, false);
+
+        assertArrayEquals(page.getBody(false), again.getBody(false));
+        assertEquals(page.getETag(false), again.getETag(false));
+        assertEquals("application/atom+xml;charset=UTF-8", page.getMediaType().toString());
+        assertTrue(new String(page.getBody(false), "UTF-8").contains("<title>patient updated: 98000000002</title>"));
+    }
+
+    @Test
+    public void shouldRenderJson() throws Exception {
+        Feed feed = buildFeed(2);
+        FeedPage page = FeedPage.render(feed, APPLICATION_JSON, false);
+
+        String json = new String(page.getBody(false), "UTF-8");
+        assertTrue(json.contains("\"title\":\"Patients\""));
+        assertFalse(page.getETag(false).equals(FeedPage.render(feed, APPLICATION_ATOM_XML, false).getETag(false)));
+    }
+
+    @Test
+    public void shouldKeepGzippedBodyWithItsOwnETag() throws Exception {
+        FeedPage page = FeedPage.render(buildFeed(25), APPLICATION_ATOM_XML, true);
+
+        assertTrue(page.isGzipped());
+        byte[] gunzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(page.getBody(true))));
+        assertArrayEquals(page.getBody(false), gunzipped);
+        assertTrue(page.getBody(true).length < page.getBody(false).length);
+        assertFalse(page.getETag(true).equals(page.getETag(false)));
+    }
+
+    @Test
+    public void shouldMatchIfNoneMatch() {
+        FeedPage page = FeedPage.render(buildFeed(1), APPLICATION_JSON, false);
+        String etag = page.getETag(false);
+
+        assertTrue(page.matches(etag, false));
+        assertTrue(page.matches("\"other\", W/" + etag, false));
+        assertTrue(page.matches("*", false));
+        assertFalse(page.matches("\"other\"", false));
+        assertFalse(page.matches(null, false));
+    }
+}
@@ -101,6 +101,49 @@ public class PendingApprovalFilterTest {
         }
         assertEquals(existingPatient.getGender(), newPatient.getGender());
 
+        verify(approvalFieldService, Mockito.times(1)).getProperty(GENDER);
+    }
+
+    @Test
+    public void shouldNotChangePendingApprovalsOfExistingPatient() throws ParseException {
+        setUpApprovalFieldServiceFor(GENDER, "NA");
+        setUpApprovalFieldServiceFor(RELIGION, "NA");
+
+        PatientData existingPatient = buildPatientData();
+        existingPatient.setGender("M");
+        PatientData updateRequest = buildPatientData();
+        updateRequest.setGender("F");
+        existingPatient = pendingApprovalFilter.filter(existingPatient, updateRequest);
+
+        updateRequest = buildPatientData();
+        updateRequest.setGender("O");
+        updateRequest.setReligion("2");
+        PatientData newPatient = pendingApprovalFilter.filter(existingPatient, updateRequest);
+
+        assertEquals(2, newPatient.getPendingApprovals().size());
+        assertEquals(2, newPatient.getPendingApprovals().first().getFieldDetails().size());
+        TreeSet<PendingApproval> existingApprovals = existingPatient.getPendingApprovals();
+        assertEquals(1, existingApprovals.size());
+        assertEquals(1, existingApprovals.first().getFieldDetails().size());
+        assertEquals("F", existingApprovals.first().getFieldDetails().firstEntry().getValue().getValue());
+    }
+
+    @Test
+    public void shouldApplyChangedApprovalFieldsOnlyAfterRefresh() throws ParseException {
+        setUpApprovalFieldServiceFor(GENDER, "NA");
+        PatientData existingPatient = buildPatientData();
+        existingPatient.setGender("M");
+        PatientData updateRequest = buildPatientData();
+        updateRequest.setGender("F");
+
+        assertEquals("M", pendingApprovalFilter.filter(existingPatient, updateRequest).getGender());
+
+        setUpApprovalFieldServiceFor(GENDER, null);
+        assertEquals("M", pendingApprovalFilter.filter(existingPatient, updateRequest).getGender());
+
+        pendingApprovalFilter.refresh();
+        assertEquals("F", pendingApprovalFilter.filter(existingPatient, updateRequest).getGender());
+        verify(approvalFieldService).evictCachedProperties();
         verify(approvalFieldService, Mockito.times(2)).getProperty(GENDER);
     }
 
@@ -305,7 +348,7 @@ public class PendingApprovalFilterTest {
         assertTrue(containsRelationFieldDetails(fieldDetailsMap, "SPS", "Mehzabin"));
         assertTrue(containsRelationFieldDetails(fieldDetailsMap, "FTH", "Kareem"));
 
-        verify(approvalFieldService, Mockito.times(2)).getProperty(RELATIONS);
+        verify(approvalFieldService, Mockito.times(1)).getProperty(RELATIONS);
     }
 
     @Test
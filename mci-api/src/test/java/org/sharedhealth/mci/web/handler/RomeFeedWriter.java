@@ -0,0 +1,129 @@
+package org.sharedhealth.mci.web.handler;
+
+import com.sun.syndication.feed.atom.*;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.WireFeedOutput;
+import org.apache.commons.lang3.StringUtils;
+import org.sharedhealth.mci.web.mapper.Feed;
+import org.sharedhealth.mci.web.mapper.FeedEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.sharedhealth.mci.domain.util.DateUtil.ISO_DATE_TIME_TILL_MILLIS_FORMAT1;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+import static org.sharedhealth.mci.web.handler.AtomFeedWriter.*;
+
+/**
+ * The ROME mapping FeedMessageConverter used before AtomFeedWriter, kept as the reference the streamed Atom is
+ * compared against.
+ */
+class RomeFeedWriter {
+
+    void write(Feed feed, String feedId, Writer writer) throws IOException, FeedException {
+        com.sun.syndication.feed.atom.Feed atomFeed = mapToWireFeed(feed);
+        atomFeed.setId(feedId);
+        new WireFeedOutput().output(atomFeed, writer);
+    }
+
+    private com.sun.syndication.feed.atom.Feed mapToWireFeed(Feed feed) {
+        com.sun.syndication.feed.atom.Feed atomFeed = new com.sun.syndication.feed.atom.Feed();
+        atomFeed.setFeedType("atom_1.0");
+        atomFeed.setGenerator(getGenerator());
+        atomFeed.setAuthors(mapAuthors(feed));
+        atomFeed.setAlternateLinks(mapLinks(feed));
+        atomFeed.setTitle(feed.getTitle());
+        atomFeed.setEntries(mapEntries(feed));
+        atomFeed.setUpdated(getEarliestPostedEntry(feed));
+        return atomFeed;
+    }
+
+    private Date getEarliestPostedEntry(Feed feed) {
+        try {
+            if (feed.getEntries().isEmpty())
+                return null;
+            return new SimpleDateFormat(ISO_DATE_TIME_TILL_MILLIS_FORMAT1).parse(feed.getEntries().get(0)
+                    .getPublishedDate());
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private Generator getGenerator() {
+        Generator generator = new Generator();
+        generator.setUrl("https://github.com/ICT4H/atomfeed");
+        generator.setValue("Atomfeed");
+        return generator;
+    }
+
+    private List<Link> mapLinks(Feed feed) {
+        List<Link> links = new ArrayList<>();
+        if (!StringUtils.isBlank(feed.getNextUrl())) {
+            links.add(getLink(feed.getNextUrl(), "next-archive", ATOM_MEDIA_TYPE));
+        }
+        if (!StringUtils.isBlank(feed.getPrevUrl())) {
+            links.add(getLink(feed.getPrevUrl(), "prev-archive", ATOM_MEDIA_TYPE));
+        }
+        links.add(getLink(feed.getFeedUrl(), LINK_TYPE_SELF, ATOM_MEDIA_TYPE));
+        links.add(getLink(feed.getFeedUrl(), LINK_TYPE_VIA, ATOM_MEDIA_TYPE));
+        return links;
+    }
+
+    private List<Person> mapAuthors(Feed feed) {
+        Person person = new Person();
+        person.setName(feed.getAuthor());
+        return Arrays.asList(person);
+    }
+
+    private List<Entry> mapEntries(Feed feed) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        for (FeedEntry feedEntry : feed.getEntries()) {
+            Entry entry = new Entry();
+            entry.setId(feedEntry.getId().toString());
+            entry.setTitle(feedEntry.getTitle());
+            entry.setContents(generateContents(feedEntry));
+
+            Date publishedDate = null;
+            try {
+                publishedDate = new SimpleDateFormat(ISO_DATE_TIME_TILL_MILLIS_FORMAT1).parse(feedEntry
+                        .getPublishedDate());
+            } catch (ParseException e) {
+                publishedDate = null;
+            }
+            entry.setPublished(publishedDate);
+            entry.setAlternateLinks(Arrays.asList(getLink(feedEntry.getLink(), LINK_TYPE_VIA, APPLICATION_XML)));
+            entry.setCategories(getCategories(feedEntry));
+
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private List<Category> getCategories(FeedEntry feedEntry) {
+        ArrayList<Category> categories = new ArrayList<>();
+        for (String categoryTerm : feedEntry.getCategories()) {
+            Category category = new Category();
+            category.setTerm(categoryTerm);
+            categories.add(category);
+        }
+        return categories;
+    }
+
+    private List<Content> generateContents(FeedEntry feedEntry) {
+        Content content = new Content();
+        content.setType(ATOMFEED_MEDIA_TYPE);
+        content.setValue(String.format("%s%s%s", "<![CDATA[", writeValueAsString(feedEntry.getContent()), "]]>"));
+        return Arrays.asList(content);
+    }
+
+    private Link getLink(String href, String rel, String type) {
+        Link link = new Link();
+        link.setHref(href);
+        link.setRel(rel);
+        link.setType(type);
+        return link;
+    }
+}
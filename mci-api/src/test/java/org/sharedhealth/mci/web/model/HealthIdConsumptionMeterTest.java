@@ -0,0 +1,40 @@
+package org.sharedhealth.mci.web.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HealthIdConsumptionMeterTest {
+
+    @Test
+    public void shouldConvergeToTheRateHealthIdsAreTakenAt() {
+        HealthIdConsumptionMeter meter = new HealthIdConsumptionMeter();
+        long taken = 0;
+        for (long millis = 0; millis <= 600000; millis += 10000) {
+            meter.sample(taken, millis);
+            taken += 50;
+        }
+        assertEquals(5.0, meter.getRate(), 0.05);
+    }
+
+    @Test
+    public void shouldDecayOnceHealthIdsAreNoLongerTaken() {
+        HealthIdConsumptionMeter meter = new HealthIdConsumptionMeter();
+        meter.sample(0, 0);
+        meter.sample(600, 60000);
+        double rate = meter.getRate();
+
+        meter.sample(600, 120000);
+        assertTrue(meter.getRate() < rate / 2);
+    }
+
+    @Test
+    public void shouldAverageFetchTimes() {
+        HealthIdConsumptionMeter meter = new HealthIdConsumptionMeter();
+        meter.recordFetch(1000);
+        assertEquals(1.0, meter.getFetchSeconds(), 0.0001);
+        meter.recordFetch(2000);
+        assertEquals(1.3, meter.getFetchSeconds(), 0.0001);
+    }
+}
@@ -0,0 +1,142 @@
+package org.sharedhealth.mci.web.model;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class HealthIdJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private HealthIdJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "available_hids.txt");
+        journal = HealthIdJournal.open(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void shouldTakeHealthIdsInTheOrderTheyWereAppended() throws Exception {
+        journal.append(asList("98000000001", "98000000002"));
+        journal.append(asList("98000000003"));
+
+        assertEquals(3, journal.size());
+        assertEquals("98000000001", journal.take());
+        assertEquals("98000000002", journal.take());
+        assertEquals("98000000003", journal.take());
+        assertNull(journal.take());
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void shouldNotReissueHealthIdsTakenBeforeReopening() throws Exception {
+        journal.append(asList("98000000001", "98000000002", "98000000003"));
+        journal.take();
+        journal.close();
+
+        journal = HealthIdJournal.open(file);
+        assertEquals(asList("98000000002", "98000000003"), journal.getAll());
+        assertEquals("98000000002", journal.take());
+    }
+
+    @Test
+    public void shouldNotReissueHealthIdsTakenConcurrently() throws Exception {
+        List<String> healthIds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            healthIds.add(String.valueOf(98000000000L + i));
+        }
+        journal.append(healthIds);
+        final Set<String> taken = Collections.synchronizedSet(new HashSet<String>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 25; j++) {
+                        taken.add(journal.take());
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.close();
+
+        journal = HealthIdJournal.open(file);
+        assertEquals(100, taken.size());
+        assertEquals(healthIds.subList(100, 200), journal.getAll());
+    }
+
+    @Test
+    public void shouldGrowBeyondItsInitialCapacity() throws Exception {
+        List<String> healthIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            healthIds.add(String.valueOf(98000000000L + i));
+        }
+        journal.append(healthIds.subList(0, 10));
+        journal.append(healthIds.subList(10, 1000));
+
+        assertEquals(healthIds, HealthIdJournal.read(file));
+    }
+
+    @Test
+    public void shouldDrainAndSeal() throws Exception {
+        journal.append(asList("98000000001", "98000000002", "98000000003"));
+        journal.take();
+
+        assertEquals(asList("98000000002", "98000000003"), journal.drain());
+        assertTrue(journal.isSealed());
+        assertNull(journal.take());
+        assertEquals(asList("98000000002", "98000000003"), HealthIdJournal.read(file));
+    }
+
+    @Test
+    public void shouldNeedCompactionOnceAsManyHealthIdsAreTakenAsLeft() throws Exception {
+        journal.append(asList("98000000001", "98000000002", "98000000003", "98000000004"));
+        journal.take();
+        assertFalse(journal.needsCompaction(1));
+        journal.take();
+        assertTrue(journal.needsCompaction(1));
+        assertFalse(journal.needsCompaction(3));
+    }
+
+    @Test
+    public void shouldTellJournalFromHealthIdList() throws Exception {
+        File list = folder.newFile("hids.txt");
+        IOUtils.writeLines(asList("98000000001", "98000000002"), IOUtils.LINE_SEPARATOR_UNIX, new FileOutputStream(list), "UTF-8");
+
+        assertTrue(HealthIdJournal.isJournal(file));
+        assertFalse(HealthIdJournal.isJournal(list));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectHealthIdsLongerThanARecord() throws Exception {
+        journal.append(asList("98000000001980000000019800000000198000000001"));
+    }
+}
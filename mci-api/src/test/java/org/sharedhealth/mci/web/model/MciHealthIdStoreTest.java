@@ -0,0 +1,66 @@
+package org.sharedhealth.mci.web.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class MciHealthIdStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MciHealthIdStore store;
+    private AtomicInteger lowWatermarkEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new MciHealthIdStore();
+        store.open(new File(folder.getRoot(), "available_hids.txt"));
+        lowWatermarkEvents = new AtomicInteger();
+        store.setLowWatermark(2);
+        store.setLowWatermarkListener(new Runnable() {
+            @Override
+            public void run() {
+                lowWatermarkEvents.incrementAndGet();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void shouldCallListenerOnceTakesReachTheLowWatermark() {
+        store.addMciHealthIds(asList("98000000001", "98000000002", "98000000003", "98000000004"));
+
+        store.getNextHealthId();
+        assertEquals(0, lowWatermarkEvents.get());
+        store.getNextHealthId();
+        assertEquals(1, lowWatermarkEvents.get());
+        store.getNextHealthIds(5);
+        assertEquals(2, lowWatermarkEvents.get());
+        assertEquals(4, store.getTakenCount());
+    }
+
+    @Test
+    public void shouldCallListenerWhenRunOut() {
+        try {
+            store.getNextHealthId();
+        } catch (NoSuchElementException expected) {
+            assertEquals(1, lowWatermarkEvents.get());
+            return;
+        }
+        throw new AssertionError("a health id was taken from an empty store");
+    }
+}
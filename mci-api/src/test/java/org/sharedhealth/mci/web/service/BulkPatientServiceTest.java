@@ -0,0 +1,158 @@
+package org.sharedhealth.mci.web.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.model.MCIResponse;
+import org.sharedhealth.mci.domain.model.PatientData;
+import org.sharedhealth.mci.web.infrastructure.security.UserInfo;
+import org.sharedhealth.mci.web.infrastructure.security.UserProfile;
+import org.sharedhealth.mci.web.mapper.BulkItemResponse;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.sharedhealth.mci.web.infrastructure.security.UserInfo.HRM_MCI_USER_GROUP;
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.CREATED;
+
+public class BulkPatientServiceTest {
+
+    @Mock
+    private PatientService patientService;
+    @Mock
+    private Validator validator;
+    @Mock
+    private MCIProperties mciProperties;
+
+    private BulkPatientService bulkPatientService;
+    private UserInfo userInfo;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(mciProperties.getBulkRegistrationChunkSize()).thenReturn(2);
+        when(patientService.createPatientsForMCI(anyList())).thenAnswer(new Answer<List<MCIResponse>>() {
+            @Override
+            public List<MCIResponse> answer(InvocationOnMock invocation) throws Throwable {
+                List<MCIResponse> responses = new ArrayList<>();
+                for (Object patient : (List) invocation.getArguments()[0]) {
+                    responses.add(new MCIResponse("hid-" + ((PatientData) patient).getGivenName(), CREATED));
+                }
+                return responses;
+            }
+        });
+        bulkPatientService = new BulkPatientService(patientService, validator, mciProperties);
+        UserProfile userProfile = new UserProfile("facility", "100067", null);
+        userInfo = new UserInfo("102", "ABC", "abc@mail", 1, true, "111100", asList(HRM_MCI_USER_GROUP), asList(userProfile));
+    }
+
+    @After
+    public void tearDown() {
+        bulkPatientService.shutdown();
+    }
+
+    @Test
+    public void shouldCreatePatientsFromLinesInChunks() throws Exception {
+        String request = "{\"given_name\":\"1\"}\n{\"given_name\":\"2\"}\n{\"given_name\":\"3\"}\n";
+
+        List<JsonNode> results = createPatients(request);
+
+        assertEquals(3, results.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertEquals(201, results.get(i).get("http_status").asInt());
+            assertEquals("hid-" + (i + 1), results.get(i).get("id").asText());
+        }
+        verify(patientService, times(2)).createPatientsForMCI(anyList());
+    }
+
+    @Test
+    public void shouldReportInvalidPatientsAndCreateTheOthers() throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                PatientData patient = (PatientData) invocation.getArguments()[0];
+                if ("bad".equals(patient.getGivenName())) {
+                    ((Errors) invocation.getArguments()[1]).rejectValue("givenName", "invalid", "1002");
+                }
+                return null;
+            }
+        }).when(validator).validate(any(), any(Errors.class));
+        String request = "[{\"given_name\":\"1\"}, {\"given_name\":\"bad\"}, {\"given_name\":\"3\", \"merged_with\":\"hid\"}]";
+
+        List<JsonNode> results = createPatients(request);
+
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(0).get("index").asInt());
+        assertEquals(400, results.get(0).get("http_status").asInt());
+        assertEquals(1002, results.get(0).get("errors").get(0).get("code").asInt());
+        assertEquals(0, results.get(1).get("index").asInt());
+        assertEquals("hid-1", results.get(1).get("id").asText());
+        assertEquals(2, results.get(2).get("index").asInt());
+        assertEquals(400, results.get(2).get("http_status").asInt());
+        verify(patientService, times(1)).createPatientsForMCI(anyList());
+    }
+
+    @Test
+    public void shouldStopAtInvalidJson() throws Exception {
+        String request = "{\"given_name\":\"1\"}\n{\"unknown\":\"2\"}\n{\"given_name\":\"3\"}\n";
+
+        List<JsonNode> results = createPatients(request);
+
+        assertEquals(2, results.size());
+        assertEquals("hid-1", results.get(0).get("id").asText());
+        assertEquals(1, results.get(1).get("index").asInt());
+        assertEquals("invalid.json", results.get(1).get("message").asText());
+    }
+
+    @Test
+    public void shouldUpdateValidPatientsAndReportOthersInRequestOrder() throws Exception {
+        PatientData withoutHid = new PatientData();
+        PatientData merge = new PatientData();
+        merge.setHealthId("hid-2");
+        merge.setMergedWith("hid-3");
+        PatientData valid = new PatientData();
+        valid.setHealthId("hid-1");
+        when(patientService.updateAll(asList(valid))).thenReturn(asList(new MCIResponse("hid-1", ACCEPTED)));
+
+        List<BulkItemResponse> results = bulkPatientService.updatePatients(asList(withoutHid, merge, valid),
+                userInfo.getProperties());
+
+        assertEquals(3, results.size());
+        assertEquals(400, results.get(0).getHttpStatus());
+        assertEquals(400, results.get(1).getHttpStatus());
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(202, results.get(2).getHttpStatus());
+        assertEquals("hid-1", results.get(2).getId());
+        assertEquals("100067", valid.getRequester().getFacility().getId());
+    }
+
+    private List<JsonNode> createPatients(String request) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkPatientService.createPatients(new ByteArrayInputStream(request.getBytes("UTF-8")), userInfo.getProperties(), out);
+
+        List<JsonNode> results = new ArrayList<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (String line : out.toString("UTF-8").split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+}
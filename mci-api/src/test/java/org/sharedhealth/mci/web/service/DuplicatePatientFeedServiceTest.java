@@ -1,21 +1,38 @@
 package org.sharedhealth.mci.web.service;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.sharedhealth.mci.deduplication.event.DuplicatePatientEventProcessor;
 import org.sharedhealth.mci.deduplication.event.DuplicatePatientEventProcessorFactory;
 import org.sharedhealth.mci.deduplication.service.DuplicatePatientFeedService;
+import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.model.PatientUpdateLog;
+import org.sharedhealth.mci.domain.model.PatientUpdateLogData;
 import org.sharedhealth.mci.domain.model.PatientUpdateLogMapper;
 import org.sharedhealth.mci.domain.repository.MarkerRepository;
 import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.sharedhealth.mci.domain.repository.PatientIdentityMap;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+import org.springframework.boot.actuate.metrics.Metric;
 
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -31,8 +48,10 @@ public class DuplicatePatientFeedServiceTest {
     @Mock
     private DuplicatePatientEventProcessorFactory eventProcessorFactory;
     @Mock
-    private DuplicatePatientEventProcessor eventProcessor;
+    private MCIProperties mciProperties;
     private PatientUpdateLogMapper patientUpdateLogMapper;
+    private RecordingEventProcessor eventProcessor;
+    private long eventTime;
 
     private DuplicatePatientFeedService feedService;
 
@@ -40,21 +59,134 @@ public class DuplicatePatientFeedServiceTest {
     public void setUp() throws Exception {
         initMocks(this);
         patientUpdateLogMapper = new PatientUpdateLogMapper();
-        feedService = new DuplicatePatientFeedService(feedRepository, markerRepository, eventProcessorFactory, patientUpdateLogMapper);
+        eventProcessor = new RecordingEventProcessor();
+        eventTime = System.currentTimeMillis() - 60000;
+        when(mciProperties.getDuplicatePatientFeedBatchSize()).thenReturn(10);
+        when(mciProperties.getDuplicatePatientFeedThreads()).thenReturn(4);
+        when(eventProcessorFactory.getEventProcessor(EVENT_TYPE_CREATED, null, null)).thenReturn(eventProcessor);
+        feedService = new DuplicatePatientFeedService(feedRepository, markerRepository, eventProcessorFactory,
+                patientUpdateLogMapper, new PatientIdentityMap(), mciProperties);
+    }
+
+    @After
+    public void tearDown() {
+        feedService.shutdown();
     }
 
     @Test
     public void shouldProcessCreateEventInFeed() {
-        PatientUpdateLog log = new PatientUpdateLog();
-        log.setHealthId("h100");
-        log.setEventType(EVENT_TYPE_CREATED);
-        log.setEventId(TimeUuidUtil.uuidForDate(new Date()));
+        PatientUpdateLog log = buildLog("h100");
         UUID marker = randomUUID();
         when(markerRepository.find(DUPLICATE_PATIENT_MARKER)).thenReturn(marker.toString());
-        when(feedRepository.findPatientUpdateLog(marker)).thenReturn(log);
-        when(eventProcessorFactory.getEventProcessor(log.getEventType(), log.getChangeSet())).thenReturn(eventProcessor);
+        when(feedRepository.findPatientsUpdatedSince(marker, 10)).thenReturn(asList(log));
+
+        feedService.processDuplicatePatients();
+        assertEquals(asList(patientUpdateLogMapper.map(log)), eventProcessor.processed);
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, log.getEventId().toString());
+    }
+
+    @Test
+    public void shouldProcessEventsOfAPatientInOrder() {
+        List<PatientUpdateLog> logs = new ArrayList<>();
+        List<PatientUpdateLogData> eventsOfH100 = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            PatientUpdateLog log = buildLog(i % 2 == 0 ? "h100" : "h" + (200 + i));
+            logs.add(log);
+            if (log.getHealthId().equals("h100")) {
+                eventsOfH100.add(patientUpdateLogMapper.map(log));
+            }
+        }
+        when(feedRepository.findPatientsUpdatedSince(null, 10)).thenReturn(logs);
+        when(feedRepository.findPatientsUpdatedSince(logs.get(9).getEventId(), 10))
+                .thenReturn(new ArrayList<PatientUpdateLog>());
 
         feedService.processDuplicatePatients();
-        verify(eventProcessor).process(patientUpdateLogMapper.map(log), log.getEventId());
+        assertEquals(10, eventProcessor.processed.size());
+        List<PatientUpdateLogData> processedOfH100 = new ArrayList<>();
+        for (PatientUpdateLogData data : eventProcessor.processed) {
+            if (data.getHealthId().equals("h100")) {
+                processedOfH100.add(data);
+            }
+        }
+        assertEquals(eventsOfH100, processedOfH100);
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, logs.get(9).getEventId().toString());
+    }
+
+    @Test
+    public void shouldHoldMarkerBeforeFailedEvent() {
+        PatientUpdateLog log1 = buildLog("h100");
+        PatientUpdateLog log2 = buildLog("h200");
+        PatientUpdateLog log3 = buildLog("h300");
+        eventProcessor.failingHealthId = "h200";
+        when(feedRepository.findPatientsUpdatedSince(null, 10)).thenReturn(asList(log1, log2, log3));
+
+        feedService.processDuplicatePatients();
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, log1.getEventId().toString());
+        verify(markerRepository, never()).save(DUPLICATE_PATIENT_MARKER, log3.getEventId().toString());
+        verify(feedRepository, never()).findPatientsUpdatedSince(log1.getEventId(), 10);
+        assertEquals(1, getMetric("dedup.events.failed").intValue());
+        assertTrue(getMetric("dedup.lag.seconds").doubleValue() >= 59);
+    }
+
+    @Test
+    public void shouldKeepReadingWhilePagesAreFull() {
+        when(mciProperties.getDuplicatePatientFeedBatchSize()).thenReturn(2);
+        PatientUpdateLog log1 = buildLog("h100");
+        PatientUpdateLog log2 = buildLog("h200");
+        PatientUpdateLog log3 = buildLog("h300");
+        when(feedRepository.findPatientsUpdatedSince(null, 2)).thenReturn(asList(log1, log2));
+        when(feedRepository.findPatientsUpdatedSince(log2.getEventId(), 2)).thenReturn(asList(log3));
+
+        feedService.processDuplicatePatients();
+        assertEquals(3, eventProcessor.processed.size());
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, log2.getEventId().toString());
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, log3.getEventId().toString());
+        verify(feedRepository, never()).findPatientsUpdatedSince(eq(log3.getEventId()), anyInt());
+        assertEquals(0, getMetric("dedup.lag.seconds").doubleValue(), 0);
+        assertEquals(3, getMetric("dedup.events.processed").intValue());
+    }
+
+    @Test
+    public void shouldSkipEventsNoProcessorIsInterestedIn() {
+        PatientUpdateLog log = buildLog("h100");
+        log.setEventType("unknown");
+        when(feedRepository.findPatientsUpdatedSince(null, 10)).thenReturn(asList(log));
+        when(eventProcessorFactory.getEventProcessor(anyString(), any(ByteBuffer.class), anyString())).thenReturn(null);
+
+        feedService.processDuplicatePatients();
+        assertEquals(0, eventProcessor.processed.size());
+        verify(markerRepository).save(DUPLICATE_PATIENT_MARKER, log.getEventId().toString());
+    }
+
+    private PatientUpdateLog buildLog(String healthId) {
+        PatientUpdateLog log = new PatientUpdateLog();
+        log.setHealthId(healthId);
+        log.setEventType(EVENT_TYPE_CREATED);
+        log.setEventId(TimeUuidUtil.uuidForDate(eventTime++));
+        return log;
+    }
+
+    private Number getMetric(String name) {
+        for (Metric<?> metric : feedService.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue();
+            }
+        }
+        throw new AssertionError(name + " is not reported");
+    }
+
+    private static class RecordingEventProcessor extends DuplicatePatientEventProcessor {
+        private final List<PatientUpdateLogData> processed = Collections.synchronizedList(
+                new ArrayList<PatientUpdateLogData>());
+        private volatile String failingHealthId;
+
+        @Override
+        public void process(PatientUpdateLogData log, UUID marker) {
+            assertNull(marker);
+            if (log.getHealthId().equals(failingHealthId)) {
+                throw new RuntimeException("Failed to find duplicates");
+            }
+            processed.add(log);
+        }
     }
-}
\ No newline at end of file
+}
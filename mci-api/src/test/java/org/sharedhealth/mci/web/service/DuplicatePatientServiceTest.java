@@ -62,12 +62,12 @@ public class DuplicatePatientServiceTest {
         Catchment catchment = new Catchment("102030");
         Address address = new Address("10", "20", "30");
         when(duplicatePatientRepository.findByCatchment(catchment, null, null, 25)).thenReturn(buildDuplicatePatients());
-        when(patientRepository.findByHealthId("99001")).thenReturn(buildPatientData("99001", "A1", "B1", address));
-        when(patientRepository.findByHealthId("99002")).thenReturn(buildPatientData("99002", "A2", "B2", address));
-        when(patientRepository.findByHealthId("99003")).thenReturn(buildPatientData("99003", "A3", "B3", address));
-        when(patientRepository.findByHealthId("99004")).thenReturn(buildPatientData("99004", "A4", "B4", address));
-        when(patientRepository.findByHealthId("99005")).thenReturn(buildPatientData("99005", "A5", "B5", address));
-        when(patientRepository.findByHealthId("99006")).thenReturn(buildPatientData("99006", "A6", "B6", address));
+        when(patientRepository.findSummaryByHealthId("99001")).thenReturn(buildPatientSummary("99001", "A1", "B1", address));
+        when(patientRepository.findSummaryByHealthId("99002")).thenReturn(buildPatientSummary("99002", "A2", "B2", address));
+        when(patientRepository.findSummaryByHealthId("99003")).thenReturn(buildPatientSummary("99003", "A3", "B3", address));
+        when(patientRepository.findSummaryByHealthId("99004")).thenReturn(buildPatientSummary("99004", "A4", "B4", address));
+        when(patientRepository.findSummaryByHealthId("99005")).thenReturn(buildPatientSummary("99005", "A5", "B5", address));
+        when(patientRepository.findSummaryByHealthId("99006")).thenReturn(buildPatientSummary("99006", "A6", "B6", address));
         List<DuplicatePatientData> duplicatePatientDataList = duplicatePatientService.findAllByCatchment(catchment, null, null, 25);
 
         assertTrue(isNotEmpty(duplicatePatientDataList));
@@ -90,6 +90,10 @@ public class DuplicatePatientServiceTest {
         return patientData;
     }
 
+    private PatientSummaryData buildPatientSummary(String healthId, String givenName, String surname, Address address) {
+        return new PatientMapper().mapSummary(buildPatientData(healthId, givenName, surname, address));
+    }
+
     private List<DuplicatePatient> buildDuplicatePatients() {
         List<DuplicatePatient> duplicatePatients = new ArrayList<>();
         duplicatePatients.add(new DuplicatePatient("A102030", "99001", "99002", asSet("nid", "phoneNo"), TimeUuidUtil.uuidForDate(new Date())));
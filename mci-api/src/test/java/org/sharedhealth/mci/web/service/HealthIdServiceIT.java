@@ -6,6 +6,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +14,7 @@ import org.sharedhealth.mci.domain.config.EnvironmentMock;
 import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.model.Patient;
 import org.sharedhealth.mci.web.launch.WebMvcConfig;
+import org.sharedhealth.mci.web.model.HealthIdJournal;
 import org.sharedhealth.mci.web.model.IdentityStore;
 import org.sharedhealth.mci.web.model.MciHealthIdStore;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,9 +25,9 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,22 +65,22 @@ public class HealthIdServiceIT {
     private final String SIGN_IN_PATH = "/signin";
     private final String MARK_USED_PATH = "/healthIds/markUsed/hid";
 
+    @Before
+    public void setUp() throws Exception {
+        // test contexts other than this one have stores of their own on the same file
+        mciHealthIdStore.open(new File(mciProperties.getHidLocalStoragePath()), Collections.<String>emptyList());
+    }
+
     @After
     public void tearDown() throws Exception {
         identityStore.clearIdentityToken();
         mciHealthIdStore.clear();
-        File file = new File(mciProperties.getHidLocalStoragePath());
-        if (file.exists()) {
-            file.delete();
-        }
-
     }
 
     @Test
     public void shouldGetNextHealthId() throws Exception {
         List<String> hidBlock = Lists.newArrayList("healthId1", "healthId2");
         mciHealthIdStore.addMciHealthIds(hidBlock);
-        writeHIDBlockToFile(hidBlock);
 
         String nextHealthId = healthIdService.getNextHealthId();
 
@@ -86,7 +88,8 @@ public class HealthIdServiceIT {
         assertEquals(1, mciHealthIdStore.noOfHIDsLeft());
         assertFalse(mciHealthIdStore.getAll().contains(nextHealthId));
         List<String> hids = readHIDsFromFile();
-        assertEquals(2, hids.size());
+        assertEquals(1, hids.size());
+        assertFalse(hids.contains(nextHealthId));
     }
 
     @Test
@@ -103,7 +106,6 @@ public class HealthIdServiceIT {
     @Test
     public void shouldAskHIDServiceForTheFirstEverStartup() throws Exception {
         assertThat(mciHealthIdStore.noOfHIDsLeft(), is(0));
-        assertFalse(new File(mciProperties.getHidLocalStoragePath()).exists());
 
         UUID token = UUID.randomUUID();
         String idpResponse = "{\"access_token\" : \"" + token.toString() + "\"}";
@@ -137,7 +139,6 @@ public class HealthIdServiceIT {
     public void shouldReplenishFromHIDServiceHIDCountReachesToThreshold() throws Exception {
         List<String> healthIdBlock = Lists.newArrayList("healthId1", "healthId2");
         mciHealthIdStore.addMciHealthIds(healthIdBlock);
-        writeHIDBlockToFile(healthIdBlock);
 
         UUID token = UUID.randomUUID();
         String idpResponse = "{\"access_token\" : \"" + token.toString() + "\"}";
@@ -197,6 +198,7 @@ public class HealthIdServiceIT {
         String healthId3 = "healthId3";
         String healthId4 = "healthId4";
         List<String> healthIdBlock = Lists.newArrayList(healthId1, healthId2, healthId3, healthId4);
+        mciHealthIdStore.close();
         writeHIDBlockToFile(healthIdBlock);
 
         Patient patient = new Patient();
@@ -212,6 +214,20 @@ public class HealthIdServiceIT {
 
         assertEquals(2, mciHealthIdStore.noOfHIDsLeft());
         assertTrue(Lists.newArrayList(healthId1, healthId4).containsAll(mciHealthIdStore.getAll()));
+        assertTrue(HealthIdJournal.isJournal(new File(mciProperties.getHidLocalStoragePath())));
+        assertEquals(asList(healthId1, healthId4), readHIDsFromFile());
+    }
+
+    @Test
+    public void shouldInitializeHealthIdStoreFromJournalWithoutHIDsTaken() throws Exception {
+        mciHealthIdStore.addMciHealthIds(asList("healthId1", "healthId2", "healthId3"));
+        String nextHealthId = healthIdService.getNextHealthId();
+        mciHealthIdStore.close();
+
+        healthIdService.populateHidStore();
+
+        assertEquals(2, mciHealthIdStore.noOfHIDsLeft());
+        assertFalse(mciHealthIdStore.getAll().contains(nextHealthId));
     }
 
     private void setUpMarkUsedStub(UUID token) {
@@ -281,7 +297,7 @@ public class HealthIdServiceIT {
     private List<String> readHIDsFromFile() throws IOException {
         File hidLocalStorageFile = new File(mciProperties.getHidLocalStoragePath());
         assertTrue(hidLocalStorageFile.exists());
-        return IOUtils.readLines(new FileInputStream(hidLocalStorageFile), "UTF-8");
+        return HealthIdJournal.read(hidLocalStorageFile);
     }
 
     private void writeHIDBlockToFile(List<String> healthIdBlock) throws IOException {
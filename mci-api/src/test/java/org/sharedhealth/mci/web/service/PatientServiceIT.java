@@ -517,6 +517,20 @@ public class PatientServiceIT extends BaseIntegrationTest {
         assertPendingApprovalMappings(healthId, data.getAddress(), pendingApprovals);
     }
 
+    @Test
+    public void shouldLogRejectedPendingApprovalsWithoutChangeSet() {
+        TestUtil.setupApprovalsConfig(cassandraOps);
+        Date since = new Date();
+
+        PatientData data = buildPatient();
+        String healthId = processPendingApprovalsWhenPatientHasOnePendingApprovalEachForMultipleFields(data, false);
+
+        List<PatientUpdateLog> patientUpdateLogs = feedRepository.findPatientsUpdatedSince(since, 25, null);
+        PatientUpdateLog rejectionLog = patientUpdateLogs.get(patientUpdateLogs.size() - 1);
+        assertEquals(healthId, rejectionLog.getHealthId());
+        assertEquals(EVENT_TYPE_PENDING_APPROVALS_UPDATED, rejectionLog.getEventType());
+        assertFalse(rejectionLog.hasChangeSet());
+    }
 
     @Test
     public void shouldBeAbleToAcceptPendingApprovalsWhenPatientHasMultiplePendingApprovalsForMultipleFields() throws Exception {
@@ -733,15 +747,20 @@ public class PatientServiceIT extends BaseIntegrationTest {
 
         patientService.update(updateRequest, healthId);
 
-        assertUpdateLogEntry(healthId, since, false);
+        List<PatientUpdateLog> patientUpdateLogs = feedRepository.findPatientsUpdatedSince(since, 25, null);
+        assertEquals(1, patientUpdateLogs.size());
+        assertEquals(healthId, patientUpdateLogs.get(0).getHealthId());
+        assertEquals(EVENT_TYPE_PENDING_APPROVALS_UPDATED, patientUpdateLogs.get(0).getEventType());
+        assertFalse(patientUpdateLogs.get(0).hasChangeSet());
 
         PatientData updatedPatient = patientRepository.findByHealthId(healthId);
         updateRequest.setRequester("Bahmni", "Dr. Monika");
         patientRepository.processPendingApprovals(updateRequest, updatedPatient, true);
 
-        List<PatientUpdateLog> patientUpdateLogs = feedRepository.findPatientsUpdatedSince(since, 1, null);
-        assertEquals(healthId, patientUpdateLogs.get(0).getHealthId());
-        assertEquals(writeValueAsString(new Requester("Bahmni", "Dr. Monika")), patientUpdateLogs.get(0).getApprovedBy());
+        patientUpdateLogs = feedRepository.findPatientsUpdatedSince(since, 25, null);
+        assertEquals(2, patientUpdateLogs.size());
+        assertEquals(healthId, patientUpdateLogs.get(1).getHealthId());
+        assertEquals(writeValueAsString(new Requester("Bahmni", "Dr. Monika")), patientUpdateLogs.get(1).getApprovedBy());
     }
 
     @Test
@@ -8,6 +8,8 @@ import org.mockito.Mock;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
 import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PatientWrite;
+import org.sharedhealth.mci.domain.service.ApprovalFieldService;
 import org.sharedhealth.mci.domain.service.PendingApprovalFilter;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.sharedhealth.mci.web.exception.InsufficientPrivilegeException;
@@ -20,6 +22,10 @@ import static java.util.Arrays.asList;
 import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
@@ -96,6 +102,43 @@ public class PatientServiceTest {
         verify(healthIdService, times(1)).putBackHealthId(hid);
     }
 
+    @Test
+    public void shouldCreatePatientsWithReservedHealthIdsAndPutBackUnused() throws Exception {
+        PatientData patient1 = new PatientData();
+        PatientData patient2 = new PatientData();
+        PatientData patient3 = new PatientData();
+        when(healthIdService.getNextHealthIds(3)).thenReturn(asList("hid-1", "hid-2"));
+        when(patientRepository.createAll(asList(patient1, patient2))).thenReturn(asList(
+                new MCIResponse("hid-1", HttpStatus.CREATED),
+                new MCIResponse("Can not create patient", HttpStatus.SERVICE_UNAVAILABLE)));
+
+        List<MCIResponse> responses = patientService.createPatientsForMCI(asList(patient1, patient2, patient3));
+
+        assertEquals("hid-1", patient1.getHealthId());
+        assertEquals("hid-2", patient2.getHealthId());
+        assertEquals(3, responses.size());
+        assertEquals(201, responses.get(0).getHttpStatus());
+        assertEquals(503, responses.get(1).getHttpStatus());
+        assertEquals(400, responses.get(2).getHttpStatus());
+        verify(healthIdService).putBackHealthIds(asList("hid-2"));
+        verify(healthIdService, never()).quarantineHealthIds(anyList());
+    }
+
+    @Test
+    public void shouldQuarantineHealthIdsOfWritesThatMayHaveBeenApplied() throws Exception {
+        PatientData patient1 = new PatientData();
+        PatientData patient2 = new PatientData();
+        when(healthIdService.getNextHealthIds(2)).thenReturn(asList("hid-1", "hid-2"));
+        when(patientRepository.createAll(asList(patient1, patient2))).thenReturn(asList(
+                new MCIResponse("Can not create patient", HttpStatus.INTERNAL_SERVER_ERROR),
+                new MCIResponse("Can not create patient", HttpStatus.SERVICE_UNAVAILABLE)));
+
+        patientService.createPatientsForMCI(asList(patient1, patient2));
+
+        verify(healthIdService).putBackHealthIds(asList("hid-2"));
+        verify(healthIdService).quarantineHealthIds(asList("hid-1"));
+    }
+
     @Test
     public void shouldCreatePatientForGivenOrganization() throws Exception {
         String clientId = "12345";
@@ -215,18 +258,18 @@ public class PatientServiceTest {
                 buildPendingApprovalMapping("hid-300"));
 
         when(patientRepository.findPendingApprovalMapping(catchment, after, null, 25)).thenReturn(mappings);
-        when(patientRepository.findByHealthId("hid-100")).thenReturn(buildPatient("hid-100"));
-        when(patientRepository.findByHealthId("hid-200")).thenReturn(buildPatient("hid-200"));
-        when(patientRepository.findByHealthId("hid-300")).thenReturn(buildPatient("hid-300"));
+        when(patientRepository.findSummaryByHealthId("hid-100")).thenReturn(buildPatientSummary("hid-100"));
+        when(patientRepository.findSummaryByHealthId("hid-200")).thenReturn(buildPatientSummary("hid-200"));
+        when(patientRepository.findSummaryByHealthId("hid-300")).thenReturn(buildPatientSummary("hid-300"));
         when(settingService.getSettingAsIntegerByKey("PER_PAGE_MAXIMUM_LIMIT")).thenReturn(25);
 
         List<PendingApprovalListResponse> pendingApprovals = patientService.findPendingApprovalList(catchment, after, null, 25);
 
         InOrder inOrder = inOrder(patientRepository);
         inOrder.verify(patientRepository).findPendingApprovalMapping(catchment, after, null, 25);
-        inOrder.verify(patientRepository).findByHealthId("hid-100");
-        inOrder.verify(patientRepository).findByHealthId("hid-200");
-        inOrder.verify(patientRepository).findByHealthId("hid-300");
+        inOrder.verify(patientRepository).findSummaryByHealthId("hid-100");
+        inOrder.verify(patientRepository).findSummaryByHealthId("hid-200");
+        inOrder.verify(patientRepository).findSummaryByHealthId("hid-300");
 
         assertNotNull(pendingApprovals);
         assertEquals(3, pendingApprovals.size());
@@ -344,6 +387,105 @@ public class PatientServiceTest {
         verify(patientRepository).processPendingApprovals(patient, existingPatient, true);
     }
 
+    @Test
+    public void shouldUpdatePatientsInBulkAndReportEachFailure() throws Exception {
+        PatientData update = new PatientData();
+        update.setHealthId("hid-1");
+        update.setGivenName("Happy Rotter");
+        PatientData missing = new PatientData();
+        missing.setHealthId("hid-2");
+        PatientData repeated = new PatientData();
+        repeated.setHealthId("hid-1");
+
+        PatientData existingPatient = new PatientData();
+        existingPatient.setHealthId("hid-1");
+        existingPatient.setGivenName("Harry Potter");
+        PatientLoadResult loadResult = new PatientLoadResult();
+        loadResult.addPatient("hid-1", existingPatient);
+        loadResult.addFailure("hid-2", PatientLoadResult.NOT_FOUND);
+        when(patientRepository.findAllByHealthIds(anyCollection())).thenReturn(loadResult);
+        when(pendingApprovalFilter.filter(existingPatient, update)).thenReturn(update);
+        PatientWrite write = new PatientWrite("hid-1");
+        when(patientRepository.buildUpdateWrite(eq(update), eq(existingPatient), any(Requester.class), anyMap())).thenReturn(write);
+        when(patientRepository.writeAll(asList(write))).thenReturn(Arrays.<RuntimeException>asList((RuntimeException) null));
+
+        List<MCIResponse> responses = patientService.updateAll(asList(update, missing, repeated));
+
+        assertEquals(3, responses.size());
+        assertEquals("hid-1", responses.get(0).getId());
+        assertEquals(HttpStatus.ACCEPTED.value(), responses.get(0).getHttpStatus());
+        assertEquals(HttpStatus.NOT_FOUND.value(), responses.get(1).getHttpStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), responses.get(2).getHttpStatus());
+        verify(patientRepository, never()).findPendingApprovalMappings(anyCollection());
+    }
+
+    @Test
+    public void shouldWriteApprovalOnlyUpdateInBulkForPatientWithPendingApprovals() throws Exception {
+        ApprovalFieldService approvalFieldService = mock(ApprovalFieldService.class);
+        when(approvalFieldService.getProperty(GIVEN_NAME)).thenReturn("NA");
+        patientService = new PatientService(patientRepository, feedRepository, settingService, healthIdService,
+                new PendingApprovalFilter(approvalFieldService));
+
+        PatientData update = new PatientData();
+        update.setHealthId("hid-1");
+        update.setGivenName("Happy Rotter");
+        PatientData existingPatient = new PatientData();
+        existingPatient.setHealthId("hid-1");
+        existingPatient.setGivenName("Harry Potter");
+        TreeSet<PendingApproval> pendingApprovals = new TreeSet<>();
+        pendingApprovals.add(buildPendingApproval(GIVEN_NAME, "Ron Weasley"));
+        existingPatient.setPendingApprovals(pendingApprovals);
+        PatientLoadResult loadResult = new PatientLoadResult();
+        loadResult.addPatient("hid-1", existingPatient);
+        when(patientRepository.findAllByHealthIds(anyCollection())).thenReturn(loadResult);
+        PatientWrite write = new PatientWrite("hid-1");
+        when(patientRepository.buildUpdateWrite(any(PatientData.class), eq(existingPatient), any(Requester.class), anyMap()))
+                .thenReturn(write);
+        when(patientRepository.writeAll(asList(write))).thenReturn(Arrays.<RuntimeException>asList((RuntimeException) null));
+
+        List<MCIResponse> responses = patientService.updateAll(asList(update));
+
+        assertEquals(HttpStatus.ACCEPTED.value(), responses.get(0).getHttpStatus());
+        verify(patientRepository).writeAll(asList(write));
+        assertEquals(1, existingPatient.getPendingApprovals().first().getFieldDetails().size());
+    }
+
+    @Test
+    public void shouldProcessPendingApprovalsInBulkWithSharedMappingReads() throws Exception {
+        Address address = new Address("1", "2", "3");
+        PatientData decision = new PatientData();
+        decision.setHealthId("hid-100");
+        decision.setGivenName("Happy Rotter");
+        PatientData otherCatchment = new PatientData();
+        otherCatchment.setHealthId("hid-200");
+
+        PatientData existingPatient = new PatientData();
+        TreeSet<PendingApproval> pendingApprovals = new TreeSet<>();
+        pendingApprovals.add(buildPendingApproval(GIVEN_NAME, "Happy Rotter"));
+        existingPatient.setPendingApprovals(pendingApprovals);
+        existingPatient.setAddress(address);
+        PatientData existingOther = new PatientData();
+        existingOther.setAddress(new Address("10", "20", "30"));
+        PatientLoadResult loadResult = new PatientLoadResult();
+        loadResult.addPatient("hid-100", existingPatient);
+        loadResult.addPatient("hid-200", existingOther);
+        when(patientRepository.findAllByHealthIds(anyCollection())).thenReturn(loadResult);
+
+        Map<String, List<PendingApprovalMapping>> mappings = new HashMap<>();
+        when(patientRepository.findPendingApprovalMappings(new HashSet<>(asList("hid-100")))).thenReturn(mappings);
+        PatientWrite write = new PatientWrite("hid-100");
+        when(patientRepository.buildPendingApprovalsWrite(decision, existingPatient, true, mappings)).thenReturn(write);
+        when(patientRepository.writeAll(asList(write))).thenReturn(Arrays.<RuntimeException>asList((RuntimeException) null));
+
+        List<MCIResponse> responses = patientService.processPendingApprovals(asList(decision, otherCatchment),
+                new Catchment("1", "2", "3"), true);
+
+        assertEquals("hid-100", responses.get(0).getId());
+        assertEquals(HttpStatus.ACCEPTED.value(), responses.get(0).getHttpStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), responses.get(1).getHttpStatus());
+        verify(patientRepository).findPendingApprovalMappings(new HashSet<>(asList("hid-100")));
+    }
+
     @Test(expected = InsufficientPrivilegeException.class)
     public void shouldNotProcessPendingApprovalsThatDoesNotBelongToGivenCatchment() {
         PatientData patient = new PatientData();
@@ -514,6 +656,14 @@ public class PatientServiceTest {
         return patient;
     }
 
+    private PatientSummaryData buildPatientSummary(String healthId) {
+        PatientSummaryData patient = new PatientSummaryData();
+        patient.setHealthId(healthId);
+        patient.setGivenName("Scott-" + healthId);
+        patient.setSurName("Tiger-" + healthId);
+        return patient;
+    }
+
     private TreeSet<PendingApproval> buildPendingApprovalRequestMap(List<UUID> uuids, PhoneNumber phoneNumber, Address address) {
         TreeSet<PendingApproval> pendingApprovals = new TreeSet<>();
         pendingApprovals.add(buildPendingApprovalField(GIVEN_NAME, "Harry", uuids));
@@ -15,8 +15,10 @@ public class DuplicatePatientCreateEventProcessor extends DuplicatePatientEventP
     public void process(PatientUpdateLogData log, UUID marker) {
         List<DuplicatePatient> duplicates = buildDuplicates(log.getHealthId());
         DuplicatePatientRepository duplicatePatientRepository = getDuplicatePatientRepository();
-        duplicates = filterPersistentDuplicates(duplicatePatientRepository, duplicates);
-        duplicatePatientRepository.create(duplicates, marker);
+        synchronized (WRITE_LOCK) {
+            duplicates = filterPersistentDuplicates(duplicatePatientRepository, duplicates);
+            duplicatePatientRepository.create(duplicates, marker);
+        }
     }
 
 
@@ -19,11 +19,21 @@ public abstract class DuplicatePatientEventProcessor {
 
     private static final String ALPHABETS = "[A-Za-z]";
 
+    /**
+     * Events of different patients are processed concurrently, and a duplicate found for one patient is found for the
+     * other one as well, so duplicates are checked against the persisted ones and written by one event at a time.
+     */
+    protected static final Object WRITE_LOCK = new Object();
+
     private DuplicatePatientRuleEngine ruleEngine;
     private DuplicatePatientMapper mapper;
     private PatientRepository patientRepository;
     private DuplicatePatientRepository duplicatePatientRepository;
 
+    /**
+     * @param marker the event to record as the duplicate patient marker with the duplicates, or null when the caller
+     *               records the marker.
+     */
     public abstract void process(PatientUpdateLogData log, UUID marker);
 
     public List<DuplicatePatient> buildDuplicates(String healthId) {
@@ -1,9 +1,9 @@
 package org.sharedhealth.mci.deduplication.event;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import static java.lang.Boolean.FALSE;
@@ -11,7 +11,7 @@ import static java.lang.Boolean.TRUE;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_CREATED;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_UPDATED;
-import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.readField;
 
 @Component
 public class DuplicatePatientEventProcessorFactory {
@@ -30,15 +30,20 @@ public class DuplicatePatientEventProcessorFactory {
     }
 
     public DuplicatePatientEventProcessor getEventProcessor(String eventType, String changeSet) {
+        return getEventProcessor(eventType, null, changeSet);
+    }
+
+    /**
+     * Takes the change set as the update log keeps it: as a blob, as JSON, or both.
+     */
+    public DuplicatePatientEventProcessor getEventProcessor(String eventType, ByteBuffer encodedChangeSet,
+                                                            String changeSet) {
         if (EVENT_TYPE_CREATED.equals(eventType)) {
             return createEventProcessor;
         }
 
         if (EVENT_TYPE_UPDATED.equals(eventType)) {
-            Map<String, Map<String, Object>> changeSetMap = readValue(changeSet,
-                    new TypeReference<Map<String, Map<String, Object>>>() {
-                    });
-            Map<String, Object> activeField = changeSetMap.get(ACTIVE);
+            Map<String, Object> activeField = readField(encodedChangeSet, changeSet, ACTIVE, Map.class);
             if (isActiveFieldRetired(activeField)) {
                 return retireEventProcessor;
             }
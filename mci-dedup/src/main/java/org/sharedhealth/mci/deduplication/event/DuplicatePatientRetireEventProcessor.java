@@ -10,6 +10,8 @@ public class DuplicatePatientRetireEventProcessor extends DuplicatePatientEventP
 
     @Override
     public void process(PatientUpdateLogData log, UUID marker) {
-        getDuplicatePatientRepository().retire(log.getHealthId(), marker);
+        synchronized (WRITE_LOCK) {
+            getDuplicatePatientRepository().retire(log.getHealthId(), marker);
+        }
     }
 }
@@ -14,6 +14,8 @@ public class DuplicatePatientUpdateEventProcessor extends DuplicatePatientEventP
     public void process(PatientUpdateLogData log, UUID marker) {
         String healthId = log.getHealthId();
         List<DuplicatePatient> duplicates = buildDuplicates(healthId);
-        getDuplicatePatientRepository().update(healthId, log.getOldCatchmentFromChangeSet(), duplicates, marker);
+        synchronized (WRITE_LOCK) {
+            getDuplicatePatientRepository().update(healthId, log.getOldCatchmentFromChangeSet(), duplicates, marker);
+        }
     }
 }
@@ -87,7 +87,6 @@ public class DuplicatePatientMapper {
     }
 
     private PatientSummaryData buildPatientSummary(String healthId) {
-        PatientData patient = patientRepository.findByHealthId(healthId);
-        return patientMapper.mapSummary(patient);
+        return patientRepository.findSummaryByHealthId(healthId);
     }
 }
@@ -1,6 +1,7 @@
 package org.sharedhealth.mci.deduplication.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Select;
 import org.sharedhealth.mci.deduplication.model.DuplicatePatient;
@@ -19,6 +20,9 @@ import static org.springframework.data.cassandra.core.CassandraTemplate.createIn
 
 public class DuplicatePatientQueryBuilder {
 
+    static final RegularStatement PAGE_BY_CATCHMENT_STMT = select().from(CF_PATIENT_DUPLICATE)
+            .where(eq(CATCHMENT_ID, bindMarker()));
+
     public static String buildFindByCatchmentStmt(Catchment catchment, UUID after, UUID before, int limit) {
         Select.Where where = select().from(CF_PATIENT_DUPLICATE).where(eq(CATCHMENT_ID, catchment.getId()));
 
@@ -49,7 +53,7 @@ public class DuplicatePatientQueryBuilder {
     }
 
     public static void buildDeleteDuplicatesStmt(List<DuplicatePatient> duplicates, CassandraConverter converter,
-                                                 Batch batch, long timestamp) {
+                                                 BatchStatement batch, long timestamp) {
         for (DuplicatePatient duplicate : duplicates) {
             Delete deleteQuery = createDeleteQuery(CF_PATIENT_DUPLICATE, duplicate, null, converter);
             deleteQuery.using(timestamp(timestamp));
@@ -58,7 +62,7 @@ public class DuplicatePatientQueryBuilder {
     }
 
     public static void buildCreateIgnoreDuplicatesStmt(String healthId1, String healthId2, Set<String> reasons,
-                                                       CassandraConverter converter, Batch batch) {
+                                                       CassandraConverter converter, BatchStatement batch) {
         DuplicatePatientIgnored duplicateIgnorePatient1 = new DuplicatePatientIgnored(healthId1, healthId2, reasons);
         DuplicatePatientIgnored duplicateIgnorePatient2 = new DuplicatePatientIgnored(healthId2, healthId1, reasons);
         batch.add(createInsertQuery(CF_PATIENT_DUPLICATE_IGNORED, duplicateIgnorePatient1, null, converter));
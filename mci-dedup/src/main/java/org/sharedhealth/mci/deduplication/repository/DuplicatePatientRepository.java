@@ -1,14 +1,16 @@
 package org.sharedhealth.mci.deduplication.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.querybuilder.Insert;
 import org.apache.commons.lang3.builder.Diff;
 import org.sharedhealth.mci.deduplication.model.DuplicatePatient;
 import org.sharedhealth.mci.deduplication.model.DuplicatePatientIgnored;
 import org.sharedhealth.mci.domain.model.Catchment;
+import org.sharedhealth.mci.domain.model.CursorPage;
 import org.sharedhealth.mci.domain.model.PatientData;
 import org.sharedhealth.mci.domain.repository.BaseRepository;
 import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PreparedStatementRegistry;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -18,7 +20,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.*;
 
-import static com.datastax.driver.core.querybuilder.QueryBuilder.batch;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.timestamp;
 import static java.lang.String.format;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
@@ -27,7 +28,6 @@ import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_PATIEN
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.DUPLICATE_PATIENT_MARKER;
 import static org.sharedhealth.mci.domain.repository.MarkerRepositoryQueryBuilder.buildUpdateMarkerBatch;
 import static org.slf4j.LoggerFactory.getLogger;
-import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertBatchQuery;
 import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
 
 @Component
@@ -37,12 +37,15 @@ public class DuplicatePatientRepository extends BaseRepository {
     public static final int BATCH_QUERY_EXEC_DELAY = 100;
 
     private PatientRepository patientRepository;
+    private PreparedStatementRegistry statements;
 
     @Autowired
     public DuplicatePatientRepository(PatientRepository patientRepository,
-                                      @Qualifier("MCICassandraTemplate") CassandraOperations cassandraOps) {
+                                      @Qualifier("MCICassandraTemplate") CassandraOperations cassandraOps,
+                                      PreparedStatementRegistry statements) {
         super(cassandraOps);
         this.patientRepository = patientRepository;
+        this.statements = statements;
     }
 
     /**
@@ -52,6 +55,14 @@ public class DuplicatePatientRepository extends BaseRepository {
         return cassandraOps.select(DuplicatePatientQueryBuilder.buildFindByCatchmentStmt(catchment, after, before, limit), DuplicatePatient.class);
     }
 
+    /**
+     * Reads a page of duplicates of the exact catchment id in the order they were found, with the driver's paging state.
+     */
+    public CursorPage<DuplicatePatient> findByCatchment(Catchment catchment, String cursor, int pageSize) {
+        return statements.selectPage(statements.bind(DuplicatePatientQueryBuilder.PAGE_BY_CATCHMENT_STMT, catchment.getId()),
+                DuplicatePatient.class, pageSize, cursor);
+    }
+
     public void processDuplicates(PatientData patientData1, PatientData patientData2, boolean isMerged) {
         String healthId1 = patientData1.getHealthId();
         String healthId2 = patientData2.getHealthId();
@@ -65,11 +76,11 @@ public class DuplicatePatientRepository extends BaseRepository {
                     patient1.getHealthId(), patient2.getHealthId()));
         }
 
-        Batch batch = batch();
+        BatchStatement batch = new BatchStatement();
         if (isMerged) {
             validateMergedData(patientData2, patient2, patient1);
-            patientRepository.buildUpdateProcessBatch(patientData1, healthId1, batch);
-            patientRepository.buildUpdateProcessBatch(patientData2, healthId2, batch);
+            patientRepository.buildUpdateProcessWrite(patientData1, healthId1).addTo(batch);
+            patientRepository.buildUpdateProcessWrite(patientData2, healthId2).addTo(batch);
             buildRetireBatch(patient1, patient1.getCatchment(), batch);
 
         } else {
@@ -77,11 +88,15 @@ public class DuplicatePatientRepository extends BaseRepository {
             DuplicatePatientQueryBuilder.buildCreateIgnoreDuplicatesStmt(healthId1, healthId2, reasons, cassandraOps.getConverter(), batch);
             buildDeleteDuplicatesStmt(patient1, patient2, cassandraOps.getConverter(), batch);
         }
-        cassandraOps.execute(batch);
+        statements.execute(batch);
+        if (isMerged) {
+            patientRepository.invalidateCache(healthId1);
+            patientRepository.invalidateCache(healthId2);
+        }
     }
 
     private void buildDeleteDuplicatesStmt(PatientData patient1, PatientData patient2, CassandraConverter converter,
-                                           Batch batch) {
+                                           BatchStatement batch) {
         String healthId1 = patient1.getHealthId();
         String healthId2 = patient2.getHealthId();
 
@@ -89,17 +104,17 @@ public class DuplicatePatientRepository extends BaseRepository {
         buildDeleteDuplicateBatch(patient2.getCatchment(), healthId2, healthId1, batch);
     }
 
-    private void buildDeleteDuplicateBatch(Catchment catchment, String healthId1, String healthId2, Batch batch) {
+    private void buildDeleteDuplicateBatch(Catchment catchment, String healthId1, String healthId2, BatchStatement batch) {
         List<DuplicatePatient> duplicates = findByCatchmentAndHealthIds(catchment, healthId1, healthId2);
         DuplicatePatientQueryBuilder
                 .buildDeleteDuplicatesStmt(duplicates, cassandraOps.getConverter(), batch, getCurrentTimeInMicros());
     }
 
-    private void buildRetireBatch(PatientData patient1, Catchment catchment, Batch batch) {
+    private void buildRetireBatch(PatientData patient1, Catchment catchment, BatchStatement batch) {
         buildRetireBatch(patient1, catchment, batch, getCurrentTimeInMicros());
     }
 
-    private void buildRetireBatch(PatientData patient, Catchment oldCatchment, Batch batch, long timestamp) {
+    private void buildRetireBatch(PatientData patient, Catchment oldCatchment, BatchStatement batch, long timestamp) {
         String healthId1 = patient.getHealthId();
         List<DuplicatePatient> duplicates = findByCatchmentAndHealthId(oldCatchment, healthId1);
         Set<String> healthId2List = findHealthId2List(duplicates);
@@ -192,24 +207,36 @@ public class DuplicatePatientRepository extends BaseRepository {
         return duplicates;
     }
 
+    /**
+     * Creates the duplicates, and records the given event as the duplicate patient marker in the same batch, as
+     * retire and update do. A null marker is not recorded, and is left to the caller.
+     */
     public void create(List<DuplicatePatient> duplicates, UUID marker) {
+        if (isEmpty(duplicates) && marker == null) {
+            return;
+        }
         CassandraConverter converter = cassandraOps.getConverter();
-        Batch batch = createInsertBatchQuery(CF_PATIENT_DUPLICATE, duplicates, null, converter);
-        buildUpdateMarkerBatch(DUPLICATE_PATIENT_MARKER, marker.toString(), converter, batch);
-        cassandraOps.execute(batch);
+        BatchStatement batch = new BatchStatement();
+        if (duplicates != null) {
+            for (DuplicatePatient duplicate : duplicates) {
+                batch.add(createInsertQuery(CF_PATIENT_DUPLICATE, duplicate, null, converter));
+            }
+        }
+        addMarker(marker, converter, batch);
+        statements.execute(batch);
     }
 
     public void retire(String healthId, UUID marker) {
         PatientData patient = patientRepository.findByHealthId(healthId);
-        Batch batch = batch();
+        BatchStatement batch = new BatchStatement();
         buildRetireBatch(patient, patient.getCatchment(), batch);
-        buildUpdateMarkerBatch(DUPLICATE_PATIENT_MARKER, marker.toString(), cassandraOps.getConverter(), batch);
-        cassandraOps.execute(batch);
+        addMarker(marker, cassandraOps.getConverter(), batch);
+        statements.execute(batch);
     }
 
     public void update(String healthId, Catchment oldCatchment, List<DuplicatePatient> newDuplicates, UUID marker) {
         CassandraConverter converter = cassandraOps.getConverter();
-        Batch batch = batch();
+        BatchStatement batch = new BatchStatement();
         long currentTimeMicros = getCurrentTimeInMicros();
 
         PatientData patient = patientRepository.findByHealthId(healthId);
@@ -224,8 +251,14 @@ public class DuplicatePatientRepository extends BaseRepository {
             batch.add(insertQuery);
         }
 
-        buildUpdateMarkerBatch(DUPLICATE_PATIENT_MARKER, marker.toString(), converter, batch);
-        cassandraOps.execute(batch);
+        addMarker(marker, converter, batch);
+        statements.execute(batch);
+    }
+
+    private void addMarker(UUID marker, CassandraConverter converter, BatchStatement batch) {
+        if (marker != null) {
+            buildUpdateMarkerBatch(DUPLICATE_PATIENT_MARKER, marker.toString(), converter, batch);
+        }
     }
 
     public List<DuplicatePatient> findDuplicatesWithIgnoredRemoved(List<DuplicatePatient> duplicates) {
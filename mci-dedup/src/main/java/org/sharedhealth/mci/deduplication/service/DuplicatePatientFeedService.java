@@ -2,46 +2,210 @@ package org.sharedhealth.mci.deduplication.service;
 
 import org.sharedhealth.mci.deduplication.event.DuplicatePatientEventProcessor;
 import org.sharedhealth.mci.deduplication.event.DuplicatePatientEventProcessorFactory;
+import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.constant.RepositoryConstants;
 import org.sharedhealth.mci.domain.model.PatientUpdateLog;
 import org.sharedhealth.mci.domain.model.PatientUpdateLogMapper;
 import org.sharedhealth.mci.domain.repository.MarkerRepository;
 import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.sharedhealth.mci.domain.repository.PatientIdentityMap;
+import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.UUID.fromString;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.sharedhealth.mci.domain.util.TimeUuidUtil.getTimeFromUUID;
+import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Finds the duplicates of the patients in the patient update log, reading the log a page of
+ * DUPLICATE_PATIENT_FEED_BATCH_SIZE events at a time. The events of a page are split by health id over
+ * DUPLICATE_PATIENT_FEED_THREADS threads, so the events of one patient are processed in order while those of other
+ * patients are processed alongside.
+ * <p>
+ * The duplicate patient marker is moved to the last event of the page up to which every event was processed. An event
+ * that fails holds the marker before it, and stops its thread; events after it that were processed on other threads
+ * are processed again next time, which finds the duplicates they found already. Pages are read until the log is
+ * drained or an event fails.
+ */
 @Component
-public class DuplicatePatientFeedService {
+public class DuplicatePatientFeedService implements PublicMetrics {
+
+    private static final Logger logger = getLogger(DuplicatePatientFeedService.class);
 
     private PatientFeedRepository feedRepository;
     private MarkerRepository markerRepository;
     private DuplicatePatientEventProcessorFactory eventProcessorFactory;
     private PatientUpdateLogMapper patientUpdateLogMapper;
+    private PatientIdentityMap identityMap;
+    private MCIProperties mciProperties;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long oldestPendingMillis;
 
     @Autowired
     public DuplicatePatientFeedService(PatientFeedRepository feedRepository, MarkerRepository markerRepository,
                                        DuplicatePatientEventProcessorFactory eventProcessorFactory,
-                                       PatientUpdateLogMapper patientUpdateLogMapper) {
+                                       PatientUpdateLogMapper patientUpdateLogMapper, PatientIdentityMap identityMap,
+                                       MCIProperties mciProperties) {
         this.feedRepository = feedRepository;
         this.markerRepository = markerRepository;
         this.eventProcessorFactory = eventProcessorFactory;
         this.patientUpdateLogMapper = patientUpdateLogMapper;
+        this.identityMap = identityMap;
+        this.mciProperties = mciProperties;
+        this.threads = Math.max(1, mciProperties.getDuplicatePatientFeedThreads());
+        this.executor = Executors.newFixedThreadPool(threads);
     }
 
     public void processDuplicatePatients() {
+        int batchSize = Math.max(1, mciProperties.getDuplicatePatientFeedBatchSize());
         String markerString = markerRepository.find(RepositoryConstants.DUPLICATE_PATIENT_MARKER);
         UUID marker = isNotBlank(markerString) ? fromString(markerString) : null;
-        PatientUpdateLog log = feedRepository.findPatientUpdateLog(marker);
-        if (log == null) {
-            return;
+        try {
+            while (true) {
+                List<PatientUpdateLog> logs = feedRepository.findPatientsUpdatedSince(marker, batchSize);
+                updateOldestPending(logs, 0);
+                if (logs.isEmpty()) {
+                    return;
+                }
+                int completed = processPage(logs);
+                updateOldestPending(logs, completed);
+                if (completed > 0) {
+                    marker = logs.get(completed - 1).getEventId();
+                    markerRepository.save(RepositoryConstants.DUPLICATE_PATIENT_MARKER, marker.toString());
+                }
+                if (completed < logs.size() || logs.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
+
+    /**
+     * @return the number of events from the start of the page that were all processed.
+     */
+    private int processPage(final List<PatientUpdateLog> logs) throws InterruptedException {
+        List<List<Integer>> partitions = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            partitions.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < logs.size(); i++) {
+            partitions.get(getPartition(logs.get(i).getHealthId(), threads)).add(i);
+        }
+
+        final boolean[] processed = new boolean[logs.size()];
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (final List<Integer> partition : partitions) {
+            if (partition.isEmpty()) {
+                continue;
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    processPartition(logs, partition, processed);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                logger.error("Failed to process duplicate patient events.", e.getCause());
+            }
+        }
+
+        int completed = 0;
+        while (completed < processed.length && processed[completed]) {
+            completed++;
+        }
+        return completed;
+    }
+
+    /**
+     * The processed flags are read once every partition is done, which makes the writes of each partition visible.
+     */
+    private void processPartition(List<PatientUpdateLog> logs, List<Integer> partition, boolean[] processed) {
+        boolean unitOfWorkStarted = identityMap.begin();
+        try {
+            for (Integer index : partition) {
+                PatientUpdateLog log = logs.get(index);
+                try {
+                    process(log);
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    logger.error(String.format("Failed to process duplicate patient event %s of health id %s.",
+                            log.getEventId(), log.getHealthId()), e);
+                    return;
+                }
+                processed[index] = true;
+                processedCount.incrementAndGet();
+            }
+        } finally {
+            if (unitOfWorkStarted) {
+                identityMap.end();
+            }
+        }
+    }
+
+    /**
+     * Events that no processor is interested in are processed by doing nothing. The marker is recorded by the caller.
+     */
+    private void process(PatientUpdateLog log) {
         DuplicatePatientEventProcessor eventProcessor = eventProcessorFactory
-                .getEventProcessor(log.getEventType(), log.getChangeSet());
-        eventProcessor.process(patientUpdateLogMapper.map(log), log.getEventId());
+                .getEventProcessor(log.getEventType(), log.getChangeSetBin(), log.getChangeSet());
+        if (eventProcessor != null) {
+            eventProcessor.process(patientUpdateLogMapper.map(log), null);
+        }
+    }
+
+    private static int getPartition(String healthId, int partitions) {
+        return (healthId.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    private void updateOldestPending(List<PatientUpdateLog> logs, int completed) {
+        oldestPendingMillis = completed < logs.size() ? getTimeFromUUID(logs.get(completed).getEventId()) : 0;
+    }
+
+    /**
+     * The lag is the age of the oldest event after the marker when the log was last read, and 0 once it is drained.
+     * It tells how far behind the duplicate patient feed is however many events are waiting, which a count of the
+     * events read, at most a page, does not.
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long oldestPending = oldestPendingMillis;
+        long lagMillis = oldestPending > 0 ? Math.max(0, System.currentTimeMillis() - oldestPending) : 0;
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Double>("dedup.lag.seconds", lagMillis / 1000.0));
+        metrics.add(new Metric<Long>("dedup.events.processed", processedCount.get()));
+        metrics.add(new Metric<Long>("dedup.events.failed", failedCount.get()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
     }
 }
@@ -7,6 +7,7 @@ import org.sharedhealth.mci.deduplication.model.DuplicatePatientMergeData;
 import org.sharedhealth.mci.deduplication.repository.DuplicatePatientRepository;
 import org.sharedhealth.mci.domain.constant.MCIConstants;
 import org.sharedhealth.mci.domain.model.Catchment;
+import org.sharedhealth.mci.domain.model.CursorPage;
 import org.sharedhealth.mci.domain.model.PatientData;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +39,12 @@ public class DuplicatePatientService {
         return duplicatePatientMapper.mapToDuplicatePatientDataList(duplicatePatients);
     }
 
+    public CursorPage<DuplicatePatientData> findAllByCatchment(Catchment catchment, String cursor, int pageSize) {
+        CursorPage<DuplicatePatient> duplicatePatients = duplicatePatientRepository.findByCatchment(catchment, cursor, pageSize);
+        return new CursorPage<>(duplicatePatientMapper.mapToDuplicatePatientDataList(duplicatePatients.getItems()),
+                duplicatePatients.getNextCursor());
+    }
+
     public void processDuplicates(DuplicatePatientMergeData data) {
         PatientData patient1 = data.getPatient1();
         PatientData patient2 = data.getPatient2();
@@ -2,6 +2,7 @@ package org.sharedhealth.mci.deduplication.task;
 
 import org.sharedhealth.mci.deduplication.service.DuplicatePatientFeedService;
 import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.PatientIdentityMap;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -16,21 +17,29 @@ public class DuplicatePatientFeedTask {
 
     private DuplicatePatientFeedService duplicatePatientFeedService;
     private MCIProperties mciProperties;
+    private PatientIdentityMap identityMap;
 
     @Autowired
-    public DuplicatePatientFeedTask(DuplicatePatientFeedService duplicatePatientFeedService, MCIProperties mciProperties) {
+    public DuplicatePatientFeedTask(DuplicatePatientFeedService duplicatePatientFeedService, MCIProperties mciProperties,
+                                    PatientIdentityMap identityMap) {
         this.duplicatePatientFeedService = duplicatePatientFeedService;
         this.mciProperties = mciProperties;
+        this.identityMap = identityMap;
     }
 
     @Scheduled(initialDelayString = "${DUPLICATE_PATIENT_FEED_INITIAL_DELAY}", fixedDelayString = "${DUPLICATE_PATIENT_FEED_DELAY}")
     public void execute() {
         if (!mciProperties.getIsMCIMasterNode()) return;
+        boolean unitOfWorkStarted = identityMap.begin();
         try {
             logger.debug("Executing duplicate patient feed task.");
             duplicatePatientFeedService.processDuplicatePatients();
         } catch (Exception e) {
             logger.error("Failed process duplicate patient feed.", e);
+        } finally {
+            if (unitOfWorkStarted) {
+                identityMap.end();
+            }
         }
     }
 }
@@ -14,6 +14,7 @@ import static org.sharedhealth.mci.domain.constant.JsonConstants.NEW_VALUE;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.OLD_VALUE;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_CREATED;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_TYPE_UPDATED;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.encode;
 
 public class DuplicatePatientEventProcessorFactoryTest {
 
@@ -47,6 +48,13 @@ public class DuplicatePatientEventProcessorFactoryTest {
         assertTrue(eventProcessor instanceof DuplicatePatientRetireEventProcessor);
     }
 
+    @Test
+    public void shouldReadEncodedChangeSet() {
+        DuplicatePatientEventProcessor eventProcessor = factory.getEventProcessor(EVENT_TYPE_UPDATED,
+                encode("{\"active\":{\"new_value\":false,\"old_value\":true}}"), null);
+        assertTrue(eventProcessor instanceof DuplicatePatientRetireEventProcessor);
+    }
+
     @Test
     public void shouldCheckIfActiveFieldRetired() {
         assertFalse(factory.isActiveFieldRetired(null));
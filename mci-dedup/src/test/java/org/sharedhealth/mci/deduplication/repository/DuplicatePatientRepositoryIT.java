@@ -1,5 +1,7 @@
 package org.sharedhealth.mci.deduplication.repository;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Statement;
 import org.apache.commons.collections.CollectionUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -12,6 +14,7 @@ import org.sharedhealth.mci.domain.model.PatientData;
 import org.sharedhealth.mci.domain.model.Requester;
 import org.sharedhealth.mci.domain.repository.MarkerRepository;
 import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PatientWrite;
 import org.sharedhealth.mci.domain.util.BaseIntegrationTest;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -185,6 +188,49 @@ public class DuplicatePatientRepositoryIT extends BaseIntegrationTest {
         assertTrue(cassandraOps.select(cql, DuplicatePatientIgnored.class).isEmpty());
     }
 
+    @Test
+    public void shouldMergeDuplicatesOnceUpdateLogInsertIsPrepared() throws Exception {
+        PatientData patientData1 = new PatientData();
+        patientData1.setHealthId(String.valueOf(new Date().getTime() + 1));
+        PatientData patientData2 = new PatientData();
+        patientData2.setHealthId(String.valueOf(new Date().getTime() + 2));
+        PatientData patientData3 = new PatientData();
+        patientData3.setHealthId(String.valueOf(new Date().getTime() + 3));
+        buildDuplicatePatientsForMerge(patientData1, patientData2, patientData3);
+        patientData1.setBloodGroup("X");
+        patientData2.setBloodGroup("A");
+        duplicatePatientRepository.processDuplicates(patientData1, patientData2, true);
+
+        PatientData patientData4 = new PatientData();
+        patientData4.setHealthId(String.valueOf(new Date().getTime() + 4));
+        PatientData patientData5 = new PatientData();
+        patientData5.setHealthId(String.valueOf(new Date().getTime() + 5));
+        PatientData patientData6 = new PatientData();
+        patientData6.setHealthId(String.valueOf(new Date().getTime() + 6));
+        buildDuplicatePatientsForMerge(patientData4, patientData5, patientData6);
+        patientData4.setBloodGroup("X");
+        patientData5.setBloodGroup("A");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!hasBoundStatement(patientRepository.buildUpdateProcessWrite(patientData4, patientData4.getHealthId()))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        duplicatePatientRepository.processDuplicates(patientData4, patientData5, true);
+
+        assertDuplicatesDeleted(patientData4.getHealthId(), patientData5.getHealthId(), patientData6.getHealthId(), true);
+        assertEquals("X", patientRepository.findByHealthId(patientData4.getHealthId()).getBloodGroup());
+        assertEquals("A", patientRepository.findByHealthId(patientData5.getHealthId()).getBloodGroup());
+    }
+
+    private boolean hasBoundStatement(PatientWrite write) {
+        for (Statement statement : write.getCore()) {
+            if (statement instanceof BoundStatement) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void assertDuplicatesDeleted(String healthId1, String healthId2, String healthId3, boolean isMerged) {
         String cql1 = DuplicatePatientQueryBuilder.buildFindByCatchmentAndHealthIdsStmt("A10B20C30", healthId1, healthId2);
         assertTrue(isEmpty(cassandraOps.select(cql1, DuplicatePatient.class)));
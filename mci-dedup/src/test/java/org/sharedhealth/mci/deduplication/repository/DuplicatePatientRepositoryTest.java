@@ -41,7 +41,7 @@ public class DuplicatePatientRepositoryTest {
     @Before
     public void setUp() {
         initMocks(this);
-        duplicatePatientRepository = new DuplicatePatientRepository(patientRepository, cassandraOps);
+        duplicatePatientRepository = new DuplicatePatientRepository(patientRepository, cassandraOps, null);
     }
 
     @Test
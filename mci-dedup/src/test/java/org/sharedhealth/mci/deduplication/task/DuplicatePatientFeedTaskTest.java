@@ -5,6 +5,7 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.sharedhealth.mci.deduplication.service.DuplicatePatientFeedService;
 import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.repository.PatientIdentityMap;
 
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,7 +26,7 @@ public class DuplicatePatientFeedTaskTest {
     @Test
     public void shouldProcessDuplicatePatientFeed() throws Exception {
         when(mciProperties.getIsMCIMasterNode()).thenReturn(true);
-        new DuplicatePatientFeedTask(duplicatePatientFeedService, mciProperties).execute();
+        new DuplicatePatientFeedTask(duplicatePatientFeedService, mciProperties, new PatientIdentityMap()).execute();
         verify(duplicatePatientFeedService).processDuplicatePatients();
     }
 }
@@ -0,0 +1,73 @@
+package org.sharedhealth.mci.domain.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
+
+/**
+ * Reads a PatientData field by its JSON name through PatientDataFields, through a cached Field, and by scanning the
+ * declared fields and their annotations as PatientData.getValue did before the field table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatientDataFieldsBenchmark {
+
+    private PatientData patient;
+    private Field givenNameField;
+
+    @Setup
+    public void setUp() throws Exception {
+        patient = new PatientData();
+        patient.setHealthId("98000000001");
+        patient.setGivenName("Harry");
+        patient.setSurName("Potter");
+        patient.setGender("M");
+        givenNameField = PatientData.class.getDeclaredField("givenName");
+        givenNameField.setAccessible(true);
+    }
+
+    @Benchmark
+    public Object getThroughMethodHandle() {
+        return PatientDataFields.get(patient, GIVEN_NAME);
+    }
+
+    @Benchmark
+    public Object getThroughCachedField() throws IllegalAccessException {
+        return givenNameField.get(patient);
+    }
+
+    @Benchmark
+    public Object getByScanningDeclaredFields() throws IllegalAccessException {
+        for (Field field : PatientData.class.getDeclaredFields()) {
+            JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+            if (jsonProperty != null && jsonProperty.value().equals(GIVEN_NAME)) {
+                field.setAccessible(true);
+                return field.get(patient);
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public List<String> findNonEmpty() {
+        return PatientDataFields.findNonEmpty(patient);
+    }
+}
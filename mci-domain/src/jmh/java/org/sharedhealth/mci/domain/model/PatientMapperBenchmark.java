@@ -0,0 +1,99 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+
+/**
+ * Maps one stored patient with relations and pending approvals. Run with -prof gc; gc.alloc.rate.norm is the bytes
+ * allocated per mapped patient.
+ * <ul>
+ * <li>mapPatient maps the row and leaves the relations and pending approvals columns undecoded.</li>
+ * <li>mapPatientAndReadRelations also decodes them, which is what every mapping did before they were decoded
+ * lazily.</li>
+ * <li>mapSummary builds the summary from the row; mapSummaryThroughPatientData is the earlier path through a full
+ * PatientData.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatientMapperBenchmark {
+
+    private PatientMapper mapper;
+    private Patient patient;
+
+    @Setup
+    public void setUp() {
+        mapper = new PatientMapper();
+        patient = new Patient();
+        patient.setHealthId("98000000001");
+        patient.setNationalId("1234567890123");
+        patient.setGivenName("Harry");
+        patient.setSurName("Potter");
+        patient.setGender("M");
+        patient.setDateOfBirth("2000-01-01");
+        patient.setDivisionId("10");
+        patient.setDistrictId("04");
+        patient.setUpazilaId("09");
+        patient.setAddressLine("house 10");
+        patient.setPermanentDivisionId("10");
+        patient.setPermanentDistrictId("04");
+        patient.setPermanentUpazilaId("09");
+        patient.setPermanentAddressLine("house 20");
+        patient.setCellNo("123456");
+        patient.setActive(true);
+
+        Relation father = new Relation();
+        father.setId("r100");
+        father.setType("FTH");
+        father.setGivenName("James");
+        Relation mother = new Relation();
+        mother.setId("r200");
+        mother.setType("MTH");
+        mother.setGivenName("Lily");
+        patient.setRelations(writeValueAsString(asList(father, mother)));
+
+        PendingApproval pendingApproval = new PendingApproval();
+        pendingApproval.setName("gender");
+        patient.setPendingApprovals(new TreeSet<>(asList(pendingApproval)));
+    }
+
+    @Benchmark
+    public PatientData mapPatient() {
+        return mapper.map(patient);
+    }
+
+    @Benchmark
+    public Object mapPatientAndReadRelations() {
+        PatientData data = mapper.map(patient);
+        data.getPendingApprovals();
+        return data.getRelations();
+    }
+
+    @Benchmark
+    public PatientSummaryData mapSummary() {
+        return mapper.mapSummary(patient);
+    }
+
+    @Benchmark
+    public PatientSummaryData mapSummaryThroughPatientData() {
+        return mapper.mapSummary(mapper.map(patient));
+    }
+}
@@ -25,6 +25,10 @@ public class MCICacheConfiguration implements CachingConfigurer {
     public static final String APPROVAL_FIELDS_CACHE = "APPROVAL_FIELDS_CACHE";
     public static final String MASTER_DATA_CACHE = "MASTER_DATA_CACHE";
     public static final String IDENTITY_CACHE = "identityCache";
+    public static final String PATIENT_CACHE = "PATIENT_CACHE";
+    private static final int PATIENT_CACHE_MAX_ENTRIES = 10000;
+    public static final String FEED_PAGE_CACHE = "FEED_PAGE_CACHE";
+    private static final int FEED_PAGE_CACHE_MAX_ENTRIES = 1000;
     public static final String CACHE_EVICTION_POLICY = "LRU";
 
 
@@ -37,6 +41,8 @@ public class MCICacheConfiguration implements CachingConfigurer {
         ehCacheConfig.addCache(getSettingsCacheConfiguration());
         ehCacheConfig.addCache(getApprovedFieldsCacheConfiguration());
         ehCacheConfig.addCache(getIdentityCacheConfiguration());
+        ehCacheConfig.addCache(getPatientCacheConfiguration());
+        ehCacheConfig.addCache(getFeedPageCacheConfiguration());
         return newInstance(ehCacheConfig);
     }
 
@@ -90,6 +96,26 @@ public class MCICacheConfiguration implements CachingConfigurer {
         return cacheConfig;
     }
 
+    private CacheConfiguration getPatientCacheConfiguration() {
+        CacheConfiguration cacheConfig = new CacheConfiguration();
+        cacheConfig.setName(PATIENT_CACHE);
+        cacheConfig.setMemoryStoreEvictionPolicy(CACHE_EVICTION_POLICY);
+        cacheConfig.setMaxEntriesLocalHeap(PATIENT_CACHE_MAX_ENTRIES);
+        cacheConfig.setTimeToLiveSeconds(CACHE_TTL_IN_MINUTES * 60);
+        cacheConfig.persistence(getPersistenceConfiguration());
+        return cacheConfig;
+    }
+
+    private CacheConfiguration getFeedPageCacheConfiguration() {
+        CacheConfiguration cacheConfig = new CacheConfiguration();
+        cacheConfig.setName(FEED_PAGE_CACHE);
+        cacheConfig.setMemoryStoreEvictionPolicy(CACHE_EVICTION_POLICY);
+        cacheConfig.setMaxEntriesLocalHeap(FEED_PAGE_CACHE_MAX_ENTRIES);
+        cacheConfig.setTimeToLiveSeconds(CACHE_TTL_IN_MINUTES * 60);
+        cacheConfig.persistence(getPersistenceConfiguration());
+        return cacheConfig;
+    }
+
     private PersistenceConfiguration getPersistenceConfiguration() {
         PersistenceConfiguration persistenceConfiguration = new PersistenceConfiguration();
         persistenceConfiguration.setStrategy("NONE");
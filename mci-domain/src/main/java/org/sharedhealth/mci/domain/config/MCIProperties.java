@@ -25,6 +25,24 @@ public class MCIProperties {
     private String cassandraPassword;
     @Value("${CASSANDRA_TIMEOUT}")
     private int cassandraTimeout;
+    @Value("${CASSANDRA_READ_CONCURRENCY}")
+    private String cassandraReadConcurrency;
+    @Value("${CASSANDRA_SPLIT_PATIENT_WRITES}")
+    private String cassandraSplitPatientWrites;
+    @Value("${CASSANDRA_DERIVED_WRITE_RETRIES}")
+    private String cassandraDerivedWriteRetries;
+    @Value("${UPDATE_LOG_LAYOUT}")
+    private String updateLogLayout;
+    @Value("${UPDATE_LOG_DUAL_WRITE}")
+    private String updateLogDualWrite;
+    @Value("${BULK_REGISTRATION_CHUNK_SIZE}")
+    private String bulkRegistrationChunkSize;
+    @Value("${FEED_PAGE_GZIP}")
+    private String feedPageGzip;
+    @Value("${CATCHMENT_FEED_MATERIALIZED}")
+    private String catchmentFeedMaterialized;
+    @Value("${JSON_COLUMNS_ENCODING}")
+    private String jsonColumnsEncoding;
 
     @Value("${REST_POOL_SIZE}")
     private int restPoolSize;
@@ -74,9 +92,26 @@ public class MCIProperties {
     private String healthIdBlockSize;
     @Value("${HEALTH_ID_BLOCK_SIZE_THRESHOLD}")
     private String healthIdBlockSizeThreshold;
+    @Value("${HEALTH_ID_MAX_BLOCK_SIZE}")
+    private String healthIdMaxBlockSize;
+    @Value("${HEALTH_ID_REPLENISH_ON_LOW_WATERMARK}")
+    private String healthIdReplenishOnLowWatermark;
+
+    @Value("${DUPLICATE_PATIENT_FEED_BATCH_SIZE}")
+    private String duplicatePatientFeedBatchSize;
+    @Value("${DUPLICATE_PATIENT_FEED_THREADS}")
+    private String duplicatePatientFeedThreads;
 
     @Value("${SEARCH_MAPPING_TASK_BLOCK_SIZE}")
     private String searchMappingTaskBlockSize;
+    @Value("${SEARCH_INDEX_ENABLED}")
+    private String searchIndexEnabled;
+    @Value("${SEARCH_INDEX_MEMORY_BUDGET_MB}")
+    private String searchIndexMemoryBudgetMb;
+    @Value("${SEARCH_INDEX_SNAPSHOT_PATH}")
+    private String searchIndexSnapshotPath;
+    @Value("${SEARCH_INDEX_SNAPSHOT_INTERVAL}")
+    private String searchIndexSnapshotInterval;
     @Value("${MAX_FAILED_EVENTS}")
     private String maxFailedEvents;
     @Value("${FAILED_EVENT_RETRY_LIMIT}")
@@ -102,6 +137,57 @@ public class MCIProperties {
         return cassandraTimeout;
     }
 
+    public int getCassandraReadConcurrency() {
+        return Integer.parseInt(cassandraReadConcurrency);
+    }
+
+    public boolean isCassandraSplitPatientWrites() {
+        return valueOf(cassandraSplitPatientWrites);
+    }
+
+    public int getCassandraDerivedWriteRetries() {
+        return Integer.parseInt(cassandraDerivedWriteRetries);
+    }
+
+    /**
+     * Whether the update log is read from the sharded layout rather than the yearly one.
+     */
+    public boolean isUpdateLogSharded() {
+        return "sharded".equalsIgnoreCase(updateLogLayout);
+    }
+
+    /**
+     * Whether the update log is written to both layouts, while consumers move from one to the other.
+     */
+    public boolean isUpdateLogDualWrite() {
+        return Boolean.parseBoolean(updateLogDualWrite);
+    }
+
+    public boolean isFeedPageGzip() {
+        return Boolean.parseBoolean(feedPageGzip);
+    }
+
+    /**
+     * Whether catchment feed pages are read from the materialized catchment feed, rather than from the catchment
+     * mappings and the patients they point to. To be turned on once the backfill has gone through all catchments.
+     */
+    public boolean isCatchmentFeedMaterialized() {
+        return Boolean.parseBoolean(catchmentFeedMaterialized);
+    }
+
+    /**
+     * Whether the change set, requested by, approved by and relations columns are written as versioned Smile blobs
+     * (JSON_COLUMNS_ENCODING=smile) rather than as JSON. Readers take either, so it can be turned on before the JSON
+     * columns are migrated.
+     */
+    public boolean isJsonColumnsBinary() {
+        return "smile".equalsIgnoreCase(jsonColumnsEncoding);
+    }
+
+    public int getBulkRegistrationChunkSize() {
+        return Integer.parseInt(bulkRegistrationChunkSize);
+    }
+
     public int getRestPoolSize() {
         return restPoolSize;
     }
@@ -188,10 +274,55 @@ public class MCIProperties {
         return Integer.parseInt(healthIdBlockSizeThreshold);
     }
 
+    /**
+     * The largest block of health ids asked for, however fast health ids are used. The smallest is
+     * HEALTH_ID_BLOCK_SIZE.
+     */
+    public int getHealthIdMaxBlockSize() {
+        return Integer.parseInt(healthIdMaxBlockSize);
+    }
+
+    /**
+     * Whether health ids are replenished as soon as the store runs low, rather than only when the replenish task runs.
+     */
+    public boolean isHealthIdReplenishOnLowWatermark() {
+        return Boolean.parseBoolean(healthIdReplenishOnLowWatermark);
+    }
+
+    /**
+     * The number of patient update log events read at a time for duplicate detection.
+     */
+    public int getDuplicatePatientFeedBatchSize() {
+        return Integer.parseInt(duplicatePatientFeedBatchSize);
+    }
+
+    /**
+     * The number of threads duplicate detection runs on. Events of one health id are always on the same thread.
+     */
+    public int getDuplicatePatientFeedThreads() {
+        return Integer.parseInt(duplicatePatientFeedThreads);
+    }
+
     public int getSearchMappingTaskBlockSize() {
         return Integer.parseInt(searchMappingTaskBlockSize);
     }
 
+    public boolean isSearchIndexEnabled() {
+        return Boolean.parseBoolean(searchIndexEnabled);
+    }
+
+    public long getSearchIndexMemoryBudget() {
+        return Long.parseLong(searchIndexMemoryBudgetMb) * 1024 * 1024;
+    }
+
+    public String getSearchIndexSnapshotPath() {
+        return searchIndexSnapshotPath;
+    }
+
+    public long getSearchIndexSnapshotInterval() {
+        return Long.parseLong(searchIndexSnapshotInterval);
+    }
+
     public int getMaxFailedEvents() {
         return Integer.parseInt(maxFailedEvents);
     }
@@ -64,6 +64,7 @@ public class JsonConstants {
     public static final String SINCE = "since";
     public static final String LAST_MARKER = "last_marker";
     public static final String BEFORE = "before";
+    public static final String CURSOR = "cursor";
     public static final String FACILITY_ID = "facility_id";
     public static final String FIELD = "field";
     public static final String OPTION = "option";
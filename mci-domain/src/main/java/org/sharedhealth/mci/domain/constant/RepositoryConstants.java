@@ -8,9 +8,13 @@ public class RepositoryConstants {
     public static final String CF_HOUSEHOLD_CODE_MAPPING = "household_code_mapping";
     public static final String CF_PHONE_NUMBER_MAPPING = "phone_number_mapping";
     public static final String CF_NAME_MAPPING = "name_mapping";
+    public static final String CF_FUZZY_NAME_MAPPING = "fuzzy_name_mapping";
     public static final String CF_PENDING_APPROVAL_MAPPING = "pending_approval_mapping";
     public static final String CF_CATCHMENT_MAPPING = "catchment_mapping";
+    public static final String CF_CATCHMENT_FEED = "catchment_feed";
     public static final String CF_PATIENT_UPDATE_LOG = "patient_update_log";
+    public static final String CF_PATIENT_UPDATE_LOG_SHARDED = "patient_update_log_sharded";
+    public static final String CF_LOG_BUCKETS = "log_buckets";
     public static final String CF_APPROVAL_FIELDS = "approval_fields";
     public static final String CF_PATIENT_AUDIT_LOG = "patient_audit_log";
     public static final String CF_LOCATIONS = "locations";
@@ -22,6 +26,7 @@ public class RepositoryConstants {
     public static final String CF_GENERATED_HID_BLOCKS = "generated_hid_blocks";
     public static final String CF_ORG_HEALTH_ID = "org_healthid";
     public static final String CF_FAILED_EVENTS = "failed_events";
+    public static final String CF_FAILED_DERIVED_WRITES = "failed_derived_writes";
 
     public static final String HEALTH_ID = "health_id";
     public static final String ASSIGNED_BY = "assigned_by";
@@ -30,6 +35,7 @@ public class RepositoryConstants {
     public static final String FULL_NAME_BANGLA = "full_name_bangla";
     public static final String GIVEN_NAME = "given_name";
     public static final String SUR_NAME = "sur_name";
+    public static final String NAME_KEY = "name_key";
     public static final String DATE_OF_BIRTH = "date_of_birth";
     public static final String DOB_TYPE = "dob_type";
     public static final String GENDER = "gender";
@@ -96,6 +102,7 @@ public class RepositoryConstants {
     public static final String STATUS = "status";
     public static final String DATE_OF_DEATH = "date_of_death";
     public static final String RELATIONS = "relations";
+    public static final String RELATIONS_BIN = "relations_bin";
     public static final String PRIMARY_CONTACT = "primary_contact";
     public static final String PHONE_NO = "phone_no";
     public static final String PRIMARY_CONTACT_NO = "primary_contact_no";
@@ -112,24 +119,35 @@ public class RepositoryConstants {
     public static final String UPDATED_BY = "updated_by";
     public static final String REQUESTED_BY = "requested_by";
     public static final String APPROVED_BY = "approved_by";
+    public static final String REQUESTED_BY_BIN = "requested_by_bin";
+    public static final String APPROVED_BY_BIN = "approved_by_bin";
     public static final String PENDING_APPROVALS = "pending_approvals";
     public static final String HID_CARD_STATUS = "hid_card_status";
 
     public static final String TYPE = "type";
     public static final String MARKER = "marker";
     public static final String CHANGE_SET = "change_set";
+    public static final String CHANGE_SET_BIN = "change_set_bin";
 
     public static final String YEAR = "year";
     public static final String EVENT_ID = "event_id";
     public static final String EVENT_TYPE = "event_type";
     public static final String EVENT_TYPE_CREATED = "created";
     public static final String EVENT_TYPE_UPDATED = "updated";
+    public static final String EVENT_TYPE_PENDING_APPROVALS_UPDATED = "pending_approvals_updated";
+    public static final String BUCKET = "bucket";
+    public static final String SHARD = "shard";
+    public static final String LOG_NAME = "log_name";
+    public static final String PATIENT_DATA = "patient_data";
 
     public static final String FAILURE_TYPE = "failure_type";
     public static final String FAILURE_TYPE_SEARCH_MAPPING = "search_mapping_failure";
     public static final String ERROR_MESSAGE = "error_message";
     public static final String FAILED_AT = "failed_at";
     public static final String RETRIES = "retries";
+    public static final String QUERY = "query";
+    public static final String QUERY_VALUES = "query_values";
+    public static final String WRITE_TIMESTAMP = "write_timestamp";
 
     public static final String HEALTH_ID1 = "health_id1";
     public static final String HEALTH_ID2 = "health_id2";
@@ -140,4 +158,8 @@ public class RepositoryConstants {
 
     public static final String AUDIT_MARKER_TYPE = "audit_marker";
     public static final String SEARCH_MAPPING_MARKER_TYPE = "search_mapping_marker";
+    public static final String UPDATE_LOG_BACKFILL_MARKER_TYPE = "update_log_backfill_marker";
+    public static final String CATCHMENT_FEED_BACKFILL_MARKER_TYPE = "catchment_feed_backfill_marker";
+    public static final String FUZZY_NAME_BACKFILL_MARKER_TYPE = "fuzzy_name_backfill_marker";
+    public static final String JSON_COLUMN_MIGRATION_MARKER_TYPE = "json_column_migration_marker";
 }
@@ -0,0 +1,86 @@
+package org.sharedhealth.mci.domain.diff;
+
+import org.sharedhealth.mci.domain.model.PatientData;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+
+/**
+ * The changes of one patient write, computed once and shared by the update log, the audit log and the mapping
+ * statements of the write. The JSON of the changes is built on first use.
+ */
+public class PatientChangeSet {
+
+    private static final PatientChangeSet EMPTY = new PatientChangeSet(new TreeMap<String, Map<String, Object>>());
+
+    private final Map<String, Map<String, Object>> changes;
+    private String json;
+
+    private PatientChangeSet(Map<String, Map<String, Object>> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * The fields of the requested data that differ from the existing patient. Fields not set in the request are not
+     * changes.
+     */
+    public static PatientChangeSet between(PatientData existingPatientData, PatientData requestedData) {
+        return new PatientChangeSet(new PatientDiffBuilder(existingPatientData, requestedData).build());
+    }
+
+    public static PatientChangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * The changes of the given fields only.
+     */
+    public PatientChangeSet select(String... fieldNames) {
+        Map<String, Map<String, Object>> selected = new TreeMap<>();
+        for (String fieldName : fieldNames) {
+            Map<String, Object> change = changes.get(fieldName);
+            if (change != null) {
+                selected.put(fieldName, change);
+            }
+        }
+        return new PatientChangeSet(selected);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public boolean hasChanged(String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            if (changes.containsKey(fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getChangedFields() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    public Map<String, Map<String, Object>> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * @return the changes as JSON, or null when nothing changed.
+     */
+    public String toJson() {
+        if (changes.isEmpty()) {
+            return null;
+        }
+        if (json == null) {
+            json = writeValueAsString(changes);
+        }
+        return json;
+    }
+}
@@ -11,6 +11,7 @@ public class InvalidRequestException extends RuntimeException {
 
     public InvalidRequestException(String message, Throwable cause) {
         super(message, cause);
+        this.errorMessage = message;
     }
 
     @Override
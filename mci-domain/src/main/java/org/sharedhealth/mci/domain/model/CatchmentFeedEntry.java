@@ -0,0 +1,74 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.springframework.data.cassandra.mapping.Column;
+import org.springframework.data.cassandra.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.mapping.Table;
+
+import java.util.UUID;
+
+import static org.sharedhealth.mci.domain.constant.JsonConstants.CATCHMENT_ID;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.springframework.cassandra.core.PrimaryKeyType.CLUSTERED;
+import static org.springframework.cassandra.core.PrimaryKeyType.PARTITIONED;
+
+/**
+ * A catchment mapping together with the patient as it was written by the event, serialized as patient json, so that
+ * a page of the catchment feed is read from the catchment partition alone.
+ */
+@Table(value = CF_CATCHMENT_FEED)
+public class CatchmentFeedEntry {
+
+    @PrimaryKeyColumn(name = CATCHMENT_ID, ordinal = 0, type = PARTITIONED)
+    private String catchment_id;
+
+    @PrimaryKeyColumn(name = LAST_UPDATED, ordinal = 1, type = CLUSTERED)
+    private UUID last_updated;
+
+    @PrimaryKeyColumn(name = HEALTH_ID, ordinal = 2, type = CLUSTERED)
+    private String health_id;
+
+    @Column(PATIENT_DATA)
+    private String patient_data;
+
+    public CatchmentFeedEntry() {
+    }
+
+    public CatchmentFeedEntry(String catchmentId, UUID lastUpdated, String healthId, String patientData) {
+        this.catchment_id = catchmentId;
+        this.last_updated = lastUpdated;
+        this.health_id = healthId;
+        this.patient_data = patientData;
+    }
+
+    public String getCatchmentId() {
+        return catchment_id;
+    }
+
+    public void setCatchmentId(String catchmentId) {
+        this.catchment_id = catchmentId;
+    }
+
+    public UUID getLastUpdated() {
+        return last_updated;
+    }
+
+    public void setLastUpdated(UUID lastUpdated) {
+        this.last_updated = lastUpdated;
+    }
+
+    public String getHealthId() {
+        return health_id;
+    }
+
+    public void setHealthId(String healthId) {
+        this.health_id = healthId;
+    }
+
+    public String getPatientData() {
+        return patient_data;
+    }
+
+    public void setPatientData(String patientData) {
+        this.patient_data = patientData;
+    }
+}
@@ -0,0 +1,35 @@
+package org.sharedhealth.mci.domain.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a list read with the driver's paging state. The cursor is the opaque paging state of the next page,
+ * or null if this is the last page. A cursor is only valid for the same query with the same values.
+ */
+public class CursorPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public static <T> CursorPage<T> empty() {
+        return new CursorPage<>(new ArrayList<T>(), null);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
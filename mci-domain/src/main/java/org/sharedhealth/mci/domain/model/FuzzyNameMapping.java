@@ -0,0 +1,72 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.springframework.data.cassandra.mapping.PrimaryKeyColumn;
+import org.springframework.data.cassandra.mapping.Table;
+
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.springframework.cassandra.core.PrimaryKeyType.CLUSTERED;
+import static org.springframework.cassandra.core.PrimaryKeyType.PARTITIONED;
+
+@Table(value = CF_FUZZY_NAME_MAPPING)
+public class FuzzyNameMapping {
+
+    @PrimaryKeyColumn(name = DIVISION_ID, ordinal = 0, type = PARTITIONED)
+    private String division_id;
+
+    @PrimaryKeyColumn(name = DISTRICT_ID, ordinal = 1, type = PARTITIONED)
+    private String district_id;
+
+    @PrimaryKeyColumn(name = UPAZILA_ID, ordinal = 2, type = PARTITIONED)
+    private String upazila_id;
+
+    @PrimaryKeyColumn(name = NAME_KEY, ordinal = 3, type = CLUSTERED)
+    private String name_key;
+
+    @PrimaryKeyColumn(name = HEALTH_ID, ordinal = 4, type = CLUSTERED)
+    private String health_id;
+
+    public FuzzyNameMapping() {
+    }
+
+    public FuzzyNameMapping(String divisionId, String districtId, String upazilaId, String nameKey, String healthId) {
+        this.division_id = divisionId;
+        this.district_id = districtId;
+        this.upazila_id = upazilaId;
+        this.name_key = nameKey;
+        this.health_id = healthId;
+    }
+
+    public String getNameKey() {
+        return name_key;
+    }
+
+    public String getHealthId() {
+        return health_id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FuzzyNameMapping)) return false;
+
+        FuzzyNameMapping that = (FuzzyNameMapping) o;
+
+        if (division_id != null ? !division_id.equals(that.division_id) : that.division_id != null) return false;
+        if (district_id != null ? !district_id.equals(that.district_id) : that.district_id != null) return false;
+        if (upazila_id != null ? !upazila_id.equals(that.upazila_id) : that.upazila_id != null) return false;
+        if (name_key != null ? !name_key.equals(that.name_key) : that.name_key != null) return false;
+        if (health_id != null ? !health_id.equals(that.health_id) : that.health_id != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = division_id != null ? division_id.hashCode() : 0;
+        result = 31 * result + (district_id != null ? district_id.hashCode() : 0);
+        result = 31 * result + (upazila_id != null ? upazila_id.hashCode() : 0);
+        result = 31 * result + (name_key != null ? name_key.hashCode() : 0);
+        result = 31 * result + (health_id != null ? health_id.hashCode() : 0);
+        return result;
+    }
+}
@@ -2,12 +2,17 @@ package org.sharedhealth.mci.domain.model;
 
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.cassandra.mapping.Column;
 import org.springframework.data.cassandra.mapping.PrimaryKey;
 import org.springframework.data.cassandra.mapping.Table;
 
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.UUID;
 
@@ -16,6 +21,8 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.COUNTRY_CODE_BANGLADESH;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
 import static org.sharedhealth.mci.domain.util.DateUtil.parseDate;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.encode;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
 import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
 import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
 
@@ -23,6 +30,12 @@ import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
 public class Patient {
 
     public static final String EMPTY_DATE_VALUE = "0001-01-01";
+    private static final Field[] COLUMNS = findColumns();
+    static final ObjectReader RELATIONS_READER = reader(new TypeReference<List<Relation>>() {
+    });
+    static final ObjectReader PENDING_APPROVALS_READER = reader(new TypeReference<TreeSet<PendingApproval>>() {
+    });
+
     @PrimaryKey(HEALTH_ID)
     private String healthId;
 
@@ -254,6 +267,12 @@ public class Patient {
     @Column(RELATIONS)
     private String relations;
 
+    /**
+     * The relations once encoded; see JsonColumnCodec. A row has either these or the relations JSON.
+     */
+    @Column(RELATIONS_BIN)
+    private ByteBuffer relationsBin;
+
     @Column(PENDING_APPROVALS)
     private String pendingApprovals;
 
@@ -1004,6 +1023,24 @@ public class Patient {
         this.relations = relations;
     }
 
+    public ByteBuffer getRelationsBin() {
+        return relationsBin;
+    }
+
+    public void setRelationsBin(ByteBuffer relationsBin) {
+        this.relationsBin = relationsBin;
+    }
+
+    /**
+     * Moves the relations JSON to the relations blob column, for a write that encodes it.
+     */
+    public void encodeRelations() {
+        if (relations != null) {
+            relationsBin = encode(relations);
+            relations = null;
+        }
+    }
+
     public String getPrimaryContact() {
         return primaryContact;
     }
@@ -1104,8 +1141,11 @@ public class Patient {
         if (isBlank(this.pendingApprovals)) {
             return null;
         }
-        return readValue(this.pendingApprovals, new TypeReference<TreeSet<PendingApproval>>() {
-        });
+        return readValue(this.pendingApprovals, PENDING_APPROVALS_READER);
+    }
+
+    String getPendingApprovalsJson() {
+        return pendingApprovals;
     }
 
     public void setPendingApprovals(TreeSet<PendingApproval> pendingApprovals) {
@@ -1202,4 +1242,40 @@ public class Patient {
     public void setAssignedBy(String assignedBy) {
         this.assignedBy = assignedBy;
     }
+
+    /**
+     * The row as it is once the given update is written over this one. Updates leave out the columns they do not
+     * set, so those keep their values from this row. An update of the relations clears the column it does not write,
+     * so the relations are taken whole from the update.
+     */
+    public Patient withUpdate(Patient update) {
+        Patient patient = new Patient();
+        try {
+            for (Field field : COLUMNS) {
+                Object value = field.get(update);
+                field.set(patient, value != null ? value : field.get(this));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        if (update.relations != null || update.relationsBin != null) {
+            patient.relations = update.relations;
+            patient.relationsBin = update.relationsBin;
+        }
+        return patient;
+    }
+
+    /**
+     * The fields of the columns, looked up once when the class is loaded.
+     */
+    private static Field[] findColumns() {
+        List<Field> columns = new ArrayList<>();
+        for (Field field : Patient.class.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Column.class) || field.isAnnotationPresent(PrimaryKey.class)) {
+                field.setAccessible(true);
+                columns.add(field);
+            }
+        }
+        return columns.toArray(new Field[columns.size()]);
+    }
 }
@@ -4,12 +4,18 @@ import org.springframework.data.cassandra.mapping.Column;
 import org.springframework.data.cassandra.mapping.PrimaryKeyColumn;
 import org.springframework.data.cassandra.mapping.Table;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.encode;
 import static org.springframework.cassandra.core.PrimaryKeyType.CLUSTERED;
 import static org.springframework.cassandra.core.PrimaryKeyType.PARTITIONED;
 
+/**
+ * The change set, requested by and approved by of a log are kept either as JSON or, once encoded, in their blob
+ * columns, as those of PatientUpdateLog are.
+ */
 @Table(value = CF_PATIENT_AUDIT_LOG)
 public class PatientAuditLog {
 
@@ -28,6 +34,15 @@ public class PatientAuditLog {
     @Column(APPROVED_BY)
     private String approvedBy;
 
+    @Column(CHANGE_SET_BIN)
+    private ByteBuffer changeSetBin;
+
+    @Column(REQUESTED_BY_BIN)
+    private ByteBuffer requestedByBin;
+
+    @Column(APPROVED_BY_BIN)
+    private ByteBuffer approvedByBin;
+
     public static PatientAuditLog toPatientAuditLog(PatientUpdateLog feed) {
         PatientAuditLog log = new PatientAuditLog();
         log.setHealthId(feed.getHealthId());
@@ -35,6 +50,9 @@ public class PatientAuditLog {
         log.setChangeSet(feed.getChangeSet());
         log.setRequestedBy(feed.getRequestedBy());
         log.setApprovedBy(feed.getApprovedBy());
+        log.setChangeSetBin(feed.getChangeSetBin());
+        log.setRequestedByBin(feed.getRequestedByBin());
+        log.setApprovedByBin(feed.getApprovedByBin());
         return log;
     }
 
@@ -77,4 +95,46 @@ public class PatientAuditLog {
     public void setApprovedBy(String approvedBy) {
         this.approvedBy = approvedBy;
     }
-}
\ No newline at end of file
+
+    public ByteBuffer getChangeSetBin() {
+        return changeSetBin;
+    }
+
+    public void setChangeSetBin(ByteBuffer changeSetBin) {
+        this.changeSetBin = changeSetBin;
+    }
+
+    public ByteBuffer getRequestedByBin() {
+        return requestedByBin;
+    }
+
+    public void setRequestedByBin(ByteBuffer requestedByBin) {
+        this.requestedByBin = requestedByBin;
+    }
+
+    public ByteBuffer getApprovedByBin() {
+        return approvedByBin;
+    }
+
+    public void setApprovedByBin(ByteBuffer approvedByBin) {
+        this.approvedByBin = approvedByBin;
+    }
+
+    /**
+     * Moves the JSON columns to their blob columns, for a write that encodes them.
+     */
+    public void encodeColumns() {
+        if (changeSet != null) {
+            changeSetBin = encode(changeSet);
+            changeSet = null;
+        }
+        if (requestedBy != null) {
+            requestedByBin = encode(requestedBy);
+            requestedBy = null;
+        }
+        if (approvedBy != null) {
+            approvedByBin = encode(approvedBy);
+            approvedBy = null;
+        }
+    }
+}
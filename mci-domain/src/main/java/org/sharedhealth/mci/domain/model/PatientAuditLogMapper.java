@@ -1,19 +1,28 @@
 package org.sharedhealth.mci.domain.model;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.sharedhealth.mci.domain.util.DateUtil.toIsoMillisFormat;
-import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.read;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
 
 @Component
 public class PatientAuditLogMapper {
 
+    private static final ObjectReader CHANGE_SET_READER = reader(new TypeReference<Map<String, Map<String, Object>>>() {
+    });
+    private static final ObjectReader REQUESTED_BY_READER = reader(new TypeReference<Map<String, Set<Requester>>>() {
+    });
+    private static final ObjectReader APPROVED_BY_READER = reader(Requester.class);
+
     public List<PatientAuditLogData> map(List<PatientAuditLog> logs) {
         List<PatientAuditLogData> dataList = new ArrayList<>();
         for (PatientAuditLog log : logs) {
@@ -26,20 +35,21 @@ public class PatientAuditLogMapper {
         PatientAuditLogData data = new PatientAuditLogData();
         data.setEventTime(toIsoMillisFormat(log.getEventId()));
         data.setHealthId(log.getHealthId());
-        data.setChangeSet(buildChangeSet(log.getChangeSet()));
-        data.setRequestedBy(readValue(log.getRequestedBy(), new TypeReference<Map<String, Set<Requester>>>() {
-        }));
-        if (log.getApprovedBy() != null) {
-            data.setApprovedBy(readValue(log.getApprovedBy(), Requester.class));
-        }
+        data.setChangeSet(buildChangeSet(log.getChangeSetBin(), log.getChangeSet()));
+        data.setRequestedBy(buildRequestedBy(log.getRequestedByBin(), log.getRequestedBy()));
+        data.setApprovedBy(buildApprovedBy(log.getApprovedByBin(), log.getApprovedBy()));
         return data;
     }
 
-    private Map<String, Map<String, Object>> buildChangeSet(String changeSet) {
-        if (changeSet == null) {
-            return null;
-        }
-        return readValue(changeSet, new TypeReference<Map<String, Map<String, Object>>>() {
-        });
+    private Map<String, Map<String, Object>> buildChangeSet(ByteBuffer encodedChangeSet, String changeSet) {
+        return read(encodedChangeSet, changeSet, CHANGE_SET_READER);
+    }
+
+    private Map<String, Set<Requester>> buildRequestedBy(ByteBuffer encodedRequestedBy, String requestedBy) {
+        return read(encodedRequestedBy, requestedBy, REQUESTED_BY_READER);
+    }
+
+    private Requester buildApprovedBy(ByteBuffer encodedApprovedBy, String approvedBy) {
+        return read(encodedApprovedBy, approvedBy, APPROVED_BY_READER);
     }
 }
@@ -14,23 +14,25 @@ import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.sharedhealth.mci.domain.util.WhiteSpaceRemovalDeserializer;
 import org.sharedhealth.mci.domain.validation.constraints.*;
 import org.sharedhealth.mci.domain.validation.group.RequiredGroup;
+import org.slf4j.Logger;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Pattern.Flag;
-import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.TreeSet;
 import java.util.UUID;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
-import static java.lang.String.valueOf;
 import static org.apache.commons.lang3.StringUtils.*;
 import static org.sharedhealth.mci.domain.constant.ErrorConstants.*;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.read;
+import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+import static org.slf4j.LoggerFactory.getLogger;
 
 @MaritalRelation(message = ERROR_CODE_DEPENDENT, field = "maritalStatus")
 @JsonIgnoreProperties(ignoreUnknown = false, value = {"created_at" })
@@ -38,6 +40,8 @@ import static org.sharedhealth.mci.domain.constant.MCIConstants.*;
         JsonAutoDetect.Visibility.NONE)
 public class PatientData implements Diffable<PatientData> {
 
+    private static final Logger logger = getLogger(PatientData.class);
+
     private static final String INVALID_CATCHMENT = "invalid.catchment";
 
     private static final String JSON = ".json";
@@ -226,6 +230,15 @@ public class PatientData implements Diffable<PatientData> {
     @JsonIgnore
     private TreeSet<PendingApproval> pendingApprovals;
 
+    @JsonIgnore
+    private String relationsJson;
+
+    @JsonIgnore
+    private ByteBuffer relationsBin;
+
+    @JsonIgnore
+    private String pendingApprovalsJson;
+
     @JsonIgnore
     private Requester requester;
 
@@ -402,17 +415,20 @@ public class PatientData implements Diffable<PatientData> {
         this.assignedBy = assignedBy;
     }
 
+    @JsonProperty(RELATIONS)
     public List<Relation> getRelations() {
+        decodeRelations();
         return relations;
     }
 
     public Relation getRelationOfType(String relationType) {
+        List<Relation> relations = getRelations();
 
-        if (this.relations == null) {
+        if (relations == null) {
             return null;
         }
 
-        for (Relation relation : this.relations) {
+        for (Relation relation : relations) {
 
             if (relation.getType() != null && relation.getType().equals(relationType)) {
                 return relation;
@@ -423,12 +439,13 @@ public class PatientData implements Diffable<PatientData> {
     }
 
     public Relation getRelationById(String id) {
+        List<Relation> relations = getRelations();
 
-        if (this.relations == null) {
+        if (relations == null) {
             return null;
         }
 
-        for (Relation relation : this.relations) {
+        for (Relation relation : relations) {
 
             if (relation.getId() != null && relation.getId().equals(id)) {
                 return relation;
@@ -439,9 +456,35 @@ public class PatientData implements Diffable<PatientData> {
     }
 
     public void setRelations(List<Relation> relations) {
+        this.relationsJson = null;
+        this.relationsBin = null;
         this.relations = relations;
     }
 
+    /**
+     * Keeps the relations columns as they are, to be decoded when the relations are first asked for.
+     */
+    void setRelationsColumns(ByteBuffer relationsBin, String relationsJson) {
+        this.relations = null;
+        this.relationsBin = relationsBin;
+        this.relationsJson = relationsJson;
+    }
+
+    private void decodeRelations() {
+        if (relationsJson == null && relationsBin == null) {
+            return;
+        }
+        String json = relationsJson;
+        ByteBuffer encoded = relationsBin;
+        relationsJson = null;
+        relationsBin = null;
+        try {
+            relations = read(encoded, json, Patient.RELATIONS_READER);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Can not read relations of patient %s", healthId), e);
+        }
+    }
+
     public String getPrimaryContact() {
         return primaryContact;
     }
@@ -517,13 +560,36 @@ public class PatientData implements Diffable<PatientData> {
     }
 
     public TreeSet<PendingApproval> getPendingApprovals() {
+        if (pendingApprovalsJson != null) {
+            if (isNotBlank(pendingApprovalsJson)) {
+                pendingApprovals = readValue(pendingApprovalsJson, Patient.PENDING_APPROVALS_READER);
+            }
+            pendingApprovalsJson = null;
+        }
         return pendingApprovals;
     }
 
     public void setPendingApprovals(TreeSet<PendingApproval> pendingApprovals) {
+        this.pendingApprovalsJson = null;
         this.pendingApprovals = pendingApprovals;
     }
 
+    /**
+     * Keeps the pending approvals column as it is, to be decoded when the pending approvals are first asked for.
+     */
+    void setPendingApprovalsJson(String pendingApprovalsJson) {
+        this.pendingApprovals = null;
+        this.pendingApprovalsJson = pendingApprovalsJson;
+    }
+
+    /**
+     * Decodes the columns kept as JSON, for code that reads the fields directly.
+     */
+    void decodeColumns() {
+        getRelations();
+        getPendingApprovals();
+    }
+
     public void addPendingApproval(PendingApproval pendingApproval) {
         TreeSet<PendingApproval> pendingApprovals = this.getPendingApprovals();
         if (pendingApprovals == null) {
@@ -544,41 +610,11 @@ public class PatientData implements Diffable<PatientData> {
     }
 
     public Object getValue(String jsonKey) {
-        for (Field field : PatientData.class.getDeclaredFields()) {
-            JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
-            if (jsonProperty != null) {
-                String value = jsonProperty.value();
-                if (value != null && value.equals(jsonKey)) {
-                    try {
-                        return field.get(this);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
-        }
-        return null;
+        return PatientDataFields.get(this, jsonKey);
     }
 
     public List<String> findNonEmptyFieldNames() {
-        List<String> fieldNames = new ArrayList<>();
-        for (Field field : PatientData.class.getDeclaredFields()) {
-            try {
-                Object value = field.get(this);
-                if (value != null) {
-                    if (value instanceof String && StringUtils.isBlank(valueOf(value))) {
-                        continue;
-                    }
-                    JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
-                    if (jsonProperty != null) {
-                        fieldNames.add(jsonProperty.value());
-                    }
-                }
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        return fieldNames;
+        return PatientDataFields.findNonEmpty(this);
     }
 
     public boolean belongsTo(Catchment catchment) {
@@ -628,7 +664,7 @@ public class PatientData implements Diffable<PatientData> {
         if (nationalId != null ? !nationalId.equals(that.nationalId) : that.nationalId != null) return false;
         if (nationality != null ? !nationality.equals(that.nationality) : that.nationality != null) return false;
         if (occupation != null ? !occupation.equals(that.occupation) : that.occupation != null) return false;
-        if (pendingApprovals != null ? !pendingApprovals.equals(that.pendingApprovals) : that.pendingApprovals != null)
+        if (getPendingApprovals() != null ? !getPendingApprovals().equals(that.getPendingApprovals()) : that.getPendingApprovals() != null)
             return false;
         if (permanentAddress != null ? !permanentAddress.equals(that.permanentAddress) : that.permanentAddress != null)
             return false;
@@ -640,7 +676,7 @@ public class PatientData implements Diffable<PatientData> {
             return false;
         if (primaryContactNumber != null ? !primaryContactNumber.equals(that.primaryContactNumber) : that.primaryContactNumber != null)
             return false;
-        if (CollectionUtils.isNotEmpty(relations) ? !relations.equals(that.relations) : CollectionUtils.isNotEmpty(that.relations))
+        if (CollectionUtils.isNotEmpty(getRelations()) ? !getRelations().equals(that.getRelations()) : CollectionUtils.isNotEmpty(that.getRelations()))
             return false;
         if (religion != null ? !religion.equals(that.religion) : that.religion != null) return false;
         if (surName != null ? !surName.equals(that.surName) : that.surName != null) return false;
@@ -668,7 +704,7 @@ public class PatientData implements Diffable<PatientData> {
         result = 31 * result + (gender != null ? gender.hashCode() : 0);
         result = 31 * result + (occupation != null ? occupation.hashCode() : 0);
         result = 31 * result + (educationLevel != null ? educationLevel.hashCode() : 0);
-        result = 31 * result + (relations != null ? relations.hashCode() : 0);
+        result = 31 * result + (getRelations() != null ? getRelations().hashCode() : 0);
         result = 31 * result + (uid != null ? uid.hashCode() : 0);
         result = 31 * result + (placeOfBirth != null ? placeOfBirth.hashCode() : 0);
         result = 31 * result + (religion != null ? religion.hashCode() : 0);
@@ -686,7 +722,7 @@ public class PatientData implements Diffable<PatientData> {
         result = 31 * result + (confidential != null ? confidential.hashCode() : 0);
         result = 31 * result + (createdAt != null ? createdAt.hashCode() : 0);
         result = 31 * result + (updatedAt != null ? updatedAt.hashCode() : 0);
-        result = 31 * result + (pendingApprovals != null ? pendingApprovals.hashCode() : 0);
+        result = 31 * result + (getPendingApprovals() != null ? getPendingApprovals().hashCode() : 0);
         result = 31 * result + (householdCode != null ? householdCode.hashCode() : 0);
         result = 31 * result + (active != null ? active.hashCode() : 0);
         result = 31 * result + (mergedWith != null ? mergedWith.hashCode() : 0);
@@ -708,7 +744,7 @@ public class PatientData implements Diffable<PatientData> {
         sb.append(", gender='").append(gender).append('\'');
         sb.append(", occupation='").append(occupation).append('\'');
         sb.append(", educationLevel='").append(educationLevel).append('\'');
-        sb.append(", relations=").append(relations);
+        sb.append(", relations=").append(getRelations());
         sb.append(", uid='").append(uid).append('\'');
         sb.append(", placeOfBirth='").append(placeOfBirth).append('\'');
         sb.append(", religion='").append(religion).append('\'');
@@ -727,7 +763,7 @@ public class PatientData implements Diffable<PatientData> {
         sb.append(", householdCode='").append(householdCode).append('\'');
         sb.append(", createdAt=").append(createdAt);
         sb.append(", updatedAt=").append(updatedAt);
-        sb.append(", pendingApprovals=").append(pendingApprovals);
+        sb.append(", pendingApprovals=").append(getPendingApprovals());
         sb.append(", requester='").append(requester).append('\'');
         sb.append(", active='").append(active).append('\'');
         sb.append(", mergedWith='").append(mergedWith).append('\'');
@@ -929,7 +965,7 @@ public class PatientData implements Diffable<PatientData> {
                 .append(PRESENT_ADDRESS, this.address, that.address)
                 .append(PERMANENT_ADDRESS, this.permanentAddress, that.permanentAddress)
 
-                .append(RELATIONS, this.relations, that.relations)
+                .append(RELATIONS, this.getRelations(), that.getRelations())
                 .append(ACTIVE, this.active, that.active)
                 .append(MERGED_WITH, this.mergedWith, that.mergedWith)
                 .append(HID_CARD_STATUS, this.getHidCardStatus(), that.getHidCardStatus())
@@ -0,0 +1,133 @@
+package org.sharedhealth.mci.domain.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * The fields of PatientData keyed by their JSON property names, looked up once when the class is loaded instead of
+ * scanning the declared fields and their annotations on every access. Each field is read and written through a getter
+ * and a setter method handle, typed as (PatientData)Object and (PatientData, Object)void so they are called with
+ * invokeExact. Columns PatientData keeps as JSON are decoded before their fields are read or written.
+ * <p>
+ * PatientDataFieldsBenchmark in the jmh source set compares these accessors with Field access and with the declared
+ * field scan they replace.
+ */
+public final class PatientDataFields {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, PatientData.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, PatientData.class, Object.class);
+
+    private static final Map<String, Accessor> FIELDS = findFields();
+
+    private PatientDataFields() {
+    }
+
+    private static Map<String, Accessor> findFields() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, Accessor> fields = new LinkedHashMap<>();
+        for (Field field : PatientData.class.getDeclaredFields()) {
+            JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+            if (jsonProperty == null || Modifier.isStatic(field.getModifiers()) || fields.containsKey(jsonProperty.value())) {
+                continue;
+            }
+            field.setAccessible(true);
+            try {
+                fields.put(jsonProperty.value(), new Accessor(
+                        lookup.unreflectGetter(field).asType(GETTER_TYPE),
+                        lookup.unreflectSetter(field).asType(SETTER_TYPE)));
+            } catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public static Set<String> names() {
+        return FIELDS.keySet();
+    }
+
+    public static boolean contains(String jsonKey) {
+        return FIELDS.containsKey(jsonKey);
+    }
+
+    public static Object get(PatientData patient, String jsonKey) {
+        Accessor accessor = FIELDS.get(jsonKey);
+        if (accessor == null) {
+            return null;
+        }
+        patient.decodeColumns();
+        return accessor.get(patient);
+    }
+
+    public static void set(PatientData patient, String jsonKey, Object value) {
+        Accessor accessor = FIELDS.get(jsonKey);
+        if (accessor == null) {
+            throw new IllegalArgumentException("Unknown patient field: " + jsonKey);
+        }
+        patient.decodeColumns();
+        accessor.set(patient, value);
+    }
+
+    /**
+     * The JSON names of the fields that have a value, in declaration order. Blank strings have no value.
+     */
+    public static List<String> findNonEmpty(PatientData patient) {
+        List<String> fieldNames = new ArrayList<>();
+        patient.decodeColumns();
+        for (Map.Entry<String, Accessor> entry : FIELDS.entrySet()) {
+            Object value = entry.getValue().get(patient);
+            if (value == null || (value instanceof String && isBlank((String) value))) {
+                continue;
+            }
+            fieldNames.add(entry.getKey());
+        }
+        return fieldNames;
+    }
+
+    private static final class Accessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Accessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        private Object get(PatientData patient) {
+            try {
+                return (Object) getter.invokeExact(patient);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * A value of the wrong type fails with a ClassCastException, as Field.set failed with an
+         * IllegalArgumentException.
+         */
+        private void set(PatientData patient, Object value) {
+            try {
+                setter.invokeExact(patient, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
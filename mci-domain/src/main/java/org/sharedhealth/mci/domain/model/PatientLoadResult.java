@@ -0,0 +1,42 @@
+package org.sharedhealth.mci.domain.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of loading several patients by health id. Patients are kept in the order the health ids were asked
+ * for, and every health id that could not be loaded is reported with the reason instead of failing the whole set.
+ */
+public class PatientLoadResult {
+
+    public static final String NOT_FOUND = "No patient found";
+
+    private final Map<String, PatientData> patients = new LinkedHashMap<>();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+
+    public void addPatient(String healthId, PatientData patient) {
+        patients.put(healthId, patient);
+    }
+
+    public void addFailure(String healthId, String reason) {
+        failures.put(healthId, reason);
+    }
+
+    public Map<String, PatientData> getPatients() {
+        return patients;
+    }
+
+    public List<PatientData> getPatientList() {
+        return new ArrayList<>(patients.values());
+    }
+
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
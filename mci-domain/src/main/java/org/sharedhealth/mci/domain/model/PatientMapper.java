@@ -1,7 +1,5 @@
 package org.sharedhealth.mci.domain.model;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
 import org.sharedhealth.mci.domain.constant.MCIConstants;
 import org.sharedhealth.mci.domain.exception.InvalidRequestException;
@@ -14,12 +12,12 @@ import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
 import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
 
 @Component
 public class PatientMapper {
 
     public static final String DEFAULT_DOB_TYPE = "1";
-    private ObjectMapper objectMapper = new ObjectMapper();
 
     public List<PatientData> map(List<Patient> patients) {
         List<PatientData> dataList = new ArrayList<>();
@@ -43,16 +41,14 @@ public class PatientMapper {
         return dataList;
     }
 
+    /**
+     * The relations and pending approvals columns are handed over as they are stored and only decoded when they are
+     * first read.
+     */
     public PatientData map(Patient patient) {
         PatientData data = new PatientData();
-        if (patient.getRelations() != null) {
-            try {
-                List<Relation> relations = objectMapper.readValue(patient.getRelations(),
-                        objectMapper.getTypeFactory().constructCollectionType(List.class, Relation.class));
-                data.setRelations(relations);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (patient.getRelationsBin() != null || patient.getRelations() != null) {
+            data.setRelationsColumns(patient.getRelationsBin(), patient.getRelations());
         }
         data.setHealthId(patient.getHealthId());
         data.setNationalId(patient.getNationalId());
@@ -100,22 +96,7 @@ public class PatientMapper {
         data.setMaritalStatus(patient.getMaritalStatus());
         data.setPrimaryContact(patient.getPrimaryContact());
 
-        Address address = new Address();
-        address.setAddressLine(patient.getAddressLine());
-        address.setDivisionId(patient.getDivisionId());
-        address.setDistrictId(patient.getDistrictId());
-        address.setUpazilaId(patient.getUpazilaId());
-        address.setCityCorporationId(patient.getCityCorporationId());
-        address.setUnionOrUrbanWardId(patient.getUnionOrUrbanWardId());
-        address.setRuralWardId(patient.getRuralWardId());
-        address.setHoldingNumber(patient.getHoldingNumber());
-        address.setStreet(patient.getStreet());
-        address.setAreaMouja(patient.getAreaMouja());
-        address.setVillage(patient.getVillage());
-        address.setPostOffice(patient.getPostOffice());
-        address.setPostCode(patient.getPostCode());
-        address.setCountryCode(patient.getCountryCode());
-        data.setAddress(address);
+        data.setAddress(buildAddress(patient));
 
         Address permanentAddress = new Address();
         permanentAddress.setAddressLine(patient.getPermanentAddressLine());
@@ -137,14 +118,7 @@ public class PatientMapper {
             data.setPermanentAddress(permanentAddress);
         }
 
-        PhoneNumber phoneNumber = new PhoneNumber();
-        phoneNumber.setNumber(patient.getCellNo());
-        phoneNumber.setAreaCode(patient.getPhoneNumberAreaCode());
-        phoneNumber.setCountryCode(patient.getPhoneNumberCountryCode());
-        phoneNumber.setExtension(patient.getPhoneNumberExtension());
-        if (phoneNumber.getNumber() != null) {
-            data.setPhoneNumber(phoneNumber);
-        }
+        data.setPhoneNumber(buildPhoneNumber(patient));
 
         PhoneNumber primaryContactNumber = new PhoneNumber();
         primaryContactNumber.setNumber(patient.getPrimaryCellNo());
@@ -154,7 +128,7 @@ public class PatientMapper {
         if (primaryContactNumber.getNumber() != null) {
             data.setPrimaryContactNumber(primaryContactNumber);
         }
-        data.setPendingApprovals(patient.getPendingApprovals());
+        data.setPendingApprovalsJson(patient.getPendingApprovalsJson());
         data.setCreatedAt(patient.getCreatedAt());
         data.setUpdatedAt(patient.getUpdatedAt());
         data.setCreatedBy(patient.getCreatedBy());
@@ -163,6 +137,60 @@ public class PatientMapper {
         return data;
     }
 
+    /**
+     * Maps the summary straight from the row, without building the rest of the patient.
+     */
+    public PatientSummaryData mapSummary(Patient patient) {
+        if (patient == null) {
+            return null;
+        }
+        PatientSummaryData data = new PatientSummaryData();
+        data.setHealthId(patient.getHealthId());
+        data.setNationalId(patient.getNationalId());
+        data.setUid(patient.getUid());
+        data.setBirthRegistrationNumber(patient.getBirthRegistrationNumber());
+        data.setGivenName(StringUtils.trim(patient.getGivenName()));
+        data.setSurName(StringUtils.trim(patient.getSurName()));
+        data.setDateOfBirth(patient.getDateOfBirth());
+        data.setGender(patient.getGender());
+        data.setAddress(buildAddress(patient));
+        data.setPhoneNumber(buildPhoneNumber(patient));
+        data.setActive(patient.isActive());
+        data.setMergedWith(patient.getMergedWith());
+        return data;
+    }
+
+    private Address buildAddress(Patient patient) {
+        Address address = new Address();
+        address.setAddressLine(patient.getAddressLine());
+        address.setDivisionId(patient.getDivisionId());
+        address.setDistrictId(patient.getDistrictId());
+        address.setUpazilaId(patient.getUpazilaId());
+        address.setCityCorporationId(patient.getCityCorporationId());
+        address.setUnionOrUrbanWardId(patient.getUnionOrUrbanWardId());
+        address.setRuralWardId(patient.getRuralWardId());
+        address.setHoldingNumber(patient.getHoldingNumber());
+        address.setStreet(patient.getStreet());
+        address.setAreaMouja(patient.getAreaMouja());
+        address.setVillage(patient.getVillage());
+        address.setPostOffice(patient.getPostOffice());
+        address.setPostCode(patient.getPostCode());
+        address.setCountryCode(patient.getCountryCode());
+        return address;
+    }
+
+    private PhoneNumber buildPhoneNumber(Patient patient) {
+        if (patient.getCellNo() == null) {
+            return null;
+        }
+        PhoneNumber phoneNumber = new PhoneNumber();
+        phoneNumber.setNumber(patient.getCellNo());
+        phoneNumber.setAreaCode(patient.getPhoneNumberAreaCode());
+        phoneNumber.setCountryCode(patient.getPhoneNumberCountryCode());
+        phoneNumber.setExtension(patient.getPhoneNumberExtension());
+        return phoneNumber;
+    }
+
     private boolean isPatientDeadAndHasDateOfDeath(Patient patient) {
         return patient.getDateOfDeath() != null && MCIConstants.PATIENT_STATUS_DEAD.equals(patient.getStatus()) && DateUtil.getYearOf(patient.getDateOfDeath()) > 1;
     }
@@ -348,8 +376,8 @@ public class PatientMapper {
         prepareMothersInfo(data, patient);
 
         try {
-            patient.setRelations(objectMapper.writeValueAsString(data.getRelations()));
-        } catch (JsonProcessingException e) {
+            patient.setRelations(writeValueAsString(data.getRelations()));
+        } catch (RuntimeException e) {
             System.out.println("Error on preparing relation : " + e.getMessage());
         }
     }
@@ -1,29 +1,41 @@
 package org.sharedhealth.mci.domain.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.sharedhealth.mci.domain.constant.JsonConstants;
 import org.sharedhealth.mci.domain.util.DateUtil;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.cassandra.mapping.Column;
 import org.springframework.data.cassandra.mapping.PrimaryKeyColumn;
 import org.springframework.data.cassandra.mapping.Table;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.UUID;
 
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.encode;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.read;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
 import static org.springframework.cassandra.core.PrimaryKeyType.CLUSTERED;
 import static org.springframework.cassandra.core.PrimaryKeyType.PARTITIONED;
 
+/**
+ * The change set, requested by and approved by of a log are kept either as JSON or, once encoded, in their blob
+ * columns; see JsonColumnCodec. Readers take both.
+ */
 @Table(value = CF_PATIENT_UPDATE_LOG)
 @JsonIgnoreProperties({YEAR, "changeSet", EVENT_ID})
 @JsonPropertyOrder({HEALTH_ID, UPDATED_AT, CHANGE_SET})
 public class PatientUpdateLog {
 
+    private static final ObjectReader CHANGE_SET_MAP_READER = reader(Map.class);
+
     @PrimaryKeyColumn(name = YEAR, ordinal = 0, type = PARTITIONED)
     private int year;
 
@@ -38,6 +50,9 @@ public class PatientUpdateLog {
     @Column(CHANGE_SET)
     private String changeSet;
 
+    @Transient
+    private Map parsedChangeSet;
+
     @Column(REQUESTED_BY)
     @JsonProperty(JsonConstants.REQUESTED_BY)
     private String requestedBy;
@@ -50,6 +65,18 @@ public class PatientUpdateLog {
     @JsonProperty(EVENT_TYPE)
     private String eventType;
 
+    @Column(CHANGE_SET_BIN)
+    @JsonIgnore
+    private ByteBuffer changeSetBin;
+
+    @Column(REQUESTED_BY_BIN)
+    @JsonIgnore
+    private ByteBuffer requestedByBin;
+
+    @Column(APPROVED_BY_BIN)
+    @JsonIgnore
+    private ByteBuffer approvedByBin;
+
     public String getHealthId() {
         return healthId;
     }
@@ -64,6 +91,11 @@ public class PatientUpdateLog {
 
     public void setChangeSet(String changeSet) {
         this.changeSet = changeSet;
+        this.parsedChangeSet = null;
+    }
+
+    public boolean hasChangeSet() {
+        return changeSetBin != null || isNotBlank(changeSet);
     }
 
     public int getYear() {
@@ -72,17 +104,17 @@ public class PatientUpdateLog {
 
     @JsonProperty(CHANGE_SET)
     public Map getChangeSetMap() {
-
-        if (this.changeSet == null) {
+        if (this.changeSet == null && this.changeSetBin == null) {
             return null;
         }
-
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            return mapper.readValue(this.changeSet, Map.class);
-        } catch (IOException e) {
-            return null;
+        if (this.parsedChangeSet == null) {
+            try {
+                this.parsedChangeSet = read(this.changeSetBin, this.changeSet, CHANGE_SET_MAP_READER);
+            } catch (RuntimeException e) {
+                return null;
+            }
         }
+        return this.parsedChangeSet;
     }
 
     @JsonProperty(UPDATED_AT)
@@ -129,4 +161,47 @@ public class PatientUpdateLog {
     public void setEventType(String eventType) {
         this.eventType = eventType;
     }
+
+    public ByteBuffer getChangeSetBin() {
+        return changeSetBin;
+    }
+
+    public void setChangeSetBin(ByteBuffer changeSetBin) {
+        this.changeSetBin = changeSetBin;
+        this.parsedChangeSet = null;
+    }
+
+    public ByteBuffer getRequestedByBin() {
+        return requestedByBin;
+    }
+
+    public void setRequestedByBin(ByteBuffer requestedByBin) {
+        this.requestedByBin = requestedByBin;
+    }
+
+    public ByteBuffer getApprovedByBin() {
+        return approvedByBin;
+    }
+
+    public void setApprovedByBin(ByteBuffer approvedByBin) {
+        this.approvedByBin = approvedByBin;
+    }
+
+    /**
+     * Moves the JSON columns to their blob columns, for a write that encodes them.
+     */
+    public void encodeColumns() {
+        if (changeSet != null) {
+            changeSetBin = encode(changeSet);
+            changeSet = null;
+        }
+        if (requestedBy != null) {
+            requestedByBin = encode(requestedBy);
+            requestedBy = null;
+        }
+        if (approvedBy != null) {
+            approvedByBin = encode(approvedBy);
+            approvedBy = null;
+        }
+    }
 }
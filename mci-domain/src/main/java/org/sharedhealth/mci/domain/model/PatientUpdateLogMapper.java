@@ -1,18 +1,28 @@
 package org.sharedhealth.mci.domain.model;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.sharedhealth.mci.domain.util.DateUtil.toIsoMillisFormat;
-import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.read;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
 
 @Component
 public class PatientUpdateLogMapper {
+
+    private static final ObjectReader CHANGE_SET_READER = reader(new TypeReference<Map<String, Map<String, Object>>>() {
+    });
+    private static final ObjectReader REQUESTED_BY_READER = reader(new TypeReference<Map<String, Set<Requester>>>() {
+    });
+    private static final ObjectReader APPROVED_BY_READER = reader(Requester.class);
+
     public List<PatientUpdateLogData> map(List<PatientUpdateLog> logs) {
         List<PatientUpdateLogData> dataList = new ArrayList<>();
         for (PatientUpdateLog log : logs) {
@@ -25,22 +35,22 @@ public class PatientUpdateLogMapper {
         PatientUpdateLogData data = new PatientUpdateLogData();
         data.setHealthId(log.getHealthId());
         data.setEventTime(toIsoMillisFormat(log.getEventId()));
-        data.setChangeSet(buildChangeSet(log.getChangeSet()));
+        data.setChangeSet(buildChangeSet(log.getChangeSetBin(), log.getChangeSet()));
 
-        String requestedBy = log.getRequestedBy();
-        data.setRequestedBy((null == requestedBy) ? null : readValue(log.getRequestedBy(), new TypeReference<Map<String, Set<Requester>>>() {
-        }));
-        if (log.getApprovedBy() != null) {
-            data.setApprovedBy(readValue(log.getApprovedBy(), Requester.class));
-        }
+        data.setRequestedBy(buildRequestedBy(log.getRequestedByBin(), log.getRequestedBy()));
+        data.setApprovedBy(buildApprovedBy(log.getApprovedByBin(), log.getApprovedBy()));
         return data;
     }
 
-    private Map<String, Map<String, Object>> buildChangeSet(String changeSet) {
-        if (changeSet == null) {
-            return null;
-        }
-        return readValue(changeSet, new TypeReference<Map<String, Map<String, Object>>>() {
-        });
+    private Map<String, Map<String, Object>> buildChangeSet(ByteBuffer encodedChangeSet, String changeSet) {
+        return read(encodedChangeSet, changeSet, CHANGE_SET_READER);
+    }
+
+    private Map<String, Set<Requester>> buildRequestedBy(ByteBuffer encodedRequestedBy, String requestedBy) {
+        return read(encodedRequestedBy, requestedBy, REQUESTED_BY_READER);
+    }
+
+    private Requester buildApprovedBy(ByteBuffer encodedApprovedBy, String approvedBy) {
+        return read(encodedApprovedBy, approvedBy, APPROVED_BY_READER);
     }
 }
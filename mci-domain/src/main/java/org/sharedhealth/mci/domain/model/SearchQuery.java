@@ -67,6 +67,9 @@ public class SearchQuery extends PaginationQuery {
     @Pattern(regexp = "[0-9]*$", message = ERROR_CODE_PATTERN)
     private String household_code;
 
+    @JsonProperty("fuzzy_name")
+    private Boolean fuzzy_name;
+
     public String getNid() {
         return nid;
     }
@@ -121,6 +124,7 @@ public class SearchQuery extends PaginationQuery {
                 ", country_code='" + country_code + '\'' +
                 ", area_code='" + area_code + '\'' +
                 ", extension='" + extension + '\'' +
+                ", fuzzy_name=" + fuzzy_name +
                 '}';
     }
 
@@ -204,6 +208,19 @@ public class SearchQuery extends PaginationQuery {
         this.household_code = household_code;
     }
 
+    public Boolean getFuzzy_name() {
+        return fuzzy_name;
+    }
+
+    public void setFuzzy_name(Boolean fuzzy_name) {
+        this.fuzzy_name = fuzzy_name;
+    }
+
+    @JsonIgnore
+    public boolean isFuzzyNameSearch() {
+        return Boolean.TRUE.equals(fuzzy_name);
+    }
+
     @JsonIgnore
     public boolean isEmpty() {
 
@@ -242,6 +259,7 @@ public class SearchQuery extends PaginationQuery {
         if (sur_name != null ? !sur_name.equals(that.sur_name) : that.sur_name != null) return false;
         if (uid != null ? !uid.equals(that.uid) : that.uid != null) return false;
         if (household_code != null ? !household_code.equals(that.household_code) : that.household_code != null) return false;
+        if (fuzzy_name != null ? !fuzzy_name.equals(that.fuzzy_name) : that.fuzzy_name != null) return false;
 
         return true;
     }
@@ -260,6 +278,7 @@ public class SearchQuery extends PaginationQuery {
         result = 31 * result + (area_code != null ? area_code.hashCode() : 0);
         result = 31 * result + (extension != null ? extension.hashCode() : 0);
         result = 31 * result + (household_code != null ? household_code.hashCode() : 0);
+        result = 31 * result + (fuzzy_name != null ? fuzzy_name.hashCode() : 0);
         return result;
     }
 }
@@ -5,6 +5,7 @@ import com.datastax.driver.core.querybuilder.Select;
 import org.sharedhealth.mci.domain.model.ApprovalField;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.cassandra.core.CassandraOperations;
 import org.springframework.stereotype.Component;
@@ -30,4 +31,8 @@ public class ApprovalFieldRepository extends BaseRepository {
     public ApprovalField findByField(String field) {
         return findFieldDataByKey(field);
     }
+
+    @CacheEvict(value = APPROVAL_FIELDS_CACHE, allEntries = true)
+    public void evictAll() {
+    }
 }
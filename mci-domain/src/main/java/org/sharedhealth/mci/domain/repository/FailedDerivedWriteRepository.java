@@ -0,0 +1,144 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.utils.UUIDs;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the derived patient statements that still failed after their retries, so they can be replayed later. A
+ * statement is kept as its query, its serialized values and the client timestamp it was written with; a replay
+ * carries the same timestamp, so it can not overwrite a later write of the same row.
+ */
+@Component
+public class FailedDerivedWriteRepository {
+
+    private static final Logger logger = getLogger(FailedDerivedWriteRepository.class);
+
+    static final RegularStatement INSERT_FAILED_DERIVED_WRITE_STMT = insertInto(CF_FAILED_DERIVED_WRITES)
+            .value(FAILED_AT, bindMarker())
+            .value(QUERY, bindMarker())
+            .value(QUERY_VALUES, bindMarker())
+            .value(WRITE_TIMESTAMP, bindMarker())
+            .value(RETRIES, bindMarker());
+    static final RegularStatement FIND_FAILED_DERIVED_WRITES_STMT = select().from(CF_FAILED_DERIVED_WRITES)
+            .limit(bindMarker());
+    static final RegularStatement UPDATE_FAILED_DERIVED_WRITE_RETRIES_STMT = update(CF_FAILED_DERIVED_WRITES)
+            .with(set(RETRIES, bindMarker()))
+            .where(eq(FAILED_AT, bindMarker()));
+    static final RegularStatement DELETE_FAILED_DERIVED_WRITE_STMT = delete().from(CF_FAILED_DERIVED_WRITES)
+            .where(eq(FAILED_AT, bindMarker()));
+
+    private PreparedStatementRegistry statements;
+
+    @Autowired
+    public FailedDerivedWriteRepository(PreparedStatementRegistry statements) {
+        this.statements = statements;
+    }
+
+    public void save(Statement statement) {
+        String query;
+        ByteBuffer[] values;
+        if (statement instanceof BoundStatement) {
+            BoundStatement bound = (BoundStatement) statement;
+            query = bound.preparedStatement().getQueryString();
+            values = new ByteBuffer[bound.preparedStatement().getVariables().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = bound.getBytesUnsafe(i);
+            }
+        } else if (statement instanceof RegularStatement) {
+            RegularStatement regular = (RegularStatement) statement;
+            query = regular.getQueryString();
+            values = regular.getValues(ProtocolVersion.NEWEST_SUPPORTED);
+        } else {
+            throw new IllegalArgumentException("Can not keep statement " + statement);
+        }
+        statements.execute(statements.bind(INSERT_FAILED_DERIVED_WRITE_STMT, UUIDs.timeBased(), query,
+                encode(values), statement.getDefaultTimestamp(), 0));
+    }
+
+    /**
+     * Replays the oldest kept statements. A statement that is written is dropped; one that fails again is kept,
+     * with its retries counted.
+     *
+     * @return the number of statements replayed.
+     */
+    public int replay(int limit) {
+        int replayed = 0;
+        for (Row row : statements.execute(statements.bind(FIND_FAILED_DERIVED_WRITES_STMT, limit))) {
+            UUID failedAt = row.getUUID(FAILED_AT);
+            Statement statement = new SimpleStatement(row.getString(QUERY), (Object[]) decode(row.getBytes(QUERY_VALUES)));
+            statement.setDefaultTimestamp(row.getLong(WRITE_TIMESTAMP));
+            try {
+                statements.execute(statement);
+                statements.execute(statements.bind(DELETE_FAILED_DERIVED_WRITE_STMT, failedAt));
+                replayed++;
+            } catch (RuntimeException e) {
+                logger.error(String.format("Failed to replay derived patient write %s", failedAt), e);
+                statements.execute(statements.bind(UPDATE_FAILED_DERIVED_WRITE_RETRIES_STMT,
+                        row.getInt(RETRIES) + 1, failedAt));
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Values are written as their count followed by each value's length and bytes, with a length of -1 for null.
+     */
+    static ByteBuffer encode(ByteBuffer[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(values == null ? 0 : values.length);
+            if (values != null) {
+                for (ByteBuffer value : values) {
+                    if (value == null) {
+                        out.writeInt(-1);
+                        continue;
+                    }
+                    ByteBuffer duplicate = value.duplicate();
+                    byte[] valueBytes = new byte[duplicate.remaining()];
+                    duplicate.get(valueBytes);
+                    out.writeInt(valueBytes.length);
+                    out.write(valueBytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    static ByteBuffer[] decode(ByteBuffer encoded) {
+        ByteBuffer in = encoded.duplicate();
+        List<ByteBuffer> values = new ArrayList<>();
+        for (int count = in.getInt(); count > 0; count--) {
+            int length = in.getInt();
+            if (length < 0) {
+                values.add(null);
+                continue;
+            }
+            byte[] value = new byte[length];
+            in.get(value);
+            values.add(ByteBuffer.wrap(value));
+        }
+        return values.toArray(new ByteBuffer[values.size()]);
+    }
+}
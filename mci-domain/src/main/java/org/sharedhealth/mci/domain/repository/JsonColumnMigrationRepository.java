@@ -0,0 +1,158 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.Select;
+import com.datastax.driver.core.querybuilder.Update;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+import static java.util.Arrays.asList;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.encode;
+
+/**
+ * Moves the JSON columns written before JSON_COLUMNS_ENCODING was smile to their blob columns, going through each
+ * table a page at a time with the driver's paging state. A row is rewritten with a timestamp just after the latest
+ * write of its JSON columns, so a write of the row that happened meanwhile keeps its values.
+ */
+@Component
+public class JsonColumnMigrationRepository {
+
+    private static final Map<String, MigratedTable> TABLES = new LinkedHashMap<>();
+
+    static {
+        addTable(CF_PATIENT, asList(HEALTH_ID), asList(RELATIONS), asList(RELATIONS_BIN));
+        addTable(CF_PATIENT_UPDATE_LOG, asList(YEAR, EVENT_ID, HEALTH_ID),
+                asList(CHANGE_SET, REQUESTED_BY, APPROVED_BY), asList(CHANGE_SET_BIN, REQUESTED_BY_BIN, APPROVED_BY_BIN));
+        addTable(CF_PATIENT_UPDATE_LOG_SHARDED, asList(BUCKET, SHARD, EVENT_ID, HEALTH_ID),
+                asList(CHANGE_SET, REQUESTED_BY, APPROVED_BY), asList(CHANGE_SET_BIN, REQUESTED_BY_BIN, APPROVED_BY_BIN));
+        addTable(CF_PATIENT_AUDIT_LOG, asList(HEALTH_ID, EVENT_ID),
+                asList(CHANGE_SET, REQUESTED_BY, APPROVED_BY), asList(CHANGE_SET_BIN, REQUESTED_BY_BIN, APPROVED_BY_BIN));
+    }
+
+    private PreparedStatementRegistry statements;
+
+    @Autowired
+    public JsonColumnMigrationRepository(PreparedStatementRegistry statements) {
+        this.statements = statements;
+    }
+
+    private static void addTable(String table, List<String> keys, List<String> jsonColumns, List<String> binColumns) {
+        TABLES.put(table, new MigratedTable(table, keys, jsonColumns, binColumns));
+    }
+
+    public List<String> getTables() {
+        return new ArrayList<>(TABLES.keySet());
+    }
+
+    /**
+     * Migrates the rows of one page of the table, starting at the given paging state, or at the first row if it is
+     * null.
+     *
+     * @return the paging state of the next page, or null once the table has been gone through.
+     */
+    public String migratePage(String table, String pagingState, int pageSize) {
+        MigratedTable migratedTable = TABLES.get(table);
+        if (migratedTable == null) {
+            throw new IllegalArgumentException("Unknown table: " + table);
+        }
+        Statement statement = statements.bind(migratedTable.select);
+        statement.setFetchSize(pageSize);
+        if (isNotBlank(pagingState)) {
+            statement.setPagingState(PagingState.fromString(pagingState));
+        }
+        ResultSet resultSet = statements.execute(statement);
+        List<Statement> updates = new ArrayList<>();
+        for (int available = resultSet.getAvailableWithoutFetching(); available > 0; available--) {
+            Statement update = migratedTable.buildUpdate(resultSet.one(), statements);
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+        for (ResultSetFuture future : statements.executeAll(updates)) {
+            future.getUninterruptibly();
+        }
+        PagingState next = resultSet.getExecutionInfo().getPagingState();
+        return next == null ? null : next.toString();
+    }
+
+    /**
+     * The columns of a migrated table are selected as its key columns, its JSON columns, and the write time of each
+     * JSON column, in that order.
+     */
+    private static final class MigratedTable {
+        private final String table;
+        private final List<String> keys;
+        private final List<String> jsonColumns;
+        private final List<String> binColumns;
+        private final Select select;
+
+        private MigratedTable(String table, List<String> keys, List<String> jsonColumns, List<String> binColumns) {
+            this.table = table;
+            this.keys = keys;
+            this.jsonColumns = jsonColumns;
+            this.binColumns = binColumns;
+            Select.Selection selection = select();
+            for (String key : keys) {
+                selection.column(key);
+            }
+            for (String column : jsonColumns) {
+                selection.column(column);
+            }
+            for (String column : jsonColumns) {
+                selection.writeTime(column);
+            }
+            this.select = selection.from(table);
+        }
+
+        /**
+         * @return the update moving the JSON columns of the row that have a value to their blob columns, or null if
+         * none of them has one.
+         */
+        private Statement buildUpdate(Row row, PreparedStatementRegistry statements) {
+            Update update = update(table);
+            update.using(timestamp(bindMarker()));
+            List<ByteBuffer> encodedValues = new ArrayList<>();
+            long writeTime = Long.MIN_VALUE;
+            for (int i = 0; i < jsonColumns.size(); i++) {
+                String json = row.getString(keys.size() + i);
+                if (json == null) {
+                    continue;
+                }
+                update.with(set(binColumns.get(i), bindMarker())).and(set(jsonColumns.get(i), null));
+                encodedValues.add(encode(json));
+                writeTime = Math.max(writeTime, row.getLong(keys.size() + jsonColumns.size() + i));
+            }
+            if (encodedValues.isEmpty()) {
+                return null;
+            }
+            for (String key : keys) {
+                update.where(eq(key, bindMarker()));
+            }
+
+            BoundStatement bound = statements.prepare(update).bind();
+            int index = 0;
+            bound.setLong(index++, writeTime + 1);
+            for (ByteBuffer encoded : encodedValues) {
+                bound.setBytes(index++, encoded);
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                bound.setBytesUnsafe(index++, row.getBytesUnsafe(i));
+            }
+            return bound;
+        }
+    }
+}
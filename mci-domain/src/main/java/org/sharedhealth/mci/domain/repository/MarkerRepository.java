@@ -1,5 +1,6 @@
 package org.sharedhealth.mci.domain.repository;
 
+import com.datastax.driver.core.querybuilder.Batch;
 import org.sharedhealth.mci.domain.model.Marker;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -8,11 +9,13 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.batch;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_MARKER;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.TYPE;
+import static org.sharedhealth.mci.domain.repository.MarkerRepositoryQueryBuilder.buildUpdateMarkerBatch;
 
 @Component
 public class MarkerRepository extends BaseRepository {
@@ -30,4 +33,10 @@ public class MarkerRepository extends BaseRepository {
         }
         return markers.get(0).getMarker();
     }
+
+    public void save(String markerType, String marker) {
+        Batch batch = batch();
+        buildUpdateMarkerBatch(markerType, marker, cassandraOps.getConverter(), batch);
+        cassandraOps.execute(batch);
+    }
 }
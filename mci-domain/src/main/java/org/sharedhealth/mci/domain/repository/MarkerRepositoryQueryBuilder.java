@@ -1,5 +1,7 @@
 package org.sharedhealth.mci.domain.repository;
 
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.querybuilder.Batch;
 import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Insert;
@@ -8,9 +10,11 @@ import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.springframework.data.cassandra.convert.CassandraConverter;
 
 import java.util.Date;
+import java.util.List;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_MARKER;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.TYPE;
 import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
@@ -20,12 +24,22 @@ public class MarkerRepositoryQueryBuilder {
     private static final long QUERY_EXEC_DELAY = 100;
 
     public static void buildUpdateMarkerBatch(String type, String marker, CassandraConverter converter, Batch batch) {
+        for (RegularStatement statement : buildUpdateMarkerStmts(type, marker, converter)) {
+            batch.add(statement);
+        }
+    }
+
+    public static void buildUpdateMarkerBatch(String type, String marker, CassandraConverter converter,
+                                              BatchStatement batch) {
+        batch.addAll(buildUpdateMarkerStmts(type, marker, converter));
+    }
+
+    private static List<RegularStatement> buildUpdateMarkerStmts(String type, String marker, CassandraConverter converter) {
         long timeInMicros = currentTimeMillis() * 1000;
 
         Delete delete = delete().from(CF_MARKER);
         delete.where(eq(TYPE, type));
         delete.using(timestamp(timeInMicros));
-        batch.add(delete);
 
         Marker newMarker = new Marker();
         newMarker.setType(type);
@@ -33,6 +47,6 @@ public class MarkerRepositoryQueryBuilder {
         newMarker.setMarker(marker);
         Insert insert = createInsertQuery(CF_MARKER, newMarker, null, converter);
         insert.using(timestamp(timeInMicros + QUERY_EXEC_DELAY));
-        batch.add(insert);
+        return asList(delete, insert);
     }
 }
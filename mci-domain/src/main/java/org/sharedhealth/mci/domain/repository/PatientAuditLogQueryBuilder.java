@@ -1,7 +1,7 @@
 package org.sharedhealth.mci.domain.repository;
 
 import com.datastax.driver.core.querybuilder.Batch;
-import org.sharedhealth.mci.domain.diff.PatientDiffBuilder;
+import org.sharedhealth.mci.domain.diff.PatientChangeSet;
 import org.sharedhealth.mci.domain.model.PatientAuditLog;
 import org.sharedhealth.mci.domain.model.PatientData;
 import org.sharedhealth.mci.domain.model.Requester;
@@ -41,43 +41,42 @@ public class PatientAuditLogQueryBuilder {
         return batch;
     }
 
-    public static void buildUpdateAuditLogStmt(PatientData patientDataToSave, PatientData existingPatientData,
+    /**
+     * The JSON columns of the log are written as blobs when encodeColumns is set.
+     */
+    public static void buildUpdateAuditLogStmt(PatientData existingPatientData, PatientChangeSet changeSet,
                                                Map<String, Set<Requester>> requestedBy, Requester approvedBy,
-                                               CassandraConverter converter, Batch batch) {
-        PatientAuditLog patientAuditLog = new PatientAuditLog();
-        String changeSet = getChangeSet(patientDataToSave, existingPatientData);
-
-        if (changeSet != null) {
-            patientAuditLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
-            patientAuditLog.setHealthId(existingPatientData.getHealthId());
-            patientAuditLog.setChangeSet(changeSet);
-            patientAuditLog.setRequestedBy(writeValueAsString(requestedBy));
-            patientAuditLog.setApprovedBy(writeValueAsString(approvedBy));
-            batch.add(createInsertQuery(CF_PATIENT_AUDIT_LOG, patientAuditLog, null, converter));
+                                               boolean encodeColumns, CassandraConverter converter,
+                                               PatientWrite write) {
+        if (changeSet.isEmpty()) {
+            return;
         }
-    }
-
-    public static void buildCreateAuditLogStmt(PatientData patientDataToSave,
-                                               Map<String, Set<Requester>> requestedBy,
-                                               CassandraConverter converter, Batch batch) {
         PatientAuditLog patientAuditLog = new PatientAuditLog();
-        String changeSet = getChangeSet(patientDataToSave, new PatientData());
-
-        if (changeSet != null) {
-            patientAuditLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
-            patientAuditLog.setHealthId(patientDataToSave.getHealthId());
-            patientAuditLog.setChangeSet(changeSet);
-            patientAuditLog.setRequestedBy(writeValueAsString(requestedBy));
-            batch.add(createInsertQuery(CF_PATIENT_AUDIT_LOG, patientAuditLog, null, converter));
+        patientAuditLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
+        patientAuditLog.setHealthId(existingPatientData.getHealthId());
+        patientAuditLog.setChangeSet(changeSet.toJson());
+        patientAuditLog.setRequestedBy(writeValueAsString(requestedBy));
+        patientAuditLog.setApprovedBy(writeValueAsString(approvedBy));
+        if (encodeColumns) {
+            patientAuditLog.encodeColumns();
         }
+        write.add(createInsertQuery(CF_PATIENT_AUDIT_LOG, patientAuditLog, null, converter));
     }
 
-    private static String getChangeSet(PatientData newData, PatientData oldData) {
-        Map<String, Map<String, Object>> diff = new PatientDiffBuilder(oldData, newData).build();
-        if (diff != null && diff.size() > 0) {
-            return writeValueAsString(diff);
+    static void buildCreateAuditLogStmt(PatientData patientDataToSave, PatientChangeSet changeSet,
+                                        Map<String, Set<Requester>> requestedBy, boolean encodeColumns,
+                                        PreparedStatementRegistry statements, PatientWrite write) {
+        if (changeSet.isEmpty()) {
+            return;
+        }
+        PatientAuditLog patientAuditLog = new PatientAuditLog();
+        patientAuditLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
+        patientAuditLog.setHealthId(patientDataToSave.getHealthId());
+        patientAuditLog.setChangeSet(changeSet.toJson());
+        patientAuditLog.setRequestedBy(writeValueAsString(requestedBy));
+        if (encodeColumns) {
+            patientAuditLog.encodeColumns();
         }
-        return null;
+        write.add(statements.bindInsert(CF_PATIENT_AUDIT_LOG, patientAuditLog));
     }
-
 }
@@ -0,0 +1,120 @@
+package org.sharedhealth.mci.domain.repository;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.sharedhealth.mci.domain.model.Patient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.sharedhealth.mci.domain.config.MCICacheConfiguration.PATIENT_CACHE;
+import static org.sharedhealth.mci.domain.util.TimeUuidUtil.getTimeFromUUID;
+
+/**
+ * Read-through cache of patient rows keyed by health id. Rows are cached rather than mapped PatientData because
+ * callers modify the PatientData they get, so every hit is mapped into a fresh copy.
+ * <p>
+ * A row is only cached if its health id was not invalidated while it was being read, and never replaces a row with
+ * a newer updated_at, so a slow read can not put back a row that a concurrent write has just invalidated. Health ids
+ * are versioned in VERSION_STRIPES stripes, so a read only loses its put to a write of a health id in the same stripe.
+ */
+@Component
+public class PatientCache implements PublicMetrics {
+
+    private static final int VERSION_STRIPES = 4096;
+
+    private Ehcache cache;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public PatientCache(@Qualifier("ehCacheManager") CacheManager cacheManager) {
+        this.cache = cacheManager.getEhcache(PATIENT_CACHE);
+        this.cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyElementEvicted(Ehcache cache, Element element) {
+                evictions.incrementAndGet();
+            }
+
+            @Override
+            public void notifyElementExpired(Ehcache cache, Element element) {
+                evictions.incrementAndGet();
+            }
+        });
+    }
+
+    public Patient get(String healthId) {
+        Element element = cache.get(healthId);
+        if (element == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (Patient) element.getObjectValue();
+    }
+
+    /**
+     * To be read before loading the row of the health id from the database and passed to
+     * {@link #put(Patient, long)} afterwards.
+     */
+    public long getVersion(String healthId) {
+        return versions.get(getStripe(healthId));
+    }
+
+    public void put(Patient patient, long version) {
+        if (patient == null || version != getVersion(patient.getHealthId())) {
+            return;
+        }
+        Element existing = cache.putIfAbsent(new Element(patient.getHealthId(), patient));
+        if (existing != null && isNewer(patient.getUpdatedAt(), ((Patient) existing.getObjectValue()).getUpdatedAt())) {
+            cache.replace(existing, new Element(patient.getHealthId(), patient));
+        }
+        if (version != getVersion(patient.getHealthId())) {
+            cache.remove(patient.getHealthId());
+        }
+    }
+
+    public void invalidate(String healthId) {
+        versions.incrementAndGet(getStripe(healthId));
+        cache.remove(healthId);
+    }
+
+    public void invalidate(Collection<String> healthIds) {
+        for (String healthId : healthIds) {
+            invalidate(healthId);
+        }
+    }
+
+    private int getStripe(String healthId) {
+        return (healthId.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("cache.patient.hits", hits.get()));
+        metrics.add(new Metric<Long>("cache.patient.misses", misses.get()));
+        metrics.add(new Metric<Long>("cache.patient.evictions", evictions.get()));
+        metrics.add(new Metric<Integer>("cache.patient.size", cache.getSize()));
+        return metrics;
+    }
+
+    private boolean isNewer(UUID updatedAt, UUID existingUpdatedAt) {
+        if (updatedAt == null || existingUpdatedAt == null) {
+            return updatedAt != null;
+        }
+        return getTimeFromUUID(updatedAt) > getTimeFromUUID(existingUpdatedAt);
+    }
+}
@@ -1,47 +1,121 @@
 package org.sharedhealth.mci.domain.repository;
 
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Select;
+import com.datastax.driver.core.utils.UUIDs;
+import org.sharedhealth.mci.domain.config.MCIProperties;
 import org.sharedhealth.mci.domain.model.PatientUpdateLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.cassandra.core.CassandraOperations;
 import org.springframework.stereotype.Component;
 
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
-import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.buildFindUpdateLogStmt;
-import static org.sharedhealth.mci.domain.util.DateUtil.getYearOf;
-import static org.sharedhealth.mci.domain.util.DateUtil.getYearsSince;
+import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.*;
+import static org.sharedhealth.mci.domain.util.DateUtil.*;
 
+/**
+ * Reads and writes the patient update log. The log has two layouts: the yearly one, with a partition per year, and
+ * the sharded one, with a partition per day and shard of the health id. UPDATE_LOG_LAYOUT picks the layout that is
+ * read, and UPDATE_LOG_DUAL_WRITE writes both while consumers move from one to the other.
+ * <p>
+ * The days of the sharded log that have events are kept in log_buckets, so readers go from one day with events to
+ * the next without querying the empty ones. The shards of a day are read in parallel and merged in event order.
+ */
 @Component
 public class PatientFeedRepository extends BaseRepository {
 
+    private static final int BUCKET_PAGE_SIZE = 30;
+
+    private PreparedStatementRegistry statements;
+    private MCIProperties mciProperties;
+    private volatile int lastCreatedBucket;
+
     @Autowired
-    public PatientFeedRepository(@Qualifier("MCICassandraTemplate") CassandraOperations cassandraOperations) {
+    public PatientFeedRepository(@Qualifier("MCICassandraTemplate") CassandraOperations cassandraOperations,
+                                 PreparedStatementRegistry statements, MCIProperties mciProperties) {
         super(cassandraOperations);
+        this.statements = statements;
+        this.mciProperties = mciProperties;
+    }
+
+    /**
+     * Adds the insert of the update log to the write, in each layout that is written. The JSON columns of the log
+     * are written as blobs when JSON_COLUMNS_ENCODING says so.
+     */
+    public void addUpdateLog(PatientUpdateLog log, PatientWrite write) {
+        if (mciProperties.isJsonColumnsBinary()) {
+            log.encodeColumns();
+        }
+        if (writesYearlyLog()) {
+            write.addCore(statements.bindInsert(CF_PATIENT_UPDATE_LOG, log));
+        }
+        if (writesShardedLog()) {
+            createBucket(getBucketOf(log.getEventId()));
+            write.addCore(bindCreateShardedUpdateLogStmt(log, statements));
+        }
     }
 
     public List<PatientUpdateLog> findPatientsUpdatedSince(Date since, int limit, UUID lastMarker) {
-        return cassandraOps.select(buildFindUpdateLogStmt(since, limit, lastMarker),
-                PatientUpdateLog.class);
+        if (mciProperties.isUpdateLogSharded()) {
+            if (lastMarker != null) {
+                return findShardedLogs(FIND_SHARDED_UPDATE_LOG_AFTER_STMT, getBucketOf(lastMarker), lastMarker, limit);
+            }
+            UUID start = UUIDs.startOf((since != null ? since : getStartOfYear(getCurrentYear())).getTime());
+            return findShardedLogs(FIND_SHARDED_UPDATE_LOG_SINCE_STMT, getBucketOf(start), start, limit);
+        }
+
+        List<Integer> years = getYearsSince(getYearOfMarker(since, lastMarker));
+        Statement statement;
+        if (lastMarker != null) {
+            statement = statements.bind(FIND_UPDATE_LOG_AFTER_STMT, years, lastMarker, limit);
+        } else if (since != null) {
+            statement = statements.bind(FIND_UPDATE_LOG_SINCE_STMT, years, UUIDs.startOf(since.getTime()), limit);
+        } else {
+            statement = statements.bind(FIND_UPDATE_LOG_IN_YEARS_STMT, years, limit);
+        }
+        return statements.select(statement, PatientUpdateLog.class);
     }
 
     public List<PatientUpdateLog> findPatientsUpdatedSince(UUID lastMarker, int limit) {
-        return cassandraOps.select(buildFindUpdateLogStmt(lastMarker, limit),
-                PatientUpdateLog.class);
-    }
+        if (mciProperties.isUpdateLogSharded()) {
+            if (lastMarker != null) {
+                return findShardedLogs(FIND_SHARDED_UPDATE_LOG_AFTER_STMT, getBucketOf(lastMarker), lastMarker, limit);
+            }
+            return findShardedLogs(FIND_SHARDED_UPDATE_LOG_STMT, 0, null, limit);
+        }
 
-    public PatientUpdateLog findPatientUpdateLog(UUID marker) {
-        List<PatientUpdateLog> logs = this.findPatientsUpdatedSince(marker, 1);
-        return isNotEmpty(logs) ? logs.get(0) : null;
+        if (limit <= 0) {
+            return cassandraOps.select(buildFindUpdateLogStmt(lastMarker, limit), PatientUpdateLog.class);
+        }
+        Statement statement;
+        if (lastMarker != null) {
+            List<Integer> years = getYearsSince(getYearOf(lastMarker));
+            statement = statements.bind(FIND_UPDATE_LOG_AFTER_STMT, years, lastMarker, limit);
+        } else {
+            statement = statements.bind(FIND_UPDATE_LOG_STMT, limit);
+        }
+        return statements.select(statement, PatientUpdateLog.class);
     }
 
+    /**
+     * While both layouts are written, an event not found in the sharded log is looked up in the yearly one, as it
+     * may be older than the sharded log.
+     */
     public PatientUpdateLog findPatientUpdateLogByEventId(UUID eventId) {
+        if (mciProperties.isUpdateLogSharded()) {
+            PatientUpdateLog log = findShardedLogByEventId(eventId);
+            if (log != null || !writesYearlyLog()) {
+                return log;
+            }
+        }
         Select select = select().from(CF_PATIENT_UPDATE_LOG);
         List<Integer> years = getYearsSince(getYearOf(eventId));
         select.where(in(YEAR, years.toArray()));
@@ -49,4 +123,144 @@ public class PatientFeedRepository extends BaseRepository {
         List<PatientUpdateLog> logs = cassandraOps.select(select, PatientUpdateLog.class);
         return isNotEmpty(logs) ? logs.get(0) : null;
     }
+
+    /**
+     * Copies the next events of the yearly log after the given one into the sharded log, a year partition at a time.
+     * Copying is idempotent, so a copy that is interrupted is simply repeated.
+     *
+     * @return the last event copied, the given event when there was nothing after it, or null when the yearly log
+     * is empty.
+     */
+    public UUID copyYearlyLogAfter(UUID lastMarker, int limit) {
+        Integer fromYear = lastMarker != null ? Integer.valueOf(getYearOf(lastMarker)) : findFirstYearOfYearlyLog();
+        if (fromYear == null) {
+            return null;
+        }
+        UUID marker = lastMarker;
+        for (int year = fromYear; year <= getCurrentYear(); year++) {
+            Statement statement = marker != null
+                    ? statements.bind(FIND_UPDATE_LOG_IN_YEAR_AFTER_STMT, year, marker, limit)
+                    : statements.bind(FIND_UPDATE_LOG_IN_YEAR_STMT, year, limit);
+            marker = null;
+            List<PatientUpdateLog> logs = statements.select(statement, PatientUpdateLog.class);
+            if (logs.isEmpty()) {
+                continue;
+            }
+            List<Statement> inserts = new ArrayList<>(logs.size());
+            for (PatientUpdateLog log : logs) {
+                if (mciProperties.isJsonColumnsBinary()) {
+                    log.encodeColumns();
+                }
+                createBucket(getBucketOf(log.getEventId()));
+                inserts.add(bindCreateShardedUpdateLogStmt(log, statements));
+            }
+            for (ResultSetFuture future : statements.executeAll(inserts)) {
+                future.getUninterruptibly();
+            }
+            return logs.get(logs.size() - 1).getEventId();
+        }
+        return lastMarker;
+    }
+
+    private Integer findFirstYearOfYearlyLog() {
+        Integer firstYear = null;
+        for (Row row : statements.execute(statements.bind(FIND_UPDATE_LOG_YEARS_STMT))) {
+            int year = row.getInt(YEAR);
+            if (firstYear == null || year < firstYear) {
+                firstYear = year;
+            }
+        }
+        return firstYear;
+    }
+
+    /**
+     * Reads the sharded log bucket by bucket from the given one, until limit logs are found. A limit of zero or less
+     * reads every log.
+     */
+    private List<PatientUpdateLog> findShardedLogs(RegularStatement query, int fromBucket, UUID bound, int limit) {
+        int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+        List<PatientUpdateLog> logs = new ArrayList<>();
+        int bucket = fromBucket;
+        while (remaining > 0) {
+            List<Integer> buckets = findBuckets(bucket);
+            for (Integer each : buckets) {
+                List<PatientUpdateLog> bucketLogs = findShardedLogsInBucket(query, each, bound, remaining);
+                logs.addAll(bucketLogs);
+                remaining -= bucketLogs.size();
+                if (remaining == 0) {
+                    break;
+                }
+            }
+            if (buckets.size() < BUCKET_PAGE_SIZE) {
+                break;
+            }
+            bucket = buckets.get(buckets.size() - 1) + 1;
+        }
+        return logs;
+    }
+
+    private List<Integer> findBuckets(int fromBucket) {
+        List<Integer> buckets = new ArrayList<>();
+        for (Row row : statements.execute(statements.bind(FIND_LOG_BUCKETS_STMT, CF_PATIENT_UPDATE_LOG, fromBucket,
+                BUCKET_PAGE_SIZE))) {
+            buckets.add(row.getInt(BUCKET));
+        }
+        return buckets;
+    }
+
+    private List<PatientUpdateLog> findShardedLogsInBucket(RegularStatement query, int bucket, UUID bound, int limit) {
+        List<Statement> shardQueries = new ArrayList<>(UPDATE_LOG_SHARDS);
+        for (int shard = 0; shard < UPDATE_LOG_SHARDS; shard++) {
+            shardQueries.add(bound != null
+                    ? statements.bind(query, bucket, shard, bound, limit)
+                    : statements.bind(query, bucket, shard, limit));
+        }
+        List<Iterator<Row>> shards = new ArrayList<>(UPDATE_LOG_SHARDS);
+        for (ResultSetFuture future : statements.executeAll(shardQueries)) {
+            shards.add(future.getUninterruptibly().iterator());
+        }
+        return mergeShards(shards, limit);
+    }
+
+    private PatientUpdateLog findShardedLogByEventId(UUID eventId) {
+        int bucket = getBucketOf(eventId);
+        List<Statement> shardQueries = new ArrayList<>(UPDATE_LOG_SHARDS);
+        for (int shard = 0; shard < UPDATE_LOG_SHARDS; shard++) {
+            shardQueries.add(statements.bind(FIND_SHARDED_UPDATE_LOG_BY_EVENT_ID_STMT, bucket, shard, eventId));
+        }
+        for (ResultSetFuture future : statements.executeAll(shardQueries)) {
+            Row row = future.getUninterruptibly().one();
+            if (row != null) {
+                return readShardedUpdateLog(row);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the bucket in log_buckets before the first event of the bucket is written by this node, so that a
+     * reader never finds an event in a bucket it does not know of.
+     */
+    private void createBucket(int bucket) {
+        if (bucket == lastCreatedBucket) {
+            return;
+        }
+        statements.execute(statements.bind(CREATE_LOG_BUCKET_STMT, CF_PATIENT_UPDATE_LOG, bucket));
+        lastCreatedBucket = bucket;
+    }
+
+    /**
+     * Whether catchment feed pages are read from the catchment feed entries rather than the catchment mappings.
+     */
+    public boolean isCatchmentFeedMaterialized() {
+        return mciProperties.isCatchmentFeedMaterialized();
+    }
+
+    private boolean writesYearlyLog() {
+        return !mciProperties.isUpdateLogSharded() || mciProperties.isUpdateLogDualWrite();
+    }
+
+    private boolean writesShardedLog() {
+        return mciProperties.isUpdateLogSharded() || mciProperties.isUpdateLogDualWrite();
+    }
 }
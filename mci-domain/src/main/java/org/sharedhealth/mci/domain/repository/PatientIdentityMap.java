@@ -0,0 +1,90 @@
+package org.sharedhealth.mci.domain.repository;
+
+import org.sharedhealth.mci.domain.model.Patient;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Patients loaded within the current unit of work (a web request or one iteration of a background task), so that
+ * a health id is read from the database at most once per unit of work. Outside of a unit of work nothing is kept.
+ */
+@Component
+public class PatientIdentityMap implements PublicMetrics {
+
+    private final ThreadLocal<Map<String, Patient>> patients = new ThreadLocal<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong readsSaved = new AtomicLong();
+
+    /**
+     * Starts a unit of work on the current thread.
+     *
+     * @return false if a unit of work was already started, in which case the caller must not end it.
+     */
+    public boolean begin() {
+        if (patients.get() != null) {
+            return false;
+        }
+        patients.set(new HashMap<String, Patient>());
+        return true;
+    }
+
+    public void end() {
+        patients.remove();
+    }
+
+    public Patient get(String healthId) {
+        Map<String, Patient> loaded = patients.get();
+        if (loaded == null) {
+            return null;
+        }
+        Patient patient = loaded.get(healthId);
+        if (patient != null) {
+            readsSaved.incrementAndGet();
+        }
+        return patient;
+    }
+
+    /**
+     * Keeps a patient found outside of the database, such as in the patient cache.
+     */
+    public void put(Patient patient) {
+        Map<String, Patient> loaded = patients.get();
+        if (loaded == null || patient == null) {
+            return;
+        }
+        loaded.put(patient.getHealthId(), patient);
+    }
+
+    /**
+     * Keeps a patient just read from the database, and counts the read.
+     */
+    public void putLoaded(Patient patient) {
+        if (patients.get() == null || patient == null) {
+            return;
+        }
+        put(patient);
+        loads.incrementAndGet();
+    }
+
+    public void remove(String healthId) {
+        Map<String, Patient> loaded = patients.get();
+        if (loaded != null) {
+            loaded.remove(healthId);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("unitofwork.patient.loads", loads.get()));
+        metrics.add(new Metric<Long>("unitofwork.patient.reads.saved", readsSaved.get()));
+        return metrics;
+    }
+}
@@ -1,104 +1,234 @@
 package org.sharedhealth.mci.domain.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.querybuilder.Update;
 import com.datastax.driver.core.utils.UUIDs;
-import org.sharedhealth.mci.domain.diff.PatientDiffBuilder;
+import org.sharedhealth.mci.domain.constant.JsonConstants;
+import org.sharedhealth.mci.domain.diff.PatientChangeSet;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.springframework.data.cassandra.convert.CassandraConverter;
 
-import java.util.Date;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 import static com.datastax.driver.core.querybuilder.Select.Where;
+import static java.util.Arrays.asList;
 import static org.apache.commons.lang3.StringUtils.*;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.HOUSEHOLD_CODE;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.EMPTY_SUR_NAME;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.util.FuzzyNameUtil.nameKey;
 import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
 import static org.springframework.data.cassandra.core.CassandraTemplate.*;
 
 public class PatientQueryBuilder {
 
-    static void addToPatientUpdateLogStmt(Patient patient,
-                                          Map<String, Set<Requester>> requestedBy,
-                                          CassandraConverter converter, Batch batch) {
-        PatientUpdateLog patientUpdateLog = getPatientUpdateLog(patient, requestedBy);
-        if (patientUpdateLog != null)
-            batch.add(createInsertQuery(CF_PATIENT_UPDATE_LOG, patientUpdateLog, null, converter));
-    }
+    static final RegularStatement FIND_PATIENT_BY_HID_STMT = select().from(CF_PATIENT)
+            .where(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement FIND_HID_BY_NID_STMT = select(HEALTH_ID).from(CF_NID_MAPPING)
+            .where(eq(NATIONAL_ID, bindMarker()));
+    static final RegularStatement FIND_HID_BY_BRN_STMT = select(HEALTH_ID).from(CF_BRN_MAPPING)
+            .where(eq(BIN_BRN, bindMarker()));
+    static final RegularStatement FIND_HID_BY_UID_STMT = select(HEALTH_ID).from(CF_UID_MAPPING)
+            .where(eq(UID, bindMarker()));
+    static final RegularStatement FIND_HID_BY_PHONE_NUMBER_STMT = select(HEALTH_ID).from(CF_PHONE_NUMBER_MAPPING)
+            .where(eq(PHONE_NO, bindMarker()));
+    static final RegularStatement FIND_HID_BY_HOUSEHOLD_STMT = select(HEALTH_ID).from(CF_HOUSEHOLD_CODE_MAPPING)
+            .where(eq(HOUSEHOLD_CODE, bindMarker()));
+    static final RegularStatement FIND_HID_BY_GIVEN_NAME_STMT = select(HEALTH_ID).from(CF_NAME_MAPPING)
+            .where(eq(DIVISION_ID, bindMarker()))
+            .and(eq(DISTRICT_ID, bindMarker()))
+            .and(eq(UPAZILA_ID, bindMarker()))
+            .and(eq(GIVEN_NAME, bindMarker()));
+    static final RegularStatement FIND_HID_BY_FULL_NAME_STMT = select(HEALTH_ID).from(CF_NAME_MAPPING)
+            .where(eq(DIVISION_ID, bindMarker()))
+            .and(eq(DISTRICT_ID, bindMarker()))
+            .and(eq(UPAZILA_ID, bindMarker()))
+            .and(eq(GIVEN_NAME, bindMarker()))
+            .and(eq(SUR_NAME, bindMarker()));
+    static final RegularStatement PROBE_NID_STMT = select(HEALTH_ID).from(CF_NID_MAPPING)
+            .where(eq(NATIONAL_ID, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement PROBE_BRN_STMT = select(HEALTH_ID).from(CF_BRN_MAPPING)
+            .where(eq(BIN_BRN, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement PROBE_UID_STMT = select(HEALTH_ID).from(CF_UID_MAPPING)
+            .where(eq(UID, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement PROBE_PHONE_NUMBER_STMT = select(HEALTH_ID).from(CF_PHONE_NUMBER_MAPPING)
+            .where(eq(PHONE_NO, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement PROBE_HOUSEHOLD_STMT = select(HEALTH_ID).from(CF_HOUSEHOLD_CODE_MAPPING)
+            .where(eq(HOUSEHOLD_CODE, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement PROBE_FULL_NAME_STMT = select(HEALTH_ID).from(CF_NAME_MAPPING)
+            .where(eq(DIVISION_ID, bindMarker()))
+            .and(eq(DISTRICT_ID, bindMarker()))
+            .and(eq(UPAZILA_ID, bindMarker()))
+            .and(eq(GIVEN_NAME, bindMarker()))
+            .and(eq(SUR_NAME, bindMarker()))
+            .and(eq(HEALTH_ID, bindMarker()));
+    static final RegularStatement FIND_HID_BY_FUZZY_NAME_STMT = select(HEALTH_ID, NAME_KEY).from(CF_FUZZY_NAME_MAPPING)
+            .where(eq(DIVISION_ID, bindMarker()))
+            .and(eq(DISTRICT_ID, bindMarker()))
+            .and(eq(UPAZILA_ID, bindMarker()))
+            .and(gte(NAME_KEY, bindMarker()))
+            .and(lt(NAME_KEY, bindMarker()));
+    static final RegularStatement FIND_BY_CATCHMENT_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_BY_CATCHMENT_AFTER_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gt(LAST_UPDATED, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_BY_CATCHMENT_SINCE_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gte(LAST_UPDATED, bindMarker()))
+            .limit(bindMarker());
+
+    static final RegularStatement PAGE_BY_CATCHMENT_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()));
+    static final RegularStatement PAGE_BY_CATCHMENT_AFTER_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gt(LAST_UPDATED, bindMarker()));
+    static final RegularStatement PAGE_BY_CATCHMENT_SINCE_STMT = select(HEALTH_ID, LAST_UPDATED).from(CF_CATCHMENT_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gte(LAST_UPDATED, bindMarker()));
+
+    static final RegularStatement FIND_CATCHMENT_FEED_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_CATCHMENT_FEED_AFTER_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gt(LAST_UPDATED, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_CATCHMENT_FEED_SINCE_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gte(LAST_UPDATED, bindMarker()))
+            .limit(bindMarker());
+
+    static final RegularStatement PAGE_CATCHMENT_FEED_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()));
+    static final RegularStatement PAGE_CATCHMENT_FEED_AFTER_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gt(LAST_UPDATED, bindMarker()));
+    static final RegularStatement PAGE_CATCHMENT_FEED_SINCE_STMT = select().from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gte(LAST_UPDATED, bindMarker()));
+
+    static final RegularStatement FIND_CATCHMENT_FEED_KEYS_BETWEEN_STMT = select(LAST_UPDATED, HEALTH_ID)
+            .from(CF_CATCHMENT_FEED)
+            .where(eq(CATCHMENT_ID, bindMarker()))
+            .and(gte(LAST_UPDATED, bindMarker()))
+            .and(lte(LAST_UPDATED, bindMarker()));
+    static final RegularStatement FIND_CATCHMENT_IDS_STMT = select().distinct().column(CATCHMENT_ID)
+            .from(CF_CATCHMENT_MAPPING)
+            .limit(bindMarker());
+    static final RegularStatement FIND_CATCHMENT_IDS_AFTER_STMT = select().distinct().column(CATCHMENT_ID)
+            .from(CF_CATCHMENT_MAPPING)
+            .where(gt(token(CATCHMENT_ID), fcall("token", bindMarker())))
+            .limit(bindMarker());
+    static final RegularStatement FIND_PATIENT_NAMES_STMT = select(HEALTH_ID, DIVISION_ID, DISTRICT_ID, UPAZILA_ID,
+            GIVEN_NAME, SUR_NAME, FULL_NAME_BANGLA)
+            .from(CF_PATIENT)
+            .limit(bindMarker());
+    static final RegularStatement FIND_PATIENT_NAMES_AFTER_STMT = select(HEALTH_ID, DIVISION_ID, DISTRICT_ID, UPAZILA_ID,
+            GIVEN_NAME, SUR_NAME, FULL_NAME_BANGLA)
+            .from(CF_PATIENT)
+            .where(gt(token(HEALTH_ID), fcall("token", bindMarker())))
+            .limit(bindMarker());
+
+    static final RegularStatement PAGE_PENDING_APPROVAL_MAPPING_STMT = select(HEALTH_ID, LAST_UPDATED)
+            .from(CF_PENDING_APPROVAL_MAPPING)
+            .where(eq(CATCHMENT_ID, bindMarker()));
+    static final RegularStatement FIND_PENDING_APPROVAL_MAPPING_BY_HID_STMT = select().from(CF_PENDING_APPROVAL_MAPPING)
+            .where(eq(HEALTH_ID, bindMarker()));
+
+    static final List<RegularStatement> HOT_STATEMENTS = asList(FIND_PATIENT_BY_HID_STMT, FIND_HID_BY_NID_STMT,
+            FIND_HID_BY_BRN_STMT, FIND_HID_BY_UID_STMT, FIND_HID_BY_PHONE_NUMBER_STMT,
+            FIND_HID_BY_HOUSEHOLD_STMT, FIND_HID_BY_GIVEN_NAME_STMT, FIND_HID_BY_FULL_NAME_STMT, FIND_HID_BY_FUZZY_NAME_STMT,
+            PROBE_NID_STMT, PROBE_BRN_STMT, PROBE_UID_STMT, PROBE_PHONE_NUMBER_STMT, PROBE_HOUSEHOLD_STMT,
+            PROBE_FULL_NAME_STMT,
+            FIND_BY_CATCHMENT_STMT, FIND_BY_CATCHMENT_AFTER_STMT, FIND_BY_CATCHMENT_SINCE_STMT,
+            PAGE_BY_CATCHMENT_STMT, PAGE_BY_CATCHMENT_AFTER_STMT, PAGE_BY_CATCHMENT_SINCE_STMT,
+            PAGE_PENDING_APPROVAL_MAPPING_STMT, FIND_PENDING_APPROVAL_MAPPING_BY_HID_STMT);
+
+    /**
+     * The update log of a created patient carries only the health id of the patient's change set.
+     */
+    public static PatientUpdateLog getPatientUpdateLog(Patient patient, PatientChangeSet changeSet,
+                                                       Map<String, Set<Requester>> requestedBy) {
+        String healthIdChange = changeSet.select(JsonConstants.HID).toJson();
+        if (healthIdChange == null) return null;
 
-    public static PatientUpdateLog getPatientUpdateLog(Patient patient, Map<String, Set<Requester>> requestedBy) {
         PatientUpdateLog patientUpdateLog = new PatientUpdateLog();
-        PatientData patientDataBlank = new PatientData();
-        PatientData patientDataWithHid = new PatientData();
-        patientDataWithHid.setHealthId(patient.getHealthId());
-        String changeSet = getChangeSet(patientDataWithHid, patientDataBlank);
-
-        if (changeSet == null) return null;
         patientUpdateLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
         patientUpdateLog.setHealthId(patient.getHealthId());
-        patientUpdateLog.setChangeSet(changeSet);
+        patientUpdateLog.setChangeSet(healthIdChange);
         patientUpdateLog.setRequestedBy(writeValueAsString(requestedBy));
         patientUpdateLog.setEventType(EVENT_TYPE_CREATED);
         return patientUpdateLog;
     }
 
-    private static String getChangeSet(PatientData newData, PatientData oldData) {
-        Map<String, Map<String, Object>> diff = new PatientDiffBuilder(oldData, newData).build();
-        if (diff != null && diff.size() > 0) {
-            return writeValueAsString(diff);
-        }
-        return null;
-    }
-
-    static Batch buildUpdateBatch(Patient newPatient, PatientData existingPatientData, CassandraConverter converter, Batch batch) {
+    /**
+     * Search mappings are rebuilt only for the fields in the change set of the write.
+     */
+    static PatientWrite buildUpdateBatch(Patient newPatient, PatientData existingPatientData, String updatedPatientJson,
+                                         PatientChangeSet changeSet, CassandraConverter converter, PatientWrite write) {
         String healthId = newPatient.getHealthId();
 
-        buildUpdateMappingStmt(healthId, newPatient.getNationalId(), existingPatientData.getNationalId(), CF_NID_MAPPING, converter, batch);
-        buildUpdateMappingStmt(healthId, newPatient.getBirthRegistrationNumber(), existingPatientData.getBirthRegistrationNumber(),
-                CF_BRN_MAPPING, converter, batch);
-        buildUpdateMappingStmt(healthId, newPatient.getUid(), existingPatientData.getUid(), CF_UID_MAPPING, converter, batch);
-        buildUpdateMappingStmt(healthId, newPatient.getHouseholdCode(), existingPatientData.getHouseholdCode(),
-                CF_HOUSEHOLD_CODE_MAPPING, converter, batch);
-
-        PhoneNumber existingPhone = existingPatientData.getPhoneNumber();
-        String existingPhoneNumber = existingPhone == null ? null : existingPhone.getNumber();
-        buildUpdateMappingStmt(healthId, newPatient.getCellNo(), existingPhoneNumber, CF_PHONE_NUMBER_MAPPING, converter, batch);
-
-        buildUpdateNameMappingStmt(newPatient, existingPatientData, converter, batch);
-        buildUpdateCatchmentMappingsStmt(newPatient, existingPatientData, converter, batch);
+        if (changeSet.hasChanged(JsonConstants.NID)) {
+            buildUpdateMappingStmt(healthId, newPatient.getNationalId(), existingPatientData.getNationalId(), CF_NID_MAPPING, converter, write);
+        }
+        if (changeSet.hasChanged(JsonConstants.BIN_BRN)) {
+            buildUpdateMappingStmt(healthId, newPatient.getBirthRegistrationNumber(), existingPatientData.getBirthRegistrationNumber(),
+                    CF_BRN_MAPPING, converter, write);
+        }
+        if (changeSet.hasChanged(JsonConstants.UID)) {
+            buildUpdateMappingStmt(healthId, newPatient.getUid(), existingPatientData.getUid(), CF_UID_MAPPING, converter, write);
+        }
+        if (changeSet.hasChanged(HOUSEHOLD_CODE)) {
+            buildUpdateMappingStmt(healthId, newPatient.getHouseholdCode(), existingPatientData.getHouseholdCode(),
+                    CF_HOUSEHOLD_CODE_MAPPING, converter, write);
+        }
+        if (changeSet.hasChanged(JsonConstants.PHONE_NUMBER)) {
+            PhoneNumber existingPhone = existingPatientData.getPhoneNumber();
+            String existingPhoneNumber = existingPhone == null ? null : existingPhone.getNumber();
+            buildUpdateMappingStmt(healthId, newPatient.getCellNo(), existingPhoneNumber, CF_PHONE_NUMBER_MAPPING, converter, write);
+        }
+        if (changeSet.hasChanged(JsonConstants.GIVEN_NAME, JsonConstants.SUR_NAME, JsonConstants.NAME_BANGLA,
+                JsonConstants.PRESENT_ADDRESS)) {
+            buildUpdateNameMappingStmt(newPatient, existingPatientData, converter, write);
+        }
+        buildUpdateCatchmentMappingsStmt(newPatient, existingPatientData, updatedPatientJson, converter, write);
 
-        batch.add(buildUpdateStmt(newPatient, converter));
-        return batch;
+        write.addCore(buildUpdateStmt(newPatient, converter));
+        return write;
     }
 
-    private static void buildCreateMappingStmt(String healthId, String id, String columnFamily, CassandraConverter converter, Batch batch) {
+    private static void buildCreateMappingStmt(String healthId, String id, String columnFamily, CassandraConverter converter, PatientWrite write) {
         if (isNotBlank(id)) {
             Object objectToSave = buildObjectToSave(id, healthId, columnFamily);
-            batch.add(createInsertQuery(columnFamily, objectToSave, null, converter));
+            write.add(createInsertQuery(columnFamily, objectToSave, null, converter));
         }
     }
 
-    private static void buildDeleteMappingsStmt(String healthId, String id, String columnFamily, CassandraConverter converter, Batch
-            batch) {
+    private static void buildDeleteMappingsStmt(String healthId, String id, String columnFamily, CassandraConverter converter, PatientWrite
+            write) {
         if (isNotBlank(id)) {
             Object objectToSave = buildObjectToSave(id, healthId, columnFamily);
-            batch.add(createDeleteQuery(columnFamily, objectToSave, null, converter));
+            write.add(createDeleteQuery(columnFamily, objectToSave, null, converter));
         }
     }
 
     static void buildUpdateMappingStmt(String healthId, String newId, String existingId, String columnFamily, CassandraConverter
-            converter, Batch batch) {
+            converter, PatientWrite write) {
         if (defaultString(newId).equals(defaultString(existingId)) || newId == null) {
             return;
         }
-        buildDeleteMappingsStmt(healthId, existingId, columnFamily, converter, batch);
-        buildCreateMappingStmt(healthId, newId, columnFamily, converter, batch);
+        buildDeleteMappingsStmt(healthId, existingId, columnFamily, converter, write);
+        buildCreateMappingStmt(healthId, newId, columnFamily, converter, write);
     }
 
     private static Object buildObjectToSave(String id, String healthId, String columnFamily) {
@@ -123,7 +253,7 @@ public class PatientQueryBuilder {
         return objectToSave;
     }
 
-    private static void buildCreateNameMappingStmt(Patient patient, CassandraConverter converter, Batch batch) {
+    private static void buildCreateNameMappingStmt(Patient patient, CassandraConverter converter, PatientWrite write) {
         String healthId = patient.getHealthId();
         String divisionId = patient.getDivisionId();
         String districtId = patient.getDistrictId();
@@ -138,12 +268,11 @@ public class PatientQueryBuilder {
                 && isNotBlank(givenName)) {
             NameMapping mapping = new NameMapping(divisionId, districtId, upazilaId, givenName.toLowerCase(),
                     surname.toLowerCase(), patient.getHealthId());
-            batch.add(createInsertQuery(CF_NAME_MAPPING, mapping, null, converter));
+            write.add(createInsertQuery(CF_NAME_MAPPING, mapping, null, converter));
         }
-
     }
 
-    private static void buildDeleteNameMappingStmt(PatientData patient, CassandraConverter converter, Batch batch) {
+    private static void buildDeleteNameMappingStmt(PatientData patient, CassandraConverter converter, PatientWrite write) {
         String healthId = patient.getHealthId();
         Address address = patient.getAddress();
         String divisionId = address.getDivisionId();
@@ -159,24 +288,78 @@ public class PatientQueryBuilder {
                 && isNotBlank(givenName)) {
             NameMapping mapping = new NameMapping(divisionId, districtId, upazilaId, givenName.toLowerCase(),
                     surname.toLowerCase(), patient.getHealthId());
-            batch.add(createDeleteQuery(CF_NAME_MAPPING, mapping, null, converter));
+            write.add(createDeleteQuery(CF_NAME_MAPPING, mapping, null, converter));
+        }
+    }
+
+    /**
+     * Only rows whose key changed are deleted and inserted, as a delete and an insert of the same row in one batch
+     * share a timestamp and the delete would win.
+     */
+    private static void buildUpdateFuzzyNameMappingStmt(List<FuzzyNameMapping> existingMappings,
+                                                        List<FuzzyNameMapping> newMappings,
+                                                        CassandraConverter converter, PatientWrite write) {
+        for (FuzzyNameMapping mapping : existingMappings) {
+            if (!newMappings.contains(mapping)) {
+                write.add(createDeleteQuery(CF_FUZZY_NAME_MAPPING, mapping, null, converter));
+            }
+        }
+        for (FuzzyNameMapping mapping : newMappings) {
+            if (!existingMappings.contains(mapping)) {
+                write.add(createInsertQuery(CF_FUZZY_NAME_MAPPING, mapping, null, converter));
+            }
+        }
+    }
+
+    /**
+     * The fuzzy name index has a row for the given name and surname and one for the Bangla name, so a patient can
+     * be found by either spelling.
+     */
+    public static List<FuzzyNameMapping> buildFuzzyNameMappings(String divisionId, String districtId, String upazilaId,
+                                                                String givenName, String surname, String nameBangla,
+                                                                String healthId) {
+        List<FuzzyNameMapping> mappings = new ArrayList<>();
+        if (isBlank(healthId) || isBlank(divisionId) || isBlank(districtId) || isBlank(upazilaId)) {
+            return mappings;
+        }
+        Set<String> nameKeys = new LinkedHashSet<>();
+        if (isNotBlank(givenName)) {
+            nameKeys.add(nameKey(givenName + " " + defaultString(surname)));
+        }
+        if (isNotBlank(nameBangla)) {
+            nameKeys.add(nameKey(nameBangla));
+        }
+        nameKeys.remove(null);
+        for (String key : nameKeys) {
+            mappings.add(new FuzzyNameMapping(divisionId, districtId, upazilaId, key, healthId));
         }
+        return mappings;
     }
 
-    static void buildUpdateNameMappingStmt(Patient newPatient, PatientData existingPatient, CassandraConverter converter, Batch batch) {
+    static void buildUpdateNameMappingStmt(Patient newPatient, PatientData existingPatient, CassandraConverter converter, PatientWrite write) {
         Address existingAddress = existingPatient.getAddress();
         String existingGivenName = existingPatient.getGivenName();
         String existingSurname = existingPatient.getSurName();
+        String existingNameBangla = existingPatient.getNameBangla();
         String existingDivisionId = existingAddress.getDivisionId();
         String existingDistrictId = existingAddress.getDistrictId();
         String existingUpazilaId = existingAddress.getUpazilaId();
 
         String newGivenName = newPatient.getGivenName() == null ? existingGivenName : newPatient.getGivenName();
         String newSurname = newPatient.getSurName() == null ? existingSurname : newPatient.getSurName();
+        String newNameBangla = newPatient.getFullNameBangla() == null ? existingNameBangla : newPatient.getFullNameBangla();
         String newDivisionId = newPatient.getDivisionId() == null ? existingDivisionId : newPatient.getDivisionId();
         String newDistrictId = newPatient.getDistrictId() == null ? existingDistrictId : newPatient.getDistrictId();
         String newUpazilaId = newPatient.getUpazilaId() == null ? existingUpazilaId : newPatient.getUpazilaId();
 
+        String healthId = existingPatient.getHealthId();
+        buildUpdateFuzzyNameMappingStmt(
+                buildFuzzyNameMappings(existingDivisionId, existingDistrictId, existingUpazilaId, existingGivenName,
+                        existingSurname, existingNameBangla, healthId),
+                buildFuzzyNameMappings(newDivisionId, newDistrictId, newUpazilaId, newGivenName, newSurname,
+                        newNameBangla, healthId),
+                converter, write);
+
         if (defaultString(newGivenName).equals(defaultString(existingGivenName))
                 && defaultString(newSurname).equals(defaultString(existingSurname))
                 && defaultString(newDivisionId).equals(defaultString(existingDivisionId))
@@ -185,7 +368,7 @@ public class PatientQueryBuilder {
             return;
         }
 
-        buildDeleteNameMappingStmt(existingPatient, converter, batch);
+        buildDeleteNameMappingStmt(existingPatient, converter, write);
 
         Patient patient = new Patient();
         patient.setHealthId(newPatient.getHealthId());
@@ -194,28 +377,55 @@ public class PatientQueryBuilder {
         patient.setDivisionId(newDivisionId);
         patient.setDistrictId(newDistrictId);
         patient.setUpazilaId(newUpazilaId);
-        buildCreateNameMappingStmt(patient, converter, batch);
+        buildCreateNameMappingStmt(patient, converter, write);
+    }
+
+    /**
+     * Every catchment mapping goes with a catchment feed entry, which has the patient as written by the same event.
+     */
+    public static void buildCreateCatchmentMappingsStmt(Catchment catchment, UUID lastUpdated, String healthId,
+                                                         String patientJson, CassandraConverter converter,
+                                                         PatientWrite write) {
+        for (String catchmentId : catchment.getAllIds()) {
+            CatchmentMapping mapping = new CatchmentMapping(catchmentId, lastUpdated, healthId);
+            write.add(createInsertQuery(CF_CATCHMENT_MAPPING, mapping, null, converter));
+            CatchmentFeedEntry entry = new CatchmentFeedEntry(catchmentId, lastUpdated, healthId, patientJson);
+            write.add(createInsertQuery(CF_CATCHMENT_FEED, entry, null, converter));
+        }
     }
 
     public static void buildCreateCatchmentMappingsStmt(Catchment catchment, UUID lastUpdated, String healthId,
-                                                         CassandraConverter converter, Batch batch) {
+                                                         String patientJson, PreparedStatementRegistry statements,
+                                                         PatientWrite write) {
         for (String catchmentId : catchment.getAllIds()) {
             CatchmentMapping mapping = new CatchmentMapping(catchmentId, lastUpdated, healthId);
-            batch.add(createInsertQuery(CF_CATCHMENT_MAPPING, mapping, null, converter));
+            write.add(statements.bindInsert(CF_CATCHMENT_MAPPING, mapping));
+            CatchmentFeedEntry entry = new CatchmentFeedEntry(catchmentId, lastUpdated, healthId, patientJson);
+            write.add(statements.bindInsert(CF_CATCHMENT_FEED, entry));
         }
     }
 
-    static void buildUpdateCatchmentMappingsStmt(Patient newPatient, PatientData existingPatient, CassandraConverter converter,
-                                                 Batch batch) {
+    static void buildUpdateCatchmentMappingsStmt(Patient newPatient, PatientData existingPatient, String updatedPatientJson,
+                                                 CassandraConverter converter, PatientWrite write) {
 
         Catchment catchment = newPatient.getCatchment() != null ? newPatient.getCatchment() : existingPatient.getCatchment();
 
         buildCreateCatchmentMappingsStmt(catchment, newPatient.getUpdatedAt(), newPatient.getHealthId(),
-                converter, batch);
+                updatedPatientJson, converter, write);
     }
 
+    /**
+     * Relations are written to either their JSON or their blob column; the other one is cleared, so the relations are
+     * not read from a stale column.
+     */
     public static Update buildUpdateStmt(Patient patient, CassandraConverter converter) {
-        return createUpdateQuery(CF_PATIENT, patient, null, converter);
+        Update update = createUpdateQuery(CF_PATIENT, patient, null, converter);
+        if (patient.getRelationsBin() != null) {
+            update.with(set(RELATIONS, null));
+        } else if (patient.getRelations() != null) {
+            update.with(set(RELATIONS_BIN, null));
+        }
+        return update;
     }
 
     public static String buildFindByCatchmentStmt(Catchment catchment, Date since, UUID lastMarker, int limit) {
@@ -1,21 +1,25 @@
 package org.sharedhealth.mci.domain.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Insert;
-import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.Predicate;
+import com.datastax.driver.core.utils.UUIDs;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.diff.PatientChangeSet;
 import org.sharedhealth.mci.domain.exception.Forbidden;
 import org.sharedhealth.mci.domain.exception.InvalidRequestException;
 import org.sharedhealth.mci.domain.exception.PatientNotFoundException;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.service.PendingApprovalFilter;
+import org.sharedhealth.mci.domain.util.FuzzyNameUtil;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.cassandra.convert.CassandraConverter;
 import org.springframework.data.cassandra.core.CassandraOperations;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -26,6 +30,7 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 import static java.util.Collections.emptyList;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
+import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.HID_CARD_STATUS_REGISTERED;
@@ -33,7 +38,11 @@ import static org.sharedhealth.mci.domain.constant.MCIConstants.PATIENT_STATUS_A
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
 import static org.sharedhealth.mci.domain.repository.PatientAuditLogQueryBuilder.buildCreateAuditLogStmt;
 import static org.sharedhealth.mci.domain.repository.PatientQueryBuilder.*;
-import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.buildCreateUpdateLogStmt;
+import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.buildPendingApprovalsLog;
+import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.buildUpdateLog;
+import static org.sharedhealth.mci.domain.util.JsonMapper.readValue;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
 import static org.sharedhealth.mci.domain.util.TimeUuidUtil.getTimeFromUUID;
 import static org.springframework.data.cassandra.core.CassandraTemplate.createDeleteQuery;
 import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
@@ -46,19 +55,87 @@ public class PatientRepository extends BaseRepository {
 
     private static final long QUERY_EXEC_DELAY = 1;
     private static final String ALL_FIELDS = "ALL_FIELDS";
+    private static final int SEARCH_PAGE_SIZE = 100;
+    private static final ObjectReader PATIENT_DATA_READER = reader(PatientData.class);
 
     private PendingApprovalFilter pendingApprovalFilter;
     private PatientMapper mapper;
+    private PreparedStatementRegistry statements;
+    private PatientCache patientCache;
+    private PatientIdentityMap identityMap;
+    private PatientSearchPlanner searchPlanner;
+    private PatientWriter writer;
+    private PatientFeedRepository feedRepository;
+    private MCIProperties mciProperties;
 
     @Autowired
     public PatientRepository(@Qualifier("MCICassandraTemplate") CassandraOperations cassandraOperations,
-                             PatientMapper mapper, PendingApprovalFilter pendingApprovalFilter) {
+                             PatientMapper mapper, PendingApprovalFilter pendingApprovalFilter,
+                             PreparedStatementRegistry statements, PatientCache patientCache,
+                             PatientIdentityMap identityMap, PatientSearchPlanner searchPlanner,
+                             PatientWriter writer, PatientFeedRepository feedRepository,
+                             MCIProperties mciProperties) {
         super(cassandraOperations);
         this.mapper = mapper;
         this.pendingApprovalFilter = pendingApprovalFilter;
+        this.statements = statements;
+        this.patientCache = patientCache;
+        this.identityMap = identityMap;
+        this.searchPlanner = searchPlanner;
+        this.writer = writer;
+        this.feedRepository = feedRepository;
+        this.mciProperties = mciProperties;
     }
 
     public MCIResponse create(PatientData patientData) {
+        PatientWrite write = buildCreateWrite(patientData);
+        writer.write(write);
+        invalidateCache(patientData.getHealthId());
+        return new MCIResponse(patientData.getHealthId(), HttpStatus.CREATED);
+    }
+
+    /**
+     * Creates the patients with bounded concurrent writes. A patient that cannot be written does not stop the
+     * others, and gets an error response in its place: SERVICE_UNAVAILABLE if the write was rejected before being
+     * applied, INTERNAL_SERVER_ERROR if it may have been applied.
+     */
+    public List<MCIResponse> createAll(List<PatientData> patients) {
+        List<PatientWrite> writes = new ArrayList<>(patients.size());
+        for (PatientData patientData : patients) {
+            writes.add(buildCreateWrite(patientData));
+        }
+        List<RuntimeException> failures = writeAll(writes);
+
+        List<MCIResponse> responses = new ArrayList<>(patients.size());
+        for (int i = 0; i < patients.size(); i++) {
+            String healthId = patients.get(i).getHealthId();
+            if (failures.get(i) != null) {
+                logger.error(String.format("Can not create patient %s", healthId), failures.get(i));
+                responses.add(new MCIResponse("Can not create patient", PatientWriter.isRejected(failures.get(i))
+                        ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR));
+                continue;
+            }
+            responses.add(new MCIResponse(healthId, HttpStatus.CREATED));
+        }
+        return responses;
+    }
+
+    /**
+     * Executes the writes of several patients together, and invalidates the cached patients that were written.
+     *
+     * @return the failure of each write, or null for the writes that succeeded.
+     */
+    public List<RuntimeException> writeAll(List<PatientWrite> writes) {
+        List<RuntimeException> failures = writer.writeAll(writes);
+        for (int i = 0; i < writes.size(); i++) {
+            if (failures.get(i) == null) {
+                invalidateCache(writes.get(i).getHealthId());
+            }
+        }
+        return failures;
+    }
+
+    private PatientWrite buildCreateWrite(PatientData patientData) {
         Patient patient = mapper.map(patientData, new PatientData());
         UUID createdAt = TimeUuidUtil.uuidForDate(new Date());
         patient.setCreatedAt(createdAt);
@@ -76,45 +153,54 @@ public class PatientRepository extends BaseRepository {
         Map<String, Set<Requester>> requestedBy = new HashMap<>();
         buildRequestedBy(requestedBy, ALL_FIELDS, requester);
 
-        CassandraConverter converter = cassandraOps.getConverter();
-        Batch batch = batch();
-        batch.add(createInsertQuery(CF_PATIENT, patient, null, converter));
-        buildCreateCatchmentMappingsStmt(patientData.getCatchment(), createdAt, patientData.getHealthId(), converter, batch);
-        buildCreateAuditLogStmt(patientData, requestedBy, converter, batch);
-        addToPatientUpdateLogStmt(patient, requestedBy, converter, batch);
-
-        cassandraOps.execute(batch);
-        return new MCIResponse(patient.getHealthId(), HttpStatus.CREATED);
+        PatientChangeSet changeSet = PatientChangeSet.between(new PatientData(), patientData);
+        PatientWrite write = new PatientWrite(patientData.getHealthId());
+        encodeColumns(patient);
+        write.addCore(statements.bindInsert(CF_PATIENT, patient));
+        buildCreateCatchmentMappingsStmt(patientData.getCatchment(), createdAt, patientData.getHealthId(),
+                writeValueAsString(mapper.map(patient)), statements, write);
+        buildCreateAuditLogStmt(patientData, changeSet, requestedBy, isJsonColumnsBinary(), statements, write);
+        addUpdateLog(getPatientUpdateLog(patient, changeSet, requestedBy), write);
+        return write;
     }
 
     public MCIResponse update(PatientData newPatientData, PatientData existingPatient, Requester requestedBy) {
-        Batch batch = buildUpdateProcessBatch(newPatientData, existingPatient, requestedBy);
-        if (batch != null) {
-            cassandraOps.execute(batch);
-        }
+        writer.write(buildUpdateWrite(newPatientData, existingPatient, requestedBy, null));
+        invalidateCache(existingPatient.getHealthId());
         return new MCIResponse(existingPatient.getHealthId(), HttpStatus.ACCEPTED);
     }
 
-    public Batch buildUpdateProcessBatch(PatientData patientDataToBeUpdated, PatientData existingPatientData, Requester requester) {
-        Batch batch = batch();
+    /**
+     * Builds the write of an update without executing it. Pending approval mappings are taken from the given map when
+     * it has the patient, and read otherwise.
+     */
+    public PatientWrite buildUpdateWrite(PatientData patientDataToBeUpdated, PatientData existingPatientData, Requester requester,
+                                         Map<String, List<PendingApprovalMapping>> pendingApprovalMappings) {
+        PatientWrite write = new PatientWrite(existingPatientData.getHealthId());
         Patient newPatient = mapper.map(patientDataToBeUpdated, existingPatientData);
 
         newPatient.setHealthId(existingPatientData.getHealthId());
         newPatient.setUpdatedAt(TimeUuidUtil.uuidForDate(new Date()));
         newPatient.setUpdatedBy(requester);
 
-        clearPendingApprovalsIfRequired(patientDataToBeUpdated, existingPatientData, batch);
-        buildUpdatePendingApprovalsBatch(newPatient, existingPatientData, batch);
-        buildUpdateBatch(newPatient, existingPatientData, cassandraOps.getConverter(), batch);
+        PatientChangeSet changeSet = PatientChangeSet.between(existingPatientData, patientDataToBeUpdated);
+        clearPendingApprovalsIfRequired(patientDataToBeUpdated, existingPatientData, pendingApprovalMappings, write);
+        buildUpdatePendingApprovalsBatch(newPatient, existingPatientData, pendingApprovalMappings, write);
+        encodeColumns(newPatient);
+        buildUpdateBatch(newPatient, existingPatientData, buildUpdatedPatientJson(newPatient), changeSet,
+                cassandraOps.getConverter(), write);
         Map<String, Set<Requester>> requestedBy = new HashMap<>();
         buildRequestedBy(requestedBy, ALL_FIELDS, requester);
-        buildCreateUpdateLogStmt(patientDataToBeUpdated, existingPatientData, requestedBy, null, cassandraOps.getConverter(), batch);
-        PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(patientDataToBeUpdated, existingPatientData, requestedBy, null, cassandraOps
-                .getConverter(), batch);
-        return batch;
+        addUpdateLog(buildUpdateLog(existingPatientData, changeSet, requestedBy, null), write);
+        PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(existingPatientData, changeSet, requestedBy, null,
+                isJsonColumnsBinary(), cassandraOps.getConverter(), write);
+        return write;
     }
 
-    public Batch buildUpdateProcessBatch(PatientData updateRequest, String healthId, Batch batch) {
+    /**
+     * The caller executes the write, and has to invalidate the cached patient afterwards.
+     */
+    public PatientWrite buildUpdateProcessWrite(PatientData updateRequest, String healthId) {
         logger.debug(String.format("Update patient: %s", healthId));
         updateRequest.setHealthId(healthId);
         Requester requester = updateRequest.getRequester();
@@ -128,7 +214,8 @@ public class PatientRepository extends BaseRepository {
         }
 
         checkIfTryingToMergeWithNonExistingOrInactiveHid(updateRequest.getMergedWith());
-        clearPendingApprovalsIfRequired(updateRequest, existingPatientData, batch);
+        PatientWrite write = new PatientWrite(healthId);
+        clearPendingApprovalsIfRequired(updateRequest, existingPatientData, null, write);
         PatientData newPatientData = this.pendingApprovalFilter.filter(existingPatientData, updateRequest);
 
         Patient newPatient = mapper.map(newPatientData, existingPatientData);
@@ -136,22 +223,59 @@ public class PatientRepository extends BaseRepository {
         newPatient.setUpdatedAt(TimeUuidUtil.uuidForDate(new Date()));
         newPatient.setUpdatedBy(requester);
 
-        buildUpdatePendingApprovalsBatch(newPatient, existingPatientData, batch);
-        buildUpdateBatch(newPatient, existingPatientData, cassandraOps.getConverter(), batch);
+        PatientChangeSet changeSet = PatientChangeSet.between(existingPatientData, newPatientData);
+        buildUpdatePendingApprovalsBatch(newPatient, existingPatientData, null, write);
+        encodeColumns(newPatient);
+        buildUpdateBatch(newPatient, existingPatientData, buildUpdatedPatientJson(newPatient), changeSet,
+                cassandraOps.getConverter(), write);
         Map<String, Set<Requester>> requestedBy = new HashMap<>();
         buildRequestedBy(requestedBy, ALL_FIELDS, requester);
-        buildCreateUpdateLogStmt(newPatientData, existingPatientData, requestedBy, null, cassandraOps.getConverter(), batch);
-        PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(newPatientData, existingPatientData, requestedBy, null, cassandraOps
-                .getConverter(), batch);
-        return batch;
+        addUpdateLog(buildUpdateLog(existingPatientData, changeSet, requestedBy, null), write);
+        PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(existingPatientData, changeSet, requestedBy, null,
+                isJsonColumnsBinary(), cassandraOps.getConverter(), write);
+        return write;
+    }
+
+    /**
+     * The patient as it is once the update is written, for the catchment feed entries of the update. The existing
+     * row is usually loaded already, as the caller has just read the patient to update it.
+     */
+    private String buildUpdatedPatientJson(Patient newPatient) {
+        Patient existingPatient = findPatient(newPatient.getHealthId());
+        Patient updatedPatient = existingPatient != null ? existingPatient.withUpdate(newPatient) : newPatient;
+        return writeValueAsString(mapper.map(updatedPatient));
+    }
+
+    private boolean isJsonColumnsBinary() {
+        return mciProperties.isJsonColumnsBinary();
+    }
+
+    /**
+     * The relations of a patient that is written are written as a blob when JSON_COLUMNS_ENCODING says so.
+     */
+    private void encodeColumns(Patient patient) {
+        if (isJsonColumnsBinary()) {
+            patient.encodeRelations();
+        }
     }
 
-    private void clearPendingApprovalsIfRequired(PatientData updateRequest, PatientData existingPatientData, Batch batch) {
+    /**
+     * Every write of the patient row is logged, as the other nodes invalidate their cached patients from the log.
+     */
+    private void addUpdateLog(PatientUpdateLog updateLog, PatientWrite write) {
+        feedRepository.addUpdateLog(updateLog != null ? updateLog : buildPendingApprovalsLog(write.getHealthId()), write);
+    }
+
+    private void clearPendingApprovalsIfRequired(PatientData updateRequest, PatientData existingPatientData,
+                                                 Map<String, List<PendingApprovalMapping>> pendingApprovalMappings,
+                                                 PatientWrite write) {
         if (null == updateRequest.isActive() || updateRequest.isActive()) {
             return;
         }
         existingPatientData.setPendingApprovals(new TreeSet<PendingApproval>());
-        buildDeletePendingApprovalMappingStmt(existingPatientData.getHealthId(), batch, new Date().getTime());
+        String healthId = existingPatientData.getHealthId();
+        buildDeletePendingApprovalMappingStmt(findPendingApprovalMappings(healthId, pendingApprovalMappings), write,
+                new Date().getTime());
     }
 
     private boolean checkIfTryingToMergeWithNonExistingOrInactiveHid(String mergedWith) {
@@ -170,7 +294,9 @@ public class PatientRepository extends BaseRepository {
         return false;
     }
 
-    private Batch buildUpdatePendingApprovalsBatch(Patient newPatient, PatientData existingPatientData, Batch batch) {
+    private PatientWrite buildUpdatePendingApprovalsBatch(Patient newPatient, PatientData existingPatientData,
+                                                          Map<String, List<PendingApprovalMapping>> pendingApprovalMappings,
+                                                          PatientWrite write) {
         TreeSet<PendingApproval> newPendingApprovals = newPatient.getPendingApprovals();
 
         if (isNotEmpty(newPendingApprovals)) {
@@ -179,31 +305,61 @@ public class PatientRepository extends BaseRepository {
 
             long timestamp = new Date().getTime();
             if (existingPendingApprovals != null && existingPendingApprovals.size() > 0) {
-                buildDeletePendingApprovalMappingStmt(healthId, batch, timestamp);
+                buildDeletePendingApprovalMappingStmt(findPendingApprovalMappings(healthId, pendingApprovalMappings), write,
+                        timestamp);
             }
 
             UUID uuid = findLatestUuid(newPatient.getPendingApprovals());
-            buildCreatePendingApprovalMappingStmt(newPatient.getCatchment(), healthId, uuid, batch, timestamp + QUERY_EXEC_DELAY);
+            buildCreatePendingApprovalMappingStmt(newPatient.getCatchment(), healthId, uuid, write, timestamp + QUERY_EXEC_DELAY);
+        }
+        return write;
+    }
+
+    /**
+     * Reads the pending approval mappings of the patients, one lookup of the health id index per patient, a bounded
+     * number of them in parallel.
+     */
+    public Map<String, List<PendingApprovalMapping>> findPendingApprovalMappings(Collection<String> healthIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(healthIds));
+        List<Statement> queries = new ArrayList<>(ids.size());
+        for (String healthId : ids) {
+            queries.add(statements.bind(FIND_PENDING_APPROVAL_MAPPING_BY_HID_STMT, healthId));
+        }
+        List<ResultSetFuture> futures = statements.executeAll(queries);
+
+        Map<String, List<PendingApprovalMapping>> mappings = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            try {
+                mappings.put(ids.get(i), statements.readAll(futures.get(i).getUninterruptibly(), PendingApprovalMapping.class));
+            } catch (RuntimeException e) {
+                logger.error(String.format("Failed to read pending approval mappings of %s", ids.get(i)), e);
+            }
+        }
+        return mappings;
+    }
+
+    private List<PendingApprovalMapping> findPendingApprovalMappings(String healthId,
+                                                                     Map<String, List<PendingApprovalMapping>> pendingApprovalMappings) {
+        if (pendingApprovalMappings != null && pendingApprovalMappings.containsKey(healthId)) {
+            return pendingApprovalMappings.get(healthId);
         }
-        return batch;
+        return statements.select(statements.bind(FIND_PENDING_APPROVAL_MAPPING_BY_HID_STMT, healthId), PendingApprovalMapping.class);
     }
 
-    private void buildDeletePendingApprovalMappingStmt(String healthId, Batch batch, long timestamp) {
-        String cql = select().from(CF_PENDING_APPROVAL_MAPPING).where(eq(HEALTH_ID, healthId)).toString();
-        List<PendingApprovalMapping> mappings = cassandraOps.select(cql, PendingApprovalMapping.class);
+    private void buildDeletePendingApprovalMappingStmt(List<PendingApprovalMapping> mappings, PatientWrite write, long timestamp) {
         for (PendingApprovalMapping mapping : mappings) {
             Delete deleteQuery = createDeleteQuery(CF_PENDING_APPROVAL_MAPPING, mapping, null, cassandraOps.getConverter());
             deleteQuery.using(timestamp(timestamp));
-            batch.add(deleteQuery);
+            write.add(deleteQuery);
         }
     }
 
-    private void buildCreatePendingApprovalMappingStmt(Catchment catchment, String healthId, UUID uuid, Batch batch, long timestamp) {
+    private void buildCreatePendingApprovalMappingStmt(Catchment catchment, String healthId, UUID uuid, PatientWrite write, long timestamp) {
         List<PendingApprovalMapping> mappings = buildPendingApprovalMappings(catchment, healthId, uuid);
         for (PendingApprovalMapping mapping : mappings) {
             Insert insertQuery = createInsertQuery(CF_PENDING_APPROVAL_MAPPING, mapping, null, cassandraOps.getConverter());
             insertQuery.using(timestamp(timestamp));
-            batch.add(insertQuery);
+            write.add(insertQuery);
         }
     }
 
@@ -246,59 +402,143 @@ public class PatientRepository extends BaseRepository {
 
     public PatientData findByHealthId(final String healthId) {
         logger.debug(String.format("Find patient by healthId: %s", healthId));
-        Patient patient = cassandraOps.selectOneById(Patient.class, healthId);
+        Patient patient = findPatient(healthId);
         if (patient == null) {
             throw new PatientNotFoundException("No patient found with health id: " + healthId);
         }
         return mapper.map(patient);
     }
 
+    public PatientSummaryData findSummaryByHealthId(String healthId) {
+        Patient patient = findPatient(healthId);
+        if (patient == null) {
+            throw new PatientNotFoundException("No patient found with health id: " + healthId);
+        }
+        return mapper.mapSummary(patient);
+    }
+
+    private Patient findPatient(String healthId) {
+        Patient patient = findLoadedPatient(healthId);
+        if (patient == null) {
+            long cacheVersion = patientCache.getVersion(healthId);
+            patient = statements.selectOne(statements.bind(FIND_PATIENT_BY_HID_STMT, healthId), Patient.class);
+            patientCache.put(patient, cacheVersion);
+            identityMap.putLoaded(patient);
+        }
+        return patient;
+    }
+
+    private Patient findLoadedPatient(String healthId) {
+        Patient patient = identityMap.get(healthId);
+        if (patient == null) {
+            patient = patientCache.get(healthId);
+            identityMap.put(patient);
+        }
+        return patient;
+    }
+
+    public void invalidateCache(String healthId) {
+        identityMap.remove(healthId);
+        patientCache.invalidate(healthId);
+    }
+
     public List<PatientData> findByHealthId(List<String> healthIds) {
-        String[] values = healthIds.toArray(new String[healthIds.size()]);
-        List<Patient> patients = cassandraOps.select(buildFindByHidStmt(values), Patient.class);
+        List<PatientData> patients = findAllByHealthIds(healthIds).getPatientList();
         if (isEmpty(patients)) {
             throw new PatientNotFoundException("No patient found with health ids: " + healthIds);
         }
-        return mapper.map(patients);
+        return patients;
     }
 
-    public List<PatientData> findAllByQuery(SearchQuery searchQuery) {
-        return filterPatients(findProbables(searchQuery), searchQuery);
+    /**
+     * Loads each patient with its own single partition read, a bounded number of them in parallel, instead of
+     * one multi partition IN query. Health ids that are not found or fail to load are reported in the result.
+     */
+    public PatientLoadResult findAllByHealthIds(Collection<String> healthIds) {
+        return findAllByHealthIds(healthIds, true);
     }
 
-    public List<PatientSummaryData> findAllSummaryByQuery(SearchQuery searchQuery) {
-        return mapper.mapSummary(filterPatients(findProbables(searchQuery), searchQuery));
+    /**
+     * Loads the patients like {@link #findAllByHealthIds(Collection)}, always from the patient table, without
+     * reading or filling the patient cache, for readers going once through many patients.
+     */
+    public PatientLoadResult loadAllByHealthIds(Collection<String> healthIds) {
+        return findAllByHealthIds(healthIds, false);
     }
 
-    private List<PatientData> findProbables(SearchQuery searchQuery) {
-        List<PatientData> dataList = new ArrayList<>();
-        String query = null;
-
-        if (isNotBlank(searchQuery.getNid())) {
-            query = buildFindByNidStmt(searchQuery.getNid());
-
-        } else if (isNotBlank(searchQuery.getBin_brn())) {
-            query = buildFindByBrnStmt(searchQuery.getBin_brn());
+    private PatientLoadResult findAllByHealthIds(Collection<String> healthIds, boolean cached) {
+        Map<String, Patient> patients = new LinkedHashMap<>();
+        List<String> healthIdsToLoad = new ArrayList<>();
+        List<Long> cacheVersions = new ArrayList<>();
+        List<Statement> queries = new ArrayList<>();
+        for (String healthId : new LinkedHashSet<>(healthIds)) {
+            Patient patient = cached ? findLoadedPatient(healthId) : null;
+            patients.put(healthId, patient);
+            if (patient == null) {
+                healthIdsToLoad.add(healthId);
+                cacheVersions.add(patientCache.getVersion(healthId));
+                queries.add(statements.bind(FIND_PATIENT_BY_HID_STMT, healthId));
+            }
+        }
+        List<ResultSetFuture> futures = statements.executeAll(queries);
+
+        PatientLoadResult result = new PatientLoadResult();
+        Map<String, String> failures = new HashMap<>();
+        for (int i = 0; i < healthIdsToLoad.size(); i++) {
+            String healthId = healthIdsToLoad.get(i);
+            try {
+                Patient patient = statements.readOne(futures.get(i).getUninterruptibly(), Patient.class);
+                if (cached) {
+                    patientCache.put(patient, cacheVersions.get(i));
+                    identityMap.putLoaded(patient);
+                }
+                patients.put(healthId, patient);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Failed to load patient with health id: %s", healthId), e);
+                failures.put(healthId, e.getMessage());
+            }
+        }
 
-        } else if (isNotBlank(searchQuery.getUid())) {
-            query = buildFindByUidStmt(searchQuery.getUid());
+        for (Map.Entry<String, Patient> entry : patients.entrySet()) {
+            String healthId = entry.getKey();
+            if (entry.getValue() != null) {
+                result.addPatient(healthId, mapper.map(entry.getValue()));
+            } else if (failures.containsKey(healthId)) {
+                result.addFailure(healthId, failures.get(healthId));
+            } else {
+                result.addFailure(healthId, PatientLoadResult.NOT_FOUND);
+            }
+        }
+        return result;
+    }
 
-        } else if (isNotBlank(searchQuery.getPhone_no())) {
-            query = buildFindByPhoneNumberStmt(searchQuery.getPhone_no());
+    /**
+     * Finds the patients matching the search query. If the query has a maximum limit, the search stops as soon as
+     * one more than the maximum limit patients are found, so the caller can tell that there are more.
+     */
+    public List<PatientData> findAllByQuery(SearchQuery searchQuery) {
+        return findProbables(searchQuery);
+    }
 
-        } else if (isNotBlank(searchQuery.getHousehold_code())) {
-            query = buildFindByHouseholdStmt(searchQuery.getHousehold_code());
+    public List<PatientSummaryData> findAllSummaryByQuery(SearchQuery searchQuery) {
+        return mapper.mapSummary(findProbables(searchQuery));
+    }
 
-        } else if (isNotBlank(searchQuery.getPresent_address()) && isNotBlank(searchQuery.getGiven_name())) {
-            query = buildFindByNameStmt(searchQuery.getDivisionId(), searchQuery.getDistrictId(),
-                    searchQuery.getUpazilaId(), searchQuery.getGiven_name(), searchQuery.getSur_name());
+    private List<PatientData> findProbables(SearchQuery searchQuery) {
+        List<PatientData> dataList = new ArrayList<>();
+        List<String> healthIds = searchPlanner.findHealthIds(searchQuery);
+        if (isEmpty(healthIds)) {
+            return dataList;
         }
 
-        if (isNotBlank(query)) {
-            List<String> healthIds = cassandraOps.queryForList(query, String.class);
-            if (isNotEmpty(healthIds)) {
-                dataList.addAll(this.findByHealthId(healthIds));
-            }
+        int maximumLimit = searchQuery.getMaximum_limit();
+        int wanted = maximumLimit > 0 ? maximumLimit + 1 : Integer.MAX_VALUE;
+        int from = 0;
+        while (from < healthIds.size() && dataList.size() < wanted) {
+            int to = Math.min(healthIds.size(), from + Math.min(SEARCH_PAGE_SIZE, wanted - dataList.size()));
+            List<PatientData> matches = filterPatients(findAllByHealthIds(healthIds.subList(from, to)).getPatientList(), searchQuery);
+            dataList.addAll(matches.subList(0, Math.min(matches.size(), wanted - dataList.size())));
+            from = to;
         }
         return dataList;
     }
@@ -353,6 +593,10 @@ public class PatientRepository extends BaseRepository {
             return false;
         }
 
+        if (searchQuery.isFuzzyNameSearch()) {
+            return isFuzzyNameMatch(p, searchQuery);
+        }
+
         if (isNotBlank(searchQuery.getGiven_name()) && !searchQuery.getGiven_name().equalsIgnoreCase(p.getGivenName())) {
             return false;
         }
@@ -364,41 +608,224 @@ public class PatientRepository extends BaseRepository {
         return true;
     }
 
+    /**
+     * The search planner may leave candidates it did not check against the fuzzy name index, so the names of the
+     * patient are matched the way the index matches them.
+     */
+    private boolean isFuzzyNameMatch(PatientData p, SearchQuery searchQuery) {
+        if (isBlank(searchQuery.getGiven_name())) {
+            return true;
+        }
+        String searchedName = searchQuery.getGiven_name() + " " + defaultString(searchQuery.getSur_name());
+        if (FuzzyNameUtil.normalize(searchedName).isEmpty()) {
+            return true;
+        }
+        return FuzzyNameUtil.matches(p.getGivenName() + " " + defaultString(p.getSurName()), searchedName)
+                || FuzzyNameUtil.matches(p.getNameBangla(), searchedName);
+    }
+
     public List<Map<String, Object>> findAllByCatchment(Catchment catchment, Date since, UUID lastMarker, int limit) {
-        List<CatchmentMapping> mappings = cassandraOps.select
-                (buildFindByCatchmentStmt(catchment, since, lastMarker, limit), CatchmentMapping.class);
+        if (feedRepository.isCatchmentFeedMaterialized()) {
+            List<CatchmentFeedEntry> entries = statements.select(bindFindCatchmentFeedStmt(catchment, since, lastMarker, limit),
+                    CatchmentFeedEntry.class);
+            return buildCatchmentFeedEvents(entries);
+        }
+        List<CatchmentMapping> mappings = statements.select(bindFindByCatchmentStmt(catchment, since, lastMarker, limit),
+                CatchmentMapping.class);
+        return buildCatchmentEvents(mappings);
+    }
+
+    /**
+     * Reads a page of the catchment feed with the driver's paging state. The since and last marker of the first page
+     * have to be passed with every cursor of the feed, as the cursor is only valid for the same statement.
+     */
+    public CursorPage<Map<String, Object>> findCatchmentPage(Catchment catchment, Date since, UUID lastMarker,
+                                                            String cursor, int pageSize) {
+        if (feedRepository.isCatchmentFeedMaterialized()) {
+            CursorPage<CatchmentFeedEntry> entries = statements.selectPage(bindPageCatchmentFeedStmt(catchment, since,
+                    lastMarker), CatchmentFeedEntry.class, pageSize, cursor);
+            return new CursorPage<>(buildCatchmentFeedEvents(entries.getItems()), entries.getNextCursor());
+        }
+        CursorPage<CatchmentMapping> mappings = statements.selectPage(bindPageByCatchmentStmt(catchment, since, lastMarker),
+                CatchmentMapping.class, pageSize, cursor);
+        return new CursorPage<>(buildCatchmentEvents(mappings.getItems()), mappings.getNextCursor());
+    }
+
+    /**
+     * Catchment feed entries carry the patient as written by their event, so no patient is read here.
+     */
+    private List<Map<String, Object>> buildCatchmentFeedEvents(List<CatchmentFeedEntry> entries) {
+        List<Map<String, Object>> catchmentEvents = new ArrayList<>(entries.size());
+        for (CatchmentFeedEntry entry : entries) {
+            HashMap<String, Object> catchmentPatientMapper = new HashMap<>();
+            catchmentPatientMapper.put("eventId", entry.getLastUpdated());
+            catchmentPatientMapper.put("patientData", readValue(entry.getPatientData(), PATIENT_DATA_READER));
+            catchmentEvents.add(catchmentPatientMapper);
+        }
+        return catchmentEvents;
+    }
+
+    private List<Map<String, Object>> buildCatchmentEvents(List<CatchmentMapping> mappings) {
         if (isEmpty(mappings)) {
             return emptyList();
         }
 
-        Set<String> healthIds = new HashSet<>();
+        List<String> healthIds = new ArrayList<>();
         for (CatchmentMapping mapping : mappings) {
             healthIds.add(mapping.getHealthId());
         }
-
-        ArrayList<String> healthIdList = new ArrayList<>();
-        healthIdList.addAll(healthIds);
-        List<PatientData> patients = findByHealthId(healthIdList);
+        Map<String, PatientData> patients = findAllByHealthIds(healthIds).getPatients();
+        if (patients.isEmpty()) {
+            throw new PatientNotFoundException("No patient found with health ids: " + healthIds);
+        }
 
         List<Map<String, Object>> catchmentEvents = new ArrayList<>();
         for (CatchmentMapping catchmentMapping : mappings) {
 
             HashMap<String, Object> catchmentPatientMapper = new HashMap<>();
             catchmentPatientMapper.put("eventId", catchmentMapping.getLastUpdated());
-            catchmentPatientMapper.put("patientData", fetchPatient(catchmentMapping.getHealthId(), patients));
+            catchmentPatientMapper.put("patientData", patients.get(catchmentMapping.getHealthId()));
             catchmentEvents.add(catchmentPatientMapper);
         }
 
         return catchmentEvents;
     }
 
-    private PatientData fetchPatient(final String healthId, final List<PatientData> patients) {
-        return CollectionUtils.find(patients, new Predicate<PatientData>() {
-            @Override
-            public boolean evaluate(PatientData patient) {
-                return patient.getHealthId().equals(healthId);
+    private Statement bindFindByCatchmentStmt(Catchment catchment, Date since, UUID lastMarker, int limit) {
+        if (lastMarker != null) {
+            return statements.bind(FIND_BY_CATCHMENT_AFTER_STMT, catchment.getId(), lastMarker, limit);
+        }
+        if (since != null) {
+            return statements.bind(FIND_BY_CATCHMENT_SINCE_STMT, catchment.getId(), UUIDs.startOf(since.getTime()), limit);
+        }
+        return statements.bind(FIND_BY_CATCHMENT_STMT, catchment.getId(), limit);
+    }
+
+    private Statement bindPageByCatchmentStmt(Catchment catchment, Date since, UUID lastMarker) {
+        if (lastMarker != null) {
+            return statements.bind(PAGE_BY_CATCHMENT_AFTER_STMT, catchment.getId(), lastMarker);
+        }
+        if (since != null) {
+            return statements.bind(PAGE_BY_CATCHMENT_SINCE_STMT, catchment.getId(), UUIDs.startOf(since.getTime()));
+        }
+        return statements.bind(PAGE_BY_CATCHMENT_STMT, catchment.getId());
+    }
+
+    private Statement bindFindCatchmentFeedStmt(Catchment catchment, Date since, UUID lastMarker, int limit) {
+        if (lastMarker != null) {
+            return statements.bind(FIND_CATCHMENT_FEED_AFTER_STMT, catchment.getId(), lastMarker, limit);
+        }
+        if (since != null) {
+            return statements.bind(FIND_CATCHMENT_FEED_SINCE_STMT, catchment.getId(), UUIDs.startOf(since.getTime()), limit);
+        }
+        return statements.bind(FIND_CATCHMENT_FEED_STMT, catchment.getId(), limit);
+    }
+
+    private Statement bindPageCatchmentFeedStmt(Catchment catchment, Date since, UUID lastMarker) {
+        if (lastMarker != null) {
+            return statements.bind(PAGE_CATCHMENT_FEED_AFTER_STMT, catchment.getId(), lastMarker);
+        }
+        if (since != null) {
+            return statements.bind(PAGE_CATCHMENT_FEED_SINCE_STMT, catchment.getId(), UUIDs.startOf(since.getTime()));
+        }
+        return statements.bind(PAGE_CATCHMENT_FEED_STMT, catchment.getId());
+    }
+
+    /**
+     * Finds the catchment ids that have catchment mappings, in token order, starting after the given one.
+     */
+    public List<String> findCatchmentIdsAfter(String catchmentId, int limit) {
+        Statement statement = catchmentId != null
+                ? statements.bind(FIND_CATCHMENT_IDS_AFTER_STMT, catchmentId, limit)
+                : statements.bind(FIND_CATCHMENT_IDS_STMT, limit);
+        return statements.selectColumn(statement, CATCHMENT_ID);
+    }
+
+    /**
+     * Writes the catchment feed entries missing for the next mappings of the catchment after the given one. Missing
+     * entries get the patient as it is now. Entries that are there already were written with their event, and are
+     * kept as they are.
+     *
+     * @return the last mapping gone through, or null when the catchment has no mapping after the given one.
+     */
+    public UUID backfillCatchmentFeed(String catchmentId, UUID lastMarker, int limit) {
+        Statement statement = lastMarker != null
+                ? statements.bind(FIND_BY_CATCHMENT_AFTER_STMT, catchmentId, lastMarker, limit)
+                : statements.bind(FIND_BY_CATCHMENT_STMT, catchmentId, limit);
+        List<CatchmentMapping> mappings = statements.select(statement, CatchmentMapping.class);
+        if (mappings.isEmpty()) {
+            return null;
+        }
+        UUID first = mappings.get(0).getLastUpdated();
+        UUID last = mappings.get(mappings.size() - 1).getLastUpdated();
+
+        Set<String> existingEntries = new HashSet<>();
+        for (Row row : statements.execute(statements.bind(FIND_CATCHMENT_FEED_KEYS_BETWEEN_STMT, catchmentId, first, last))) {
+            existingEntries.add(row.getUUID(LAST_UPDATED) + row.getString(HEALTH_ID));
+        }
+        List<CatchmentMapping> missingMappings = new ArrayList<>();
+        List<String> healthIds = new ArrayList<>();
+        for (CatchmentMapping mapping : mappings) {
+            if (!existingEntries.contains(mapping.getLastUpdated() + mapping.getHealthId())) {
+                missingMappings.add(mapping);
+                healthIds.add(mapping.getHealthId());
+            }
+        }
+        if (missingMappings.isEmpty()) {
+            return last;
+        }
+
+        Map<String, PatientData> patients = findAllByHealthIds(healthIds).getPatients();
+        List<Statement> inserts = new ArrayList<>(missingMappings.size());
+        for (CatchmentMapping mapping : missingMappings) {
+            PatientData patient = patients.get(mapping.getHealthId());
+            if (patient == null) {
+                logger.warn(String.format("No patient %s for catchment feed entry of %s", mapping.getHealthId(), catchmentId));
+                continue;
             }
-        });
+            inserts.add(statements.bindInsert(CF_CATCHMENT_FEED, new CatchmentFeedEntry(catchmentId,
+                    mapping.getLastUpdated(), mapping.getHealthId(), writeValueAsString(patient))));
+        }
+        for (ResultSetFuture future : statements.executeAll(inserts)) {
+            future.getUninterruptibly();
+        }
+        return last;
+    }
+
+    /**
+     * Writes the fuzzy name mappings of the next patients after the given health id, in token order. Mappings that
+     * are there already are written again with the same key. A mapping left behind by a name changed meanwhile only
+     * adds a candidate that the search filters out.
+     *
+     * @return the last health id gone through, or null when there is no patient after the given one.
+     */
+    public String backfillFuzzyNameMappings(String lastHealthId, int limit) {
+        Statement statement = lastHealthId != null
+                ? statements.bind(FIND_PATIENT_NAMES_AFTER_STMT, lastHealthId, limit)
+                : statements.bind(FIND_PATIENT_NAMES_STMT, limit);
+        List<Statement> inserts = new ArrayList<>();
+        String healthId = null;
+        for (Row row : statements.execute(statement)) {
+            healthId = row.getString(HEALTH_ID);
+            for (FuzzyNameMapping mapping : buildFuzzyNameMappings(row.getString(DIVISION_ID), row.getString(DISTRICT_ID),
+                    row.getString(UPAZILA_ID), row.getString(GIVEN_NAME), row.getString(SUR_NAME),
+                    row.getString(FULL_NAME_BANGLA), healthId)) {
+                inserts.add(statements.bindInsert(CF_FUZZY_NAME_MAPPING, mapping));
+            }
+        }
+        for (ResultSetFuture future : statements.executeAll(inserts)) {
+            future.getUninterruptibly();
+        }
+        return healthId;
+    }
+
+    /**
+     * Reads a page of pending approvals in the order they were last updated, which is the clustering order of the
+     * mapping table, with the driver's paging state.
+     */
+    public CursorPage<PendingApprovalMapping> findPendingApprovalMappingPage(Catchment catchment, String cursor, int pageSize) {
+        return statements.selectPage(statements.bind(PAGE_PENDING_APPROVAL_MAPPING_STMT, catchment.getId()),
+                PendingApprovalMapping.class, pageSize, cursor);
     }
 
     public List<PendingApprovalMapping> findPendingApprovalMapping(Catchment catchment, UUID after, UUID before, int limit) {
@@ -425,20 +852,36 @@ public class PatientRepository extends BaseRepository {
     }
 
     public String processPendingApprovals(PatientData requestData, PatientData existingPatientData, boolean shouldAccept) {
-        Batch batch = batch();
+        String healthId = requestData.getHealthId();
+        writer.write(buildPendingApprovalsWrite(requestData, existingPatientData, shouldAccept, null));
+        invalidateCache(healthId);
+        return healthId;
+    }
+
+    /**
+     * Builds the write of an accepted or rejected pending approval without executing it. Pending approval mappings
+     * are taken from the given map when it has the patient, and read otherwise.
+     */
+    public PatientWrite buildPendingApprovalsWrite(PatientData requestData, PatientData existingPatientData, boolean shouldAccept,
+                                                   Map<String, List<PendingApprovalMapping>> pendingApprovalMappings) {
+        PatientWrite write = new PatientWrite(requestData.getHealthId());
         Patient newPatient;
         Requester approver = requestData.getRequester();
         TreeSet<PendingApproval> existingPendingApprovals = existingPatientData.getPendingApprovals();
 
+        PatientChangeSet changeSet = PatientChangeSet.empty();
         if (shouldAccept) {
             newPatient = mapper.map(requestData, existingPatientData);
+            changeSet = PatientChangeSet.between(existingPatientData, requestData);
             Map<String, Set<Requester>> requestedBy = findRequestedBy(existingPendingApprovals, requestData);
-            buildCreateUpdateLogStmt(requestData, existingPatientData, requestedBy, approver, cassandraOps.getConverter(), batch);
-            PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(requestData, existingPatientData, requestedBy, approver, cassandraOps.getConverter(), batch);
+            addUpdateLog(buildUpdateLog(existingPatientData, changeSet, requestedBy, approver), write);
+            PatientAuditLogQueryBuilder.buildUpdateAuditLogStmt(existingPatientData, changeSet, requestedBy, approver,
+                    isJsonColumnsBinary(), cassandraOps.getConverter(), write);
 
         } else {
             newPatient = new Patient();
             newPatient.setHealthId(requestData.getHealthId());
+            addUpdateLog(buildPendingApprovalsLog(requestData.getHealthId()), write);
         }
 
         newPatient.setUpdatedAt(TimeUuidUtil.uuidForDate(new Date()));
@@ -450,7 +893,9 @@ public class PatientRepository extends BaseRepository {
 
         TreeSet<PendingApproval> pendingApprovals = updatePendingApprovals(newPatient.getPendingApprovals(), requestData, shouldAccept);
         newPatient.setPendingApprovals(pendingApprovals);
-        buildUpdateBatch(newPatient, existingPatientData, cassandraOps.getConverter(), batch);
+        encodeColumns(newPatient);
+        buildUpdateBatch(newPatient, existingPatientData, buildUpdatedPatientJson(newPatient), changeSet,
+                cassandraOps.getConverter(), write);
 
         if (isNotEmpty(pendingApprovals)) {
             UUID toBeUpdated = findLatestUuid(pendingApprovals);
@@ -459,15 +904,16 @@ public class PatientRepository extends BaseRepository {
                     .getCatchment());
             if (hasLastUpdatedChanged || hasCatchmentChanged) {
                 long timestamp = new Date().getTime();
-                buildDeletePendingApprovalMappingStmt(healthId, batch, timestamp);
+                buildDeletePendingApprovalMappingStmt(findPendingApprovalMappings(healthId, pendingApprovalMappings), write,
+                        timestamp);
                 Catchment catchment = newPatient.getCatchment() != null ? newPatient.getCatchment() : existingPatientData.getCatchment();
-                buildCreatePendingApprovalMappingStmt(catchment, healthId, toBeUpdated, batch, timestamp + QUERY_EXEC_DELAY);
+                buildCreatePendingApprovalMappingStmt(catchment, healthId, toBeUpdated, write, timestamp + QUERY_EXEC_DELAY);
             }
         } else {
-            buildDeletePendingApprovalMappingStmt(healthId, batch, new Date().getTime());
+            buildDeletePendingApprovalMappingStmt(findPendingApprovalMappings(healthId, pendingApprovalMappings), write,
+                    new Date().getTime());
         }
-        cassandraOps.execute(batch);
-        return healthId;
+        return write;
     }
 
     public TreeSet<PendingApproval> updatePendingApprovals(TreeSet<PendingApproval> pendingApprovals, PatientData patient, boolean
@@ -531,7 +977,7 @@ public class PatientRepository extends BaseRepository {
     }
 
     public boolean patientExists(String healthId) {
-        Patient patient = cassandraOps.selectOneById(Patient.class, healthId);
+        Patient patient = findPatient(healthId);
         if (patient != null) return true;
         return false;
     }
@@ -0,0 +1,17 @@
+package org.sharedhealth.mci.domain.repository;
+
+import org.sharedhealth.mci.domain.model.SearchQuery;
+
+import java.util.List;
+
+/**
+ * A source of search candidates that answers without reading the mapping tables. Candidates are still loaded and
+ * checked against the query, so an index may return health ids that no longer match.
+ */
+public interface PatientSearchIndex {
+
+    /**
+     * @return the health ids of the patients that may match the query, or null if the index can not answer it.
+     */
+    List<String> findHealthIds(SearchQuery searchQuery);
+}
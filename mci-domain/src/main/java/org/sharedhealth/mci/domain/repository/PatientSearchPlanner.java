@@ -0,0 +1,295 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import org.sharedhealth.mci.domain.model.SearchQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.repository.PatientQueryBuilder.*;
+import static org.sharedhealth.mci.domain.util.FuzzyNameUtil.*;
+
+/**
+ * Finds the health ids matching a search query. The mapping table the query has values for that returns the fewest
+ * health ids per lookup drives the search: it is read in full, and each of its health ids is then probed in the
+ * other tables by primary key, so a large partition of a less selective table is never read. The number of health
+ * ids a driving lookup returns is tracked per table, and tables not tracked yet keep the order they are planned in.
+ * <p>
+ * A name lookup without surname and a fuzzy name lookup can not be probed by health id, so when they do not drive
+ * they are read until every candidate was seen, or for at most MAX_SCAN_ROWS rows. A scan that stops early leaves
+ * the candidates unfiltered, and the repository checks the names of the patients it loads. A fuzzy name lookup is
+ * one range of the fuzzy name index, and its matches are ranked so exact names come before similar ones.
+ * <p>
+ * If a {@link PatientSearchIndex} is registered and can answer the query, its candidates are used instead.
+ */
+@Component
+public class PatientSearchPlanner implements PublicMetrics {
+
+    private static final int FETCH_SIZE = 100;
+    private static final int MAX_SCAN_ROWS = 2000;
+
+    private PreparedStatementRegistry statements;
+    private final ConcurrentMap<String, IndexStats> stats = new ConcurrentHashMap<>();
+    private volatile PatientSearchIndex searchIndex;
+
+    @Autowired
+    public PatientSearchPlanner(PreparedStatementRegistry statements) {
+        this.statements = statements;
+    }
+
+    public void registerSearchIndex(PatientSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * @return the matching health ids, or null if the query has no indexed field to look up.
+     */
+    public List<String> findHealthIds(SearchQuery searchQuery) {
+        if (searchIndex != null) {
+            List<String> healthIds = searchIndex.findHealthIds(searchQuery);
+            if (healthIds != null) {
+                return healthIds;
+            }
+        }
+
+        List<IndexLookup> lookups = plan(searchQuery);
+        if (lookups.isEmpty()) {
+            return null;
+        }
+
+        final Map<String, Integer> ranks = new HashMap<>();
+        IndexLookup driver = lookups.get(0);
+        driver.statement.setFetchSize(FETCH_SIZE);
+        Set<String> healthIds = new LinkedHashSet<>();
+        for (Row row : statements.execute(driver.statement)) {
+            healthIds.add(row.getString(HEALTH_ID));
+            addRank(ranks, driver, row);
+        }
+        getStats(driver.index).record(healthIds.size());
+
+        for (IndexLookup lookup : lookups.subList(1, lookups.size())) {
+            if (healthIds.isEmpty()) {
+                break;
+            }
+            if (lookup.probe != null) {
+                healthIds = probe(lookup, healthIds);
+            } else {
+                scan(lookup, healthIds, ranks);
+            }
+        }
+
+        List<String> result = new ArrayList<>(healthIds);
+        if (!ranks.isEmpty()) {
+            Collections.sort(result, new Comparator<String>() {
+                @Override
+                public int compare(String first, String second) {
+                    return Integer.compare(getRank(ranks, second), getRank(ranks, first));
+                }
+            });
+        }
+        return result;
+    }
+
+    private Set<String> probe(IndexLookup lookup, Set<String> candidates) {
+        List<String> healthIds = new ArrayList<>(candidates);
+        List<Statement> probes = new ArrayList<>(healthIds.size());
+        for (String healthId : healthIds) {
+            Object[] values = Arrays.copyOf(lookup.probeKeys, lookup.probeKeys.length + 1);
+            values[lookup.probeKeys.length] = healthId;
+            probes.add(statements.bind(lookup.probe, values));
+        }
+        List<ResultSetFuture> futures = statements.executeAll(probes);
+
+        Set<String> found = new LinkedHashSet<>();
+        for (int i = 0; i < healthIds.size(); i++) {
+            if (futures.get(i).getUninterruptibly().one() != null) {
+                found.add(healthIds.get(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the lookup until every candidate was seen. If the lookup ends first, the candidates it did not return are
+     * dropped; if MAX_SCAN_ROWS rows are read first, the candidates are left as they are.
+     */
+    private void scan(IndexLookup lookup, Set<String> candidates, Map<String, Integer> ranks) {
+        lookup.statement.setFetchSize(FETCH_SIZE);
+        Set<String> found = new HashSet<>();
+        int rows = 0;
+        Iterator<Row> iterator = statements.execute(lookup.statement).iterator();
+        while (iterator.hasNext()) {
+            if (found.size() == candidates.size() || rows == MAX_SCAN_ROWS) {
+                return;
+            }
+            Row row = iterator.next();
+            rows++;
+            String healthId = row.getString(HEALTH_ID);
+            if (candidates.contains(healthId)) {
+                found.add(healthId);
+                addRank(ranks, lookup, row);
+            }
+        }
+        getStats(lookup.index).record(rows);
+        candidates.retainAll(found);
+    }
+
+    private static void addRank(Map<String, Integer> ranks, IndexLookup lookup, Row row) {
+        if (lookup.fuzzyName != null) {
+            String healthId = row.getString(HEALTH_ID);
+            ranks.put(healthId, Math.max(getRank(ranks, healthId), rank(row.getString(NAME_KEY), lookup.fuzzyName)));
+        }
+    }
+
+    private static int getRank(Map<String, Integer> ranks, String healthId) {
+        Integer rank = ranks.get(healthId);
+        return rank == null ? 0 : rank;
+    }
+
+    List<IndexLookup> plan(SearchQuery searchQuery) {
+        List<IndexLookup> lookups = new ArrayList<>();
+        if (isNotBlank(searchQuery.getNid())) {
+            lookups.add(new IndexLookup(CF_NID_MAPPING, statements.bind(FIND_HID_BY_NID_STMT, searchQuery.getNid()),
+                    PROBE_NID_STMT, searchQuery.getNid()));
+        }
+        if (isNotBlank(searchQuery.getBin_brn())) {
+            lookups.add(new IndexLookup(CF_BRN_MAPPING, statements.bind(FIND_HID_BY_BRN_STMT, searchQuery.getBin_brn()),
+                    PROBE_BRN_STMT, searchQuery.getBin_brn()));
+        }
+        if (isNotBlank(searchQuery.getUid())) {
+            lookups.add(new IndexLookup(CF_UID_MAPPING, statements.bind(FIND_HID_BY_UID_STMT, searchQuery.getUid()),
+                    PROBE_UID_STMT, searchQuery.getUid()));
+        }
+        if (isNotBlank(searchQuery.getPhone_no())) {
+            lookups.add(new IndexLookup(CF_PHONE_NUMBER_MAPPING,
+                    statements.bind(FIND_HID_BY_PHONE_NUMBER_STMT, searchQuery.getPhone_no()),
+                    PROBE_PHONE_NUMBER_STMT, searchQuery.getPhone_no()));
+        }
+        if (isNotBlank(searchQuery.getHousehold_code())) {
+            lookups.add(new IndexLookup(CF_HOUSEHOLD_CODE_MAPPING,
+                    statements.bind(FIND_HID_BY_HOUSEHOLD_STMT, searchQuery.getHousehold_code()),
+                    PROBE_HOUSEHOLD_STMT, searchQuery.getHousehold_code()));
+        }
+        if (isNotBlank(searchQuery.getPresent_address()) && isNotBlank(searchQuery.getGiven_name())) {
+            String fuzzyName = searchQuery.getGiven_name() + " " + defaultString(searchQuery.getSur_name());
+            if (searchQuery.isFuzzyNameSearch() && !normalize(fuzzyName).isEmpty()) {
+                lookups.add(new IndexLookup(CF_FUZZY_NAME_MAPPING, bindFindByFuzzyNameStmt(searchQuery, fuzzyName), fuzzyName));
+            } else {
+                lookups.add(buildNameLookup(searchQuery));
+            }
+        }
+
+        Collections.sort(lookups, new Comparator<IndexLookup>() {
+            @Override
+            public int compare(IndexLookup first, IndexLookup second) {
+                return Long.compare(getStats(first.index).getAverage(), getStats(second.index).getAverage());
+            }
+        });
+        return lookups;
+    }
+
+    private IndexLookup buildNameLookup(SearchQuery searchQuery) {
+        String divisionId = searchQuery.getDivisionId();
+        String districtId = searchQuery.getDistrictId();
+        String upazilaId = searchQuery.getUpazilaId();
+        String givenName = searchQuery.getGiven_name().toLowerCase();
+        String surname = searchQuery.getSur_name();
+
+        if (isNotEmpty(surname)) {
+            return new IndexLookup(CF_NAME_MAPPING, statements.bind(FIND_HID_BY_FULL_NAME_STMT, divisionId, districtId,
+                    upazilaId, givenName, surname.toLowerCase()), PROBE_FULL_NAME_STMT, divisionId, districtId,
+                    upazilaId, givenName, surname.toLowerCase());
+        }
+        return new IndexLookup(CF_NAME_MAPPING, statements.bind(FIND_HID_BY_GIVEN_NAME_STMT, divisionId, districtId,
+                upazilaId, givenName));
+    }
+
+    private Statement bindFindByFuzzyNameStmt(SearchQuery searchQuery, String fuzzyName) {
+        return statements.bind(FIND_HID_BY_FUZZY_NAME_STMT, searchQuery.getDivisionId(), searchQuery.getDistrictId(),
+                searchQuery.getUpazilaId(), keyRangeStart(fuzzyName), keyRangeEnd(fuzzyName));
+    }
+
+    private IndexStats getStats(String index) {
+        IndexStats indexStats = stats.get(index);
+        if (indexStats == null) {
+            stats.putIfAbsent(index, new IndexStats());
+            indexStats = stats.get(index);
+        }
+        return indexStats;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        for (Map.Entry<String, IndexStats> entry : stats.entrySet()) {
+            metrics.add(new Metric<Long>("search.index." + entry.getKey() + ".lookups", entry.getValue().lookups.get()));
+            metrics.add(new Metric<Long>("search.index." + entry.getKey() + ".average", entry.getValue().getAverage()));
+        }
+        return metrics;
+    }
+
+    static class IndexLookup {
+        final String index;
+        final Statement statement;
+        final String fuzzyName;
+        final RegularStatement probe;
+        final Object[] probeKeys;
+
+        IndexLookup(String index, Statement statement) {
+            this(index, statement, null, null, null);
+        }
+
+        IndexLookup(String index, Statement statement, String fuzzyName) {
+            this(index, statement, fuzzyName, null, null);
+        }
+
+        /**
+         * A lookup whose matches can be probed one health id at a time, by binding the keys and then the health id
+         * to the probe statement.
+         */
+        IndexLookup(String index, Statement statement, RegularStatement probe, Object... probeKeys) {
+            this(index, statement, null, probe, probeKeys);
+        }
+
+        private IndexLookup(String index, Statement statement, String fuzzyName, RegularStatement probe,
+                            Object[] probeKeys) {
+            this.index = index;
+            this.statement = statement;
+            this.fuzzyName = fuzzyName;
+            this.probe = probe;
+            this.probeKeys = probeKeys;
+        }
+    }
+
+    private static class IndexStats {
+        private final AtomicLong lookups = new AtomicLong();
+        private final AtomicLong healthIds = new AtomicLong();
+
+        void record(int found) {
+            lookups.incrementAndGet();
+            healthIds.addAndGet(found);
+        }
+
+        /**
+         * Average health ids per complete lookup, or Long.MAX_VALUE for a table not read in full yet, so that tables with
+         * known cardinality go first and the rest keep the order they were planned in.
+         */
+        long getAverage() {
+            long count = lookups.get();
+            return count == 0 ? Long.MAX_VALUE : healthIds.get() / count;
+        }
+    }
+}
@@ -1,50 +1,214 @@
 package org.sharedhealth.mci.domain.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Select;
 import com.datastax.driver.core.utils.UUIDs;
-import org.sharedhealth.mci.domain.diff.PatientDiffBuilder;
+import org.sharedhealth.mci.domain.diff.PatientChangeSet;
 import org.sharedhealth.mci.domain.model.PatientData;
 import org.sharedhealth.mci.domain.model.PatientUpdateLog;
 import org.sharedhealth.mci.domain.model.Requester;
 import org.sharedhealth.mci.domain.util.TimeUuidUtil;
-import org.springframework.data.cassandra.convert.CassandraConverter;
 
 import java.util.*;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 import static com.datastax.driver.core.querybuilder.Select.Where;
+import static java.util.Arrays.asList;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
 import static org.sharedhealth.mci.domain.util.DateUtil.*;
 import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
-import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
 
 public class PatientUpdateLogQueryBuilder {
 
-    static void buildCreateUpdateLogStmt(PatientData patientDataToSave, PatientData existingPatientData,
-                                         Map<String, Set<Requester>> requestedBy, Requester approvedBy,
-                                         CassandraConverter converter, Batch batch) {
-        PatientUpdateLog patientUpdateLog = new PatientUpdateLog();
-        String changeSet = getChangeSet(patientDataToSave, existingPatientData);
-
-        if (changeSet != null) {
-            patientUpdateLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
-            patientUpdateLog.setHealthId(existingPatientData.getHealthId());
-            patientUpdateLog.setChangeSet(changeSet);
-            patientUpdateLog.setRequestedBy(writeValueAsString(requestedBy));
-            patientUpdateLog.setApprovedBy(writeValueAsString(approvedBy));
-            patientUpdateLog.setEventType(EVENT_TYPE_UPDATED);
-            batch.add(createInsertQuery(CF_PATIENT_UPDATE_LOG, patientUpdateLog, null, converter));
+    static final RegularStatement FIND_UPDATE_LOG_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .limit(bindMarker());
+    static final RegularStatement FIND_UPDATE_LOG_IN_YEARS_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .where(in(YEAR, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_UPDATE_LOG_AFTER_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .where(in(YEAR, bindMarker()))
+            .and(gt(EVENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_UPDATE_LOG_SINCE_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .where(in(YEAR, bindMarker()))
+            .and(gte(EVENT_ID, bindMarker()))
+            .limit(bindMarker());
+
+    static final RegularStatement FIND_UPDATE_LOG_IN_YEAR_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .where(eq(YEAR, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_UPDATE_LOG_IN_YEAR_AFTER_STMT = select().from(CF_PATIENT_UPDATE_LOG)
+            .where(eq(YEAR, bindMarker()))
+            .and(gt(EVENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_UPDATE_LOG_YEARS_STMT = select().distinct().column(YEAR)
+            .from(CF_PATIENT_UPDATE_LOG);
+
+    static final RegularStatement FIND_SHARDED_UPDATE_LOG_STMT = select().from(CF_PATIENT_UPDATE_LOG_SHARDED)
+            .where(eq(BUCKET, bindMarker()))
+            .and(eq(SHARD, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_SHARDED_UPDATE_LOG_AFTER_STMT = select().from(CF_PATIENT_UPDATE_LOG_SHARDED)
+            .where(eq(BUCKET, bindMarker()))
+            .and(eq(SHARD, bindMarker()))
+            .and(gt(EVENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_SHARDED_UPDATE_LOG_SINCE_STMT = select().from(CF_PATIENT_UPDATE_LOG_SHARDED)
+            .where(eq(BUCKET, bindMarker()))
+            .and(eq(SHARD, bindMarker()))
+            .and(gte(EVENT_ID, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement FIND_SHARDED_UPDATE_LOG_BY_EVENT_ID_STMT = select().from(CF_PATIENT_UPDATE_LOG_SHARDED)
+            .where(eq(BUCKET, bindMarker()))
+            .and(eq(SHARD, bindMarker()))
+            .and(eq(EVENT_ID, bindMarker()));
+    static final RegularStatement FIND_LOG_BUCKETS_STMT = select(BUCKET).from(CF_LOG_BUCKETS)
+            .where(eq(LOG_NAME, bindMarker()))
+            .and(gte(BUCKET, bindMarker()))
+            .limit(bindMarker());
+    static final RegularStatement CREATE_LOG_BUCKET_STMT = insertInto(CF_LOG_BUCKETS)
+            .value(LOG_NAME, bindMarker())
+            .value(BUCKET, bindMarker());
+
+    static final List<RegularStatement> HOT_STATEMENTS = asList(FIND_UPDATE_LOG_STMT, FIND_UPDATE_LOG_IN_YEARS_STMT,
+            FIND_UPDATE_LOG_AFTER_STMT, FIND_UPDATE_LOG_SINCE_STMT, FIND_SHARDED_UPDATE_LOG_STMT,
+            FIND_SHARDED_UPDATE_LOG_AFTER_STMT, FIND_SHARDED_UPDATE_LOG_SINCE_STMT, FIND_LOG_BUCKETS_STMT,
+            CREATE_LOG_BUCKET_STMT);
+
+    /**
+     * The number of partitions a day of the sharded update log is spread over. Readers query every shard of a day,
+     * so it is part of the layout: changing it needs the sharded log to be rebuilt.
+     */
+    static final int UPDATE_LOG_SHARDS = 8;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * The day of the event as yyyyMMdd in UTC, so that every node puts an event in the same bucket.
+     */
+    static int getBucketOf(UUID eventId) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(TimeUuidUtil.getTimeFromUUID(eventId));
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    static int getShardOf(String healthId) {
+        return (healthId.hashCode() & Integer.MAX_VALUE) % UPDATE_LOG_SHARDS;
+    }
+
+    static Statement bindCreateShardedUpdateLogStmt(PatientUpdateLog log, PreparedStatementRegistry statements) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put(BUCKET, getBucketOf(log.getEventId()));
+        values.put(SHARD, getShardOf(log.getHealthId()));
+        values.put(EVENT_ID, log.getEventId());
+        values.put(HEALTH_ID, log.getHealthId());
+        values.put(CHANGE_SET, log.getChangeSet());
+        values.put(REQUESTED_BY, log.getRequestedBy());
+        values.put(APPROVED_BY, log.getApprovedBy());
+        values.put(CHANGE_SET_BIN, log.getChangeSetBin());
+        values.put(REQUESTED_BY_BIN, log.getRequestedByBin());
+        values.put(APPROVED_BY_BIN, log.getApprovedByBin());
+        values.put(EVENT_TYPE, log.getEventType());
+        return statements.bindInsert(CF_PATIENT_UPDATE_LOG_SHARDED, values);
+    }
+
+    static PatientUpdateLog readShardedUpdateLog(Row row) {
+        PatientUpdateLog log = new PatientUpdateLog();
+        log.setEventId(row.getUUID(EVENT_ID));
+        log.setHealthId(row.getString(HEALTH_ID));
+        log.setChangeSet(row.getString(CHANGE_SET));
+        log.setRequestedBy(row.getString(REQUESTED_BY));
+        log.setApprovedBy(row.getString(APPROVED_BY));
+        log.setChangeSetBin(row.getBytes(CHANGE_SET_BIN));
+        log.setRequestedByBin(row.getBytes(REQUESTED_BY_BIN));
+        log.setApprovedByBin(row.getBytes(APPROVED_BY_BIN));
+        log.setEventType(row.getString(EVENT_TYPE));
+        return log;
+    }
+
+    /**
+     * Merges the rows of the shards of a bucket, each already in event order, into at most limit update logs in
+     * timeuuid order. Only the rows that are taken are mapped.
+     */
+    static List<PatientUpdateLog> mergeShards(List<Iterator<Row>> shards, int limit) {
+        PriorityQueue<ShardCursor> cursors = new PriorityQueue<>(Math.max(1, shards.size()));
+        for (Iterator<Row> shard : shards) {
+            if (shard.hasNext()) {
+                cursors.add(new ShardCursor(shard));
+            }
         }
+        List<PatientUpdateLog> logs = new ArrayList<>();
+        while (logs.size() < limit && !cursors.isEmpty()) {
+            ShardCursor cursor = cursors.poll();
+            logs.add(readShardedUpdateLog(cursor.row));
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Orders time based uuids by their time first, as Cassandra orders timeuuid columns.
+     */
+    static int compareEventIds(UUID eventId1, UUID eventId2) {
+        int result = Long.compare(eventId1.timestamp(), eventId2.timestamp());
+        return result != 0 ? result : eventId1.compareTo(eventId2);
     }
 
+    private static class ShardCursor implements Comparable<ShardCursor> {
+        private final Iterator<Row> rows;
+        private Row row;
+        private UUID eventId;
+
+        ShardCursor(Iterator<Row> rows) {
+            this.rows = rows;
+            next();
+        }
+
+        boolean next() {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            row = rows.next();
+            eventId = row.getUUID(EVENT_ID);
+            return true;
+        }
+
+        @Override
+        public int compareTo(ShardCursor other) {
+            return compareEventIds(eventId, other.eventId);
+        }
+    }
 
-    private static String getChangeSet(PatientData newData, PatientData oldData) {
-        Map<String, Map<String, Object>> diff = new PatientDiffBuilder(oldData, newData).build();
-        if (diff != null && diff.size() > 0) {
-            return writeValueAsString(diff);
+    static PatientUpdateLog buildUpdateLog(PatientData existingPatientData, PatientChangeSet changeSet,
+                                           Map<String, Set<Requester>> requestedBy, Requester approvedBy) {
+        if (changeSet.isEmpty()) {
+            return null;
         }
-        return null;
+        PatientUpdateLog patientUpdateLog = new PatientUpdateLog();
+        patientUpdateLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
+        patientUpdateLog.setHealthId(existingPatientData.getHealthId());
+        patientUpdateLog.setChangeSet(changeSet.toJson());
+        patientUpdateLog.setRequestedBy(writeValueAsString(requestedBy));
+        patientUpdateLog.setApprovedBy(writeValueAsString(approvedBy));
+        patientUpdateLog.setEventType(EVENT_TYPE_UPDATED);
+        return patientUpdateLog;
+    }
+
+    /**
+     * A write of the patient row that changes no field, as one that only adds or decides pending approvals, is logged
+     * without a change set, so that the other nodes still drop their cached patient. The feeds skip these events.
+     */
+    static PatientUpdateLog buildPendingApprovalsLog(String healthId) {
+        PatientUpdateLog patientUpdateLog = new PatientUpdateLog();
+        patientUpdateLog.setEventId(TimeUuidUtil.uuidForDate(new Date()));
+        patientUpdateLog.setHealthId(healthId);
+        patientUpdateLog.setEventType(EVENT_TYPE_PENDING_APPROVALS_UPDATED);
+        return patientUpdateLog;
     }
 
     public static String buildFindUpdateLogStmt(UUID lastMarker, int limit) {
@@ -76,7 +240,7 @@ public class PatientUpdateLogQueryBuilder {
         return where.limit(limit).toString();
     }
 
-    private static int getYearOfMarker(Date since, UUID lastMarker) {
+    static int getYearOfMarker(Date since, UUID lastMarker) {
         if (lastMarker != null) {
             return getYearOf(lastMarker);
         }
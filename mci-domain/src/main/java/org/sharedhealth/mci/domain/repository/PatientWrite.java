@@ -0,0 +1,68 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statements of one patient create or update. The patient row and its update log entry are the core of the write;
+ * the mapping, catchment, pending approval and audit rows are derived from them.
+ */
+public class PatientWrite {
+
+    private final String healthId;
+    private final List<Statement> core = new ArrayList<>();
+    private final List<Statement> derived = new ArrayList<>();
+
+    public PatientWrite(String healthId) {
+        this.healthId = healthId;
+    }
+
+    public String getHealthId() {
+        return healthId;
+    }
+
+    public PatientWrite addCore(Statement statement) {
+        core.add(statement);
+        return this;
+    }
+
+    public PatientWrite add(Statement statement) {
+        derived.add(statement);
+        return this;
+    }
+
+    public List<Statement> getCore() {
+        return core;
+    }
+
+    public List<Statement> getDerived() {
+        return derived;
+    }
+
+    public boolean isEmpty() {
+        return core.isEmpty() && derived.isEmpty();
+    }
+
+    /**
+     * @return all the statements in one logged batch.
+     */
+    public BatchStatement toBatch() {
+        BatchStatement batch = new BatchStatement();
+        batch.addAll(core);
+        batch.addAll(derived);
+        return batch;
+    }
+
+    /**
+     * Adds the statements to a logged batch, for writes that go together with other rows. The batch has to be a
+     * driver batch, as the update log entry may be a bound statement.
+     */
+    public BatchStatement addTo(BatchStatement batch) {
+        batch.addAll(core);
+        batch.addAll(derived);
+        return batch;
+    }
+}
@@ -0,0 +1,201 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the statements of a patient create or update.
+ * <p>
+ * With CASSANDRA_SPLIT_PATIENT_WRITES the core of the write, the patient row and its update log entry, is written
+ * first in one logged batch. The derived rows are then written as separate statements, concurrently, each to its
+ * own partition. A derived statement that fails is retried up to CASSANDRA_DERIVED_WRITE_RETRIES times; all derived
+ * statements of a write carry the same client timestamp, so a retry cannot overwrite a later write of the same row.
+ * A derived statement that still fails is kept by the {@link FailedDerivedWriteRepository}, and replayed with its
+ * timestamp by the derived write replay task.
+ * <p>
+ * Otherwise all the statements are written in one logged batch. The time taken by each mode is published, so the
+ * two can be compared on the diagnostics endpoint.
+ */
+@Component
+public class PatientWriter implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientWriter.class);
+
+    private PreparedStatementRegistry statements;
+    private FailedDerivedWriteRepository failedWrites;
+    private MCIProperties mciProperties;
+
+    private final WriteStats batchStats = new WriteStats();
+    private final WriteStats splitStats = new WriteStats();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Autowired
+    public PatientWriter(PreparedStatementRegistry statements, FailedDerivedWriteRepository failedWrites,
+                         MCIProperties mciProperties) {
+        this.statements = statements;
+        this.failedWrites = failedWrites;
+        this.mciProperties = mciProperties;
+    }
+
+    public void write(PatientWrite write) {
+        if (write.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        if (mciProperties.isCassandraSplitPatientWrites()) {
+            writeSplit(write);
+            splitStats.add(System.currentTimeMillis() - start);
+        } else {
+            statements.execute(write.toBatch());
+            batchStats.add(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Writes many patients with at most CASSANDRA_READ_CONCURRENCY statements in flight, all cores first and then
+     * all derived rows of the cores that were written.
+     *
+     * @return the failure of each write, or null for the writes that succeeded.
+     */
+    public List<RuntimeException> writeAll(List<PatientWrite> writes) {
+        long start = System.currentTimeMillis();
+        boolean split = mciProperties.isCassandraSplitPatientWrites();
+        List<Statement> cores = new ArrayList<>(writes.size());
+        for (PatientWrite write : writes) {
+            cores.add(split ? toStatement(write.getCore()) : write.toBatch());
+        }
+        List<ResultSetFuture> futures = statements.executeAll(cores);
+
+        List<RuntimeException> results = new ArrayList<>(writes.size());
+        List<Statement> derived = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            try {
+                futures.get(i).getUninterruptibly();
+                results.add(null);
+                if (split) derived.addAll(writes.get(i).getDerived());
+            } catch (RuntimeException e) {
+                results.add(e);
+            }
+        }
+        if (split) {
+            writeDerived(derived);
+        }
+        (split ? splitStats : batchStats).add(System.currentTimeMillis() - start, writes.size());
+        return results;
+    }
+
+    /**
+     * @return whether the failure of a write shows that it was not applied: the coordinator refused it for lack of
+     * live replicas, or it was invalid. After any other failure, a timeout in particular, the write may have been
+     * applied on some replicas, and may still be applied from the batch log.
+     */
+    public static boolean isRejected(RuntimeException failure) {
+        return failure instanceof UnavailableException || failure instanceof QueryValidationException;
+    }
+
+    private void writeSplit(PatientWrite write) {
+        if (!write.getCore().isEmpty()) {
+            statements.execute(toStatement(write.getCore()));
+        }
+        writeDerived(write.getDerived());
+    }
+
+    private Statement toStatement(List<Statement> core) {
+        if (core.size() == 1) {
+            return core.get(0);
+        }
+        BatchStatement batch = new BatchStatement();
+        batch.addAll(core);
+        return batch;
+    }
+
+    private void writeDerived(List<Statement> pending) {
+        long timestamp = System.currentTimeMillis() * 1000;
+        for (Statement statement : pending) {
+            statement.setDefaultTimestamp(timestamp);
+        }
+
+        int maxRetries = Math.max(0, mciProperties.getCassandraDerivedWriteRetries());
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                retries.addAndGet(pending.size());
+            }
+            List<ResultSetFuture> futures = statements.executeAll(pending);
+            List<Statement> failed = new ArrayList<>();
+            RuntimeException lastError = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).getUninterruptibly();
+                } catch (RuntimeException e) {
+                    failed.add(pending.get(i));
+                    lastError = e;
+                }
+            }
+            if (!failed.isEmpty() && attempt >= maxRetries) {
+                failures.addAndGet(failed.size());
+                logger.error(String.format("%d derived patient writes failed after %d retries", failed.size(), maxRetries),
+                        lastError);
+                keep(failed);
+                return;
+            }
+            pending = failed;
+        }
+    }
+
+    private void keep(List<Statement> failed) {
+        for (Statement statement : failed) {
+            try {
+                failedWrites.save(statement);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Failed to keep derived patient write %s for replay", statement), e);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("write.patient.batch.count", batchStats.count.get()));
+        metrics.add(new Metric<Long>("write.patient.batch.average", batchStats.getAverage()));
+        metrics.add(new Metric<Long>("write.patient.split.count", splitStats.count.get()));
+        metrics.add(new Metric<Long>("write.patient.split.average", splitStats.getAverage()));
+        metrics.add(new Metric<Long>("write.patient.derived.retries", retries.get()));
+        metrics.add(new Metric<Long>("write.patient.derived.failures", failures.get()));
+        return metrics;
+    }
+
+    private static class WriteStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong millis = new AtomicLong();
+
+        void add(long elapsed) {
+            add(elapsed, 1);
+        }
+
+        void add(long elapsed, int writes) {
+            count.addAndGet(writes);
+            millis.addAndGet(elapsed);
+        }
+
+        long getAverage() {
+            long n = count.get();
+            return n == 0 ? 0 : millis.get() / n;
+        }
+    }
+}
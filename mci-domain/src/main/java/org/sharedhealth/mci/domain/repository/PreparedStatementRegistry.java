@@ -0,0 +1,299 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.exception.InvalidRequestException;
+import org.sharedhealth.mci.domain.model.CursorPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.cassandra.convert.CassandraConverter;
+import org.springframework.data.cassandra.core.CassandraOperations;
+import org.springframework.data.cassandra.mapping.Column;
+import org.springframework.data.cassandra.mapping.PrimaryKey;
+import org.springframework.data.cassandra.mapping.PrimaryKeyColumn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Prepares CQL statements once per session and binds them per call, so the hot read and write paths
+ * do not pay for query string building and server side parsing on every request.
+ */
+@Component
+public class PreparedStatementRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+    private static final int MAX_INSERT_STATEMENTS = 256;
+
+    private CassandraOperations cassandraOps;
+    private MCIProperties mciProperties;
+    private final ConcurrentMap<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Map<String, Field>> columns = new ConcurrentHashMap<>();
+    private final Map<String, ListenableFuture<PreparedStatement>> insertStatements =
+            new LinkedHashMap<String, ListenableFuture<PreparedStatement>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ListenableFuture<PreparedStatement>> eldest) {
+                    return size() > MAX_INSERT_STATEMENTS;
+                }
+            };
+
+    @Autowired
+    public PreparedStatementRegistry(@Qualifier("MCICassandraTemplate") CassandraOperations cassandraOps,
+                                     MCIProperties mciProperties) {
+        this.cassandraOps = cassandraOps;
+        this.mciProperties = mciProperties;
+    }
+
+    @PostConstruct
+    public void prepareHotStatements() {
+        List<RegularStatement> hotStatements = new ArrayList<>();
+        hotStatements.addAll(PatientQueryBuilder.HOT_STATEMENTS);
+        hotStatements.addAll(PatientUpdateLogQueryBuilder.HOT_STATEMENTS);
+        for (RegularStatement statement : hotStatements) {
+            prepare(statement);
+        }
+        logger.info(String.format("Prepared %d statements", statements.size()));
+    }
+
+    public PreparedStatement prepare(RegularStatement statement) {
+        String cql = statement.getQueryString();
+        PreparedStatement prepared = statements.get(cql);
+        if (prepared == null) {
+            prepared = getSession().prepare(statement);
+            PreparedStatement existing = statements.putIfAbsent(cql, prepared);
+            if (existing != null) {
+                prepared = existing;
+            }
+        }
+        return prepared;
+    }
+
+    public BoundStatement bind(RegularStatement statement, Object... values) {
+        return prepare(statement).bind(values);
+    }
+
+    /**
+     * Binds an insert of the given entity. Null columns are left out of the statement, as
+     * CassandraTemplate.createInsertQuery does, so that inserts do not write tombstones.
+     */
+    public Statement bindInsert(String table, Object entity) {
+        Map<String, Field> entityColumns = findColumns(entity.getClass());
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Field> column : entityColumns.entrySet()) {
+            values.put(column.getKey(), readField(column.getValue(), entity));
+        }
+        return bindInsert(table, values);
+    }
+
+    /**
+     * Binds an insert of the given column values, leaving null columns out of the statement. Each set of columns is
+     * an insert statement of its own, which is prepared in the background the first time it is seen; until it is
+     * ready the insert is sent unprepared.
+     */
+    public Statement bindInsert(String table, Map<String, Object> values) {
+        Insert insert = insertInto(table);
+        List<Object> boundValues = new ArrayList<>(values.size());
+        for (Map.Entry<String, Object> column : values.entrySet()) {
+            if (column.getValue() != null) {
+                insert.value(column.getKey(), bindMarker());
+                boundValues.add(column.getValue());
+            }
+        }
+        String cql = insert.getQueryString();
+        PreparedStatement prepared = findPreparedInsert(cql);
+        Object[] boundValueArray = boundValues.toArray();
+        return prepared != null ? prepared.bind(boundValueArray) : new SimpleStatement(cql, boundValueArray);
+    }
+
+    /**
+     * Insert statements are kept apart from the other statements, at most MAX_INSERT_STATEMENTS of them, the least
+     * recently used one being dropped, as there can be as many of them as there are combinations of columns.
+     *
+     * @return the prepared insert, or null if it is not prepared yet.
+     */
+    private PreparedStatement findPreparedInsert(String cql) {
+        ListenableFuture<PreparedStatement> future;
+        synchronized (insertStatements) {
+            future = insertStatements.get(cql);
+            if (future == null) {
+                insertStatements.put(cql, getSession().prepareAsync(cql));
+                return null;
+            }
+        }
+        if (!future.isDone()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.warn(String.format("Can not prepare %s, it is sent unprepared", cql), e);
+            synchronized (insertStatements) {
+                insertStatements.remove(cql);
+            }
+            return null;
+        }
+    }
+
+    public ResultSet execute(Statement statement) {
+        return getSession().execute(statement);
+    }
+
+    public ResultSetFuture executeAsync(Statement statement) {
+        return getSession().executeAsync(statement);
+    }
+
+    /**
+     * Executes the statements asynchronously with at most CASSANDRA_READ_CONCURRENCY of them in flight, and returns
+     * their completed futures in the order of the statements. A failed statement does not stop the others; its
+     * failure is raised when the caller reads its future.
+     */
+    public List<ResultSetFuture> executeAll(List<? extends Statement> statements) {
+        int concurrency = Math.max(1, mciProperties.getCassandraReadConcurrency());
+        List<ResultSetFuture> futures = new ArrayList<>(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            if (i >= concurrency) {
+                awaitCompletion(futures.get(i - concurrency));
+            }
+            futures.add(executeAsync(statements.get(i)));
+        }
+        for (ResultSetFuture future : futures) {
+            awaitCompletion(future);
+        }
+        return futures;
+    }
+
+    private void awaitCompletion(ResultSetFuture future) {
+        try {
+            future.getUninterruptibly();
+        } catch (RuntimeException e) {
+            logger.debug("Statement failed, failure is reported to the caller", e);
+        }
+    }
+
+    public <T> List<T> select(Statement statement, Class<T> type) {
+        return readAll(execute(statement), type);
+    }
+
+    public <T> List<T> readAll(ResultSet resultSet, Class<T> type) {
+        CassandraConverter converter = cassandraOps.getConverter();
+        List<T> result = new ArrayList<>();
+        for (Row row : resultSet) {
+            result.add(converter.read(type, row));
+        }
+        return result;
+    }
+
+    /**
+     * Reads one page of at most pageSize rows, starting at the given cursor, or at the first row if the cursor is
+     * null. Only the rows the driver already fetched are read, so a page costs one round trip however deep it is.
+     */
+    public <T> CursorPage<T> selectPage(Statement statement, Class<T> type, int pageSize, String cursor) {
+        statement.setFetchSize(pageSize);
+        if (isNotBlank(cursor)) {
+            try {
+                statement.setPagingState(PagingState.fromString(cursor));
+            } catch (PagingStateException | IllegalArgumentException e) {
+                throw new InvalidRequestException("Invalid cursor: " + cursor, e);
+            }
+        }
+        ResultSet resultSet = execute(statement);
+        CassandraConverter converter = cassandraOps.getConverter();
+        int available = resultSet.getAvailableWithoutFetching();
+        List<T> items = new ArrayList<>(available);
+        for (int i = 0; i < available; i++) {
+            items.add(converter.read(type, resultSet.one()));
+        }
+        PagingState pagingState = resultSet.getExecutionInfo().getPagingState();
+        return new CursorPage<>(items, pagingState == null ? null : pagingState.toString());
+    }
+
+    public <T> T selectOne(Statement statement, Class<T> type) {
+        return readOne(execute(statement), type);
+    }
+
+    public <T> T readOne(ResultSet resultSet, Class<T> type) {
+        Row row = resultSet.one();
+        return row == null ? null : cassandraOps.getConverter().read(type, row);
+    }
+
+    public List<String> selectColumn(Statement statement, String column) {
+        List<String> result = new ArrayList<>();
+        for (Row row : execute(statement)) {
+            result.add(row.getString(column));
+        }
+        return result;
+    }
+
+    private Session getSession() {
+        return cassandraOps.getSession();
+    }
+
+    private Map<String, Field> findColumns(Class<?> type) {
+        Map<String, Field> entityColumns = columns.get(type);
+        if (entityColumns == null) {
+            entityColumns = new LinkedHashMap<>();
+            for (Field field : type.getDeclaredFields()) {
+                String column = findColumnName(field);
+                if (column != null) {
+                    field.setAccessible(true);
+                    entityColumns.put(column, field);
+                }
+            }
+            columns.putIfAbsent(type, entityColumns);
+        }
+        return entityColumns;
+    }
+
+    private String findColumnName(Field field) {
+        if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(Transient.class)) {
+            return null;
+        }
+        if (field.isAnnotationPresent(PrimaryKey.class)) {
+            return columnName(field.getAnnotation(PrimaryKey.class).value(), field);
+        }
+        if (field.isAnnotationPresent(PrimaryKeyColumn.class)) {
+            return columnName(field.getAnnotation(PrimaryKeyColumn.class).name(), field);
+        }
+        if (field.isAnnotationPresent(Column.class)) {
+            return columnName(field.getAnnotation(Column.class).value(), field);
+        }
+        return null;
+    }
+
+    private String columnName(String name, Field field) {
+        return isNotBlank(name) ? name : field.getName();
+    }
+
+    private Object readField(Field field, Object entity) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read column field " + field.getName(), e);
+        }
+    }
+}
@@ -23,4 +23,8 @@ public class ApprovalFieldService {
         return approvalField != null ? approvalField.getOption() : null;
     }
 
+    public void evictCachedProperties() {
+        fieldsRepository.evictAll();
+    }
+
 }
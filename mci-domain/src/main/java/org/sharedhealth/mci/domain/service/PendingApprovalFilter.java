@@ -14,13 +14,72 @@ import static org.apache.commons.lang3.StringUtils.*;
 import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.COUNTRY_CODE_BANGLADESH;
 
+/**
+ * Splits an update request into the changes that are applied and the changes that wait for approval, following the
+ * options of approval_fields.
+ * <p>
+ * The fields handled are a fixed table, and the options of all of them are read once into an array indexed like the
+ * table, so filtering a request is one pass over the table without any cache lookups. The array is replaced as a
+ * whole by {@link #refresh()}.
+ */
 @Component
 public class PendingApprovalFilter {
 
     private static final String NEEDS_APPROVAL = "NA";
     private static final String NON_UPDATABLE = "NU";
 
+    private static final FilteredField[] FIELDS = {
+            field(HID, Kind.STRING), field(NID, Kind.STRING), field(NAME_BANGLA, Kind.STRING),
+            field(BIN_BRN, Kind.STRING), field(GIVEN_NAME, Kind.STRING), field(SUR_NAME, Kind.STRING),
+            new FilteredField(DATE_OF_BIRTH, Kind.VALUE) {
+                Object get(PatientData patient) {
+                    return patient.getDateOfBirth();
+                }
+
+                void set(PatientData patient, Object value) {
+                    patient.setDateOfBirth((Date) value);
+                }
+            },
+            field(DOB_TYPE, Kind.STRING), field(GENDER, Kind.STRING), field(OCCUPATION, Kind.STRING),
+            field(EDU_LEVEL, Kind.STRING), field(UID, Kind.STRING), field(PLACE_OF_BIRTH, Kind.STRING),
+            field(RELIGION, Kind.STRING), field(BLOOD_GROUP, Kind.STRING), field(NATIONALITY, Kind.STRING),
+            field(DISABILITY, Kind.STRING), field(ETHNICITY, Kind.STRING), field(PRIMARY_CONTACT, Kind.STRING),
+            field(MARITAL_STATUS, Kind.STRING), field(CONFIDENTIAL, Kind.STRING),
+            new FilteredField(CREATED, Kind.VALUE) {
+                Object get(PatientData patient) {
+                    return patient.getCreatedAt();
+                }
+
+                void set(PatientData patient, Object value) {
+                    patient.setCreatedAt((UUID) value);
+                }
+            },
+            new FilteredField(MODIFIED, Kind.VALUE) {
+                Object get(PatientData patient) {
+                    return patient.getUpdatedAt();
+                }
+
+                void set(PatientData patient, Object value) {
+                    patient.setUpdatedAt((UUID) value);
+                }
+            },
+            field(PHONE_NUMBER, Kind.VALUE), field(RELATIONS, Kind.RELATIONS), field(STATUS, Kind.VALUE),
+            field(PRIMARY_CONTACT_NUMBER, Kind.VALUE), field(PRESENT_ADDRESS, Kind.ADDRESS),
+            field(PERMANENT_ADDRESS, Kind.VALUE), field(HOUSEHOLD_CODE, Kind.STRING), field(ACTIVE, Kind.VALUE),
+            field(MERGED_WITH, Kind.STRING),
+            new FilteredField(HID_CARD_STATUS, Kind.HID_CARD_STATUS) {
+                Object get(PatientData patient) {
+                    return patient.getHidCardStatus();
+                }
+
+                void set(PatientData patient, Object value) {
+                    patient.setHidCardStatus((String) value);
+                }
+            }
+    };
+
     private ApprovalFieldService properties;
+    private volatile String[] options;
 
     @Autowired
     public PendingApprovalFilter(ApprovalFieldService approvalFieldService) {
@@ -28,88 +87,95 @@ public class PendingApprovalFilter {
     }
 
     public PatientData filter(PatientData existingPatient, PatientData updateRequest) {
+        String[] options = getOptions();
         PatientData newPatient = new PatientData();
         Requester requestedBy = updateRequest.getRequester();
-        newPatient.setPendingApprovals(existingPatient.getPendingApprovals());
-
-        newPatient.setHealthId(processString(HID, existingPatient.getHealthId(), updateRequest.getHealthId(), requestedBy, newPatient));
-        newPatient.setNationalId(processString(NID, existingPatient.getNationalId(), updateRequest.getNationalId(), requestedBy,
-                newPatient));
-        newPatient.setNameBangla(processString(NAME_BANGLA, existingPatient.getNameBangla(), updateRequest.getNameBangla(), requestedBy,
-                newPatient));
-        newPatient.setBirthRegistrationNumber(processString(BIN_BRN, existingPatient.getBirthRegistrationNumber(), updateRequest
-                .getBirthRegistrationNumber(), requestedBy, newPatient));
-        newPatient.setGivenName(processString(GIVEN_NAME, existingPatient.getGivenName(), updateRequest.getGivenName(), requestedBy,
-                newPatient));
-        newPatient.setSurName(processString(SUR_NAME, existingPatient.getSurName(), updateRequest.getSurName(), requestedBy, newPatient));
-        newPatient.setDateOfBirth(processDate(DATE_OF_BIRTH, existingPatient.getDateOfBirth(), updateRequest.getDateOfBirth(),
-                requestedBy, newPatient));
-        newPatient.setDobType(processString(DOB_TYPE, existingPatient.getDobType(), updateRequest.getDobType(), requestedBy, newPatient));
-        newPatient.setGender(processString(GENDER, existingPatient.getGender(), updateRequest.getGender(), requestedBy, newPatient));
-        newPatient.setOccupation(processString(OCCUPATION, existingPatient.getOccupation(), updateRequest.getOccupation(), requestedBy,
-                newPatient));
-        newPatient.setEducationLevel(processString(EDU_LEVEL, existingPatient.getEducationLevel(), updateRequest.getEducationLevel(),
-                requestedBy, newPatient));
-        newPatient.setUid(processString(UID, existingPatient.getUid(), updateRequest.getUid(), requestedBy, newPatient));
-        newPatient.setPlaceOfBirth(processString(PLACE_OF_BIRTH, existingPatient.getPlaceOfBirth(), updateRequest.getPlaceOfBirth(),
-                requestedBy, newPatient));
-        newPatient.setReligion(processString(RELIGION, existingPatient.getReligion(), updateRequest.getReligion(), requestedBy,
-                newPatient));
-        newPatient.setBloodGroup(processString(BLOOD_GROUP, existingPatient.getBloodGroup(), updateRequest.getBloodGroup(), requestedBy,
-                newPatient));
-        newPatient.setNationality(processString(NATIONALITY, existingPatient.getNationality(), updateRequest.getNationality(),
-                requestedBy, newPatient));
-        newPatient.setDisability(processString(DISABILITY, existingPatient.getDisability(), updateRequest.getDisability(), requestedBy,
-                newPatient));
-        newPatient.setEthnicity(processString(ETHNICITY, existingPatient.getEthnicity(), updateRequest.getEthnicity(), requestedBy,
-                newPatient));
-        newPatient.setPrimaryContact(processString(PRIMARY_CONTACT, existingPatient.getPrimaryContact(), updateRequest.getPrimaryContact
-                (), requestedBy, newPatient));
-        newPatient.setMaritalStatus(processString(MARITAL_STATUS, existingPatient.getMaritalStatus(), updateRequest.getMaritalStatus(),
-                requestedBy, newPatient));
-        newPatient.setConfidential(processString(CONFIDENTIAL, existingPatient.getConfidential(), updateRequest.getConfidential(),
-                requestedBy, newPatient));
-        newPatient.setCreatedAt(processUuid(CREATED, existingPatient.getCreatedAt(), updateRequest.getCreatedAt(), requestedBy,
-                newPatient));
-        newPatient.setUpdatedAt(processUuid(MODIFIED, existingPatient.getUpdatedAt(), updateRequest.getUpdatedAt(), requestedBy,
-                newPatient));
-        newPatient.setPhoneNumber(processPhoneNumber(PHONE_NUMBER, existingPatient.getPhoneNumber(), updateRequest.getPhoneNumber(),
-                requestedBy, newPatient));
-        newPatient.setRelations(processRelations(RELATIONS, existingPatient, updateRequest, requestedBy,
-                newPatient));
-        newPatient.setPatientStatus(processPatientStatus(STATUS, existingPatient.getPatientStatus(), updateRequest.getPatientStatus(),
-                requestedBy, newPatient));
-        newPatient.setPrimaryContactNumber(processPhoneNumber(PRIMARY_CONTACT_NUMBER, existingPatient.getPrimaryContactNumber(),
-                updateRequest.getPrimaryContactNumber(), requestedBy, newPatient));
-        newPatient.setAddress(processAddress(PRESENT_ADDRESS, existingPatient.getAddress(), updateRequest.getAddress(), requestedBy,
-                newPatient));
-        newPatient.setPermanentAddress(processPermanentAddress(PERMANENT_ADDRESS, existingPatient.getPermanentAddress(), updateRequest
-                .getPermanentAddress(), requestedBy, newPatient));
-        newPatient.setHouseholdCode(processString(HOUSEHOLD_CODE, existingPatient.getHouseholdCode(), updateRequest.getHouseholdCode(),
-                requestedBy, newPatient));
-        newPatient.setActive((Boolean) process(ACTIVE, existingPatient.isActive(), updateRequest.isActive(), requestedBy, newPatient));
-        newPatient.setMergedWith(processString(MERGED_WITH, existingPatient.getMergedWith(), updateRequest.getMergedWith(), requestedBy,
-                newPatient));
-        if (isBlank(updateRequest.getHidCardStatus())) {
-            newPatient.setHidCardStatus(existingPatient.getHidCardStatus());
-        } else {
-            newPatient.setHidCardStatus(processString(HID_CARD_STATUS, existingPatient.getHidCardStatus(), updateRequest.getHidCardStatus(),
-                    requestedBy, newPatient));
-        }
+        newPatient.setPendingApprovals(copyPendingApprovals(existingPatient.getPendingApprovals()));
 
+        for (int i = 0; i < FIELDS.length; i++) {
+            FilteredField field = FIELDS[i];
+            field.set(newPatient, process(field, options[i], existingPatient, updateRequest, requestedBy, newPatient));
+        }
         return newPatient;
     }
 
-    private Date processDate(String key, Date oldDate, Date newDate, Requester requestedBy, PatientData newPatient) {
-        Object date = process(key, oldDate, newDate, requestedBy, newPatient);
-        return date == null ? null : (Date) date;
+    /**
+     * The pending approvals of the request are added to a copy of the existing ones, so that the existing patient
+     * still tells what was pending before the update.
+     */
+    private TreeSet<PendingApproval> copyPendingApprovals(TreeSet<PendingApproval> pendingApprovals) {
+        if (pendingApprovals == null) {
+            return null;
+        }
+        TreeSet<PendingApproval> copy = new TreeSet<>();
+        for (PendingApproval pendingApproval : pendingApprovals) {
+            PendingApproval approvalCopy = new PendingApproval();
+            approvalCopy.setName(pendingApproval.getName());
+            approvalCopy.setCurrentValue(pendingApproval.getCurrentValue());
+            approvalCopy.addFieldDetails(pendingApproval.getFieldDetails());
+            copy.add(approvalCopy);
+        }
+        return copy;
     }
 
-    private List<Relation> processRelations(String key, PatientData existingData, PatientData updateRequest, Requester requester,
-                                            PatientData newPatient) {
-        List<Relation> newRelations = handleEmptyRelations(existingData, updateRequest.getRelations());
-        Object relations = process(key, existingData.getRelations(), newRelations, requester, newPatient);
-        return relations == null ? null : (List<Relation>) relations;
+    /**
+     * Reads the options of approval_fields again, and replaces the ones in use once all of them are read.
+     */
+    public void refresh() {
+        properties.evictCachedProperties();
+        options = readOptions();
+    }
+
+    private String[] getOptions() {
+        String[] current = options;
+        if (current == null) {
+            synchronized (this) {
+                current = options;
+                if (current == null) {
+                    current = readOptions();
+                    options = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private String[] readOptions() {
+        String[] result = new String[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            result[i] = properties.getProperty(FIELDS[i].key);
+        }
+        return result;
+    }
+
+    private Object process(FilteredField field, String property, PatientData existingPatient, PatientData updateRequest,
+                           Requester requester, PatientData newPatient) {
+        Object oldValue = field.get(existingPatient);
+        Object newValue;
+        switch (field.kind) {
+            case RELATIONS:
+                newValue = handleEmptyRelations(existingPatient, updateRequest.getRelations());
+                break;
+            case ADDRESS:
+                Address address = updateRequest.getAddress();
+                if (address != null && !address.isEmpty()) {
+                    address.setCountryCode(COUNTRY_CODE_BANGLADESH);
+                }
+                newValue = address;
+                break;
+            case HID_CARD_STATUS:
+                if (isBlank(updateRequest.getHidCardStatus())) {
+                    return oldValue;
+                }
+                return processString(field.key, (String) oldValue, updateRequest.getHidCardStatus(), property, requester,
+                        newPatient);
+            case STRING:
+                return processString(field.key, (String) oldValue, (String) field.get(updateRequest), property, requester,
+                        newPatient);
+            default:
+                newValue = field.get(updateRequest);
+        }
+        return process(field.key, oldValue, newValue, property, requester, newPatient);
     }
 
     private List<Relation> handleEmptyRelations(PatientData existingData, List<Relation> newRelations) {
@@ -125,53 +191,21 @@ public class PendingApprovalFilter {
         return relationArrayList;
     }
 
-    private PhoneNumber processPhoneNumber(String key, PhoneNumber oldValue, PhoneNumber newValue, Requester requester, PatientData
-            newPatient) {
-        Object phoneNumber = process(key, oldValue, newValue, requester, newPatient);
-        return phoneNumber == null ? null : (PhoneNumber) phoneNumber;
-    }
-
-    private Address processAddress(String key, Address oldValue, Address newValue, Requester requester, PatientData newPatient) {
-
-        if (newValue != null && !newValue.isEmpty()) {
-            newValue.setCountryCode(COUNTRY_CODE_BANGLADESH);
-        }
-
-        Object address = process(key, oldValue, newValue, requester, newPatient);
-        return address == null ? null : (Address) address;
-    }
-
-    private Address processPermanentAddress(String key, Address oldValue, Address newValue, Requester requester, PatientData newPatient) {
-
-        Object address = process(key, oldValue, newValue, requester, newPatient);
-        return address == null ? null : (Address) address;
-    }
-
-    private PatientStatus processPatientStatus(String key, PatientStatus oldValue, PatientStatus newValue, Requester requester,
-                                               PatientData newPatient) {
-        Object patientStatus = process(key, oldValue, newValue, requester, newPatient);
-        return patientStatus == null ? null : (PatientStatus) patientStatus;
-    }
-
-    private UUID processUuid(String key, UUID oldValue, UUID newValue, Requester requester, PatientData newPatient) {
-        Object value = process(key, oldValue, newValue, requester, newPatient);
-        return value == null ? null : (UUID) value;
-    }
-
-    private String processString(String key, String oldValue, String newValue, Requester requester, PatientData newPatient) {
+    private String processString(String key, String oldValue, String newValue, String property, Requester requester,
+                                 PatientData newPatient) {
         if ("".equals(trim(newValue))) {
             oldValue = defaultString(oldValue);
             newValue = defaultString(newValue);
         }
-        Object value = process(key, oldValue, newValue, requester, newPatient);
+        Object value = process(key, oldValue, newValue, property, requester, newPatient);
         return value == null ? null : valueOf(value);
     }
 
-    private Object process(String key, Object oldValue, Object newValue, Requester requester, PatientData newPatient) {
+    private Object process(String key, Object oldValue, Object newValue, String property, Requester requester,
+                           PatientData newPatient) {
         if (newValue == null) {
             return oldValue;
         }
-        String property = properties.getProperty(key);
         if (property != null) {
             if (isNonUpdateable(key, oldValue, newValue, property)) return oldValue;
 
@@ -231,4 +265,34 @@ public class PendingApprovalFilter {
 
         return pendingApproval;
     }
+
+    private static FilteredField field(String key, Kind kind) {
+        return new FilteredField(key, kind);
+    }
+
+    private enum Kind {
+        STRING, VALUE, ADDRESS, RELATIONS, HID_CARD_STATUS
+    }
+
+    /**
+     * A field of the table. Fields read and written under their JSON names by default; fields whose getters convert
+     * the stored value override the accessors.
+     */
+    private static class FilteredField {
+        final String key;
+        final Kind kind;
+
+        FilteredField(String key, Kind kind) {
+            this.key = key;
+            this.kind = kind;
+        }
+
+        Object get(PatientData patient) {
+            return PatientDataFields.get(patient, key);
+        }
+
+        void set(PatientData patient, Object value) {
+            PatientDataFields.set(patient, key, value);
+        }
+    }
 }
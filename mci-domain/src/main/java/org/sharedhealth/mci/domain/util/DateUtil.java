@@ -104,6 +104,13 @@ public class DateUtil {
         return cal.get(YEAR);
     }
 
+    public static Date getStartOfYear(int year) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(YEAR, year);
+        return cal.getTime();
+    }
+
     public static List<Integer> getYearsSince(int year) {
         List<Integer> years = new ArrayList<>();
 
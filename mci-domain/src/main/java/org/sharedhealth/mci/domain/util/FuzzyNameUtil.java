@@ -0,0 +1,115 @@
+package org.sharedhealth.mci.domain.util;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Builds the keys of the fuzzy name index. A key is the phonetic code of the first word of a name followed by the
+ * normalized name, so all names that sound alike, or start like the searched name, are one range of keys within an
+ * upazila. Bangla names are transliterated to Latin script first, so they share the codes of their Latin spelling.
+ */
+public class FuzzyNameUtil {
+
+    public static final int EXACT_MATCH = 3;
+    public static final int PREFIX_MATCH = 2;
+    public static final int PHONETIC_MATCH = 1;
+
+    private static final char KEY_SEPARATOR = ':';
+    private static final int PHONETIC_CODE_LENGTH = 6;
+    private static final Map<Character, String> BANGLA_TO_LATIN = new HashMap<>();
+
+    static {
+        String[][] letters = {
+                {"অ", "o"}, {"আ", "a"}, {"ই", "i"}, {"ঈ", "i"}, {"উ", "u"}, {"ঊ", "u"}, {"ঋ", "ri"}, {"এ", "e"},
+                {"ঐ", "oi"}, {"ও", "o"}, {"ঔ", "ou"},
+                {"া", "a"}, {"ি", "i"}, {"ী", "i"}, {"ু", "u"}, {"ূ", "u"}, {"ৃ", "ri"}, {"ে", "e"}, {"ৈ", "oi"},
+                {"ো", "o"}, {"ৌ", "ou"}, {"্", ""}, {"ঁ", "n"}, {"ং", "ng"}, {"ঃ", "h"},
+                {"ক", "k"}, {"খ", "kh"}, {"গ", "g"}, {"ঘ", "gh"}, {"ঙ", "ng"}, {"চ", "ch"}, {"ছ", "chh"},
+                {"জ", "j"}, {"ঝ", "jh"}, {"ঞ", "n"}, {"ট", "t"}, {"ঠ", "th"}, {"ড", "d"}, {"ঢ", "dh"}, {"ণ", "n"},
+                {"ত", "t"}, {"থ", "th"}, {"দ", "d"}, {"ধ", "dh"}, {"ন", "n"}, {"প", "p"}, {"ফ", "ph"}, {"ব", "b"},
+                {"ভ", "bh"}, {"ম", "m"}, {"য", "j"}, {"র", "r"}, {"ল", "l"}, {"শ", "sh"}, {"ষ", "sh"}, {"স", "s"},
+                {"হ", "h"}, {"\u09DC", "r"}, {"\u09DD", "rh"}, {"\u09DF", "y"}, {"ৎ", "t"}
+        };
+        for (String[] letter : letters) {
+            BANGLA_TO_LATIN.put(letter[0].charAt(0), letter[1]);
+        }
+    }
+
+    /**
+     * @return the index key of the name, or null if nothing is left of it after normalization.
+     */
+    public static String nameKey(String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        return phoneticCode(normalized) + KEY_SEPARATOR + normalized;
+    }
+
+    /**
+     * The first key of the range of keys matching the searched name. The range ends before
+     * {@link #keyRangeEnd(String)}.
+     */
+    public static String keyRangeStart(String searchedName) {
+        return phoneticCode(normalize(searchedName));
+    }
+
+    public static String keyRangeEnd(String searchedName) {
+        return keyRangeStart(searchedName) + Character.MAX_VALUE;
+    }
+
+    /**
+     * @return whether the key of the name falls in the range of keys matching the searched name.
+     */
+    public static boolean matches(String name, String searchedName) {
+        String nameKey = nameKey(name);
+        return nameKey != null && nameKey.compareTo(keyRangeStart(searchedName)) >= 0
+                && nameKey.compareTo(keyRangeEnd(searchedName)) < 0;
+    }
+
+    /**
+     * Ranks a key found for the searched name: an exact match of the normalized name ranks highest, then names
+     * starting with the searched name, then names that only sound alike.
+     */
+    public static int rank(String nameKey, String searchedName) {
+        String name = nameKey.substring(nameKey.indexOf(KEY_SEPARATOR) + 1);
+        String searched = normalize(searchedName);
+        if (name.equals(searched)) {
+            return EXACT_MATCH;
+        }
+        return name.startsWith(searched) ? PREFIX_MATCH : PHONETIC_MATCH;
+    }
+
+    public static String normalize(String name) {
+        if (isBlank(name)) {
+            return "";
+        }
+        String latin = Normalizer.normalize(transliterate(name), Normalizer.Form.NFD).toLowerCase();
+        return latin.replaceAll("[^a-z0-9\\s]", "").replaceAll("\\s+", " ").trim();
+    }
+
+    private static String phoneticCode(String normalized) {
+        String firstWord = normalized.split(" ")[0];
+        DoubleMetaphone doubleMetaphone = new DoubleMetaphone();
+        doubleMetaphone.setMaxCodeLen(PHONETIC_CODE_LENGTH);
+        String code = defaultString(doubleMetaphone.doubleMetaphone(firstWord));
+        return code.isEmpty() ? firstWord.toUpperCase() : code;
+    }
+
+    private static String transliterate(String name) {
+        String composed = name.replace("\u09A1\u09BC", "\u09DC").replace("\u09A2\u09BC", "\u09DD")
+                .replace("\u09AF\u09BC", "\u09DF");
+        StringBuilder latin = new StringBuilder(composed.length());
+        for (char c : composed.toCharArray()) {
+            String letter = BANGLA_TO_LATIN.get(c);
+            latin.append(letter != null ? letter : String.valueOf(c));
+        }
+        return latin.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package org.sharedhealth.mci.domain.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Encodes the JSON columns that are kept as blobs: the change set, requested by and approved by of the update and
+ * audit logs, and the relations of a patient. A value is a version byte followed by the value as Smile, a binary
+ * JSON that writes repeated field names once. Values of LZ4_THRESHOLD bytes or more are LZ4 compressed, after their
+ * uncompressed length.
+ * <p>
+ * Readers take both the blob and the JSON column of a value. The blob is read when there is one, and the JSON column
+ * otherwise, so rows written before the blob columns were, or by nodes that still write JSON, read the same. Blob
+ * content that does not start with a known version is read as JSON text.
+ */
+public final class JsonColumnCodec {
+
+    static final byte VERSION_SMILE = 1;
+    static final byte VERSION_SMILE_LZ4 = 2;
+    static final int LZ4_THRESHOLD = 1024;
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private JsonColumnCodec() {
+    }
+
+    /**
+     * Encodes JSON text by streaming it into Smile, without building the value it holds.
+     *
+     * @return the encoded value, or null for null or blank JSON.
+     */
+    public static ByteBuffer encode(String json) {
+        if (isBlank(json)) {
+            return null;
+        }
+        ByteArrayOutputStream smile = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = jsonFactory().createParser(json);
+             JsonGenerator generator = SMILE_FACTORY.createGenerator(smile)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Error encoding %s.", json), e);
+        }
+        byte[] bytes = smile.toByteArray();
+        if (bytes.length < LZ4_THRESHOLD) {
+            byte[] encoded = new byte[bytes.length + 1];
+            encoded[0] = VERSION_SMILE;
+            System.arraycopy(bytes, 0, encoded, 1, bytes.length);
+            return ByteBuffer.wrap(encoded);
+        }
+        LZ4Compressor compressor = LZ4.fastCompressor();
+        byte[] encoded = new byte[5 + compressor.maxCompressedLength(bytes.length)];
+        ByteBuffer header = ByteBuffer.wrap(encoded);
+        header.put(VERSION_SMILE_LZ4).putInt(bytes.length);
+        int compressedLength = compressor.compress(bytes, 0, bytes.length, encoded, 5, encoded.length - 5);
+        return ByteBuffer.wrap(encoded, 0, 5 + compressedLength).slice();
+    }
+
+    /**
+     * @return the value of the blob when there is one, of the JSON otherwise, or null when there is neither.
+     */
+    public static <T> T read(ByteBuffer encoded, String json, ObjectReader reader) {
+        if (encoded == null) {
+            return json == null ? null : JsonMapper.<T>readValue(json, reader);
+        }
+        try (JsonParser parser = createParser(encoded)) {
+            return reader.readValue(parser);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Error decoding content with %s.", reader), e);
+        }
+    }
+
+    /**
+     * Reads one top level field of the value of the blob, or of the JSON when there is no blob, as
+     * JsonMapper.readField does.
+     */
+    public static <T> T readField(ByteBuffer encoded, String json, String fieldName, Class<T> valueType) {
+        if (encoded == null) {
+            return JsonMapper.readField(json, fieldName, valueType);
+        }
+        try (JsonParser parser = createParser(encoded)) {
+            return JsonMapper.readField(parser, fieldName, valueType);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Error reading %s from encoded content.", fieldName), e);
+        }
+    }
+
+    /**
+     * The JSON text of the blob when there is one, for code that hands the value on as JSON; the given JSON otherwise.
+     */
+    public static String toJson(ByteBuffer encoded, String json) {
+        if (encoded == null) {
+            return json;
+        }
+        StringWriter writer = new StringWriter();
+        try (JsonParser parser = createParser(encoded);
+             JsonGenerator generator = jsonFactory().createGenerator(writer)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Error decoding content to JSON.", e);
+        }
+        return writer.toString();
+    }
+
+    static JsonParser createParser(ByteBuffer encoded) throws IOException {
+        ByteBuffer in = encoded.duplicate();
+        int length = in.remaining();
+        byte[] bytes;
+        int offset;
+        if (in.hasArray()) {
+            bytes = in.array();
+            offset = in.arrayOffset() + in.position();
+        } else {
+            bytes = new byte[length];
+            in.get(bytes);
+            offset = 0;
+        }
+        if (length > 0 && bytes[offset] == VERSION_SMILE) {
+            return SMILE_FACTORY.createParser(bytes, offset + 1, length - 1);
+        }
+        if (length > 4 && bytes[offset] == VERSION_SMILE_LZ4) {
+            int smileLength = ByteBuffer.wrap(bytes, offset + 1, 4).getInt();
+            byte[] smile = new byte[smileLength];
+            LZ4.fastDecompressor().decompress(bytes, offset + 5, smile, 0, smileLength);
+            return SMILE_FACTORY.createParser(smile);
+        }
+        return jsonFactory().createParser(bytes, offset, length);
+    }
+
+    private static JsonFactory jsonFactory() {
+        return JsonMapper.getObjectMapper().getFactory();
+    }
+}
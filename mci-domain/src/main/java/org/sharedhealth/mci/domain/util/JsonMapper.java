@@ -1,16 +1,46 @@
 package org.sharedhealth.mci.domain.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.String.format;
 
+/**
+ * The JSON codec shared by all modules, including the HTTP message converters. Mappers are expensive to create and
+ * keep their serializers cached, so code should read and write JSON through here rather than creating its own
+ * mapper. Readers and writers are cached per type, and the Afterburner module generates their property accessors.
+ * <p>
+ * Unknown properties fail unless a type ignores them. The API depends on this: an unknown field in a patient request
+ * is answered with the unrecognized field error. Spring's own converter mapper ignores unknown properties, so the
+ * setting is made here explicitly rather than left to whichever default applies.
+ */
 public class JsonMapper {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new AfterburnerModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * For code that needs the mapper itself, such as a streaming parser or a message converter. It must not be
+     * reconfigured.
+     */
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
 
     public static String writeValueAsString(Object o) {
         try {
@@ -22,7 +52,7 @@ public class JsonMapper {
 
     public static <T> T readValue(String content, Class<T> valueType) {
         try {
-            return objectMapper.readValue(content, valueType);
+            return reader(valueType).readValue(content);
         } catch (IOException e) {
             throw new RuntimeException(format("Error converting content string to %s.", valueType), e);
         }
@@ -36,6 +66,79 @@ public class JsonMapper {
         }
     }
 
+    public static ObjectReader reader(Class<?> valueType) {
+        ObjectReader reader = readers.get(valueType);
+        if (reader == null) {
+            reader = objectMapper.reader(valueType);
+            ObjectReader existing = readers.putIfAbsent(valueType, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * A reader of the given type, to be kept and reused rather than resolving the type on every read.
+     */
+    public static ObjectReader reader(TypeReference<?> valueTypeRef) {
+        return objectMapper.reader(valueTypeRef);
+    }
+
+    public static ObjectWriter writer(Class<?> valueType) {
+        ObjectWriter writer = writers.get(valueType);
+        if (writer == null) {
+            writer = objectMapper.writerWithType(valueType);
+            ObjectWriter existing = writers.putIfAbsent(valueType, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Reads one top level field of a JSON object. The other fields are skipped over without being built.
+     *
+     * @return the value of the field, or null when the content is not an object or does not have the field.
+     */
+    public static <T> T readField(String content, String fieldName, Class<T> valueType) {
+        if (content == null) {
+            return null;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(content)) {
+            return readField(parser, fieldName, valueType);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Error reading %s from content string.", fieldName), e);
+        }
+    }
+
+    /**
+     * Reads one top level field of the object the parser is at the start of, whatever its format.
+     */
+    public static <T> T readField(JsonParser parser, String fieldName, Class<T> valueType) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals(name)) {
+                return reader(valueType).readValue(parser);
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    public static <T> T readValue(String content, ObjectReader reader) {
+        try {
+            return reader.readValue(content);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Error converting content string with %s.", reader), e);
+        }
+    }
+
     public static <T> T convertValue(Object fromValue, Class<T> toValueType) {
         return objectMapper.convertValue(fromValue, toValueType);
     }
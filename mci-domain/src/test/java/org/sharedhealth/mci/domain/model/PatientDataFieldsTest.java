@@ -0,0 +1,48 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.*;
+
+public class PatientDataFieldsTest {
+
+    @Test
+    public void shouldGetAndSetFieldsByJsonName() {
+        PatientData patient = new PatientData();
+        Address address = new Address("10", "20", "30");
+
+        PatientDataFields.set(patient, GIVEN_NAME, "Harry");
+        PatientDataFields.set(patient, PRESENT_ADDRESS, address);
+
+        assertEquals("Harry", patient.getGivenName());
+        assertEquals("Harry", patient.getValue(GIVEN_NAME));
+        assertSame(address, patient.getValue(PRESENT_ADDRESS));
+        assertNull(patient.getValue(SUR_NAME));
+        assertNull(patient.getValue("unknown"));
+        assertTrue(PatientDataFields.contains(HID));
+        assertFalse(PatientDataFields.contains("unknown"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSetUnknownField() {
+        PatientDataFields.set(new PatientData(), "unknown", "value");
+    }
+
+    @Test
+    public void shouldFindNonEmptyFieldNames() {
+        PatientData patient = new PatientData();
+        patient.setHealthId("h100");
+        patient.setGivenName("Harry");
+        patient.setSurName(" ");
+        patient.setGender("M");
+
+        List<String> fieldNames = patient.findNonEmptyFieldNames();
+
+        assertEquals(3, fieldNames.size());
+        assertTrue(fieldNames.containsAll(asList(HID, GIVEN_NAME, GENDER)));
+    }
+}
@@ -0,0 +1,85 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.domain.constant.JsonConstants.RELATIONS;
+import static org.sharedhealth.mci.domain.util.JsonMapper.writeValueAsString;
+
+public class PatientMapperTest {
+
+    private PatientMapper mapper = new PatientMapper();
+
+    @Test
+    public void shouldDecodeRelationsAndPendingApprovalsWhenFirstRead() {
+        Relation father = new Relation();
+        father.setId("r100");
+        father.setType("FTH");
+        father.setGivenName("James");
+        PendingApproval pendingApproval = new PendingApproval();
+        pendingApproval.setName("gender");
+        TreeSet<PendingApproval> pendingApprovals = new TreeSet<>(asList(pendingApproval));
+
+        Patient patient = new Patient();
+        patient.setHealthId("h100");
+        patient.setRelations(writeValueAsString(asList(father)));
+        patient.setPendingApprovals(pendingApprovals);
+
+        PatientData data = mapper.map(patient);
+
+        assertEquals(asList(father), data.getRelations());
+        assertSame(data.getRelations(), data.getRelations());
+        assertEquals(father, data.getRelationOfType("FTH"));
+        assertEquals(pendingApprovals, data.getPendingApprovals());
+        assertTrue(writeValueAsString(data).contains("\"" + RELATIONS + "\""));
+    }
+
+    @Test
+    public void shouldReadRelationsThroughFieldLookupBeforeTheyAreDecoded() {
+        Relation mother = new Relation();
+        mother.setType("MTH");
+        Patient patient = new Patient();
+        patient.setRelations(writeValueAsString(asList(mother)));
+
+        PatientData data = mapper.map(patient);
+
+        assertEquals(asList(mother), data.getValue(RELATIONS));
+        assertTrue(data.findNonEmptyFieldNames().contains(RELATIONS));
+    }
+
+    @Test
+    public void shouldKeepRelationsSetAfterMapping() {
+        Patient patient = new Patient();
+        patient.setRelations(writeValueAsString(asList(new Relation())));
+        PatientData data = mapper.map(patient);
+
+        List<Relation> relations = asList();
+        data.setRelations(relations);
+
+        assertSame(relations, data.getRelations());
+    }
+
+    @Test
+    public void shouldMapSummaryStraightFromPatient() {
+        Patient patient = new Patient();
+        patient.setHealthId("h100");
+        patient.setGivenName(" Harry ");
+        patient.setSurName("Potter");
+        patient.setDivisionId("10");
+        patient.setDistrictId("20");
+        patient.setUpazilaId("30");
+        patient.setCellNo("123456");
+        patient.setActive(true);
+
+        PatientSummaryData summary = mapper.mapSummary(patient);
+
+        assertEquals(mapper.mapSummary(mapper.map(patient)), summary);
+        assertEquals("Harry", summary.getGivenName());
+        assertEquals("123456", summary.getPhoneNumber().getNumber());
+        assertNull(mapper.mapSummary((Patient) null));
+    }
+}
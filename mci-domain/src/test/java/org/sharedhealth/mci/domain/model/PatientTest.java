@@ -0,0 +1,32 @@
+package org.sharedhealth.mci.domain.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PatientTest {
+
+    @Test
+    public void shouldOverlayColumnsSetByUpdate() {
+        Patient existing = new Patient();
+        existing.setHealthId("11111111111");
+        existing.setGivenName("Scott");
+        existing.setSurName("Tiger");
+        existing.setDivisionId("10");
+
+        Patient update = new Patient();
+        update.setHealthId("11111111111");
+        update.setGivenName("Lion");
+        update.setDistrictId("04");
+
+        Patient patient = existing.withUpdate(update);
+        assertEquals("11111111111", patient.getHealthId());
+        assertEquals("Lion", patient.getGivenName());
+        assertEquals("Tiger", patient.getSurName());
+        assertEquals("10", patient.getDivisionId());
+        assertEquals("04", patient.getDistrictId());
+        assertNull(patient.getUpazilaId());
+        assertEquals("Scott", existing.getGivenName());
+    }
+}
@@ -0,0 +1,49 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sharedhealth.mci.domain.model.NidMapping;
+import org.sharedhealth.mci.domain.model.PhoneNumberMapping;
+import org.sharedhealth.mci.domain.util.BaseIntegrationTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class FailedDerivedWriteRepositoryIT extends BaseIntegrationTest {
+
+    @Autowired
+    private FailedDerivedWriteRepository failedWrites;
+    @Autowired
+    private PreparedStatementRegistry statements;
+
+    @Test
+    public void shouldReplayKeptStatements() throws Exception {
+        long timestamp = System.currentTimeMillis() * 1000;
+        Statement nidMapping = createInsertQuery(CF_NID_MAPPING, new NidMapping("1234567890123", "hid-1"), null,
+                cassandraOps.getConverter());
+        Statement phoneMapping = statements.bindInsert(CF_PHONE_NUMBER_MAPPING, new PhoneNumberMapping("1716528608", "hid-1"));
+        nidMapping.setDefaultTimestamp(timestamp);
+        phoneMapping.setDefaultTimestamp(timestamp);
+        failedWrites.save(nidMapping);
+        failedWrites.save(phoneMapping);
+
+        assertEquals(2, failedWrites.replay(10));
+
+        List<NidMapping> nidMappings = cassandraOps.select("select * from " + CF_NID_MAPPING, NidMapping.class);
+        assertEquals(1, nidMappings.size());
+        List<PhoneNumberMapping> phoneMappings = cassandraOps.select("select * from " + CF_PHONE_NUMBER_MAPPING,
+                PhoneNumberMapping.class);
+        assertEquals(1, phoneMappings.size());
+        assertNull(statements.execute(new SimpleStatement("select * from " + CF_FAILED_DERIVED_WRITES)).one());
+        assertEquals(0, failedWrites.replay(10));
+    }
+}
@@ -0,0 +1,97 @@
+package org.sharedhealth.mci.domain.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sharedhealth.mci.domain.config.MCICacheConfiguration;
+import org.sharedhealth.mci.domain.model.Patient;
+import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PatientCacheTest {
+
+    private net.sf.ehcache.CacheManager cacheManager;
+    private PatientCache patientCache;
+
+    @Before
+    public void setUp() {
+        cacheManager = new MCICacheConfiguration().ehCacheManager();
+        cacheManager.clearAll();
+        patientCache = new PatientCache(cacheManager);
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.clearAll();
+    }
+
+    @Test
+    public void shouldReturnCachedPatient() {
+        Patient patient = buildPatient("hid-1", new Date());
+        patientCache.put(patient, patientCache.getVersion("hid-1"));
+
+        assertSame(patient, patientCache.get("hid-1"));
+        assertNull(patientCache.get("hid-2"));
+    }
+
+    @Test
+    public void shouldNotCachePatientReadBeforeInvalidation() {
+        long version = patientCache.getVersion("hid-1");
+        patientCache.invalidate("hid-1");
+        patientCache.put(buildPatient("hid-1", new Date()), version);
+
+        assertNull(patientCache.get("hid-1"));
+    }
+
+    @Test
+    public void shouldCachePatientReadWhileAnotherPatientIsInvalidated() {
+        long version = patientCache.getVersion("hid-1");
+        patientCache.invalidate("hid-2");
+        Patient patient = buildPatient("hid-1", new Date());
+        patientCache.put(patient, version);
+
+        assertSame(patient, patientCache.get("hid-1"));
+    }
+
+    @Test
+    public void shouldNotReplaceNewerPatientWithOlderOne() {
+        Patient newer = buildPatient("hid-1", new Date());
+        Patient older = buildPatient("hid-1", new Date(1000));
+        patientCache.put(newer, patientCache.getVersion("hid-1"));
+        patientCache.put(older, patientCache.getVersion("hid-1"));
+
+        assertSame(newer, patientCache.get("hid-1"));
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        patientCache.put(buildPatient("hid-1", new Date()), patientCache.getVersion("hid-1"));
+        patientCache.get("hid-1");
+        patientCache.get("hid-2");
+
+        assertEquals(1L, findMetric("cache.patient.hits"));
+        assertEquals(1L, findMetric("cache.patient.misses"));
+    }
+
+    private Object findMetric(String name) {
+        for (Metric<?> metric : patientCache.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Patient buildPatient(String healthId, Date updatedAt) {
+        Patient patient = new Patient();
+        patient.setHealthId(healthId);
+        patient.setUpdatedAt(TimeUuidUtil.uuidForDate(updatedAt));
+        return patient;
+    }
+}
@@ -133,6 +133,32 @@ public class PatientFeedRepositoryIT extends BaseIntegrationTest {
         assertEquals(2, patientUpdateLogs.size());
     }
 
+    @Test
+    public void shouldPageThroughUpdateLogsOfAllShardsInEventOrder() {
+        Date since = new Date();
+        List<String> healthIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            PatientData patient = createPatient();
+            patient.setHealthId("h10" + i);
+            healthIds.add(patientRepository.create(patient).getId());
+        }
+
+        List<String> found = new ArrayList<>();
+        UUID marker = feedRepository.findPatientsUpdatedSince(since, 1, null).get(0).getEventId();
+        found.add(healthIds.get(0));
+        List<PatientUpdateLog> page;
+        do {
+            page = feedRepository.findPatientsUpdatedSince(marker, 3);
+            for (PatientUpdateLog log : page) {
+                assertTrue(log.getEventId().timestamp() > marker.timestamp());
+                marker = log.getEventId();
+                found.add(log.getHealthId());
+            }
+        } while (page.size() == 3);
+
+        assertEquals(healthIds, found);
+    }
+
     @Test
     public void shouldFindUpdateLogForGivenEventId() throws Exception {
         UUID eventId = TimeUuidUtil.uuidForDate(new Date());
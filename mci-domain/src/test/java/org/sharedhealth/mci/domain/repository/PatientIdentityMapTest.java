@@ -0,0 +1,81 @@
+package org.sharedhealth.mci.domain.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sharedhealth.mci.domain.model.Patient;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.junit.Assert.*;
+
+public class PatientIdentityMapTest {
+
+    private PatientIdentityMap identityMap;
+
+    @Before
+    public void setUp() {
+        identityMap = new PatientIdentityMap();
+    }
+
+    @Test
+    public void shouldKeepPatientsOnlyWithinUnitOfWork() {
+        identityMap.put(buildPatient("hid-1"));
+        assertNull(identityMap.get("hid-1"));
+
+        assertTrue(identityMap.begin());
+        Patient patient = buildPatient("hid-1");
+        identityMap.put(patient);
+        assertSame(patient, identityMap.get("hid-1"));
+
+        identityMap.end();
+        assertNull(identityMap.get("hid-1"));
+    }
+
+    @Test
+    public void shouldNotStartNestedUnitOfWork() {
+        assertTrue(identityMap.begin());
+        identityMap.put(buildPatient("hid-1"));
+
+        assertFalse(identityMap.begin());
+        assertNotNull(identityMap.get("hid-1"));
+        identityMap.end();
+    }
+
+    @Test
+    public void shouldRemovePatient() {
+        identityMap.begin();
+        identityMap.put(buildPatient("hid-1"));
+        identityMap.remove("hid-1");
+
+        assertNull(identityMap.get("hid-1"));
+        identityMap.end();
+    }
+
+    @Test
+    public void shouldCountOnlyPatientsLoadedFromDatabase() {
+        identityMap.begin();
+        identityMap.putLoaded(buildPatient("hid-1"));
+        identityMap.put(buildPatient("hid-2"));
+        identityMap.get("hid-1");
+        identityMap.get("hid-2");
+        identityMap.get("hid-3");
+        identityMap.end();
+
+        assertEquals(1L, findMetric("unitofwork.patient.loads"));
+        assertEquals(2L, findMetric("unitofwork.patient.reads.saved"));
+    }
+
+    private Object findMetric(String name) {
+        for (Metric<?> metric : identityMap.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Patient buildPatient(String healthId) {
+        Patient patient = new Patient();
+        patient.setHealthId(healthId);
+        return patient;
+    }
+}
@@ -1,8 +1,8 @@
 package org.sharedhealth.mci.domain.repository;
 
-import com.datastax.driver.core.querybuilder.Batch;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.sharedhealth.mci.domain.exception.InvalidRequestException;
 import org.sharedhealth.mci.domain.exception.PatientNotFoundException;
 import org.sharedhealth.mci.domain.model.*;
 import org.sharedhealth.mci.domain.util.BaseIntegrationTest;
@@ -10,18 +10,20 @@ import org.sharedhealth.mci.domain.util.TimeUuidUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
-import static com.datastax.driver.core.querybuilder.QueryBuilder.batch;
 import static java.util.Arrays.asList;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.junit.Assert.*;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.HID_CARD_STATUS_REGISTERED;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.PATIENT_STATUS_ALIVE;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_CATCHMENT_FEED;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_FUZZY_NAME_MAPPING;
 import static org.sharedhealth.mci.domain.util.DateUtil.parseDate;
 import static org.sharedhealth.mci.domain.util.TimeUuidUtil.getTimeFromUUID;
 
@@ -70,6 +72,65 @@ public class PatientRepositoryIT extends BaseIntegrationTest {
         assertEquals(catchmentEvents.get(0).get("patientData"), savedPatient);
     }
 
+    @Test
+    public void shouldKeepPatientAsOfEachEventInCatchmentFeed() throws Exception {
+        String healthId = patientRepository.create(buildPatient()).getId();
+        PatientData existingPatient = patientRepository.findByHealthId(healthId);
+
+        PatientData updateRequest = new PatientData();
+        updateRequest.setGivenName("Lion");
+        patientRepository.update(updateRequest, existingPatient, new Requester(FACILITY, null));
+
+        List<Map<String, Object>> catchmentEvents = patientRepository.findAllByCatchment(existingPatient.getCatchment(), null, null, 10);
+        assertEquals(2, catchmentEvents.size());
+        assertEquals(givenName, ((PatientData) catchmentEvents.get(0).get("patientData")).getGivenName());
+        PatientData updatedPatient = (PatientData) catchmentEvents.get(1).get("patientData");
+        assertEquals("Lion", updatedPatient.getGivenName());
+        assertEquals(surname, updatedPatient.getSurName());
+        assertEquals(nationalId, updatedPatient.getNationalId());
+    }
+
+    @Test
+    public void shouldBackfillCatchmentFeedEntriesMissingForCatchmentMappings() throws Exception {
+        PatientData data = buildPatient();
+        String healthId = patientRepository.create(data).getId();
+        cassandraOps.execute("truncate " + CF_CATCHMENT_FEED);
+        Catchment catchment = data.getCatchment();
+        assertTrue(patientRepository.findAllByCatchment(catchment, null, null, 10).isEmpty());
+
+        assertTrue(patientRepository.findCatchmentIdsAfter(null, 100).contains(catchment.getId()));
+        UUID lastMarker = patientRepository.backfillCatchmentFeed(catchment.getId(), null, 10);
+        assertNotNull(lastMarker);
+        assertNull(patientRepository.backfillCatchmentFeed(catchment.getId(), lastMarker, 10));
+
+        List<Map<String, Object>> catchmentEvents = patientRepository.findAllByCatchment(catchment, null, null, 10);
+        assertEquals(1, catchmentEvents.size());
+        assertEquals(lastMarker, catchmentEvents.get(0).get("eventId"));
+        assertEquals(healthId, ((PatientData) catchmentEvents.get(0).get("patientData")).getHealthId());
+    }
+
+    @Test
+    public void shouldBackfillFuzzyNameMappingsOfExistingPatients() throws Exception {
+        PatientData data = buildPatient();
+        String healthId = patientRepository.create(data).getId();
+        cassandraOps.execute("truncate " + CF_FUZZY_NAME_MAPPING);
+
+        SearchQuery query = new SearchQuery();
+        query.setPresent_address(data.getAddress().getDivisionId() + data.getAddress().getDistrictId()
+                + data.getAddress().getUpazilaId());
+        query.setGiven_name(data.getGivenName());
+        query.setFuzzy_name(true);
+        assertTrue(patientRepository.findAllByQuery(query).isEmpty());
+
+        String lastHealthId = patientRepository.backfillFuzzyNameMappings(null, 1000);
+        assertNotNull(lastHealthId);
+        assertNull(patientRepository.backfillFuzzyNameMappings(lastHealthId, 1000));
+
+        List<PatientData> patients = patientRepository.findAllByQuery(query);
+        assertEquals(1, patients.size());
+        assertEquals(healthId, patients.get(0).getHealthId());
+    }
+
     @Test(expected = PatientNotFoundException.class)
     public void shouldThrowException_IfPatientDoesNotExistForGivenHealthId() {
         patientRepository.findByHealthId(UUID.randomUUID().toString());
@@ -93,15 +154,15 @@ public class PatientRepositoryIT extends BaseIntegrationTest {
     }
 
     @Test
-    public void shouldBuildUpdateProcessBatch() {
+    public void shouldBuildUpdateProcessWrite() {
         PatientData patient = buildPatient();
         MCIResponse mciResponse = patientRepository.create(patient);
         String healthId = mciResponse.getId();
 
-        Batch batch = patientRepository.buildUpdateProcessBatch(patient, healthId, batch());
-        String queryString = batch.getQueryString();
-        assertNotNull(queryString);
-        assertTrue(queryString.startsWith("BEGIN BATCH"));
+        PatientWrite write = patientRepository.buildUpdateProcessWrite(patient, healthId);
+        assertEquals(healthId, write.getHealthId());
+        assertFalse(write.getCore().isEmpty());
+        assertFalse(write.isEmpty());
     }
 
     @Test
@@ -126,6 +187,40 @@ public class PatientRepositoryIT extends BaseIntegrationTest {
         assertEquals(healthId3, patients.get(2).getHealthId());
     }
 
+    @Test
+    public void shouldReportHealthIdsNotFoundWhenLoadingPatients() {
+        PatientData patient = buildPatient();
+        patient.setNationalId(null);
+        patient.setBirthRegistrationNumber(null);
+        patient.setUid(null);
+
+        String healthId1 = patientRepository.create(patient).getId();
+        patient.setHealthId(String.valueOf(new Date().getTime()));
+        String healthId2 = patientRepository.create(patient).getId();
+
+        PatientLoadResult result = patientRepository.findAllByHealthIds(asList(healthId2, "non-existing-hid", healthId1));
+        assertEquals(asList(healthId2, healthId1), new ArrayList<>(result.getPatients().keySet()));
+        assertEquals(1, result.getFailures().size());
+        assertEquals(PatientLoadResult.NOT_FOUND, result.getFailures().get("non-existing-hid"));
+    }
+
+    @Test
+    public void shouldStopSearchingOnceOneMoreThanMaximumLimitPatientsAreFound() {
+        PatientData patient = buildPatient();
+        for (int i = 0; i < 4; i++) {
+            patient.setHealthId("hid-" + i);
+            patientRepository.create(patient);
+            cassandraOps.insert(new PhoneNumberMapping(phoneNumber, "hid-" + i));
+        }
+
+        SearchQuery query = new SearchQuery();
+        query.setPhone_no(phoneNumber);
+        assertEquals(4, patientRepository.findAllByQuery(query).size());
+
+        query.setMaximum_limit(2);
+        assertEquals(3, patientRepository.findAllByQuery(query).size());
+    }
+
     @Test
     public void shouldReturnEmptyCollectionIfNoPatientFoundInCatchment() {
         Catchment catchment = new Catchment("10", "20", "30");
@@ -209,6 +304,38 @@ public class PatientRepositoryIT extends BaseIntegrationTest {
         assertEquals(3, mappings.size());
     }
 
+    @Test
+    public void shouldPageThroughPendingApprovalMappingsWithCursor() throws Exception {
+        cassandraOps.insert(asList(buildPendingApprovalMapping("30", "h101"),
+                buildPendingApprovalMapping("30", "h102"),
+                buildPendingApprovalMapping("30", "h103"),
+                buildPendingApprovalMapping("30", "h104"),
+                buildPendingApprovalMapping("30", "h105")));
+        Catchment catchment = new Catchment("10", "20", "30");
+
+        CursorPage<PendingApprovalMapping> page = patientRepository.findPendingApprovalMappingPage(catchment, null, 2);
+        assertEquals(2, page.getItems().size());
+        assertEquals("h101", page.getItems().get(0).getHealthId());
+        assertEquals("h102", page.getItems().get(1).getHealthId());
+        assertTrue(page.hasNext());
+
+        page = patientRepository.findPendingApprovalMappingPage(catchment, page.getNextCursor(), 2);
+        assertEquals(2, page.getItems().size());
+        assertEquals("h103", page.getItems().get(0).getHealthId());
+        assertEquals("h104", page.getItems().get(1).getHealthId());
+        assertTrue(page.hasNext());
+
+        page = patientRepository.findPendingApprovalMappingPage(catchment, page.getNextCursor(), 2);
+        assertEquals(1, page.getItems().size());
+        assertEquals("h105", page.getItems().get(0).getHealthId());
+        assertFalse(page.hasNext());
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void shouldRejectInvalidCursor() throws Exception {
+        patientRepository.findPendingApprovalMappingPage(new Catchment("10", "20", "30"), "not-a-cursor", 2);
+    }
+
     private PatientData buildPatient() {
         PatientData data = initPatientData();
         data.setHealthId(String.valueOf(new Date().getTime()));
@@ -0,0 +1,93 @@
+package org.sharedhealth.mci.domain.repository;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sharedhealth.mci.domain.model.FuzzyNameMapping;
+import org.sharedhealth.mci.domain.model.HouseholdCodeMapping;
+import org.sharedhealth.mci.domain.model.NidMapping;
+import org.sharedhealth.mci.domain.model.PhoneNumberMapping;
+import org.sharedhealth.mci.domain.model.SearchQuery;
+import org.sharedhealth.mci.domain.util.BaseIntegrationTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_HOUSEHOLD_CODE_MAPPING;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.CF_PHONE_NUMBER_MAPPING;
+import static org.sharedhealth.mci.domain.repository.PatientQueryBuilder.buildFuzzyNameMappings;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class PatientSearchPlannerIT extends BaseIntegrationTest {
+
+    @Autowired
+    private PatientSearchPlanner searchPlanner;
+
+    @Test
+    public void shouldReturnNullIfQueryHasNoIndexedField() {
+        SearchQuery query = new SearchQuery();
+        query.setGiven_name("Scott");
+
+        assertNull(searchPlanner.findHealthIds(query));
+    }
+
+    @Test
+    public void shouldIntersectHealthIdsOfAllIndexedFields() {
+        cassandraOps.insert(new PhoneNumberMapping("1716528608", "hid-1"));
+        cassandraOps.insert(new PhoneNumberMapping("1716528608", "hid-2"));
+        cassandraOps.insert(new PhoneNumberMapping("1716528608", "hid-3"));
+        cassandraOps.insert(new NidMapping("1234567890123", "hid-2"));
+
+        SearchQuery query = new SearchQuery();
+        query.setPhone_no("1716528608");
+        query.setNid("1234567890123");
+
+        assertEquals(asList("hid-2"), searchPlanner.findHealthIds(query));
+
+        query.setNid("9999999999999");
+        assertTrue(searchPlanner.findHealthIds(query).isEmpty());
+    }
+
+    @Test
+    public void shouldLookUpMostSelectiveMappingTableFirst() {
+        cassandraOps.insert(new PhoneNumberMapping("1716528609", "hid-1"));
+        cassandraOps.insert(new PhoneNumberMapping("1716528609", "hid-2"));
+        cassandraOps.insert(new HouseholdCodeMapping("12345", "hid-1"));
+
+        SearchQuery query = new SearchQuery();
+        query.setPhone_no("1716528609");
+        searchPlanner.findHealthIds(query);
+        query = new SearchQuery();
+        query.setHousehold_code("12345");
+        searchPlanner.findHealthIds(query);
+
+        query.setPhone_no("1716528609");
+        assertEquals(asList("hid-1"), searchPlanner.findHealthIds(query));
+        List<PatientSearchPlanner.IndexLookup> lookups = searchPlanner.plan(query);
+        assertEquals(CF_HOUSEHOLD_CODE_MAPPING, lookups.get(0).index);
+        assertEquals(CF_PHONE_NUMBER_MAPPING, lookups.get(1).index);
+    }
+
+    @Test
+    public void shouldRankFuzzyNameMatches() {
+        insertFuzzyNameMapping("Abdool", null, "hid-1");
+        insertFuzzyNameMapping("Abdul", "আব্দুল", "hid-2");
+        insertFuzzyNameMapping("Abdullah", null, "hid-3");
+        insertFuzzyNameMapping("Karim", null, "hid-4");
+
+        SearchQuery query = new SearchQuery();
+        query.setPresent_address("101112");
+        query.setGiven_name("abdul");
+        query.setFuzzy_name(true);
+
+        assertEquals(asList("hid-2", "hid-3", "hid-1"), searchPlanner.findHealthIds(query));
+    }
+
+    private void insertFuzzyNameMapping(String givenName, String nameBangla, String healthId) {
+        for (FuzzyNameMapping mapping : buildFuzzyNameMappings("10", "11", "12", givenName, null, nameBangla, healthId)) {
+            cassandraOps.insert(mapping);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.Row;
+import org.junit.Test;
+import org.sharedhealth.mci.domain.model.PatientUpdateLog;
+import org.sharedhealth.mci.domain.util.TimeUuidUtil;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.EVENT_ID;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.HEALTH_ID;
+import static org.sharedhealth.mci.domain.repository.PatientUpdateLogQueryBuilder.*;
+import static org.sharedhealth.mci.domain.util.DateUtil.parseDate;
+
+public class PatientUpdateLogQueryBuilderTest {
+
+    @Test
+    public void shouldBucketEventsByUtcDay() {
+        assertEquals(20150131, getBucketOf(TimeUuidUtil.uuidForDate(parseDate("2015-01-31T23:59:59Z"))));
+        assertEquals(20150201, getBucketOf(TimeUuidUtil.uuidForDate(parseDate("2015-02-01T05:30:00+05:30"))));
+    }
+
+    @Test
+    public void shouldShardByHealthId() {
+        assertEquals(getShardOf("98000000001"), getShardOf("98000000001"));
+        for (String healthId : asList("98000000001", "98000000002", "h100", "")) {
+            int shard = getShardOf(healthId);
+            assertTrue(shard >= 0 && shard < UPDATE_LOG_SHARDS);
+        }
+    }
+
+    @Test
+    public void shouldMergeShardsInEventOrderUpToLimit() {
+        List<UUID> eventIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            eventIds.add(TimeUuidUtil.uuidForDate(1420070400000L + i));
+        }
+        Iterator<Row> shard1 = asList(row(eventIds.get(0), "h1"), row(eventIds.get(3), "h1")).iterator();
+        Iterator<Row> shard2 = asList(row(eventIds.get(1), "h2"), row(eventIds.get(2), "h2"),
+                row(eventIds.get(4), "h2")).iterator();
+        Iterator<Row> shard3 = new ArrayList<Row>().iterator();
+
+        List<PatientUpdateLog> logs = mergeShards(asList(shard1, shard2, shard3), 4);
+
+        assertEquals(4, logs.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(eventIds.get(i), logs.get(i).getEventId());
+        }
+        assertEquals("h2", logs.get(1).getHealthId());
+    }
+
+    private Row row(UUID eventId, String healthId) {
+        Row row = mock(Row.class);
+        when(row.getUUID(EVENT_ID)).thenReturn(eventId);
+        when(row.getString(HEALTH_ID)).thenReturn(healthId);
+        return row;
+    }
+}
@@ -0,0 +1,129 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static com.datastax.driver.core.ConsistencyLevel.ONE;
+import static com.datastax.driver.core.WriteType.SIMPLE;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PatientWriterTest {
+
+    @Mock
+    private PreparedStatementRegistry statements;
+    @Mock
+    private FailedDerivedWriteRepository failedWrites;
+    @Mock
+    private MCIProperties mciProperties;
+
+    private PatientWriter writer;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(mciProperties.isCassandraSplitPatientWrites()).thenReturn(true);
+        when(mciProperties.getCassandraDerivedWriteRetries()).thenReturn(2);
+        writer = new PatientWriter(statements, failedWrites, mciProperties);
+    }
+
+    @Test
+    public void shouldWriteCoreBeforeDerivedStatements() {
+        Statement patient = new SimpleStatement("patient");
+        Statement updateLog = new SimpleStatement("update log");
+        Statement mapping = new SimpleStatement("mapping");
+        when(statements.executeAll(anyList())).thenReturn(asList(succeeded()));
+
+        writer.write(new PatientWrite("hid-1").addCore(patient).addCore(updateLog).add(mapping));
+
+        InOrder inOrder = inOrder(statements);
+        inOrder.verify(statements).execute(any(BatchStatement.class));
+        inOrder.verify(statements).executeAll(asList(mapping));
+    }
+
+    @Test
+    public void shouldRetryOnlyFailedDerivedStatements() {
+        Statement mapping1 = new SimpleStatement("mapping 1");
+        Statement mapping2 = new SimpleStatement("mapping 2");
+        when(statements.executeAll(anyList()))
+                .thenReturn(asList(succeeded(), failed()))
+                .thenReturn(asList(succeeded()));
+
+        writer.write(new PatientWrite("hid-1").addCore(new SimpleStatement("patient")).add(mapping1).add(mapping2));
+
+        verify(statements).executeAll(asList(mapping1, mapping2));
+        verify(statements).executeAll(asList(mapping2));
+        assertEquals(mapping1.getDefaultTimestamp(), mapping2.getDefaultTimestamp());
+        assertMetric("write.patient.derived.retries", 1L);
+        assertMetric("write.patient.derived.failures", 0L);
+        verify(failedWrites, never()).save(any(Statement.class));
+    }
+
+    @Test
+    public void shouldKeepFailedStatementForReplayAfterRetries() {
+        Statement mapping = new SimpleStatement("mapping");
+        when(statements.executeAll(anyList())).thenReturn(asList(failed()));
+
+        writer.write(new PatientWrite("hid-1").addCore(new SimpleStatement("patient")).add(mapping));
+
+        verify(statements, times(3)).executeAll(anyList());
+        verify(failedWrites).save(mapping);
+        assertMetric("write.patient.derived.failures", 1L);
+    }
+
+    @Test
+    public void shouldWriteAllStatementsInOneBatchWhenNotSplit() {
+        when(mciProperties.isCassandraSplitPatientWrites()).thenReturn(false);
+
+        writer.write(new PatientWrite("hid-1").addCore(new SimpleStatement("patient")).add(new SimpleStatement("mapping")));
+
+        verify(statements).execute(any(BatchStatement.class));
+        verify(statements, never()).executeAll(anyList());
+        assertMetric("write.patient.batch.count", 1L);
+    }
+
+    @Test
+    public void shouldTellRejectedWritesFromWritesThatMayHaveBeenApplied() {
+        assertTrue(PatientWriter.isRejected(new UnavailableException(ONE, 1, 0)));
+        assertTrue(PatientWriter.isRejected(new InvalidQueryException("Invalid query")));
+        assertFalse(PatientWriter.isRejected(new WriteTimeoutException(ONE, SIMPLE, 0, 1)));
+        assertFalse(PatientWriter.isRejected(new RuntimeException("Connection reset")));
+    }
+
+    private void assertMetric(String name, Object value) {
+        for (Metric<?> metric : writer.metrics()) {
+            if (metric.getName().equals(name)) {
+                assertEquals(value, metric.getValue());
+                return;
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+
+    private ResultSetFuture succeeded() {
+        return mock(ResultSetFuture.class);
+    }
+
+    private ResultSetFuture failed() {
+        ResultSetFuture future = mock(ResultSetFuture.class);
+        when(future.getUninterruptibly()).thenThrow(new WriteTimeoutException(ONE, SIMPLE, 0, 1));
+        return future;
+    }
+}
@@ -0,0 +1,54 @@
+package org.sharedhealth.mci.domain.repository;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Statement;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sharedhealth.mci.domain.model.NidMapping;
+import org.sharedhealth.mci.domain.util.BaseIntegrationTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
+import static org.sharedhealth.mci.domain.repository.PatientQueryBuilder.FIND_HID_BY_NID_STMT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class PreparedStatementRegistryIT extends BaseIntegrationTest {
+
+    @Autowired
+    private PreparedStatementRegistry statements;
+
+    @Test
+    public void shouldPrepareStatementOnlyOnce() {
+        assertSame(statements.prepare(FIND_HID_BY_NID_STMT), statements.prepare(FIND_HID_BY_NID_STMT));
+    }
+
+    @Test
+    public void shouldBindInsertAndSelect() {
+        statements.execute(statements.bindInsert(CF_NID_MAPPING, new NidMapping("nid-100", "hid-100")));
+
+        List<String> healthIds = statements.selectColumn(statements.bind(FIND_HID_BY_NID_STMT, "nid-100"), HEALTH_ID);
+        assertEquals(asList("hid-100"), healthIds);
+    }
+
+    @Test
+    public void shouldPrepareInsertInBackground() throws Exception {
+        Statement insert = statements.bindInsert(CF_NID_MAPPING, new NidMapping("nid-200", "hid-200"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(insert instanceof BoundStatement) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            insert = statements.bindInsert(CF_NID_MAPPING, new NidMapping("nid-200", "hid-200"));
+        }
+        assertTrue(insert instanceof BoundStatement);
+        statements.execute(insert);
+
+        List<String> healthIds = statements.selectColumn(statements.bind(FIND_HID_BY_NID_STMT, "nid-200"), HEALTH_ID);
+        assertEquals(asList("hid-200"), healthIds);
+    }
+}
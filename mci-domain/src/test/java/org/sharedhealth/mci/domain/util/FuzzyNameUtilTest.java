@@ -0,0 +1,51 @@
+package org.sharedhealth.mci.domain.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.sharedhealth.mci.domain.util.FuzzyNameUtil.*;
+
+public class FuzzyNameUtilTest {
+
+    @Test
+    public void shouldNormalizeNames() {
+        assertEquals("abdul karim", normalize("  Abdul   Karím. "));
+        assertEquals("", normalize(null));
+        assertNull(nameKey("..."));
+    }
+
+    @Test
+    public void shouldTransliterateBanglaNames() {
+        assertEquals("abdul", normalize("আব্দুল"));
+        assertEquals(nameKey("Abdul"), nameKey("আব্দুল"));
+    }
+
+    @Test
+    public void shouldKeepNamesThatSoundAlikeOrShareAPrefixInOneKeyRange() {
+        assertInRange(nameKey("Abdool Karim"), "Abdul");
+        assertInRange(nameKey("Abdullah"), "Abd");
+        assertInRange(nameKey("Muhammed"), "Mohammad");
+        assertFalse(nameKey("Karim").compareTo(keyRangeStart("Abdul")) >= 0
+                && nameKey("Karim").compareTo(keyRangeEnd("Abdul")) < 0);
+    }
+
+    @Test
+    public void shouldRankExactNamesBeforePrefixesAndPhoneticMatches() {
+        assertEquals(EXACT_MATCH, rank(nameKey("Abdul Karim"), "abdul karim"));
+        assertEquals(PREFIX_MATCH, rank(nameKey("Abdullah"), "Abdul"));
+        assertEquals(PHONETIC_MATCH, rank(nameKey("Abdool"), "Abdul"));
+    }
+
+    @Test
+    public void shouldMatchNamesInTheKeyRangeOfTheSearchedName() {
+        assertTrue(matches("Abdool Karim", "Abdul"));
+        assertTrue(matches("আব্দুল", "Abdul"));
+        assertFalse(matches("Karim", "Abdul"));
+        assertFalse(matches(null, "Abdul"));
+    }
+
+    private void assertInRange(String nameKey, String searchedName) {
+        assertTrue(nameKey.compareTo(keyRangeStart(searchedName)) >= 0);
+        assertTrue(nameKey.compareTo(keyRangeEnd(searchedName)) < 0);
+    }
+}
@@ -0,0 +1,71 @@
+package org.sharedhealth.mci.domain.util;
+
+import org.junit.Test;
+import org.sharedhealth.mci.domain.model.Requester;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.sharedhealth.mci.domain.util.JsonColumnCodec.*;
+import static org.sharedhealth.mci.domain.util.JsonMapper.reader;
+
+public class JsonColumnCodecTest {
+
+    private static final String CHANGE_SET = "{\"address\":{\"old_value\":{\"division_id\":\"10\"},\"new_value\":[1,{}]}," +
+            "\"active\":{\"old_value\":true,\"new_value\":false}}";
+
+    @Test
+    public void shouldReadWhatItEncodes() {
+        ByteBuffer encoded = encode(CHANGE_SET);
+
+        assertEquals(VERSION_SMILE, encoded.get(encoded.position()));
+        assertEquals(CHANGE_SET, toJson(encoded, null));
+        Map changeSet = read(encoded, null, reader(Map.class));
+        assertEquals(false, ((Map) changeSet.get("active")).get("new_value"));
+    }
+
+    @Test
+    public void shouldCompressLargeValues() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 200; i++) {
+            json.append("\"field").append(i).append("\":{\"old_value\":\"a\",\"new_value\":\"b\"},");
+        }
+        json.append("\"active\":{\"old_value\":true,\"new_value\":false}}");
+
+        ByteBuffer encoded = encode(json.toString());
+
+        assertEquals(VERSION_SMILE_LZ4, encoded.get(encoded.position()));
+        assertTrue(encoded.remaining() < json.length());
+        assertEquals(json.toString(), toJson(encoded, null));
+        assertEquals(false, readField(encoded, null, "active", Map.class).get("new_value"));
+    }
+
+    @Test
+    public void shouldReadJsonWhenThereIsNoBlob() {
+        String requesterJson = "{\"facility\":{\"id\":\"10000059\"},\"provider\":{\"id\":\"100067\"}}";
+
+        Requester requester = read(null, requesterJson, reader(Requester.class));
+
+        assertEquals(new Requester("10000059", "100067"), requester);
+        assertEquals(false, readField(null, CHANGE_SET, "active", Map.class).get("new_value"));
+        assertEquals(CHANGE_SET, toJson(null, CHANGE_SET));
+        assertNull(read(null, null, reader(Requester.class)));
+    }
+
+    @Test
+    public void shouldReadUnversionedBlobAsJson() {
+        ByteBuffer json = ByteBuffer.wrap(CHANGE_SET.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(false, readField(json, null, "active", Map.class).get("new_value"));
+    }
+
+    @Test
+    public void shouldNotEncodeBlankJson() {
+        assertNull(encode(null));
+        assertNull(encode(" "));
+    }
+}
@@ -0,0 +1,51 @@
+package org.sharedhealth.mci.domain.util;
+
+import org.junit.Test;
+import org.sharedhealth.mci.domain.model.PatientData;
+import org.sharedhealth.mci.domain.model.Requester;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.sharedhealth.mci.domain.util.JsonMapper.*;
+
+public class JsonMapperTest {
+
+    @Test
+    public void shouldReuseReadersAndWritersOfAType() {
+        assertSame(reader(PatientData.class), reader(PatientData.class));
+        assertSame(writer(PatientData.class), writer(PatientData.class));
+    }
+
+    @Test
+    public void shouldReadWhatItWrites() throws Exception {
+        Requester requester = new Requester("10000059", "100067");
+
+        String json = writer(Requester.class).writeValueAsString(requester);
+
+        assertEquals(json, writeValueAsString(requester));
+        assertEquals(requester, readValue(json, Requester.class));
+        assertEquals("10000059", ((Map) readValue(json, Map.class).get("facility")).get("id"));
+    }
+
+    @Test
+    public void shouldReadOneFieldOfAnObject() {
+        String changeSet = "{\"address\":{\"old_value\":{\"division_id\":\"10\"},\"new_value\":[1,{}]}," +
+                "\"active\":{\"old_value\":true,\"new_value\":false}}";
+
+        Map active = readField(changeSet, "active", Map.class);
+
+        assertEquals(false, active.get("new_value"));
+        assertEquals(true, active.get("old_value"));
+        assertNull(readField(changeSet, "gender", Map.class));
+        assertNull(readField("[]", "active", Map.class));
+        assertNull(readField(null, "active", Map.class));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldFailOnUnknownPropertiesOfATypeThatDoesNotIgnoreThem() {
+        readValue("{\"given_name\":\"Harry\",\"HID\":\"h100\"}", PatientData.class);
+    }
+}
@@ -51,9 +51,13 @@ public class TestUtil {
                 CF_HOUSEHOLD_CODE_MAPPING,
                 CF_PHONE_NUMBER_MAPPING,
                 CF_NAME_MAPPING,
+                CF_FUZZY_NAME_MAPPING,
                 CF_PENDING_APPROVAL_MAPPING,
                 CF_CATCHMENT_MAPPING,
+                CF_CATCHMENT_FEED,
                 CF_PATIENT_UPDATE_LOG,
+                CF_PATIENT_UPDATE_LOG_SHARDED,
+                CF_LOG_BUCKETS,
                 CF_PATIENT_AUDIT_LOG,
                 CF_APPROVAL_FIELDS,
                 CF_LOCATIONS,
@@ -62,7 +66,8 @@ public class TestUtil {
                 CF_GENERATED_HID_BLOCKS,
                 CF_ORG_HEALTH_ID,
                 CF_MARKER,
-                CF_FAILED_EVENTS
+                CF_FAILED_EVENTS,
+                CF_FAILED_DERIVED_WRITES
         );
     }
 
@@ -0,0 +1,90 @@
+package org.sharedhealth.mci.searchmapping.index;
+
+import org.sharedhealth.mci.domain.model.Address;
+import org.sharedhealth.mci.domain.model.PatientData;
+import org.sharedhealth.mci.domain.model.SearchQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Terms of the in-memory search index. A query has the same terms as the patients it matches, so candidates are
+ * found by intersecting the postings of the query terms.
+ */
+public class PatientIndexTerms {
+
+    private static final String NID = "nid:";
+    private static final String BRN = "brn:";
+    private static final String UID = "uid:";
+    private static final String PHONE = "phone:";
+    private static final String HOUSEHOLD = "household:";
+    private static final String NAME = "name:";
+    private static final String ADDRESS = "address:";
+
+    public static List<String> forPatient(PatientData patient) {
+        List<String> terms = new ArrayList<>();
+        addTerm(terms, NID, patient.getNationalId());
+        addTerm(terms, BRN, patient.getBirthRegistrationNumber());
+        addTerm(terms, UID, patient.getUid());
+        if (patient.getPhoneNumber() != null) {
+            addTerm(terms, PHONE, patient.getPhoneNumber().getNumber());
+        }
+        addTerm(terms, HOUSEHOLD, patient.getHouseholdCode());
+        addNameTerms(terms, patient.getGivenName());
+        addNameTerms(terms, patient.getSurName());
+
+        Address address = patient.getAddress();
+        if (address != null) {
+            String code = "";
+            for (String level : new String[]{address.getDivisionId(), address.getDistrictId(), address.getUpazilaId(),
+                    address.getCityCorporationId(), address.getUnionOrUrbanWardId(), address.getRuralWardId()}) {
+                if (isBlank(level)) break;
+                code += level;
+                terms.add(ADDRESS + code);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return the terms of the query, or null if the query has none of the fields a search needs, nid, brn, uid,
+     * phone number, household code or present address with given name, or asks for a fuzzy name search.
+     */
+    public static List<String> forQuery(SearchQuery query) {
+        boolean searchable = isNotBlank(query.getNid()) || isNotBlank(query.getBin_brn()) || isNotBlank(query.getUid())
+                || isNotBlank(query.getPhone_no()) || isNotBlank(query.getHousehold_code())
+                || (isNotBlank(query.getPresent_address()) && isNotBlank(query.getGiven_name()));
+        if (!searchable || query.isFuzzyNameSearch()) {
+            return null;
+        }
+
+        List<String> terms = new ArrayList<>();
+        addTerm(terms, NID, query.getNid());
+        addTerm(terms, BRN, query.getBin_brn());
+        addTerm(terms, UID, query.getUid());
+        addTerm(terms, PHONE, query.getPhone_no());
+        addTerm(terms, HOUSEHOLD, query.getHousehold_code());
+        addNameTerms(terms, query.getGiven_name());
+        addNameTerms(terms, query.getSur_name());
+        addTerm(terms, ADDRESS, query.getPresent_address());
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, String field, String value) {
+        if (isNotBlank(value)) {
+            terms.add(field + value.trim());
+        }
+    }
+
+    private static void addNameTerms(List<String> terms, String name) {
+        if (isBlank(name)) {
+            return;
+        }
+        for (String token : name.trim().toLowerCase().split("\\s+")) {
+            terms.add(NAME + token);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.sharedhealth.mci.searchmapping.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index from search terms to patients. Health ids are interned to int document ids, so postings
+ * are sorted int arrays and a query is an intersection of them.
+ * <p>
+ * The document count and the estimated heap size are kept up to date as patients are indexed and removed, so they
+ * can be checked after every change.
+ */
+public class PatientInvertedIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final List<String> healthIds = new ArrayList<>();
+    private final List<String[]> docTerms = new ArrayList<>();
+    private final Map<String, IntPostings> postings = new HashMap<>();
+    private int documents;
+    private long bytes;
+
+    public void index(String healthId, Collection<String> terms) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIds.get(healthId);
+            if (doc == null) {
+                doc = healthIds.size();
+                docIds.put(healthId, doc);
+                healthIds.add(healthId);
+                docTerms.add(null);
+                bytes += 96 + 2L * healthId.length();
+            } else {
+                removeTerms(doc);
+            }
+            String[] newTerms = new LinkedHashSet<>(terms).toArray(new String[0]);
+            for (String term : newTerms) {
+                IntPostings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    termPostings = new IntPostings();
+                    postings.put(term, termPostings);
+                    bytes += 64 + 2L * term.length() + termPostings.estimateBytes();
+                }
+                bytes -= termPostings.estimateBytes();
+                termPostings.add(doc);
+                bytes += termPostings.estimateBytes();
+            }
+            docTerms.set(doc, newTerms);
+            documents++;
+            bytes += 16 + 8L * newTerms.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String healthId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIds.get(healthId);
+            if (doc != null) {
+                removeTerms(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the health ids of the patients having all the terms.
+     */
+    public List<String> find(Collection<String> terms) {
+        lock.readLock().lock();
+        try {
+            List<IntPostings> termPostings = new ArrayList<>();
+            for (String term : terms) {
+                IntPostings found = postings.get(term);
+                if (found == null) {
+                    return new ArrayList<>();
+                }
+                termPostings.add(found);
+            }
+            if (termPostings.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Collections.sort(termPostings, new Comparator<IntPostings>() {
+                @Override
+                public int compare(IntPostings first, IntPostings second) {
+                    return Integer.compare(first.size(), second.size());
+                }
+            });
+
+            int[] docs = termPostings.get(0).toArray();
+            for (int i = 1; i < termPostings.size() && docs.length > 0; i++) {
+                docs = termPostings.get(i).retain(docs);
+            }
+            List<String> result = new ArrayList<>(docs.length);
+            for (int doc : docs) {
+                result.add(healthIds.get(doc));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rough estimate of the heap used by the index, to be checked against the memory budget.
+     */
+    public long estimateBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docIds.clear();
+            healthIds.clear();
+            docTerms.clear();
+            postings.clear();
+            documents = 0;
+            bytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the indexed patients and their terms. Postings are not written, they are rebuilt on read.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(documents);
+            for (int doc = 0; doc < healthIds.size(); doc++) {
+                String[] terms = docTerms.get(doc);
+                if (terms == null) continue;
+                out.writeUTF(healthIds.get(doc));
+                out.writeInt(terms.length);
+                for (String term : terms) {
+                    out.writeUTF(term);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void readFrom(DataInput in) throws IOException {
+        clear();
+        int documents = in.readInt();
+        for (int i = 0; i < documents; i++) {
+            String healthId = in.readUTF();
+            String[] terms = new String[in.readInt()];
+            for (int j = 0; j < terms.length; j++) {
+                terms[j] = in.readUTF();
+            }
+            index(healthId, Arrays.asList(terms));
+        }
+    }
+
+    /**
+     * Removes the document from the postings of its terms. The health id stays interned to its document id.
+     */
+    private void removeTerms(int doc) {
+        String[] terms = docTerms.get(doc);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            IntPostings termPostings = postings.get(term);
+            if (termPostings != null) {
+                bytes -= termPostings.estimateBytes();
+                termPostings.remove(doc);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                    bytes -= 64 + 2L * term.length();
+                } else {
+                    bytes += termPostings.estimateBytes();
+                }
+            }
+        }
+        docTerms.set(doc, null);
+        documents--;
+        bytes -= 16 + 8L * terms.length;
+    }
+}
@@ -20,6 +20,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sharedhealth.mci.domain.constant.MCIConstants.EMPTY_SUR_NAME;
 import static org.sharedhealth.mci.domain.constant.RepositoryConstants.*;
 import static org.sharedhealth.mci.domain.repository.MarkerRepositoryQueryBuilder.buildUpdateMarkerBatch;
+import static org.sharedhealth.mci.domain.repository.PatientQueryBuilder.buildFuzzyNameMappings;
 import static org.springframework.data.cassandra.core.CassandraTemplate.createInsertQuery;
 
 @Component
@@ -56,6 +57,7 @@ public class PatientSearchMappingRepository extends BaseRepository {
         }
 
         buildCreateNameMappingStmt(patientData, converter, batch);
+        buildCreateFuzzyNameMappingStmt(patientData, converter, batch);
 
         cassandraOps.execute(batch);
     }
@@ -115,11 +117,25 @@ public class PatientSearchMappingRepository extends BaseRepository {
 
     }
 
+    private static void buildCreateFuzzyNameMappingStmt(PatientData patientData, CassandraConverter converter, Batch batch) {
+        Address address = patientData.getAddress();
+        for (FuzzyNameMapping mapping : buildFuzzyNameMappings(address.getDivisionId(), address.getDistrictId(),
+                address.getUpazilaId(), patientData.getGivenName(), patientData.getSurName(),
+                patientData.getNameBangla(), patientData.getHealthId())) {
+            batch.add(createInsertQuery(CF_FUZZY_NAME_MAPPING, mapping, null, converter));
+        }
+    }
+
+    /**
+     * Every catchment mapping goes with a catchment feed entry, which has the patient as written by the same event.
+     */
     private static void buildCreateCatchmentMappingsStmt(Catchment catchment, UUID lastUpdated, String healthId,
-                                                         CassandraConverter converter, Batch batch) {
+                                                         String patientJson, CassandraConverter converter, Batch batch) {
         for (String catchmentId : catchment.getAllIds()) {
             CatchmentMapping mapping = new CatchmentMapping(catchmentId, lastUpdated, healthId);
             batch.add(createInsertQuery(CF_CATCHMENT_MAPPING, mapping, null, converter));
+            CatchmentFeedEntry entry = new CatchmentFeedEntry(catchmentId, lastUpdated, healthId, patientJson);
+            batch.add(createInsertQuery(CF_CATCHMENT_FEED, entry, null, converter));
         }
     }
 }
@@ -0,0 +1,209 @@
+package org.sharedhealth.mci.searchmapping.services;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.model.PatientData;
+import org.sharedhealth.mci.domain.model.PatientLoadResult;
+import org.sharedhealth.mci.domain.model.PatientUpdateLog;
+import org.sharedhealth.mci.domain.model.SearchQuery;
+import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PatientSearchIndex;
+import org.sharedhealth.mci.domain.repository.PatientSearchPlanner;
+import org.sharedhealth.mci.searchmapping.index.PatientIndexTerms;
+import org.sharedhealth.mci.searchmapping.index.PatientInvertedIndex;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Optional in-memory search index, enabled with SEARCH_INDEX_ENABLED. It is built by replaying the patient update
+ * log and kept current by tailing it, and is written to SEARCH_INDEX_SNAPSHOT_PATH so a restart only replays the
+ * events after the snapshot. Each node keeps its own index, so the position in the update log is kept in the
+ * snapshot rather than in the marker table.
+ * <p>
+ * Searches are only answered once the index has caught up with the update log. If the index grows beyond
+ * SEARCH_INDEX_MEMORY_BUDGET_MB it is dropped and searches go back to the mapping tables.
+ * <p>
+ * Patients are read from the patient table past the patient cache, so replaying the log neither evicts cached
+ * patients nor indexes a stale copy of one.
+ */
+@Component
+public class PatientSearchIndexService implements PatientSearchIndex, PublicMetrics {
+
+    private static final Logger logger = getLogger(PatientSearchIndexService.class);
+    private static final int PAGE_SIZE = 100;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private PatientFeedRepository feedRepository;
+    private PatientRepository patientRepository;
+    private PatientSearchPlanner searchPlanner;
+    private MCIProperties mciProperties;
+
+    private final PatientInvertedIndex index = new PatientInvertedIndex();
+    private final AtomicLong queries = new AtomicLong();
+    private volatile boolean ready;
+    private volatile boolean overBudget;
+    private UUID lastMarker;
+    private boolean changedSinceSnapshot;
+    private long lastSnapshotAt;
+
+    @Autowired
+    public PatientSearchIndexService(PatientFeedRepository feedRepository, PatientRepository patientRepository,
+                                     PatientSearchPlanner searchPlanner, MCIProperties mciProperties) {
+        this.feedRepository = feedRepository;
+        this.patientRepository = patientRepository;
+        this.searchPlanner = searchPlanner;
+        this.mciProperties = mciProperties;
+    }
+
+    @PostConstruct
+    public void register() {
+        if (mciProperties.isSearchIndexEnabled()) {
+            loadSnapshot();
+            searchPlanner.registerSearchIndex(this);
+        }
+    }
+
+    void loadSnapshot() {
+        lastSnapshotAt = System.currentTimeMillis();
+        File snapshot = new File(mciProperties.getSearchIndexSnapshotPath());
+        if (!snapshot.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                logger.warn("Ignoring search index snapshot of another version");
+                return;
+            }
+            UUID marker = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+            index.readFrom(in);
+            lastMarker = marker;
+            logger.info(String.format("Loaded search index snapshot with %d patients", index.getDocumentCount()));
+        } catch (IOException e) {
+            logger.error("Failed to load search index snapshot, rebuilding from update log", e);
+            index.clear();
+            lastMarker = null;
+        }
+    }
+
+    @Override
+    public List<String> findHealthIds(SearchQuery searchQuery) {
+        if (!ready) {
+            return null;
+        }
+        List<String> terms = PatientIndexTerms.forQuery(searchQuery);
+        if (terms == null) {
+            return null;
+        }
+        queries.incrementAndGet();
+        return index.find(terms);
+    }
+
+    /**
+     * Applies the update log events after the last applied one.
+     */
+    public synchronized void catchUp() {
+        if (!mciProperties.isSearchIndexEnabled() || overBudget) {
+            return;
+        }
+        List<PatientUpdateLog> logs;
+        do {
+            logs = feedRepository.findPatientsUpdatedSince(lastMarker, PAGE_SIZE);
+            if (logs.isEmpty()) {
+                break;
+            }
+            Set<String> healthIds = new LinkedHashSet<>();
+            for (PatientUpdateLog log : logs) {
+                healthIds.add(log.getHealthId());
+            }
+            PatientLoadResult result = patientRepository.loadAllByHealthIds(healthIds);
+            for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                if (!PatientLoadResult.NOT_FOUND.equals(failure.getValue())) {
+                    logger.error(String.format("Failed to index patient %s, retrying later", failure.getKey()));
+                    return;
+                }
+                index.remove(failure.getKey());
+            }
+            for (Map.Entry<String, PatientData> patient : result.getPatients().entrySet()) {
+                index.index(patient.getKey(), PatientIndexTerms.forPatient(patient.getValue()));
+            }
+            lastMarker = logs.get(logs.size() - 1).getEventId();
+            changedSinceSnapshot = true;
+        } while (logs.size() == PAGE_SIZE && !exceedsBudget());
+
+        if (exceedsBudget()) {
+            logger.error(String.format("Search index exceeds its memory budget of %d bytes, disabling it",
+                    mciProperties.getSearchIndexMemoryBudget()));
+            overBudget = true;
+            ready = false;
+            index.clear();
+            return;
+        }
+        ready = true;
+    }
+
+    public synchronized void snapshotIfDue() {
+        if (!ready || !changedSinceSnapshot
+                || System.currentTimeMillis() - lastSnapshotAt < mciProperties.getSearchIndexSnapshotInterval()) {
+            return;
+        }
+        snapshot();
+    }
+
+    @PreDestroy
+    public synchronized void snapshot() {
+        if (!ready || !changedSinceSnapshot) {
+            return;
+        }
+        Path snapshot = Paths.get(mciProperties.getSearchIndexSnapshotPath());
+        Path temp = Paths.get(snapshot + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeBoolean(lastMarker != null);
+            if (lastMarker != null) {
+                out.writeLong(lastMarker.getMostSignificantBits());
+                out.writeLong(lastMarker.getLeastSignificantBits());
+            }
+            index.writeTo(out);
+        } catch (IOException e) {
+            logger.error("Failed to write search index snapshot", e);
+            return;
+        }
+        try {
+            Files.move(temp, snapshot, REPLACE_EXISTING);
+            changedSinceSnapshot = false;
+            lastSnapshotAt = System.currentTimeMillis();
+        } catch (IOException e) {
+            logger.error("Failed to replace search index snapshot", e);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Integer>("search.index.ready", ready ? 1 : 0));
+        metrics.add(new Metric<Integer>("search.index.documents", index.getDocumentCount()));
+        metrics.add(new Metric<Integer>("search.index.terms", index.getTermCount()));
+        metrics.add(new Metric<Long>("search.index.bytes", index.estimateBytes()));
+        metrics.add(new Metric<Long>("search.index.queries", queries.get()));
+        return metrics;
+    }
+
+    private boolean exceedsBudget() {
+        return index.estimateBytes() > mciProperties.getSearchIndexMemoryBudget();
+    }
+}
@@ -0,0 +1,33 @@
+package org.sharedhealth.mci.searchmapping.tasks;
+
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.searchmapping.services.PatientSearchIndexService;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+@Component
+public class PatientSearchIndexTask {
+    private static final Logger logger = getLogger(PatientSearchIndexTask.class);
+
+    @Autowired
+    private PatientSearchIndexService searchIndexService;
+
+    @Autowired
+    private MCIProperties mciProperties;
+
+    @Scheduled(initialDelayString = "${SEARCH_INDEX_TASK_INITIAL_DELAY}", fixedDelayString = "${SEARCH_INDEX_TASK_DELAY}")
+    public void index() {
+        if (!mciProperties.isSearchIndexEnabled()) return;
+        logger.debug("Executing patient search index task.");
+        try {
+            searchIndexService.catchUp();
+            searchIndexService.snapshotIfDue();
+        } catch (Exception e) {
+            logger.error("Failed to update patient search index", e);
+        }
+    }
+}
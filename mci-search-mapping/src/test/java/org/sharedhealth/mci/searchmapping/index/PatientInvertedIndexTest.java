@@ -0,0 +1,80 @@
+package org.sharedhealth.mci.searchmapping.index;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PatientInvertedIndexTest {
+
+    @Test
+    public void shouldFindPatientsHavingAllTerms() {
+        PatientInvertedIndex index = new PatientInvertedIndex();
+        index.index("hid-1", asList("phone:100", "name:karim"));
+        index.index("hid-2", asList("phone:100", "name:rahim"));
+        index.index("hid-3", asList("phone:200", "name:karim"));
+
+        assertEquals(asList("hid-1", "hid-2"), index.find(asList("phone:100")));
+        assertEquals(asList("hid-1"), index.find(asList("phone:100", "name:karim")));
+        assertTrue(index.find(asList("phone:100", "name:unknown")).isEmpty());
+        assertTrue(index.find(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void shouldReplaceTermsWhenPatientIsIndexedAgain() {
+        PatientInvertedIndex index = new PatientInvertedIndex();
+        index.index("hid-1", asList("phone:100"));
+        index.index("hid-1", asList("phone:200"));
+
+        assertTrue(index.find(asList("phone:100")).isEmpty());
+        assertEquals(asList("hid-1"), index.find(asList("phone:200")));
+        assertEquals(1, index.getTermCount());
+
+        index.remove("hid-1");
+        assertTrue(index.find(asList("phone:200")).isEmpty());
+        assertEquals(0, index.getDocumentCount());
+    }
+
+    @Test
+    public void shouldKeepEstimatedBytesAsPatientsAreIndexedAndRemoved() {
+        PatientInvertedIndex index = new PatientInvertedIndex();
+        index.index("hid-1", asList("phone:100", "name:karim"));
+        long bytes = index.estimateBytes();
+
+        index.index("hid-1", asList("phone:100", "name:karim"));
+        assertEquals(bytes, index.estimateBytes());
+
+        PatientInvertedIndex other = new PatientInvertedIndex();
+        other.index("hid-2", asList("phone:200"));
+        index.index("hid-2", asList("phone:200"));
+        assertEquals(bytes + other.estimateBytes(), index.estimateBytes());
+
+        index.remove("hid-2");
+        other.remove("hid-2");
+        assertEquals(bytes + other.estimateBytes(), index.estimateBytes());
+        assertEquals(1, index.getDocumentCount());
+
+        index.clear();
+        assertEquals(0, index.estimateBytes());
+    }
+
+    @Test
+    public void shouldRestoreIndexFromSnapshot() throws Exception {
+        PatientInvertedIndex index = new PatientInvertedIndex();
+        index.index("hid-1", asList("phone:100", "name:karim"));
+        index.index("hid-2", asList("phone:100"));
+        index.remove("hid-2");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        PatientInvertedIndex restored = new PatientInvertedIndex();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(1, restored.getDocumentCount());
+        assertEquals(asList("hid-1"), restored.find(asList("phone:100", "name:karim")));
+    }
+}
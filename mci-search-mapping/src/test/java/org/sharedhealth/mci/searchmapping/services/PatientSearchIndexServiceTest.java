@@ -0,0 +1,98 @@
+package org.sharedhealth.mci.searchmapping.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.sharedhealth.mci.domain.config.MCIProperties;
+import org.sharedhealth.mci.domain.model.*;
+import org.sharedhealth.mci.domain.repository.PatientFeedRepository;
+import org.sharedhealth.mci.domain.repository.PatientRepository;
+import org.sharedhealth.mci.domain.repository.PatientSearchPlanner;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.sharedhealth.mci.domain.util.TimeUuidUtil.uuidForDate;
+
+public class PatientSearchIndexServiceTest {
+    @Mock
+    private PatientFeedRepository feedRepository;
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PatientSearchPlanner searchPlanner;
+    @Mock
+    private MCIProperties mciProperties;
+
+    private PatientSearchIndexService searchIndexService;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(mciProperties.isSearchIndexEnabled()).thenReturn(true);
+        when(mciProperties.getSearchIndexMemoryBudget()).thenReturn(1024L * 1024);
+        searchIndexService = new PatientSearchIndexService(feedRepository, patientRepository, searchPlanner, mciProperties);
+    }
+
+    @Test
+    public void shouldAnswerSearchesOnlyAfterCatchingUpWithUpdateLog() {
+        SearchQuery query = new SearchQuery();
+        query.setPhone_no("1716528608");
+        assertNull(searchIndexService.findHealthIds(query));
+
+        UUID eventId = uuidForDate(new Date());
+        when(feedRepository.findPatientsUpdatedSince(null, 100)).thenReturn(asList(getPatientUpdateLog("h100", eventId)));
+        PatientLoadResult result = new PatientLoadResult();
+        result.addPatient("h100", getPatient("1716528608"));
+        when(patientRepository.loadAllByHealthIds(anyCollectionOf(String.class))).thenReturn(result);
+
+        searchIndexService.catchUp();
+
+        assertEquals(asList("h100"), searchIndexService.findHealthIds(query));
+        query.setPhone_no("1716528609");
+        assertEquals(0, searchIndexService.findHealthIds(query).size());
+        query.setFuzzy_name(true);
+        query.setPhone_no(null);
+        assertNull(searchIndexService.findHealthIds(query));
+    }
+
+    @Test
+    public void shouldDisableIndexWhenItExceedsMemoryBudget() {
+        when(mciProperties.getSearchIndexMemoryBudget()).thenReturn(10L);
+        when(feedRepository.findPatientsUpdatedSince(null, 100)).thenReturn(
+                asList(getPatientUpdateLog("h100", uuidForDate(new Date()))));
+        PatientLoadResult result = new PatientLoadResult();
+        result.addPatient("h100", getPatient("1716528608"));
+        when(patientRepository.loadAllByHealthIds(anyCollectionOf(String.class))).thenReturn(result);
+
+        searchIndexService.catchUp();
+        searchIndexService.catchUp();
+
+        SearchQuery query = new SearchQuery();
+        query.setPhone_no("1716528608");
+        assertNull(searchIndexService.findHealthIds(query));
+        verify(feedRepository, times(1)).findPatientsUpdatedSince(null, 100);
+    }
+
+    private PatientData getPatient(String phoneNumber) {
+        PatientData patient = new PatientData();
+        PhoneNumber phone = new PhoneNumber();
+        phone.setNumber(phoneNumber);
+        patient.setPhoneNumber(phone);
+        patient.setAddress(new Address("10", "20", "30"));
+        return patient;
+    }
+
+    private PatientUpdateLog getPatientUpdateLog(String healthId, UUID eventId) {
+        PatientUpdateLog patientUpdateLog = new PatientUpdateLog();
+        patientUpdateLog.setEventId(eventId);
+        patientUpdateLog.setHealthId(healthId);
+        return patientUpdateLog;
+    }
+}